@@ -0,0 +1,87 @@
+package benchmark.dr;
+
+import dr.evolution.alignment.SimpleAlignment;
+import dr.evolution.coalescent.CoalescentSimulator;
+import dr.evolution.coalescent.ConstantPopulation;
+import dr.evolution.datatype.Nucleotides;
+import dr.evolution.sequence.Sequence;
+import dr.evolution.tree.Tree;
+import dr.evolution.tree.TreeUtils;
+import dr.evolution.util.Taxa;
+import dr.evolution.util.Taxon;
+import dr.evolution.util.Units;
+import dr.math.MathUtils;
+
+/**
+ * Reproducible synthetic taxa, trees, alignments and tree files of a given size for the benchmarks
+ */
+public class SyntheticData {
+
+    private static final String NUCLEOTIDES = "ACGT";
+
+    private SyntheticData() {
+        // static utilities
+    }
+
+    public static Taxa createTaxa(int taxonCount) {
+        Taxa taxa = new Taxa();
+        for (int i = 0; i < taxonCount; i++) {
+            taxa.addTaxon(new Taxon("taxon" + i));
+        }
+        return taxa;
+    }
+
+    /**
+     * A constant size coalescent tree, with heights of order one whatever the number of taxa
+     */
+    public static Tree createTree(Taxa taxa, long seed) {
+        MathUtils.setSeed(seed);
+        ConstantPopulation demographic = new ConstantPopulation(Units.Type.YEARS);
+        demographic.setN0(0.5);
+        return new CoalescentSimulator().simulateTree(taxa, demographic);
+    }
+
+    /**
+     * Sequences that each differ from a random ancestral sequence at a proportion of sites,
+     * so that the alignment compresses into patterns roughly as real data does.
+     */
+    public static SimpleAlignment createAlignment(Taxa taxa, int siteCount, double divergence, long seed) {
+        MathUtils.setSeed(seed);
+
+        char[] ancestor = new char[siteCount];
+        for (int i = 0; i < siteCount; i++) {
+            ancestor[i] = NUCLEOTIDES.charAt(MathUtils.nextInt(4));
+        }
+
+        SimpleAlignment alignment = new SimpleAlignment();
+        alignment.setDataType(Nucleotides.INSTANCE);
+        for (int i = 0; i < taxa.getTaxonCount(); i++) {
+            char[] sequence = ancestor.clone();
+            for (int j = 0; j < siteCount; j++) {
+                if (MathUtils.nextDouble() < divergence) {
+                    sequence[j] = NUCLEOTIDES.charAt(MathUtils.nextInt(4));
+                }
+            }
+            alignment.addSequence(new Sequence(taxa.getTaxon(i), new String(sequence)));
+        }
+        return alignment;
+    }
+
+    /**
+     * A NEXUS file with a taxa block and a trees block of independently simulated trees, as written by BEAST
+     */
+    public static String createNexusTrees(Taxa taxa, int treeCount, long seed) {
+        StringBuilder sb = new StringBuilder("#NEXUS\n\nBegin taxa;\n\tDimensions ntax=");
+        sb.append(taxa.getTaxonCount()).append(";\n\tTaxlabels\n");
+        for (int i = 0; i < taxa.getTaxonCount(); i++) {
+            sb.append("\t\t").append(taxa.getTaxonId(i)).append("\n");
+        }
+        sb.append("\t\t;\nEnd;\n\nBegin trees;\n");
+        for (int i = 0; i < treeCount; i++) {
+            Tree tree = createTree(taxa, seed + i);
+            sb.append("tree STATE_").append(i * 1000).append(" = [&R] ").append(TreeUtils.newick(tree)).append("\n");
+        }
+        sb.append("End;\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,53 @@
+package benchmark.dr.app.tools;
+
+import benchmark.dr.SyntheticData;
+import dr.app.tools.TreeAnnotator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clade counting and maximum clade credibility tree summary of a trees file
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TreeAnnotatorBenchmark {
+
+    @Param({"50", "200"})
+    public int taxonCount;
+
+    @Param({"100", "1000"})
+    public int treeCount;
+
+    private File inputFile;
+    private File outputFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        inputFile = File.createTempFile("benchmark", ".trees");
+        outputFile = File.createTempFile("benchmark", ".tree");
+        FileWriter writer = new FileWriter(inputFile);
+        writer.write(SyntheticData.createNexusTrees(SyntheticData.createTaxa(taxonCount), treeCount, 1234));
+        writer.close();
+    }
+
+    @TearDown
+    public void tearDown() {
+        inputFile.delete();
+        outputFile.delete();
+    }
+
+    @Benchmark
+    public TreeAnnotator maximumCladeCredibility() throws IOException {
+        return new TreeAnnotator(0, 0, TreeAnnotator.HeightsSummary.MEDIAN_HEIGHTS, 0.0, new double[]{0.8},
+                false, TreeAnnotator.Target.MAX_CLADE_CREDIBILITY, null,
+                inputFile.getAbsolutePath(), outputFile.getAbsolutePath());
+    }
+}
@@ -0,0 +1,38 @@
+package benchmark.dr.evolution.alignment;
+
+import benchmark.dr.SyntheticData;
+import dr.evolution.alignment.SimpleAlignment;
+import dr.evolution.alignment.SitePatterns;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compression of an alignment into unique site patterns
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SitePatternsBenchmark {
+
+    @Param({"16", "128", "1024"})
+    public int taxonCount;
+
+    @Param({"1000", "10000"})
+    public int siteCount;
+
+    private SimpleAlignment alignment;
+
+    @Setup
+    public void setUp() {
+        alignment = SyntheticData.createAlignment(SyntheticData.createTaxa(taxonCount), siteCount, 0.05, 1234);
+    }
+
+    @Benchmark
+    public SitePatterns constructSitePatterns() {
+        return new SitePatterns(alignment, null, 0, -1, 1, true);
+    }
+}
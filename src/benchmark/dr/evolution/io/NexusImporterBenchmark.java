@@ -0,0 +1,39 @@
+package benchmark.dr.evolution.io;
+
+import benchmark.dr.SyntheticData;
+import dr.evolution.io.NexusImporter;
+import dr.evolution.tree.Tree;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a NEXUS trees file as written by a BEAST tree log
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NexusImporterBenchmark {
+
+    @Param({"50", "500"})
+    public int taxonCount;
+
+    @Param({"100", "1000"})
+    public int treeCount;
+
+    private String nexus;
+
+    @Setup
+    public void setUp() {
+        nexus = SyntheticData.createNexusTrees(SyntheticData.createTaxa(taxonCount), treeCount, 1234);
+    }
+
+    @Benchmark
+    public Tree[] importTrees() throws Exception {
+        return new NexusImporter(new StringReader(nexus)).importTrees(null);
+    }
+}
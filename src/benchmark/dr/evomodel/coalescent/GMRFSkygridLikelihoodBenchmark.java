@@ -0,0 +1,72 @@
+package benchmark.dr.evomodel.coalescent;
+
+import benchmark.dr.SyntheticData;
+import dr.evolution.coalescent.IntervalList;
+import dr.evolution.util.Taxa;
+import dr.evomodel.coalescent.GMRFSkygridLikelihood;
+import dr.evomodel.coalescent.TreeIntervals;
+import dr.evomodel.tree.DefaultTreeModel;
+import dr.inference.model.Parameter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Skygrid density of one or more loci, after a change to a single population size
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GMRFSkygridLikelihoodBenchmark {
+
+    @Param({"100", "1000"})
+    public int taxonCount;
+
+    @Param({"1", "4"})
+    public int lociCount;
+
+    @Param({"50", "200"})
+    public int gridPointCount;
+
+    private Parameter popSizes;
+    private GMRFSkygridLikelihood likelihood;
+    private int index;
+
+    @Setup
+    public void setUp() throws Exception {
+        Taxa taxa = SyntheticData.createTaxa(taxonCount);
+        List<IntervalList> intervalsList = new ArrayList<IntervalList>();
+        double cutOff = 0.0;
+        for (int i = 0; i < lociCount; i++) {
+            DefaultTreeModel tree = new DefaultTreeModel(SyntheticData.createTree(taxa, 1234 + i));
+            intervalsList.add(new TreeIntervals(tree, null, null));
+            cutOff = Math.max(cutOff, tree.getNodeHeight(tree.getRoot()));
+        }
+
+        popSizes = new Parameter.Default("skygrid.logPopSize", gridPointCount + 1, 0.0);
+        Parameter ploidy = new Parameter.Default("ploidy", lociCount, 1.0);
+
+        likelihood = new GMRFSkygridLikelihood(intervalsList, popSizes, new Parameter.Default(1.0),
+                new Parameter.Default("skygrid.precision", 1.0), new Parameter.Default(1.0), null, null,
+                false, cutOff, gridPointCount, null, ploidy);
+        likelihood.getLogLikelihood();
+    }
+
+    @Benchmark
+    public double popSizeChange() {
+        index = (index + 1) % popSizes.getDimension();
+        popSizes.setParameterValue(index, 0.1 * (index % 3));
+        return likelihood.getLogLikelihood();
+    }
+
+    @Benchmark
+    public double fullEvaluation() {
+        likelihood.makeDirty();
+        return likelihood.getLogLikelihood();
+    }
+}
@@ -0,0 +1,89 @@
+package benchmark.dr.evomodel.treedatalikelihood;
+
+import benchmark.dr.SyntheticData;
+import dr.evolution.alignment.SitePatterns;
+import dr.evolution.datatype.Nucleotides;
+import dr.evolution.tree.NodeRef;
+import dr.evolution.util.Taxa;
+import dr.evomodel.branchmodel.HomogeneousBranchModel;
+import dr.evomodel.branchratemodel.DefaultBranchRateModel;
+import dr.evomodel.siteratemodel.GammaSiteRateModel;
+import dr.evomodel.substmodel.FrequencyModel;
+import dr.evomodel.substmodel.nucleotide.HKY;
+import dr.evomodel.tree.DefaultTreeModel;
+import dr.evomodel.treedatalikelihood.BeagleDataLikelihoodDelegate;
+import dr.evomodel.treedatalikelihood.PreOrderSettings;
+import dr.evomodel.treedatalikelihood.TreeDataLikelihood;
+import dr.evomodel.treelikelihood.PartialsRescalingScheme;
+import dr.inference.model.Parameter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nucleotide tree likelihood using the Java BEAGLE cores, fully recomputed and after a single node height move
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.only=true")
+@State(Scope.Benchmark)
+public class TreeDataLikelihoodBenchmark {
+
+    @Param({"16", "128", "512"})
+    public int taxonCount;
+
+    @Param({"1000", "10000"})
+    public int siteCount;
+
+    private DefaultTreeModel treeModel;
+    private TreeDataLikelihood likelihood;
+    private NodeRef node;
+    private double[] heights;
+    private int move;
+
+    @Setup
+    public void setUp() {
+        Taxa taxa = SyntheticData.createTaxa(taxonCount);
+        treeModel = new DefaultTreeModel(SyntheticData.createTree(taxa, 1234));
+        SitePatterns patterns = new SitePatterns(SyntheticData.createAlignment(taxa, siteCount, 0.05, 1234),
+                null, 0, -1, 1, true);
+
+        FrequencyModel frequencies = new FrequencyModel(Nucleotides.INSTANCE,
+                new Parameter.Default(new double[]{0.25, 0.25, 0.25, 0.25}));
+        HKY hky = new HKY(new Parameter.Default(2.0), frequencies);
+        GammaSiteRateModel siteRateModel = new GammaSiteRateModel("siteRateModel", 0.5, 4);
+        siteRateModel.setSubstitutionModel(hky);
+
+        BeagleDataLikelihoodDelegate delegate = new BeagleDataLikelihoodDelegate(treeModel, patterns,
+                new HomogeneousBranchModel(hky, frequencies), siteRateModel, false, false,
+                PartialsRescalingScheme.DEFAULT, false, PreOrderSettings.getDefault());
+        likelihood = new TreeDataLikelihood(delegate, treeModel, new DefaultBranchRateModel());
+
+        // an internal node that is neither the root nor a parent of the root, moved between two heights
+        node = treeModel.getInternalNode(0);
+        if (treeModel.isRoot(node)) {
+            node = treeModel.getInternalNode(1);
+        }
+        double lower = Math.max(treeModel.getNodeHeight(treeModel.getChild(node, 0)),
+                treeModel.getNodeHeight(treeModel.getChild(node, 1)));
+        double upper = treeModel.getNodeHeight(treeModel.getParent(node));
+        heights = new double[]{lower + 0.25 * (upper - lower), lower + 0.75 * (upper - lower)};
+
+        likelihood.getLogLikelihood();
+    }
+
+    @Benchmark
+    public double fullEvaluation() {
+        likelihood.makeDirty();
+        return likelihood.getLogLikelihood();
+    }
+
+    @Benchmark
+    public double nodeHeightMove() {
+        move = 1 - move;
+        treeModel.setNodeHeight(node, heights[move]);
+        return likelihood.getLogLikelihood();
+    }
+}
@@ -0,0 +1,107 @@
+package benchmark.dr.evomodel.treedatalikelihood.continuous;
+
+import benchmark.dr.SyntheticData;
+import dr.evolution.tree.NodeRef;
+import dr.evolution.util.Taxa;
+import dr.evomodel.branchratemodel.DefaultBranchRateModel;
+import dr.evomodel.continuous.MultivariateDiffusionModel;
+import dr.evomodel.tree.DefaultTreeModel;
+import dr.evomodel.treedatalikelihood.TreeDataLikelihood;
+import dr.evomodel.treedatalikelihood.continuous.*;
+import dr.evomodel.treedatalikelihood.continuous.cdi.PrecisionType;
+import dr.inference.model.CompoundParameter;
+import dr.inference.model.MatrixParameter;
+import dr.inference.model.Parameter;
+import dr.math.MathUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Node updates of the SafeMultivariateIntegrator: Brownian diffusion of full-precision traits with missing values
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SafeMultivariateIntegratorBenchmark {
+
+    @Param({"32", "256", "1024"})
+    public int taxonCount;
+
+    @Param({"2", "8"})
+    public int dimTrait;
+
+    private DefaultTreeModel treeModel;
+    private TreeDataLikelihood likelihood;
+    private NodeRef node;
+    private double[] heights;
+    private int move;
+
+    @Setup
+    public void setUp() {
+        Taxa taxa = SyntheticData.createTaxa(taxonCount);
+        treeModel = new DefaultTreeModel(SyntheticData.createTree(taxa, 1234));
+
+        Parameter[] traits = new Parameter[taxonCount];
+        boolean[] missing = new boolean[taxonCount * dimTrait];
+        for (int i = 0; i < taxonCount; i++) {
+            double[] values = new double[dimTrait];
+            for (int j = 0; j < dimTrait; j++) {
+                values[j] = MathUtils.nextGaussian();
+                missing[i * dimTrait + j] = MathUtils.nextDouble() < 0.1;
+            }
+            // the tip traits are in the order of the external nodes
+            traits[i] = new Parameter.Default(treeModel.getNodeTaxon(treeModel.getExternalNode(i)).getId(), values);
+        }
+        ContinuousTraitPartialsProvider dataModel = new ContinuousTraitDataModel("dataModel",
+                new CompoundParameter("trait", traits), missing, true, dimTrait, PrecisionType.FULL);
+
+        // a diagonally dominant, and so positive definite, precision matrix
+        Parameter[] rows = new Parameter[dimTrait];
+        for (int i = 0; i < dimTrait; i++) {
+            double[] row = new double[dimTrait];
+            for (int j = 0; j < dimTrait; j++) {
+                row[j] = i == j ? 2.0 : 0.1;
+            }
+            rows[i] = new Parameter.Default(row);
+        }
+        MultivariateDiffusionModel diffusionModel = new MultivariateDiffusionModel(
+                new MatrixParameter("precisionMatrix", rows));
+
+        ConjugateRootTraitPrior rootPrior = new ConjugateRootTraitPrior(
+                new Parameter.Default(dimTrait, 0.0), new Parameter.Default(1.0));
+
+        ContinuousDataLikelihoodDelegate delegate = new ContinuousDataLikelihoodDelegate(treeModel,
+                new HomogeneousDiffusionModelDelegate(treeModel, diffusionModel), dataModel, rootPrior,
+                new ContinuousRateTransformation.Default(treeModel, false, false),
+                new DefaultBranchRateModel(), true);
+        likelihood = new TreeDataLikelihood(delegate, treeModel, new DefaultBranchRateModel());
+
+        node = treeModel.getInternalNode(0);
+        if (treeModel.isRoot(node)) {
+            node = treeModel.getInternalNode(1);
+        }
+        double lower = Math.max(treeModel.getNodeHeight(treeModel.getChild(node, 0)),
+                treeModel.getNodeHeight(treeModel.getChild(node, 1)));
+        double upper = treeModel.getNodeHeight(treeModel.getParent(node));
+        heights = new double[]{lower + 0.25 * (upper - lower), lower + 0.75 * (upper - lower)};
+
+        likelihood.getLogLikelihood();
+    }
+
+    @Benchmark
+    public double fullEvaluation() {
+        likelihood.makeDirty();
+        return likelihood.getLogLikelihood();
+    }
+
+    @Benchmark
+    public double nodeHeightMove() {
+        move = 1 - move;
+        treeModel.setNodeHeight(node, heights[move]);
+        return likelihood.getLogLikelihood();
+    }
+}
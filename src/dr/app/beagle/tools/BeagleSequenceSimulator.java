@@ -25,10 +25,12 @@
 
 package dr.app.beagle.tools;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -144,6 +146,57 @@ public class BeagleSequenceSimulator {
 		return alignment;
 	}// END: simulate
 
+	/**
+	 * Simulates the partitions one after the other in blocks of sites and
+	 * streams the sequences to a file instead of building an alignment.
+	 */
+	public void simulate(boolean parallel, //
+						 boolean outputAncestralSequences, //
+						 String fileName, //
+						 StreamingAlignmentWriter.Format format, //
+						 int blockSize //
+	) throws IOException {
+
+		int NTHREDS = 1;
+		if (parallel) {
+			NTHREDS = Runtime.getRuntime().availableProcessors();
+		}
+
+		// ancestral sequences of internal nodes with the same height share a row, as in compileAlignment
+		LinkedHashSet<String> names = new LinkedHashSet<String>();
+		int partitionCount = 0;
+		for (Partition partition : partitions) {
+
+			partition.setPartitionNumber(partitionCount);
+			partition.setOutputAncestralSequences(outputAncestralSequences);
+			partition.addSequenceNames(names);
+			partitionCount++;
+
+		}// END: partitions loop
+
+		StreamingAlignmentWriter writer = new StreamingAlignmentWriter(fileName, format, dataType,
+				new ArrayList<String>(names), siteCount);
+
+		ExecutorService executor = Executors.newFixedThreadPool(NTHREDS, runnable -> {
+			Thread thread = new Thread(runnable);
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		try {
+
+			// partitions may interleave their sites so they are written one at a time
+			for (Partition partition : partitions) {
+				partition.simulatePartition(writer, blockSize, executor);
+			}
+
+		} finally {
+			executor.shutdown();
+			writer.close();
+		}
+
+	}// END: simulate
+
 	private class SimulatePartitionCallable implements Callable<Void> {
 
 		private Partition partition;
@@ -25,8 +25,18 @@
 
 package dr.app.beagle.tools;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import dr.evomodel.treedatalikelihood.BufferIndexHelper;
 import org.apache.commons.math.random.MersenneTwister;
@@ -55,6 +65,9 @@ public class Partition {
 
 	private static final boolean DEBUG = false;
 
+	// memory for the transition probabilities kept while streaming a partition
+	private static final long MATRIX_CACHE_BYTES = 64L << 20;
+
 	// Constructor fields
 	public int from;
 	public int to;
@@ -371,7 +384,7 @@ public class Partition {
 
 				if(outputAncestralSequences) {
 
-					alignmentMap.put(new Taxon("internalNodeHeight" + treeModel.getNodeHeight(child)), partitionSequence);
+					alignmentMap.put(new Taxon(getAncestralSequenceName(child)), partitionSequence);
 
 				}
 
@@ -384,6 +397,227 @@ public class Partition {
 
 	}// END: traverse
 
+	/**
+	 * Simulates the partition in blocks of sites and writes every block to the
+	 * writer as it goes, so only the sequences on the current root-to-tip path
+	 * of each block are held in memory. Blocks are simulated on the executor,
+	 * each with its own random number stream so the output does not depend on
+	 * the number of threads. A partition that fits in one block uses the
+	 * partition's random number stream and gives the same sequences as
+	 * simulatePartition().
+	 */
+	public void simulatePartition(final StreamingAlignmentWriter writer, //
+								  final int blockSize, //
+								  ExecutorService executor //
+	) throws IOException {
+
+		final double[] categoryProbs = siteRateModel.getCategoryProportions();
+		final double[] frequencies = freqModel.getFrequencies();
+		final int[] rootSequence = hasRootSequence ? sequence2intArray(this.rootSequence) : null;
+
+		try {
+
+			beagle.setCategoryRates(siteRateModel.getCategoryRates());
+			substitutionModelDelegate.updateSubstitutionModels(beagle);
+
+		} catch (Throwable e) {
+			throw new RuntimeException("BeagleException: " + e.getMessage(), e);
+		}
+
+		final TransitionProbabilityCache probabilities = new TransitionProbabilityCache(
+				MATRIX_CACHE_BYTES / (8L * siteRateCategoryCount * stateCount * stateCount));
+
+		final int blockCount = (partitionSiteCount + blockSize - 1) / blockSize;
+
+		List<Callable<Void>> blockCallers = new ArrayList<Callable<Void>>();
+		for (int start = 0; start < partitionSiteCount; start += blockSize) {
+
+			final int blockStart = start;
+			final int blockSiteCount = Math.min(blockSize, partitionSiteCount - start);
+			final long seed = blockCount > 1 ? random.nextLong() : 0;
+
+			blockCallers.add(new Callable<Void>() {
+				public Void call() throws IOException {
+
+					MersenneTwister blockRandom = blockCount > 1 ? new MersenneTwister(seed) : random;
+
+					int[] category = new int[blockSiteCount];
+					for (int i = 0; i < blockSiteCount; i++) {
+						category[i] = randomChoicePDF(categoryProbs, blockRandom);
+					}
+
+					int[] parentSequence = new int[blockSiteCount];
+					for (int i = 0; i < blockSiteCount; i++) {
+						parentSequence[i] = (rootSequence != null) ? rootSequence[blockStart + i]
+								: randomChoicePDF(frequencies, blockRandom);
+					}
+
+					traverse(parentSequence, category, probabilities,
+							blockRandom, writer, from + blockStart * every);
+
+					return null;
+				}// END: call
+			});
+
+		}// END: blocks loop
+
+		try {
+
+			for (Future<Void> future : executor.invokeAll(blockCallers)) {
+				future.get();
+			}
+
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+
+			try {
+				beagle.finalize();
+			} catch (Throwable e) {
+				throw new RuntimeException("BeagleException: " + e.getMessage(), e);
+			}
+
+		}
+
+	}// END: simulatePartition
+
+	/**
+	 * Simulates the sequences of a block down the tree in the same (preorder)
+	 * order as the recursive traverse, keeping the sequence of each parent only
+	 * until its children have been simulated.
+	 */
+	private void traverse(int[] rootSequence, //
+						  int[] category, //
+						  TransitionProbabilityCache probabilities, //
+						  MersenneTwister blockRandom, //
+						  StreamingAlignmentWriter writer, //
+						  int firstSite //
+	) throws IOException {
+
+		int blockSiteCount = rootSequence.length;
+		double[] cProb = new double[stateCount];
+
+		Deque<NodeRef> nodes = new ArrayDeque<NodeRef>();
+		Deque<int[]> parentSequences = new ArrayDeque<int[]>();
+		pushChildren(treeModel.getRoot(), rootSequence, nodes, parentSequences);
+
+		while (!nodes.isEmpty()) {
+
+			NodeRef node = nodes.pop();
+			int[] parentSequence = parentSequences.pop();
+
+			double[][] nodeProbabilities = probabilities.get(node);
+			int[] blockSequence = new int[blockSiteCount];
+
+			for (int i = 0; i < blockSiteCount; i++) {
+				System.arraycopy(nodeProbabilities[category[i]], parentSequence[i] * stateCount, cProb, 0, stateCount);
+				blockSequence[i] = randomChoicePDF(cProb, blockRandom);
+			}// END: i loop
+
+			if (treeModel.getChildCount(node) == 0) {
+
+				writer.writeSites(treeModel.getNodeTaxon(node).getId(), blockSequence, blockSiteCount,
+						firstSite, every);
+
+			} else if (outputAncestralSequences) {
+
+				writer.writeSites(getAncestralSequenceName(node), blockSequence, blockSiteCount,
+						firstSite, every);
+
+			} // END: tip node check
+
+			pushChildren(node, blockSequence, nodes, parentSequences);
+
+		}// END: nodes loop
+
+	}// END: traverse
+
+	private void pushChildren(NodeRef node, //
+							  int[] sequence, //
+							  Deque<NodeRef> nodes, //
+							  Deque<int[]> parentSequences //
+	) {
+
+		// in reverse so the first child is simulated first
+		for (int iChild = treeModel.getChildCount(node) - 1; iChild >= 0; iChild--) {
+			nodes.push(treeModel.getChild(node, iChild));
+			parentSequences.push(sequence);
+		}// END: child nodes loop
+
+	}// END: pushChildren
+
+	/**
+	 * The transition probabilities of the branches, computed with the Beagle
+	 * instance when they are first needed. Only the first branches to be
+	 * computed are kept, up to the capacity (every block visits the branches in
+	 * the same order), and the others are recomputed for each block.
+	 */
+	private class TransitionProbabilityCache {
+
+		private final double[][][] probabilities = new double[nodeCount][][];
+		private final long capacity;
+		private long size = 0;
+
+		private TransitionProbabilityCache(long capacity) {
+			this.capacity = capacity;
+		}// END: Constructor
+
+		private synchronized double[][] get(NodeRef node) {
+
+			double[][] nodeProbabilities = probabilities[node.getNumber()];
+			if (nodeProbabilities == null) {
+
+				nodeProbabilities = getTransitionProbabilities(node);
+				if (size < capacity) {
+					probabilities[node.getNumber()] = nodeProbabilities;
+					size++;
+				}
+
+			}
+
+			return nodeProbabilities;
+		}// END: get
+
+	}// END: TransitionProbabilityCache class
+
+	/**
+	 * Adds the names of the sequences this partition outputs, in the order of the in-memory simulation.
+	 */
+	public void addSequenceNames(Collection<String> names) {
+
+		Deque<NodeRef> nodes = new ArrayDeque<NodeRef>();
+		nodes.push(treeModel.getRoot());
+
+		while (!nodes.isEmpty()) {
+
+			NodeRef node = nodes.pop();
+
+			if (!treeModel.isRoot(node)) {
+				if (treeModel.getChildCount(node) == 0) {
+					names.add(treeModel.getNodeTaxon(node).getId());
+				} else if (outputAncestralSequences) {
+					names.add(getAncestralSequenceName(node));
+				}
+			}
+
+			// in reverse so the children are visited in order
+			for (int iChild = treeModel.getChildCount(node) - 1; iChild >= 0; iChild--) {
+				nodes.push(treeModel.getChild(node, iChild));
+			}// END: child nodes loop
+
+		}// END: nodes loop
+
+	}// END: addSequenceNames
+
+	private String getAncestralSequenceName(NodeRef node) {
+		return "internalNodeHeight" + treeModel.getNodeHeight(node);
+	}// END: getAncestralSequenceName
+
 	private double[][] getTransitionProbabilities(NodeRef node //
 	) {
 
@@ -515,6 +749,10 @@ public class Partition {
 	}// END: sequence2intArray
 
 	private int randomChoicePDF(double[] pdf, int partitionNumber, String error) {
+		return randomChoicePDF(pdf, random);
+	}// END: randomChoicePDF
+
+	private static int randomChoicePDF(double[] pdf, MersenneTwister random) {
 
 		int samplePos = -Integer.MAX_VALUE;
 		double cumProb = 0.0;
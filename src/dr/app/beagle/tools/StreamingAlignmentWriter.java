@@ -0,0 +1,245 @@
+/*
+ * StreamingAlignmentWriter.java
+ *
+ * Copyright (c) 2002-2015 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.app.beagle.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dr.app.tools.NexusExporter;
+import dr.evolution.datatype.Codons;
+import dr.evolution.datatype.DataType;
+import dr.evolution.datatype.HiddenDataType;
+
+/**
+ * Writes a simulated alignment straight to disk. The file is laid out with
+ * one fixed-width row per sequence and filled with gaps when it is created,
+ * so blocks of sites can then be written in any order (and from several
+ * threads) without holding the alignment in memory.
+ *
+ * The binary format is a header (magic number, row count, site count, gap
+ * state and the row names) followed by one byte per state, row by row.
+ */
+public class StreamingAlignmentWriter {
+
+	public static final int BINARY_MAGIC = 0x42535341;
+
+	public enum Format {
+		FASTA, NEXUS, BINARY
+	}// END: Format
+
+	private final Format format;
+	private final DataType dataType;
+	private final int siteCount;
+	private final int bytesPerSite;
+	private final Map<String, Integer> rowIndices;
+	private final long[] rowOffsets;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+
+	public StreamingAlignmentWriter(String fileName, //
+									Format format, //
+									DataType dataType, //
+									List<String> rowNames, //
+									int siteCount //
+	) throws IOException {
+
+		this.format = format;
+		this.dataType = dataType;
+		this.siteCount = siteCount;
+		this.bytesPerSite = (format != Format.BINARY && dataType instanceof Codons) ? 3 : 1;
+
+		this.rowIndices = new HashMap<String, Integer>();
+		this.rowOffsets = new long[rowNames.size()];
+
+		byte[] gaps = new byte[siteCount * bytesPerSite];
+		for (int site = 0; site < siteCount; site++) {
+			encode(gapState(), gaps, site * bytesPerSite);
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+
+		if (format == Format.BINARY) {
+
+			out.writeInt(BINARY_MAGIC);
+			out.writeInt(rowNames.size());
+			out.writeInt(siteCount);
+			out.writeInt(gapState());
+			for (String name : rowNames) {
+				out.writeUTF(name);
+			}
+
+		} else if (format == Format.NEXUS) {
+
+			out.write(ascii("#NEXUS\nbegin data;\n" //
+					+ "\tdimensions ntax=" + rowNames.size() + " nchar=" + gaps.length + ";\n" //
+					+ "\tformat datatype=" + dataType.getDescription() //
+					+ " missing=" + DataType.UNKNOWN_CHARACTER //
+					+ " gap=" + DataType.GAP_CHARACTER + ";\n" //
+					+ "\tmatrix\n"));
+
+		}// END: header
+
+		// DataOutputStream only counts up to Integer.MAX_VALUE so keep track of the rows here
+		long position = out.size();
+		for (int row = 0; row < rowNames.size(); row++) {
+
+			String name = rowNames.get(row);
+			if (rowIndices.put(name, row) != null) {
+				throw new IllegalArgumentException("Duplicate sequence name " + name);
+			}
+
+			byte[] label = null;
+			if (format == Format.FASTA) {
+				label = ascii(">" + name + "\n");
+			} else if (format == Format.NEXUS) {
+				label = ascii("\t" + nexusName(name) + "\t");
+			}
+
+			if (label != null) {
+				out.write(label);
+				position += label.length;
+			}
+
+			rowOffsets[row] = position;
+			out.write(gaps);
+			position += gaps.length;
+
+			if (format != Format.BINARY) {
+				out.write('\n');
+				position++;
+			}
+
+		}// END: rows loop
+
+		if (format == Format.NEXUS) {
+			out.write(ascii(";\nend;\n"));
+		}
+
+		out.close();
+
+		this.file = new RandomAccessFile(fileName, "rw");
+		this.channel = file.getChannel();
+	}// END: Constructor
+
+	/**
+	 * Writes states to the sites first, first + every, first + 2 * every, ... of a row.
+	 * Concurrent calls must not write to interleaved sites of the same row.
+	 */
+	public void writeSites(String name, int[] states, int count, int first, int every) throws IOException {
+
+		Integer row = rowIndices.get(name);
+		if (row == null) {
+			throw new IllegalArgumentException("Unknown sequence name " + name);
+		}
+
+		if (first + (count - 1) * every >= siteCount) {
+			throw new IllegalArgumentException("Sites beyond the end of the alignment");
+		}
+
+		long position = rowOffsets[row] + (long) first * bytesPerSite;
+		ByteBuffer buffer = ByteBuffer.allocate(((count - 1) * every + 1) * bytesPerSite);
+
+		if (every > 1) {
+			// keep the sites in between that belong to other partitions
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0) {
+					throw new IOException("Unexpected end of alignment file");
+				}
+			}
+		}
+
+		byte[] bytes = buffer.array();
+		for (int i = 0; i < count; i++) {
+			encode(states[i], bytes, i * every * bytesPerSite);
+		}
+
+		buffer.clear();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}// END: writeSites
+
+	public void close() throws IOException {
+		channel.close();
+		file.close();
+	}// END: close
+
+	public Format getFormat() {
+		return format;
+	}// END: getFormat
+
+	private int gapState() {
+		return dataType.getGapState();
+	}// END: gapState
+
+	private void encode(int state, byte[] bytes, int offset) {
+
+		if (format == Format.BINARY) {
+
+			bytes[offset] = (byte) state;
+
+		} else if (dataType instanceof Codons) {
+
+			String triplet = dataType.getTriplet(state);
+			for (int i = 0; i < 3; i++) {
+				bytes[offset + i] = (byte) triplet.charAt(i);
+			}
+
+		} else if (dataType instanceof HiddenDataType && state != gapState()) {
+
+			bytes[offset] = (byte) dataType.getCode(state
+					% (dataType.getStateCount() / ((HiddenDataType) dataType).getHiddenClassCount())).charAt(0);
+
+		} else {
+
+			bytes[offset] = (byte) dataType.getCode(state).charAt(0);
+
+		}// END: format check
+
+	}// END: encode
+
+	private static String nexusName(String name) {
+		if (name.matches(NexusExporter.SPECIAL_CHARACTERS_REGEX)) {
+			return "'" + name.replace("'", "''") + "'";
+		}
+		return name;
+	}// END: nexusName
+
+	private static byte[] ascii(String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}// END: ascii
+
+}// END: class
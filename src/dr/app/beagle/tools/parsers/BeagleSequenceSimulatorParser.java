@@ -27,12 +27,14 @@ package dr.app.beagle.tools.parsers;
 
 import dr.app.beagle.tools.BeagleSequenceSimulator;
 import dr.app.beagle.tools.Partition;
+import dr.app.beagle.tools.StreamingAlignmentWriter;
 import dr.evolution.alignment.Alignment;
 import dr.evolution.alignment.SimpleAlignment;
 import dr.evolution.datatype.Codons;
 import dr.evolution.datatype.Nucleotides;
 import dr.xml.*;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.logging.Logger;
 
@@ -46,6 +48,9 @@ public class BeagleSequenceSimulatorParser extends AbstractXMLObjectParser {
     public static final String PARALLEL = "parallel";
     public static final String OUTPUT_ANCESTRAL_SEQUENCES = "outputAncestralSequences";
     public static final String OUTPUT = "output";
+    public static final String FILE_NAME = "fileName";
+    public static final String BLOCK_SIZE = "blockSize";
+    public static final String BINARY = "binary";
 
     public String getParserName() {
         return BEAGLE_SEQUENCE_SIMULATOR;
@@ -70,13 +75,26 @@ public class BeagleSequenceSimulatorParser extends AbstractXMLObjectParser {
                 AttributeRule.newBooleanRule(PARALLEL, true, "Whether to use multiple Beagle instances for simulation, default is false (sequential execution)."),
                 new StringAttributeRule(OUTPUT, "Possible output formats",
                         
-                		SimpleAlignment.OutputType.values(), //TODO: this should ignore upper/lower cas
+                		getOutputTypes(), //TODO: this should ignore upper/lower cas
                         false),
+                AttributeRule.newBooleanRule(OUTPUT_ANCESTRAL_SEQUENCES, true),
+                AttributeRule.newStringRule(FILE_NAME, true, "Stream the simulated sequences to this file instead of keeping the alignment in memory."),
+                AttributeRule.newIntegerRule(BLOCK_SIZE, true, "Number of sites simulated at a time when streaming, default is 10000."),
                         
                 new ElementRule(Partition.class, 1, Integer.MAX_VALUE)
         };
     }// END: getSyntaxRules
 
+    private static String[] getOutputTypes() {
+        SimpleAlignment.OutputType[] types = SimpleAlignment.OutputType.values();
+        String[] names = new String[types.length + 1];
+        for (int i = 0; i < types.length; i++) {
+            names[i] = types[i].name();
+        }
+        names[types.length] = BINARY.toUpperCase();
+        return names;
+    }// END: getOutputTypes
+
     @Override
     public Object parseXMLObject(XMLObject xo) throws XMLParseException {
 
@@ -93,9 +111,18 @@ public class BeagleSequenceSimulatorParser extends AbstractXMLObjectParser {
         }
         
         SimpleAlignment.OutputType output = SimpleAlignment.OutputType.FASTA;
+        boolean binary = false;
         if (xo.hasAttribute(OUTPUT)) {
-            output = SimpleAlignment.OutputType.parseFromString(
-                    xo.getStringAttribute(OUTPUT));
+            binary = xo.getStringAttribute(OUTPUT).equalsIgnoreCase(BINARY);
+            if (!binary) {
+                output = SimpleAlignment.OutputType.parseFromString(
+                        xo.getStringAttribute(OUTPUT));
+            }
+        }
+
+        String fileName = xo.getAttribute(FILE_NAME, (String) null);
+        if (binary && fileName == null) {
+            throw new XMLParseException("The " + BINARY + " output requires a " + FILE_NAME + " attribute");
         }
 
         int siteCount = 0;
@@ -163,6 +190,37 @@ public class BeagleSequenceSimulatorParser extends AbstractXMLObjectParser {
         }
 
         BeagleSequenceSimulator s = new BeagleSequenceSimulator(partitionsList);
+
+        if (fileName != null) {
+
+            StreamingAlignmentWriter.Format format;
+            if (binary) {
+                format = StreamingAlignmentWriter.Format.BINARY;
+            } else if (output == SimpleAlignment.OutputType.FASTA) {
+                format = StreamingAlignmentWriter.Format.FASTA;
+            } else if (output == SimpleAlignment.OutputType.NEXUS) {
+                format = StreamingAlignmentWriter.Format.NEXUS;
+            } else {
+                throw new XMLParseException("Only fasta, nexus and binary output can be streamed to a file");
+            }
+
+            int blockSize = xo.getAttribute(BLOCK_SIZE, 10000);
+            if (blockSize < 1) {
+                throw new XMLParseException("The " + BLOCK_SIZE + " attribute must be positive");
+            }
+
+            try {
+                s.simulate(parallel, outputAncestralSequences, fileName, format, blockSize);
+            } catch (IOException e) {
+                throw new XMLParseException("Unable to write simulated sequences to " + fileName + ": " + e.getMessage());
+            }
+
+            Logger.getLogger("dr.app.beagle.tools").info("Simulated sequences written to " + fileName + "\n");
+
+            // the sequences are only on disk
+            return null;
+        }
+
         SimpleAlignment alignment = s.simulate(parallel, outputAncestralSequences);
 
         alignment.setOutputType(output);
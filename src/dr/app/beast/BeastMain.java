@@ -32,6 +32,7 @@ import dr.app.plugin.Plugin;
 import dr.app.plugin.PluginLoader;
 import dr.app.util.Arguments;
 import dr.app.util.Utils;
+import dr.evomodel.substmodel.EigenDecompositionCache;
 import dr.inference.mcmc.MCMC;
 import dr.inference.mcmcmc.MCMCMC;
 import dr.inference.mcmcmc.MCMCMCOptions;
@@ -229,6 +230,11 @@ public class BeastMain {
                 mc3.run();
             }
 
+            EigenDecompositionCache eigenCache = EigenDecompositionCache.getInstance();
+            if (eigenCache.isEnabled()) {
+                infoLogger.info(eigenCache.toString());
+            }
+
         } catch (java.io.IOException ioe) {
             infoLogger.severe("File error: " + ioe.getMessage());
             throw new RuntimeException("Terminate");
@@ -137,6 +137,13 @@ public class BeastParser extends XMLParser {
                 System.out.println("\n\nLoading additional parsers (" + parsersFile + "):");
             }
         }
+
+        // use the pre-generated index (if present and up to date) to defer loading the parsers
+        // until they are needed; verbose output lists every parser so loads them all as before
+        if (!verbose && loadIndex(c, parsersFile, parserWarning, canReplace)) {
+            return;
+        }
+
         final InputStream stream = c.getResourceAsStream(parsersFile);
         if (stream == null) {
             throw new RuntimeException("Parsers file not found: " + parsersFile);
@@ -203,6 +210,41 @@ public class BeastParser extends XMLParser {
         }
     }
 
+    /**
+     * Register the parsers in a *.properties file from its index without instantiating them
+     * @param c               BeastParser
+     * @param parsersFile     parser file name, (*.properties)
+     * @param parserWarning   parserWarning
+     * @param canReplace      can this new loaded parser to replace old one with the same name
+     * @return false if there is no up to date index for the parsers file
+     * @throws IOException    IOException
+     */
+    private boolean loadIndex(Class c, String parsersFile, boolean parserWarning, boolean canReplace) throws IOException {
+        List<ParserIndex.Entry> entries = ParserIndex.read(c, parsersFile);
+        if (entries == null) {
+            return false;
+        }
+
+        for (ParserIndex.Entry entry : entries) {
+            if (entry.getError() != null) {
+                System.err.println("\nFailed to load parser: " + entry.getError());
+                System.err.println("line = " + entry.getSource() + "\n");
+                continue;
+            }
+            try {
+                boolean replaced = addDeferredXMLObjectParser(entry, canReplace);
+                if (parserWarning && replaced) {
+                    System.out.println("WARNING: parser - " + entry.getSource() + " in " + parsersFile +" is duplicated, "
+                            + "which is REPLACING the same parser loaded previously.\n");
+                }
+            } catch (IllegalArgumentException iae) {
+                System.err.println("\nFailed to load parser: " + iae.getMessage());
+                System.err.println("line = " + entry.getSource() + "\n");
+            }
+        }
+        return true;
+    }
+
     @Override
     protected void executingRunnable() {
         Logger.getLogger("dr.apps.beast").info("\nCitations for this analysis: ");
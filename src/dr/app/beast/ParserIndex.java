@@ -0,0 +1,326 @@
+/*
+ * ParserIndex.java
+ *
+ * Copyright (c) 2002-2023 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.app.beast;
+
+import dr.xml.XMLObjectParser;
+import dr.xml.XMLParser;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A pre-generated index of the element names provided by each parser listed in a
+ * *_parsers.properties file. BeastParser uses it to register parsers without loading
+ * their classes; each parser is then instantiated when its element first appears.
+ *
+ * The index is written at build time by running this class (see the parser-index target
+ * in build.xml). It records a checksum of the properties file it was generated from and of
+ * the class files of the parsers, and is ignored if any of them has changed since.
+ */
+public class ParserIndex {
+
+    public static final String INDEX_SUFFIX = "_parsers.index";
+    private static final String CHECKSUM_PREFIX = "#checksum=";
+    private static final String FAILED_PREFIX = "!";
+
+    /**
+     * A parser class (or a static parser field of a class) and the element names it parses.
+     */
+    public static class Entry implements XMLParser.DeferredParser {
+
+        Entry(String className, String fieldName, String parserClassName, String[] parserNames) {
+            this.className = className;
+            this.fieldName = fieldName;
+            this.parserClassName = parserClassName;
+            this.parserNames = parserNames;
+            this.error = null;
+        }
+
+        /**
+         * An entry for a line of the properties file that could not be loaded when the index
+         * was generated so that the failure is still reported at run time.
+         */
+        Entry(String className, String error) {
+            this.className = className;
+            this.fieldName = null;
+            this.parserClassName = className;
+            this.parserNames = new String[0];
+            this.error = error;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public String[] getParserNames() {
+            return parserNames;
+        }
+
+        public String getSource() {
+            return fieldName == null ? className : className + "." + fieldName;
+        }
+
+        public XMLObjectParser load() throws Exception {
+            Class<?> parser = Class.forName(className);
+            if (fieldName == null) {
+                return (XMLObjectParser) parser.getDeclaredConstructor().newInstance();
+            } else {
+                Field field = parser.getDeclaredField(fieldName);
+                return (XMLObjectParser) field.get(null);
+            }
+        }
+
+        String toLine() {
+            if (error != null) {
+                return FAILED_PREFIX + className + "\t" + error;
+            }
+            StringBuilder sb = new StringBuilder(className);
+            if (fieldName != null) {
+                sb.append("#").append(fieldName);
+            }
+            if (!parserClassName.equals(className)) {
+                sb.append("@").append(parserClassName);
+            }
+            for (String name : parserNames) {
+                sb.append("\t").append(name);
+            }
+            return sb.toString();
+        }
+
+        static Entry fromLine(String line) {
+            String[] tokens = line.split("\t");
+            if (tokens[0].startsWith(FAILED_PREFIX)) {
+                return new Entry(tokens[0].substring(FAILED_PREFIX.length()), tokens.length > 1 ? tokens[1] : "");
+            }
+            String className = tokens[0];
+            String parserClassName = null;
+            int at = className.indexOf('@');
+            if (at >= 0) {
+                parserClassName = className.substring(at + 1);
+                className = className.substring(0, at);
+            }
+            String fieldName = null;
+            int hash = className.indexOf('#');
+            if (hash >= 0) {
+                fieldName = className.substring(hash + 1);
+                className = className.substring(0, hash);
+            }
+            String[] names = new String[tokens.length - 1];
+            System.arraycopy(tokens, 1, names, 0, names.length);
+            return new Entry(className, fieldName, parserClassName != null ? parserClassName : className, names);
+        }
+
+        private final String className;
+        private final String fieldName;
+        // the class that implements the parser (e.g., an anonymous class assigned to the field)
+        private final String parserClassName;
+        private final String[] parserNames;
+        private final String error;
+    }
+
+    /**
+     * Reads the index for a parsers file.
+     *
+     * @param c           the class relative to which the resources are found
+     * @param parsersFile the name of the *_parsers.properties file
+     * @return the entries in the order of the properties file, or null if there is no index or it is out of date
+     * @throws IOException if the index cannot be read
+     */
+    public static List<Entry> read(Class<?> c, String parsersFile) throws IOException {
+        final InputStream indexStream = c.getResourceAsStream(getIndexName(parsersFile));
+        if (indexStream == null || c.getResource(parsersFile) == null) {
+            return null;
+        }
+        return read(c, parsersFile, indexStream);
+    }
+
+    /**
+     * Reads an index for a parsers file from the given stream.
+     *
+     * @return the entries in the order of the properties file, or null if the index is out of date
+     */
+    public static List<Entry> read(Class<?> c, String parsersFile, InputStream indexStream) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        String checksumLine;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(indexStream));
+        try {
+            checksumLine = reader.readLine();
+            String line = reader.readLine();
+            while (line != null) {
+                if (line.trim().length() > 0) {
+                    entries.add(Entry.fromLine(line));
+                }
+                line = reader.readLine();
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (checksumLine == null || !checksumLine.equals(CHECKSUM_PREFIX + checksum(c, parsersFile, entries))) {
+            return null;
+        }
+        return entries;
+    }
+
+    /**
+     * Loads every parser listed in a parsers file and records the element names it provides.
+     */
+    public static List<Entry> create(Class<?> c, String parsersFile) throws IOException {
+        final InputStream stream = c.getResourceAsStream(parsersFile);
+        if (stream == null) {
+            throw new RuntimeException("Parsers file not found: " + parsersFile);
+        }
+
+        List<Entry> entries = new ArrayList<Entry>();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+        String line = reader.readLine();
+        while (line != null) {
+            line = line.trim();
+            if (line.length() > 0 && !line.startsWith("#")) {
+                try {
+                    Class<?> parser = Class.forName(line);
+                    if (XMLObjectParser.class.isAssignableFrom(parser)) {
+                        XMLObjectParser instance = (XMLObjectParser) parser.getDeclaredConstructor().newInstance();
+                        entries.add(new Entry(line, null, line, instance.getParserNames()));
+                    } else {
+                        boolean parserFound = false;
+                        for (Field field : parser.getDeclaredFields()) {
+                            if (XMLObjectParser.class.isAssignableFrom(field.getType())) {
+                                XMLObjectParser instance = (XMLObjectParser) field.get(null);
+                                entries.add(new Entry(line, field.getName(), instance.getClass().getName(),
+                                        instance.getParserNames()));
+                                parserFound = true;
+                            }
+                        }
+                        if (!parserFound) {
+                            throw new IllegalArgumentException(parser.getName() + " is not of type XMLObjectParser " +
+                                    "and doesn't contain any static members of this type");
+                        }
+                    }
+                } catch (Exception e) {
+                    System.err.println("\nFailed to index parser: " + e.getMessage());
+                    System.err.println("line = " + line + "\n");
+                    entries.add(new Entry(line, String.valueOf(e.getMessage()).replace('\n', ' ')));
+                }
+            }
+            line = reader.readLine();
+        }
+        reader.close();
+
+        return entries;
+    }
+
+    /**
+     * Writes the index for a parsers file to the given directory.
+     *
+     * @return the index file
+     */
+    public static File write(Class<?> c, String parsersFile, List<Entry> entries, File directory) throws IOException {
+        long checksum = checksum(c, parsersFile, entries);
+
+        File file = new File(directory, getIndexName(parsersFile));
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        writer.println(CHECKSUM_PREFIX + checksum);
+        for (Entry entry : entries) {
+            writer.println(entry.toLine());
+        }
+        writer.close();
+        return file;
+    }
+
+    private static String getIndexName(String parsersFile) {
+        return parsersFile.substring(0, parsersFile.length() - BeastParser.PARSER_PROPERTIES_SUFFIX.length())
+                + INDEX_SUFFIX;
+    }
+
+    /**
+     * @return a checksum of the properties file and of the class files of the parsers in the index, so the
+     * index is out of date if a parser's element names may have changed
+     */
+    private static long checksum(Class<?> c, String parsersFile, List<Entry> entries) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+
+        update(crc, c.getResourceAsStream(parsersFile), buffer);
+        for (Entry entry : entries) {
+            updateClass(crc, c, entry.className, buffer);
+            if (!entry.parserClassName.equals(entry.className)) {
+                updateClass(crc, c, entry.parserClassName, buffer);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static void updateClass(CRC32 crc, Class<?> c, String className, byte[] buffer) throws IOException {
+        InputStream stream = c.getResourceAsStream("/" + className.replace('.', '/') + ".class");
+        if (stream != null) {
+            update(crc, stream, buffer);
+        } else {
+            // a missing class still changes the checksum
+            crc.update(className.getBytes("UTF-8"));
+        }
+    }
+
+    private static void update(CRC32 crc, InputStream stream, byte[] buffer) throws IOException {
+        try {
+            int length;
+            while ((length = stream.read(buffer)) != -1) {
+                crc.update(buffer, 0, length);
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Generates the indices for the given parser sets.
+     *
+     * @param args the output directory followed by the parser set names (e.g., release development)
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ParserIndex <output directory> <parser set> [<parser set> ...]");
+            System.exit(1);
+        }
+
+        File directory = new File(args[0]);
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory: " + directory);
+        }
+
+        for (int i = 1; i < args.length; i++) {
+            String parsersFile = args[i] + BeastParser.PARSER_PROPERTIES_SUFFIX;
+            List<Entry> entries = create(BeastParser.class, parsersFile);
+            write(BeastParser.class, parsersFile, entries, directory);
+            System.out.println("Indexed " + entries.size() + " parsers from " + parsersFile);
+        }
+    }
+}
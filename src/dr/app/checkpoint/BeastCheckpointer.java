@@ -34,6 +34,7 @@ import dr.inference.model.Likelihood;
 import dr.inference.model.Model;
 import dr.inference.model.Parameter;
 import dr.inference.operators.AdaptableMCMCOperator;
+import dr.inference.operators.CostAwareOperatorSchedule;
 import dr.inference.operators.MCMCOperator;
 import dr.inference.operators.OperatorSchedule;
 import dr.inference.state.*;
@@ -59,6 +60,9 @@ public class BeastCheckpointer implements StateLoaderSaver {
     // A debugging flag to do a check that the state gives the same likelihood after loading
     private static final boolean CHECK_LOAD_STATE = true;
 
+    // enough to peek at the line after the operators (the schedule state or the first tree)
+    private static final int SCHEDULE_LINE_LIMIT = 1 << 16;
+
     public final static String LOAD_STATE_FILE = "load.state.file";
     public final static String SAVE_STATE_FILE = "save.state.file";
     public final static String SAVE_STATE_AT = "save.state.at";
@@ -320,6 +324,19 @@ public class BeastCheckpointer implements StateLoaderSaver {
                 out.println();
             }
 
+            if (operatorSchedule instanceof CostAwareOperatorSchedule) {
+                // the adapted operator weights so a resumed run doesn't adapt them again
+                CostAwareOperatorSchedule schedule = (CostAwareOperatorSchedule) operatorSchedule;
+                out.print("schedule");
+                out.print("\t");
+                out.print(schedule.getAdaptationCount());
+                for (double factor : schedule.getWeightFactors()) {
+                    out.print("\t");
+                    out.print(factor);
+                }
+                out.println();
+            }
+
             //check up front if there are any TreeParameterModel objects
             for (Model model : Model.CONNECTED_MODEL_SET) {
                 if (model instanceof TreeParameterModel) {
@@ -540,6 +557,22 @@ public class BeastCheckpointer implements StateLoaderSaver {
                 }
             }
 
+            if (operatorSchedule instanceof CostAwareOperatorSchedule) {
+                // checkpoints written before the schedule state was saved go straight on to the trees (if any)
+                in.mark(SCHEDULE_LINE_LIMIT);
+                line = in.readLine();
+                fields = line != null ? line.split("\t") : null;
+                if (fields != null && fields[0].equals("schedule")) {
+                    double[] factors = new double[fields.length - 2];
+                    for (int i = 0; i < factors.length; i++) {
+                        factors[i] = parser.parseDouble(fields[i + 2]);
+                    }
+                    ((CostAwareOperatorSchedule) operatorSchedule).setAdaptationState(Long.parseLong(fields[1]), factors);
+                } else {
+                    in.reset();
+                }
+            }
+
             // load the tree models last as we get the node heights from the tree (not the parameters which
             // which may not be associated with the right node
             Set<String> expectedTreeModelNames = new LinkedHashSet<>();
@@ -34,6 +34,8 @@ import dr.stats.DiscreteStatistics;
 import dr.math.*;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 /*
  * @author Andrew Rambaut
@@ -69,7 +71,7 @@ public class TemporalRooting {
     private double dateMin;
     private double dateMax;
 
-    private int currentRootBranch = 0;
+    private final AtomicInteger currentRootBranch = new AtomicInteger(0);
     private int totalRootBranches = 0;
 
     private boolean forcePositiveRate = false;
@@ -264,39 +266,278 @@ public class TemporalRooting {
         return labels;
     }
 
-    private Tree findGlobalRoot(final Tree source, final double[] dates, RootingFunction rootingFunction, boolean forcePositiveRate) {
+    /**
+     * Finds the rooting that optimizes the rooting function over every branch of the tree. The sums
+     * sufficient for the root-to-tip regression are accumulated for the tips below and above each node
+     * in one post-order and one pre-order pass, so each candidate branch is scored without re-rooting
+     * or traversing the tree. The branches are then optimized in parallel.
+     */
+    private Tree findGlobalRoot(final Tree source, final double[] dates, final RootingFunction rootingFunction, final boolean forcePositiveRate) {
+
+        final NodeRef root = source.getRoot();
+        if (source.getChildCount(root) != 2) {
+            throw new IllegalArgumentException("Trees must be binary");
+        }
 
-        FlexibleTree bestTree = new FlexibleTree(source);
-        double minF = findLocalRoot(bestTree, dates, rootingFunction, forcePositiveRate);
-        double minDiff = Double.MAX_VALUE;
-
-        totalRootBranches = source.getNodeCount();
-        for (currentRootBranch = 0; currentRootBranch < source.getNodeCount(); currentRootBranch++) {
-            FlexibleTree tmpTree = new FlexibleTree(source);
-            NodeRef node = tmpTree.getNode(currentRootBranch);
-            if (!tmpTree.isRoot(node)) {
-                double length = tmpTree.getBranchLength(node);
-                tmpTree.changeRoot(node, length * 0.5, length * 0.5);
-
-                double f = findLocalRoot(tmpTree, dates, rootingFunction, forcePositiveRate);
-                if (useTargetRate) {
-                    Regression r = getRootToTipRegression(tmpTree);
-                    if (Math.abs(r.getGradient() - targetRate) < minDiff) {
-                        minDiff = Math.abs(r.getGradient() - targetRate);
-                        bestTree = tmpTree;
-                    }
-                } else {
-                    if (f < minF) {
-                        minF = f;
-                        bestTree = tmpTree;
-                    }
+        final int nodeCount = source.getNodeCount();
+        final int tipCount = source.getExternalNodeCount();
+
+        // centre the dates so that the sums of squares are well conditioned
+        final double meanDate = DiscreteStatistics.mean(dates);
+        final double[] t = new double[nodeCount];
+        double sumTT = 0.0;
+        for (int i = 0; i < tipCount; i++) {
+            NodeRef tip = source.getExternalNode(i);
+            t[tip.getNumber()] = dates[i] - meanDate;
+            sumTT += t[tip.getNumber()] * t[tip.getNumber()];
+        }
+        final double sumSquaresT = sumTT;
+
+        final List<NodeRef> preOrder = new ArrayList<NodeRef>(nodeCount);
+        final Deque<NodeRef> stack = new ArrayDeque<NodeRef>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            NodeRef node = stack.pop();
+            preOrder.add(node);
+            for (int i = source.getChildCount(node) - 1; i >= 0; i--) {
+                stack.push(source.getChild(node, i));
+            }
+        }
+
+        // the moments of the tips below each node, measured from that node
+        final TipMoments[] below = new TipMoments[nodeCount];
+        for (int i = preOrder.size() - 1; i >= 0; i--) {
+            NodeRef node = preOrder.get(i);
+            TipMoments moments = new TipMoments();
+            if (source.isExternal(node)) {
+                moments.addTip(t[node.getNumber()]);
+            } else {
+                for (int j = 0; j < source.getChildCount(node); j++) {
+                    NodeRef child = source.getChild(node, j);
+                    moments.add(below[child.getNumber()], source.getBranchLength(child));
+                }
+            }
+            below[node.getNumber()] = moments;
+        }
+
+        // the moments of the tips not below each node, measured from its parent
+        final TipMoments[] above = new TipMoments[nodeCount];
+        for (NodeRef node : preOrder) {
+            if (node == root) {
+                continue;
+            }
+            NodeRef parent = source.getParent(node);
+            TipMoments moments = new TipMoments();
+            if (parent != root) {
+                moments.add(above[parent.getNumber()], source.getBranchLength(parent));
+            }
+            for (int j = 0; j < source.getChildCount(parent); j++) {
+                NodeRef sibling = source.getChild(parent, j);
+                if (sibling != node) {
+                    moments.add(below[sibling.getNumber()], source.getBranchLength(sibling));
                 }
             }
+            above[node.getNumber()] = moments;
+        }
+
+        // The branch through the current root is the first candidate (represented by its first
+        // child) followed by the branch above every other node, in the order of the original search.
+        final NodeRef rootChild1 = source.getChild(root, 0);
+        final NodeRef rootChild2 = source.getChild(root, 1);
+        final int[] candidates = new int[nodeCount - 2];
+        int candidateCount = 0;
+        candidates[candidateCount++] = rootChild1.getNumber();
+        for (int i = 0; i < nodeCount; i++) {
+            NodeRef node = source.getNode(i);
+            if (node != root && node != rootChild1 && node != rootChild2) {
+                candidates[candidateCount++] = i;
+            }
+        }
+
+        final double[] scores = new double[candidateCount];
+        final double[] positions = new double[candidateCount];
+        final double[] gradients = new double[candidateCount];
+
+        totalRootBranches = candidateCount;
+        currentRootBranch.set(0);
+
+        IntStream.range(0, candidateCount).parallel().forEach(i -> {
+            final TipMoments inside;
+            final TipMoments outside;
+            final double length;
+            if (i == 0) {
+                inside = below[rootChild1.getNumber()];
+                outside = below[rootChild2.getNumber()];
+                length = source.getBranchLength(rootChild1) + source.getBranchLength(rootChild2);
+            } else {
+                NodeRef node = source.getNode(candidates[i]);
+                inside = below[candidates[i]];
+                outside = above[candidates[i]];
+                length = source.getBranchLength(node);
+            }
+
+            BranchRooting rooting = new BranchRooting(inside, outside, length, sumSquaresT, rootingFunction, forcePositiveRate);
+            double x = rooting.optimize();
+            scores[i] = rooting.evaluate(x);
+            positions[i] = x * length;
+            gradients[i] = rooting.getGradient(x);
+
+            currentRootBranch.incrementAndGet();
+        });
+
+        int best = 0;
+        double minF = scores[0];
+        double minDiff = Math.abs(gradients[0] - targetRate);
+        for (int i = 1; i < candidateCount; i++) {
+            if (useTargetRate) {
+                if (Math.abs(gradients[i] - targetRate) < minDiff) {
+                    minDiff = Math.abs(gradients[i] - targetRate);
+                    best = i;
+                }
+            } else {
+                if (scores[i] < minF) {
+                    minF = scores[i];
+                    best = i;
+                }
+            }
+        }
+
+        FlexibleTree bestTree = new FlexibleTree(source);
+        if (best == 0) {
+            double length = source.getBranchLength(rootChild1) + source.getBranchLength(rootChild2);
+            bestTree.setBranchLength(bestTree.getChild(bestTree.getRoot(), 0), positions[0]);
+            bestTree.setBranchLength(bestTree.getChild(bestTree.getRoot(), 1), length - positions[0]);
+        } else {
+            NodeRef node = bestTree.getNode(candidates[best]);
+            double length = bestTree.getBranchLength(node);
+            bestTree.changeRoot(node, positions[best], length - positions[best]);
         }
 
         return bestTree;
     }
 
+    /**
+     * Sums over a set of tips of the centred dates, t, and the distances, y, of the tips from a point
+     * in the tree. These are sufficient to compute the root-to-tip regression.
+     */
+    private static class TipMoments {
+        double count;
+        double sumT;
+        double sumY;
+        double sumYY;
+        double sumTY;
+
+        void addTip(double t) {
+            count += 1;
+            sumT += t;
+        }
+
+        /**
+         * Adds the moments of another set of tips after extending their distances by the given length.
+         */
+        void add(TipMoments other, double length) {
+            count += other.count;
+            sumT += other.sumT;
+            sumYY += other.sumYY + 2.0 * length * other.sumY + other.count * length * length;
+            sumY += other.sumY + other.count * length;
+            sumTY += other.sumTY + length * other.sumT;
+        }
+    }
+
+    /**
+     * The rooting function for a root placed at a proportion, x, along the branch between the tips
+     * inside and outside of a clade.
+     */
+    private class BranchRooting implements UnivariateFunction {
+
+        BranchRooting(TipMoments inside, TipMoments outside, double length, double sumSquaresT,
+                      RootingFunction rootingFunction, boolean forcePositiveRate) {
+            this.inside = inside;
+            this.outside = outside;
+            this.length = length;
+            this.sumSquaresT = sumSquaresT;
+            this.rootingFunction = rootingFunction;
+            this.forcePositiveRate = forcePositiveRate;
+        }
+
+        double optimize() {
+            if (rootingFunction == RootingFunction.RESIDUAL_MEAN_SQUARED && !contemporaneous) {
+                // the residual sum of squares is quadratic in the root position
+                double f0 = evaluate(0.0);
+                double f1 = evaluate(0.5);
+                double f2 = evaluate(1.0);
+                double a = 2.0 * (f2 - 2.0 * f1 + f0);
+                double b = f2 - f0 - a;
+                if (a > 0.0) {
+                    return Math.min(Math.max(-b / (2.0 * a), 0.0), 1.0);
+                }
+                return (f0 <= f2 ? 0.0 : 1.0);
+            }
+
+            UnivariateMinimum minimum = new UnivariateMinimum();
+            return minimum.findMinimum(this);
+        }
+
+        double getGradient(double x) {
+            return getMoments(x).sumTY / sumSquaresT;
+        }
+
+        private TipMoments getMoments(double x) {
+            TipMoments moments = new TipMoments();
+            moments.add(inside, x * length);
+            moments.add(outside, (1.0 - x) * length);
+            return moments;
+        }
+
+        public double evaluate(double x) {
+            TipMoments moments = getMoments(x);
+
+            double sumSquaresY = moments.sumYY - (moments.sumY * moments.sumY / moments.count);
+            double sumProducts = moments.sumTY;
+
+            if (contemporaneous) {
+                return sumSquaresY / (moments.count - 1);
+            }
+
+            double score;
+            switch (rootingFunction) {
+                case CORRELATION:
+                    score = -sumProducts / Math.sqrt(sumSquaresT * sumSquaresY);
+                    break;
+                case R_SQUARED:
+                    score = -(sumProducts * sumProducts) / (sumSquaresT * sumSquaresY);
+                    break;
+                case HEURISTIC_RESIDUAL_MEAN_SQUARED:
+                case RESIDUAL_MEAN_SQUARED:
+                    score = (sumSquaresY - (sumProducts * sumProducts / sumSquaresT)) / (moments.count - 2);
+                    break;
+                default:
+                    throw new RuntimeException("Unknown enum value");
+            }
+
+            if (forcePositiveRate && rootingFunction != RootingFunction.RESIDUAL_MEAN_SQUARED) {
+                score = (sumProducts < 0.0 ? -score : score);
+            }
+
+            return score;
+        }
+
+        public double getLowerBound() {
+            return 0.0;
+        }
+
+        public double getUpperBound() {
+            return 1.0;
+        }
+
+        private final TipMoments inside;
+        private final TipMoments outside;
+        private final double length;
+        private final double sumSquaresT;
+        private final RootingFunction rootingFunction;
+        private final boolean forcePositiveRate;
+    }
+
     private double findLocalRoot(final FlexibleTree tree,
                                  final double[] dates,
                                  final RootingFunction rootingFunction,
@@ -508,7 +749,7 @@ public class TemporalRooting {
     }
 
     public int getCurrentRootBranch() {
-        return currentRootBranch;
+        return currentRootBranch.get();
     }
 
     public int getTotalRootBranches() {
@@ -0,0 +1,82 @@
+/*
+ * BinaryTreeLogConverter.java
+ *
+ * Copyright (c) 2002-2023 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.app.tools;
+
+import dr.evolution.io.BinaryTreeImporter;
+import dr.evolution.io.Importer;
+import dr.evolution.tree.Tree;
+
+import java.io.*;
+import java.util.Map;
+
+/**
+ * Converts a binary tree log (written by a logTree element with binary="true") into a NEXUS tree file.
+ */
+public class BinaryTreeLogConverter {
+
+    public static int convert(String inputFileName, String outputFileName) throws IOException, Importer.ImportException {
+        BinaryTreeImporter importer = new BinaryTreeImporter(new FileInputStream(inputFileName));
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(outputFileName)));
+
+        NexusExporter exporter = new NexusExporter(out);
+        Map<String, Integer> idMap = null;
+        int count = 0;
+        while (importer.hasTree()) {
+            Tree tree = importer.importNextTree();
+            if (idMap == null) {
+                // the taxon numbers of the trees follow the order of the taxon table
+                idMap = exporter.writeNexusHeader(tree);
+                out.println("\t\t;");
+            }
+            exporter.writeNexusTree(tree, tree.getId(), true, idMap);
+            count++;
+        }
+        if (idMap != null) {
+            out.println("End;");
+        }
+        out.close();
+
+        return count;
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: binarytreelogconverter <input-file-name> <output-file-name>");
+            System.exit(1);
+        }
+
+        try {
+            int count = convert(args[0], args[1]);
+            System.out.println("Converted " + count + " trees to NEXUS file: " + args[1]);
+        } catch (IOException ioe) {
+            System.err.println("Error reading binary tree log: " + ioe.getMessage());
+            System.exit(1);
+        } catch (Importer.ImportException ie) {
+            System.err.println("Error parsing binary tree log: " + ie.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -27,6 +27,7 @@ package dr.app.tools;
 
 import dr.app.beast.BeastVersion;
 import dr.app.util.Arguments;
+import dr.evolution.io.BinaryTreeImporter;
 import dr.evolution.io.Importer;
 import dr.evolution.io.NexusImporter;
 import dr.evolution.io.TreeImporter;
@@ -45,6 +46,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -60,6 +63,17 @@ public class LogCombiner {
     public LogCombiner(long[] burnins, long resample, String[] inputFileNames, String outputFileName, boolean treeFiles,
                        boolean convertToDecimal, boolean stripAnnotations,
                        boolean renumberOutput, boolean useScale, double scale) throws IOException {
+        this(burnins, resample, inputFileNames, outputFileName, treeFiles, convertToDecimal, stripAnnotations,
+                renumberOutput, useScale, scale, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Input files are read on up to threadCount threads ahead of the one being written out. Input and
+     * output files can be compressed with gzip (output files are compressed if their name ends with .gz).
+     */
+    public LogCombiner(long[] burnins, long resample, String[] inputFileNames, String outputFileName, boolean treeFiles,
+                       boolean convertToDecimal, boolean stripAnnotations,
+                       boolean renumberOutput, boolean useScale, double scale, int threadCount) throws IOException {
 
         System.out.println("Creating combined " + (treeFiles ? "tree" : "log") + " file: '" + outputFileName + "'");
 
@@ -81,7 +95,40 @@ public class LogCombiner {
 
         System.out.println();
 
-        PrintWriter writer = new PrintWriter(new FileOutputStream(outputFileName));
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(StreamingLogReader.openOutputStream(outputFileName)));
+
+        // start reading the files that are copied line by line - the trees that are processed are read as they are needed
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadCount), runnable -> {
+            Thread thread = new Thread(runnable, "LogCombiner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        StreamingLogReader[] readers = new StreamingLogReader[inputFileNames.length];
+        for (int i = 0; i < inputFileNames.length; i++) {
+            File inputFile = new File(inputFileNames[i]);
+            if (inputFile.isFile() && (!treeFiles || !isProcessingTrees(inputFile, convertToDecimal, stripAnnotations))) {
+                readers[i] = new StreamingLogReader(inputFile, treeFiles, burnins.length > i ? burnins[i] : burnins[0]);
+                readers[i].start(executor);
+            }
+        }
+
+        try {
+            combine(burnins, resample, inputFileNames, readers, writer, treeFiles, convertToDecimal, stripAnnotations,
+                    renumberOutput, useScale, scale);
+        } finally {
+            executor.shutdownNow();
+            writer.close();
+        }
+    }
+
+    private static boolean isProcessingTrees(File inputFile, boolean convertToDecimal, boolean stripAnnotations) throws IOException {
+        // binary tree logs are always read as trees and written as NEXUS
+        return stripAnnotations || convertToDecimal || BinaryTreeImporter.isBinaryTreeFile(inputFile);
+    }
+
+    private void combine(long[] burnins, long resample, String[] inputFileNames, StreamingLogReader[] readers,
+                         PrintWriter writer, boolean treeFiles, boolean convertToDecimal, boolean stripAnnotations,
+                         boolean renumberOutput, boolean useScale, double scale) throws IOException {
 
         boolean firstFile = true;
         boolean firstTree = true;
@@ -124,12 +171,15 @@ public class LogCombiner {
                 System.out.println();
             }
 
-            boolean processTrees = stripAnnotations || convertToDecimal;
-
             if (treeFiles) {
 
-                if (processTrees) { // then we need to read each tree and write it.
-                    TreeImporter importer = new NexusImporter(new FileReader(inputFile), stripAnnotations);
+                if (isProcessingTrees(inputFile, convertToDecimal, stripAnnotations)) { // then we need to read each tree and write it.
+                    TreeImporter importer;
+                    if (StreamingLogReader.isGzipFile(inputFile)) {
+                        importer = new NexusImporter(new InputStreamReader(StreamingLogReader.openInputStream(inputFile)), stripAnnotations);
+                    } else {
+                        importer = BinaryTreeImporter.createTreeImporter(inputFileNames[i], stripAnnotations);
+                    }
                     try {
                         while (importer.hasTree()) {
                             Tree tree = importer.importNextTree();
@@ -197,7 +247,7 @@ public class LogCombiner {
                         return;
                     }
                 } else {
-                    BufferedReader reader = new BufferedReader(new FileReader(inputFile));
+                    StreamingLogReader reader = readers[i];
 
                     String line = reader.readLine();
 
@@ -281,7 +331,7 @@ public class LogCombiner {
 
 
             } else {
-                BufferedReader reader = new BufferedReader(new FileReader(inputFile));
+                StreamingLogReader reader = readers[i];
                 //int lineCount = 1;
                 String line = reader.readLine();
 
@@ -331,20 +381,8 @@ public class LogCombiner {
 
                         // if the columnCount is not the same then perhaps the line is corrupt so skip it.
                         if (state >= burnin && parts.length == columnCount) {
-                            for (int j = 1; j < parts.length; j++) {
-                                try {
-                                    if (!parts[j].startsWith("{")) {
-                                        // complex log values start with a curly bracket - otherwise attempt to parse
-                                        // it as a number. If it fails, skip the line as a possible corruption.
-
-                                        // attempt to convert the column value...
-                                        double value = Double.valueOf(parts[j]);
-                                    }
-                                } catch (NumberFormatException nfe) {
-                                    skip = true;
-                                    break;
-                                }
-                            }
+                            // the reader thread has usually checked the values already
+                            skip = !reader.isNumberChecked() && !StreamingLogReader.hasNumericValues(parts);
 
                             if (!skip) {
 
@@ -385,7 +423,18 @@ public class LogCombiner {
                                     stateLineEntry = stateCount / (resample / stateStep);
                                 }
 
-                                if (logThis) {
+                                if (logThis && !useScale && !convertToDecimal) {
+                                    // the values are copied as they are (without any empty trailing columns)
+                                    int end = line.length();
+                                    while (end > 0 && line.charAt(end - 1) == '\t') {
+                                        end--;
+                                    }
+                                    writer.print(stateLineEntry);
+                                    if (parts.length > 1) {
+                                        writer.print(line.substring(line.indexOf('\t'), end));
+                                    }
+                                    writer.println();
+                                } else if (logThis) {
                                     writer.print(stateLineEntry);
                                     for (int j = 1; j < parts.length; j++) {
                                         String value = parts[j];
@@ -418,7 +467,6 @@ public class LogCombiner {
         if (treeFiles) {
             stopLog(writer);
         }
-        writer.close();
     }
 
     private void rescaleTree(Tree tree, double scale) {
@@ -640,6 +688,7 @@ public class LogCombiner {
         System.out.println();
         System.out.println("  Example: logcombiner test1.log test2.log combined.log");
         System.out.println("  Example: logcombiner -burnin 10000 test1.log test2.log combined.log");
+        System.out.println("  Example: logcombiner -trees -burnin 10000 test1.trees.gz test2.trees.gz combined.trees.gz");
         System.out.println();
 
     }
@@ -741,6 +790,7 @@ public class LogCombiner {
                             new Arguments.RealOption("scale", "a scaling factor that will multiply any time units by this value"),
                             new Arguments.Option("strip", "strip out all annotations (trees only)"),
                             new Arguments.Option("renumber", "this option renumbers output states consecutively"),
+                            new Arguments.IntegerOption("threads", "the number of files to read ahead at the same time [default = number of processors]"),
                             new Arguments.Option("help", "option to print this message")
                     });
 
@@ -782,6 +832,11 @@ public class LogCombiner {
                 useScale = true;
             }
 
+            int threadCount = Runtime.getRuntime().availableProcessors();
+            if (arguments.hasOption("threads")) {
+                threadCount = arguments.getIntegerOption("threads");
+            }
+
             String[] args2 = arguments.getLeftoverArguments();
 
             if (args2.length < 2) {
@@ -796,7 +851,7 @@ public class LogCombiner {
             String outputFileName = args2[args2.length - 1];
 
             new LogCombiner(new long[]{burnin}, resample, inputFileNames, outputFileName, treeFiles, convertToDecimal,
-                    stripAnnotations, renumberOutput, useScale, scale);
+                    stripAnnotations, renumberOutput, useScale, scale, threadCount);
 
             System.out.println("Finished.");
         }
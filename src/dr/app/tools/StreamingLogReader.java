@@ -0,0 +1,359 @@
+/*
+ * StreamingLogReader.java
+ *
+ * Copyright (c) 2002-2023 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.app.tools;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reads the lines of a log or tree file on a separate thread so that LogCombiner can read the next
+ * files while it writes out the current one. The header lines and the samples up to the first one after
+ * state 0 (which gives the sampling frequency) are returned as they are. The samples before the burnin
+ * are then dropped: in uncompressed files they are skipped over by a binary search on the byte offset
+ * rather than being read. Files compressed with gzip are decompressed as they are read.
+ */
+public class StreamingLogReader {
+
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int QUEUE_SIZE = 4;
+    private static final int SEARCH_WINDOW = 1 << 16;
+    private static final long NO_STATE = Long.MIN_VALUE;
+    private static final List<String> END = Collections.emptyList();
+
+    /**
+     * @param file     the log or tree file
+     * @param treeFile true if the file is a NEXUS tree file (with trees named STATE_x)
+     * @param burnin   the first state to return
+     */
+    public StreamingLogReader(File file, boolean treeFile, long burnin) {
+        this.file = file;
+        this.treeFile = treeFile;
+        this.burnin = burnin;
+    }
+
+    /**
+     * @return true if the file starts with the gzip header
+     */
+    public static boolean isGzipFile(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Opens a file that may be compressed with gzip.
+     */
+    public static InputStream openInputStream(File file) throws IOException {
+        if (isGzipFile(file)) {
+            return new GZIPInputStream(new FileInputStream(file), 1 << 16);
+        }
+        return new FileInputStream(file);
+    }
+
+    /**
+     * Creates a file which is compressed with gzip if its name ends with .gz
+     */
+    public static OutputStream openOutputStream(String fileName) throws IOException {
+        if (fileName.toLowerCase().endsWith(".gz")) {
+            return new GZIPOutputStream(new FileOutputStream(fileName), 1 << 16);
+        }
+        return new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16);
+    }
+
+    /**
+     * Starts reading the file on one of the threads of the executor. Readers are run in the order they
+     * are started so a single thread reads the files one after the other.
+     */
+    public void start(ExecutorService executor) {
+        executor.execute(this::read);
+    }
+
+    /**
+     * @return the next line or null at the end of the file
+     */
+    public String readLine() throws IOException {
+        while (lines == null || !lines.hasNext()) {
+            if (finished) {
+                return null;
+            }
+            List<String> chunk;
+            try {
+                chunk = queue.take();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading " + file);
+            }
+            if (chunk == END) {
+                finished = true;
+                if (error != null) {
+                    throw error;
+                }
+                return null;
+            }
+            lines = chunk.iterator();
+        }
+        linesRead++;
+        return lines.next();
+    }
+
+    private void read() {
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(openInputStream(file)), 1 << 16);
+            try {
+                boolean inSamples = false;
+                boolean stepFound = false;
+                String line = reader.readLine();
+                while (line != null) {
+                    if (!inSamples) {
+                        if (treeFile) {
+                            inSamples = line.trim().startsWith("tree ");
+                        } else {
+                            // the first line that isn't a comment holds the column titles
+                            inSamples = !line.startsWith("[") && !line.startsWith("#");
+                            add(line);
+                            line = reader.readLine();
+                            continue;
+                        }
+                    }
+
+                    if (!inSamples) {
+                        add(line);
+                    } else {
+                        long state = getState(line);
+                        if (!stepFound) {
+                            add(line);
+                            if (state > 0) {
+                                stepFound = true;
+                                checkedFrom = lineCount;
+                                if (burnin > state && !isGzipFile(file)) {
+                                    // skip to the burnin without reading the samples before it
+                                    reader.close();
+                                    reader = openAt(findBurninOffset());
+                                }
+                            }
+                        } else if (state != NO_STATE && state >= burnin) {
+                            if (treeFile || hasNumericValues(line.split("\t"))) {
+                                add(line);
+                            }
+                        }
+                    }
+                    line = reader.readLine();
+                }
+            } finally {
+                reader.close();
+            }
+            flush();
+        } catch (IOException ioe) {
+            error = ioe;
+        } catch (RuntimeException re) {
+            error = new IOException(re);
+        }
+        try {
+            queue.put(END);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true if the values of the last line returned have been checked with hasNumericValues
+     */
+    public boolean isNumberChecked() {
+        return !treeFile && linesRead > checkedFrom;
+    }
+
+    /**
+     * Checks the values of a line of a log file. Values that start with a curly bracket are complex
+     * values but otherwise they must be numbers or the line is probably corrupt.
+     */
+    public static boolean hasNumericValues(String[] parts) {
+        for (int j = 1; j < parts.length; j++) {
+            if (!parts[j].startsWith("{")) {
+                try {
+                    Double.parseDouble(parts[j]);
+                } catch (NumberFormatException nfe) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void add(String line) throws InterruptedIOException {
+        lineCount++;
+        chunk.add(line);
+        chunkSize += line.length() + 1;
+        if (chunkSize >= CHUNK_SIZE) {
+            flush();
+        }
+    }
+
+    private void flush() throws InterruptedIOException {
+        if (!chunk.isEmpty()) {
+            try {
+                queue.put(chunk);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading " + file);
+            }
+            chunk = new ArrayList<String>();
+            chunkSize = 0;
+        }
+    }
+
+    /**
+     * @return the state of a sample line or NO_STATE if it isn't one
+     */
+    private long getState(String line) {
+        String state;
+        if (treeFile) {
+            // the same as the pattern "tree STATE_(\\d+)(\\s.*)"
+            if (!line.startsWith("tree STATE_")) {
+                return NO_STATE;
+            }
+            int end = 11;
+            while (end < line.length() && Character.isDigit(line.charAt(end))) {
+                end++;
+            }
+            if (end == 11 || end == line.length() || !Character.isWhitespace(line.charAt(end))) {
+                return NO_STATE;
+            }
+            state = line.substring(11, end);
+        } else {
+            int tab = line.indexOf('\t');
+            state = tab < 0 ? line : line.substring(0, tab);
+        }
+        try {
+            return Long.parseLong(state);
+        } catch (NumberFormatException nfe) {
+            return NO_STATE;
+        }
+    }
+
+    private BufferedReader openAt(long offset) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        in.getChannel().position(offset);
+        return new BufferedReader(new InputStreamReader(in), 1 << 16);
+    }
+
+    /**
+     * Finds the start of a line that comes before all the samples with states at or after the burnin.
+     * The states increase through the file so the samples before the burnin are found by bisection.
+     */
+    private long findBurninOffset() throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            long lower = 0;
+            long upper = in.length();
+            while (upper - lower > SEARCH_WINDOW) {
+                long middle = (lower + upper) / 2;
+                if (getStateAfter(in, middle) < burnin) {
+                    lower = middle;
+                } else {
+                    upper = middle;
+                }
+            }
+            return getLineStart(in, lower);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the offset of the first line that starts at or after offset
+     */
+    private long getLineStart(RandomAccessFile in, long offset) throws IOException {
+        if (offset == 0) {
+            return 0;
+        }
+        byte[] buffer = new byte[SEARCH_WINDOW];
+        long position = offset - 1;
+        while (true) {
+            in.seek(position);
+            int n = in.read(buffer);
+            if (n <= 0) {
+                return in.length();
+            }
+            for (int i = 0; i < n; i++) {
+                if (buffer[i] == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * @return the state of the first sample line that starts at or after offset (or Long.MAX_VALUE if there isn't one)
+     */
+    private long getStateAfter(RandomAccessFile in, long offset) throws IOException {
+        byte[] prefix = new byte[64];
+        long lineStart = getLineStart(in, offset);
+        while (lineStart < in.length()) {
+            in.seek(lineStart);
+            int n = in.read(prefix);
+            int end = 0;
+            while (end < n && prefix[end] != '\n' && prefix[end] != '\r') {
+                end++;
+            }
+            long state = getState(new String(prefix, 0, end, StandardCharsets.ISO_8859_1));
+            if (state != NO_STATE) {
+                return state;
+            }
+            lineStart = getLineStart(in, lineStart + 1);
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private final File file;
+    private final boolean treeFile;
+    private final long burnin;
+
+    private final BlockingQueue<List<String>> queue = new ArrayBlockingQueue<List<String>>(QUEUE_SIZE);
+    private List<String> chunk = new ArrayList<String>();
+    private int chunkSize = 0;
+    private volatile IOException error = null;
+
+    // the lines from checkedFrom onwards have been checked (set before they are queued)
+    private long lineCount = 0;
+    private volatile long checkedFrom = Long.MAX_VALUE;
+
+    private Iterator<String> lines = null;
+    private long linesRead = 0;
+    private boolean finished = false;
+}
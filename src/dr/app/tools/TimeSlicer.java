@@ -28,12 +28,13 @@ package dr.app.tools;
 import dr.app.beast.BeastVersion;
 import dr.app.util.Arguments;
 import dr.evolution.io.Importer;
+import dr.evolution.io.MappedNexusImporter;
 import dr.evolution.io.NewickImporter;
-import dr.evolution.io.NexusImporter;
 import dr.evolution.io.TreeImporter;
 import dr.evolution.tree.NodeRef;
 import dr.evolution.tree.Tree;
 import dr.evolution.tree.TreeUtils;
+import dr.geo.BinnedKernelDensityEstimator2D;
 import dr.geo.KMLCoordinates;
 import dr.geo.KernelDensityEstimator2D;
 import dr.geo.Polygon2D;
@@ -52,6 +53,10 @@ import java.awt.geom.Point2D;
 import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author Marc A. Suchard
@@ -132,6 +137,9 @@ public class TimeSlicer {
     public static final boolean GREATCIRCLEDISTANCE = true;
     public static final String SUBSTITUTION = "N";
     public static final String DESCENDENTS = "descendents";
+    public static final String THREADS = "threads";
+
+    private static final int TREES_PER_THREAD = 4;
 
     public static final String[] falseTrue = {"false", "true"};
 
@@ -142,7 +150,8 @@ public class TimeSlicer {
                       boolean trueNoise, double mrsd, ContourMode contourMode, SliceMode sliceMode,
                       final boolean summarizeRoot, final boolean summarizeTips, Normalization normalize, boolean getSDR, boolean getSNR,
                       String progress, boolean branchNormalization, BranchSet branchset, Set taxaSet, int grid,
-                      double latMin, double latMax, double longMin, double longMax, Set descendentTaxaSet, String rateString) {
+                      double latMin, double latMax, double longMin, double longMax, Set descendentTaxaSet, String rateString,
+                      int threadCount, boolean gridDensities) {
 
         this.traits = traits;
         traitCount = traits.length;
@@ -171,6 +180,7 @@ public class TimeSlicer {
         rateAttributeString = rateString;
 
         gridSize = grid;
+        this.threadCount = Math.max(1, threadCount);
 
         if (progress != null) {
             if (progress.equalsIgnoreCase("true")) {
@@ -192,14 +202,17 @@ public class TimeSlicer {
             }
         }
 
-        values = new ArrayList<List<List<Trait>>>(sliceCount);
-        for (int i = 0; i < sliceCount; i++) {
-            List<List<Trait>> thisSlice = new ArrayList<List<Trait>>(traitCount);
-            values.add(thisSlice);
-            for (int j = 0; j < traitCount; j++) {
-                List<Trait> thisTraitSlice = new ArrayList<Trait>();
-                thisSlice.add(thisTraitSlice);
+        if (gridDensities) {
+            densities = new ArrayList<List<SliceDensity>>(sliceCount);
+            for (int i = 0; i < sliceCount; i++) {
+                List<SliceDensity> thisSlice = new ArrayList<SliceDensity>(traitCount);
+                densities.add(thisSlice);
+                for (int j = 0; j < traitCount; j++) {
+                    thisSlice.add(new SliceDensity());
+                }
             }
+        } else {
+            values = createSliceValues();
         }
         if (summarizeRoot) {
             rootValues = new ArrayList<List<Trait>>(traitCount);
@@ -895,7 +908,14 @@ public class TimeSlicer {
             }
         }
 
-        List<List<Trait>> thisSlice = values.get(slice);
+        if (densities != null) {
+            List<SliceDensity> thisSlice = densities.get(slice);
+            for (int traitIndex = 0; traitIndex < thisSlice.size(); traitIndex++) {
+                summarizeSliceDensity(contourElement, slice, thisSlice.get(traitIndex), traitIndex, sliceValue, hpdValue);
+            }
+        }
+
+        List<List<Trait>> thisSlice = densities != null ? Collections.<List<Trait>>emptyList() : values.get(slice);
         int traitCount = thisSlice.size();
 
         for (int traitIndex = 0; traitIndex < traitCount; traitIndex++) {
@@ -932,6 +952,44 @@ public class TimeSlicer {
         }
     }
 
+    /**
+     * The KML contours of a slice from the density of the values rather than the values themselves
+     * (the same as summarizeSliceTrait without points).
+     */
+    private void summarizeSliceDensity(Element contourElement, int slice, SliceDensity thisTrait, int traitIndex, double sliceValue,
+                                       double hpdValue) {
+
+        if (thisTrait.count == 0) {
+            return;
+        }
+
+        if (sliceProgressReport) {
+            progressStream.print("slice " + sliceValue + "\t");
+            progressStream.print("hpd " + (hpdValue * 100) + "\t");
+            if (mostRecentSamplingDate > 0) {
+                progressStream.print("time=" + (mostRecentSamplingDate - sliceValue) + "\t");
+            }
+            progressStream.print("trait=" + traits[traitIndex] + "\t");
+        }
+        if (thisTrait.isNumber) {
+            if (useStyles) {
+                Element styleElement = new Element(STYLE);
+                constructPolygonStyleElement(styleElement, sliceValue);
+                documentElement.addContent(styleElement);
+            }
+
+            if (thisTrait.isBivariate && contourElement != null) {
+                double date = mostRecentSamplingDate - sliceValue;
+                String name = "" + date + "_hpd" + hpdValue;
+                ContourMaker contourMaker = thisTrait.density.getContourMaker(contourMode, BANDWIDTHLIMIT);
+                generateContours(name, contourElement, null, contourMaker, null, slice, date, sliceValue, hpdValue);
+            }
+        }
+        if (sliceProgressReport) {
+            progressStream.print("\r");
+        }
+    }
+
     private void summarizeSliceTrait(Element contourElement, Element pointsElement, int slice, List<Trait> thisTrait, int traitIndex, double sliceValue,
                                      OutputFormat outputFormat,
                                      double hpdValue) {
@@ -1117,10 +1175,6 @@ public class TimeSlicer {
     }
 
     private void generateContours(String name, Element sliceElement, Element traitElement, double[][] y, int slice, double date, double height, double hpdValue) {
-        //to test how much points are within the polygons
-        double numberOfPointsInPolygons = 0;
-        double totalArea = 0;
-
         ContourMaker contourMaker;
         if (contourMode == ContourMode.JAVA)
 //            contourMaker = new KernelDensityEstimator2D(y[0], y[1], gridSize);
@@ -1133,6 +1187,14 @@ public class TimeSlicer {
         else
             throw new RuntimeException("Unimplemented ContourModel!");
 
+        generateContours(name, sliceElement, traitElement, contourMaker, y, slice, date, height, hpdValue);
+    }
+
+    private void generateContours(String name, Element sliceElement, Element traitElement, ContourMaker contourMaker, double[][] y, int slice, double date, double height, double hpdValue) {
+        //to test how much points are within the polygons
+        double numberOfPointsInPolygons = 0;
+        double totalArea = 0;
+
         ContourPath[] paths = contourMaker.getContourPaths(hpdValue);
         int pathCounter = 1;
         for (ContourPath path : paths) {
@@ -1506,34 +1568,227 @@ public class TimeSlicer {
         BufferedReader reader1 = new BufferedReader(new FileReader(treeFileName));
 
         String line1 = reader1.readLine();
+        reader1.close();
         TreeImporter importer1;
         if (line1.toUpperCase().startsWith("#NEXUS")) {
-            importer1 = new NexusImporter(new FileReader(treeFileName));
+            // the trees are parsed in parallel keeping only the node attributes that are summarized
+            Set<String> attributeNames = new HashSet<String>(Arrays.asList(traits));
+            attributeNames.add(rateAttributeString);
+            attributeNames.add(SUBSTITUTION);
+            importer1 = new MappedNexusImporter(new File(treeFileName), threadCount, attributeNames);
         } else {
             importer1 = new NewickImporter(new FileReader(treeFileName));
         }
         totalTrees = 0;
 
-        while (importer1.hasTree()) {
-            Tree treeTime = importer1.importNextTree();
-            if (totalTrees % skipEvery == 0) {
-                treesRead++;
-                if (totalTrees >= burnin) {
-                    analyzeTree(treeTime, traits, slices, impute, trueNoise, normalize, divideByBranchLength, branchset, taxaSet);
+        // the trees are analyzed on a pool of threads and the values they give are added in the order of the trees
+        ExecutorService executor = null;
+        if (threadCount > 1) {
+            executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+                Thread thread = new Thread(runnable, "TimeSlicer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        Deque<Future<AnalyzedTree>> pending = new ArrayDeque<Future<AnalyzedTree>>();
+
+        try {
+            while (importer1.hasTree()) {
+                final Tree treeTime = importer1.importNextTree();
+                if (totalTrees % skipEvery == 0) {
+                    treesRead++;
+                    if (totalTrees >= burnin) {
+                        if (executor == null) {
+                            addAnalyzedTree(analyzeTree(treeTime, traits, slices, impute, trueNoise, normalize, divideByBranchLength, branchset, taxaSet));
+                        } else {
+                            pending.add(executor.submit(() ->
+                                    analyzeTree(treeTime, traits, slices, impute, trueNoise, normalize, divideByBranchLength, branchset, taxaSet)));
+                            if (pending.size() >= threadCount * TREES_PER_THREAD) {
+                                addAnalyzedTree(getAnalyzedTree(pending.removeFirst()));
+                            }
+                        }
+                    }
+                }
+                if (totalTrees > 0 && totalTrees % stepSize == 0) {
+                    progressStream.print("*");
+                    totalStars++;
+                    if (totalStars % 61 == 0)
+                        progressStream.print("\n");
+                    progressStream.flush();
                 }
+                totalTrees++;
+            }
+            while (!pending.isEmpty()) {
+                addAnalyzedTree(getAnalyzedTree(pending.removeFirst()));
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
             }
-            if (totalTrees > 0 && totalTrees % stepSize == 0) {
-                progressStream.print("*");
-                totalStars++;
-                if (totalStars % 61 == 0)
-                    progressStream.print("\n");
-                progressStream.flush();
+            if (importer1 instanceof MappedNexusImporter) {
+                ((MappedNexusImporter) importer1).close();
             }
-            totalTrees++;
         }
         progressStream.print("\n");
     }
 
+    private static AnalyzedTree getAnalyzedTree(Future<AnalyzedTree> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while analyzing trees");
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ee.getCause();
+            }
+            throw new RuntimeException(ee.getCause());
+        }
+    }
+
+    private List<List<List<Trait>>> createSliceValues() {
+        List<List<List<Trait>>> sliceValues = new ArrayList<List<List<Trait>>>(sliceCount);
+        for (int i = 0; i < sliceCount; i++) {
+            List<List<Trait>> thisSlice = new ArrayList<List<Trait>>(traitCount);
+            sliceValues.add(thisSlice);
+            for (int j = 0; j < traitCount; j++) {
+                List<Trait> thisTraitSlice = new ArrayList<Trait>();
+                thisSlice.add(thisTraitSlice);
+            }
+        }
+        return sliceValues;
+    }
+
+    /**
+     * Adds the values from one tree to the slice, root and tip summaries. This is called in the order the
+     * trees are read.
+     */
+    private void addAnalyzedTree(AnalyzedTree tree) {
+        for (int i = 0; i < sliceCount; i++) {
+            for (int j = 0; j < traitCount; j++) {
+                List<Trait> thisTraitSlice = tree.sliceValues.get(i).get(j);
+                if (densities != null) {
+                    SliceDensity density = densities.get(i).get(j);
+                    for (Trait trait : thisTraitSlice) {
+                        density.add(trait);
+                    }
+                } else {
+                    values.get(i).get(j).addAll(thisTraitSlice);
+                }
+            }
+        }
+
+        if (rootValues != null) {
+            for (int j = 0; j < traitCount; j++) {
+                rootValues.get(j).addAll(tree.rootTraits.get(j));
+            }
+        }
+
+        if (tipValues != null) {
+            if (tipValues.size() == 0) {
+                // this is the first tree so initialize the tip value lists
+                for (int i = 0; i < tree.tipNames.length; i++) {
+                    List<List<Trait>> thisTip = new ArrayList<List<Trait>>(traitCount);
+                    tipValues.add(thisTip);
+                    for (int j = 0; j < traitCount; j++) {
+                        List<Trait> thisTipTrait = new ArrayList<Trait>();
+                        thisTip.add(thisTipTrait);
+                    }
+
+                    tipNames.add(tree.tipNames[i]);
+                }
+            }
+            for (int i = 0; i < tree.tipTraits.size(); i++) {
+                for (int j = 0; j < traitCount; j++) {
+                    tipValues.get(i).get(j).addAll(tree.tipTraits.get(i).get(j));
+                }
+            }
+        }
+
+        treeLengths.add(tree.treeLength);
+
+        if (sdr || snr) {
+            sliceTreeDistanceArrays.add(tree.treeSliceDistance);
+            sliceTreeTimeArrays.add(tree.treeSliceTime);
+            if (sdr) {
+                sliceTreeMaxPathDistanceArrays.add(tree.treeSliceMaxDistance);
+                sliceTreeMaxDistanceFromRootArrays.add(tree.maxDistanceFromRoot);
+                sliceTreeTimeFromRootArrays.add(tree.treeTimeFromRoot);
+                sliceTreeDiffusionCoefficientArrays.add(tree.treeSliceDiffusionCoefficientA);
+                sliceTreeDiffusionCoefficientVarianceArrays.add(tree.treeSliceDiffusionCoefficientV);
+            }
+        }
+
+        treesAnalyzed++;
+    }
+
+    /**
+     * The values from a single tree. These are collected on one of the worker threads.
+     */
+    private class AnalyzedTree {
+
+        AnalyzedTree(Tree tree) {
+            sliceValues = createSliceValues();
+            if (rootValues != null) {
+                rootTraits = new ArrayList<List<Trait>>(traitCount);
+                for (int j = 0; j < traitCount; j++) {
+                    rootTraits.add(new ArrayList<Trait>());
+                }
+            }
+            if (tipValues != null) {
+                int tipCount = tree.getExternalNodeCount();
+                tipNames = new String[tipCount];
+                tipTraits = new ArrayList<List<List<Trait>>>(tipCount);
+                for (int i = 0; i < tipCount; i++) {
+                    tipNames[i] = tree.getNodeTaxon(tree.getExternalNode(i)).getId();
+                    List<List<Trait>> thisTip = new ArrayList<List<Trait>>(traitCount);
+                    tipTraits.add(thisTip);
+                    for (int j = 0; j < traitCount; j++) {
+                        thisTip.add(new ArrayList<Trait>());
+                    }
+                }
+            }
+        }
+
+        final List<List<List<Trait>>> sliceValues;
+        List<List<Trait>> rootTraits;
+        List<List<List<Trait>>> tipTraits;
+        String[] tipNames;
+        double treeLength;
+
+        double[] treeSliceDistance;
+        double[] treeSliceTime;
+        double[] treeSliceMaxDistance;
+        double[] maxDistanceFromRoot;
+        double[] treeTimeFromRoot;
+        double[] treeSliceDiffusionCoefficientA;
+        double[] treeSliceDiffusionCoefficientV;
+    }
+
+    /**
+     * The density of the values of a trait in a slice. This replaces the list of values when only the
+     * KML contours are summarized so the memory used doesn't grow with the number of trees.
+     */
+    class SliceDensity {
+
+        void add(Trait trait) {
+            if (count == 0) {
+                isNumber = trait.isNumber();
+                isBivariate = trait.isMultivariate() && trait.getDim() == 2;
+            }
+            if (isNumber && isBivariate) {
+                double[] value = trait.getValue();
+                density.addPoint(value[0], value[1]);
+            }
+            count++;
+        }
+
+        private int count = 0;
+        private boolean isNumber;
+        private boolean isBivariate;
+        private final BinnedKernelDensityEstimator2D density = new BinnedKernelDensityEstimator2D();
+    }
+
     class Trait {
 
         Trait(Object obj) {
@@ -1613,6 +1868,7 @@ public class TimeSlicer {
     }
 
     private List<List<List<Trait>>> values;
+    private List<List<SliceDensity>> densities;
     private List<List<Trait>> rootValues;
     private List<List<List<Trait>>> tipValues;
     private List<String> tipNames;
@@ -1694,9 +1950,11 @@ public class TimeSlicer {
         } else return false;
     }
 
-    private void analyzeTree(Tree treeTime, String[] traits, double[] slices, boolean impute,
-                             boolean trueNoise, Normalization normalize, boolean divideByBranchlength,
-                             BranchSet branchset, Set taxaSet) {
+    private AnalyzedTree analyzeTree(Tree treeTime, String[] traits, double[] slices, boolean impute,
+                                     boolean trueNoise, Normalization normalize, boolean divideByBranchlength,
+                                     BranchSet branchset, Set taxaSet) {
+
+        AnalyzedTree result = new AnalyzedTree(treeTime);
 
         double[][] precision = null;
 
@@ -1725,21 +1983,6 @@ public class TimeSlicer {
         }
 
 
-        if (tipValues != null && tipValues.size() == 0) {
-            // this is the first tree so initialize the tip value lists
-            for (int i = 0; i < treeTime.getExternalNodeCount(); i++) {
-                List<List<Trait>> thisTip = new ArrayList<List<Trait>>(traitCount);
-                tipValues.add(thisTip);
-                for (int j = 0; j < traitCount; j++) {
-                    List<Trait> thisTipTrait = new ArrayList<Trait>();
-                    thisTip.add(thisTipTrait);
-                }
-
-                tipNames.add(treeTime.getNodeTaxon(treeTime.getExternalNode(i)).getId());
-            }
-
-        }
-
 //  employed to get dispersal rates across the whole tree
 //        double treeNativeDistance = 0;
 //        double treeKilometerGreatCircleDistance = 0;
@@ -1758,7 +2001,7 @@ public class TimeSlicer {
         double[][] treeSliceDiffusionCoefficients = new double[sliceCount][treeTime.getNodeCount() - 1];
         double[] treeSliceBranchCount = new double[sliceCount];
 
-        treeLengths.add(TreeUtils.getTreeLength(treeTime, treeTime.getRoot()));
+        result.treeLength = TreeUtils.getTreeLength(treeTime, treeTime.getRoot());
 
         for (int x = 0; x < treeTime.getNodeCount(); x++) {
 
@@ -1910,7 +2153,7 @@ public class TimeSlicer {
 
                         if (proceed) {
 
-                            List<List<Trait>> thisSlice = values.get(i);
+                            List<List<Trait>> thisSlice = result.sliceValues.get(i);
                             for (int j = 0; j < traitCount; j++) {
 
                                 List<Trait> thisTraitSlice = thisSlice.get(j);
@@ -1994,8 +2237,8 @@ public class TimeSlicer {
                     }
                 }
 
-                if (tipValues != null && treeTime.isExternal(node)) {
-                    List<List<Trait>> thisTip = tipValues.get(x);
+                if (result.tipTraits != null && treeTime.isExternal(node)) {
+                    List<List<Trait>> thisTip = result.tipTraits.get(x);
 
                     for (int j = 0; j < traitCount; j++) {
                         Object tmpTrait = treeTime.getNodeAttribute(node, traits[j]);
@@ -2017,7 +2260,7 @@ public class TimeSlicer {
                             height = slices[i + 1];
                         }
                         if ((slices[i] < nodeHeight && height >= nodeHeight)){
-                            List<List<Trait>> thisSlice = values.get(i);
+                            List<List<Trait>> thisSlice = result.sliceValues.get(i);
                             for (int j = 0; j < traitCount; j++) {
                                 List<Trait> thisTraitSlice = thisSlice.get(j);
                                 Object tmpTrait = treeTime.getNodeAttribute(node, traits[j]);
@@ -2035,9 +2278,9 @@ public class TimeSlicer {
                     }
                 }
 
-                if (rootValues != null) {
+                if (result.rootTraits != null) {
                     for (int j = 0; j < traitCount; j++) {
-                        List<Trait> thisRootTrait = rootValues.get(j);
+                        List<Trait> thisRootTrait = result.rootTraits.get(j);
                         Object tmpTrait = treeTime.getNodeAttribute(node, traits[j]);
                         if (tmpTrait == null) {
                             System.err.println("Trait '" + traits[j] + "' not found on root node.");
@@ -2054,12 +2297,12 @@ public class TimeSlicer {
         //System.out.println(Tree.Utils.getTreeLength(treeTime, treeTime.getRoot())+"\t"+test);
 
         if (sdr || snr) {
-            sliceTreeDistanceArrays.add(treeSliceDistance);
-            sliceTreeTimeArrays.add(treeSliceTime);
+            result.treeSliceDistance = treeSliceDistance;
+            result.treeSliceTime = treeSliceTime;
             if (sdr){
-                sliceTreeMaxPathDistanceArrays.add(treeSliceMaxDistance);
-                sliceTreeMaxDistanceFromRootArrays.add(maxDistanceFromRoot);
-                sliceTreeTimeFromRootArrays.add(treeTimeFromRoot);
+                result.treeSliceMaxDistance = treeSliceMaxDistance;
+                result.maxDistanceFromRoot = maxDistanceFromRoot;
+                result.treeTimeFromRoot = treeTimeFromRoot;
                 for (int i = 0; i < treeSliceDiffusionCoefficientA.length; i++) {
                     //treeSliceDiffusionCoefficientWA[i] = treeSliceDiffusionCoefficientWA[i]/treeSliceTime[i];
                     treeSliceDiffusionCoefficientA[i] = treeSliceDiffusionCoefficientA[i] / treeSliceBranchCount[i];
@@ -2069,8 +2312,8 @@ public class TimeSlicer {
                     treeSliceDiffusionCoefficientV[i] = treeSliceDiffusionCoefficientV[i] / treeSliceBranchCount[i];
                     //System.out.println(treeSliceTime[i]+"\t"+treeLengths.get(i));
                 }
-                sliceTreeDiffusionCoefficientArrays.add(treeSliceDiffusionCoefficientA);
-                sliceTreeDiffusionCoefficientVarianceArrays.add(treeSliceDiffusionCoefficientV);
+                result.treeSliceDiffusionCoefficientA = treeSliceDiffusionCoefficientA;
+                result.treeSliceDiffusionCoefficientV = treeSliceDiffusionCoefficientV;
             }
         }
 
@@ -2084,8 +2327,7 @@ public class TimeSlicer {
 //            dispersalrates.add(dispersalNativeRate+"\t"+dispersalKilometerRate);
 //        }
 
-        treesAnalyzed++;
-
+        return result;
     }
 
     private static double getNativeDistance(double[] location1, double[] location2) {
@@ -2166,6 +2408,7 @@ public class TimeSlicer {
     private double longMax;
     private Set descendentTaxaSet;
     private String rateAttributeString;
+    private int threadCount;
 
 
 //  employed to get dispersal rates across the whole tree
@@ -2190,7 +2433,7 @@ public class TimeSlicer {
     private boolean snr;
     private ArrayList treeLengths = new ArrayList();
 
-    private boolean outputRateWarning = true;
+    private volatile boolean outputRateWarning = true;
 
 
     private Trait imputeValue(Trait nodeTrait, Trait parentTrait, double time, double nodeHeight, double parentHeight, double[][] precision, double rate, boolean trueNoise) {
@@ -2656,6 +2899,7 @@ public class TimeSlicer {
         double longMin = -Double.MAX_VALUE;
         String rateString = "location.rate";
         Set descendents = null;
+        int threadCount = MappedNexusImporter.getDefaultThreadCount();
 
 //        if (args.length == 0) {
 //          // TODO Make flash GUI
@@ -2708,7 +2952,8 @@ public class TimeSlicer {
                         new Arguments.RealOption(LONGMAX, "specifies the maximum longitude for a child node for a branch to be included in the summary [default=MAX_VALUE]"),
                         new Arguments.RealOption(LONGMIN, "specifies the minimum longitude for a child node for a branch to be included in the summary [default=MIN_VALUE]"),
                         new Arguments.IntegerOption(GRIDSIZE, "the grid size for contouring [default=200]"),
-                        new Arguments.StringOption(DESCENDENTS, "descendent taxa", "specifies a branch based on the descendent taxa [default=all branches]")
+                        new Arguments.StringOption(DESCENDENTS, "descendent taxa", "specifies a branch based on the descendent taxa [default=all branches]"),
+                        new Arguments.IntegerOption(THREADS, "the number of threads used to read and analyze trees [default=number of processors]")
 
                 });
 
@@ -2978,6 +3223,10 @@ public class TimeSlicer {
                 grid = arguments.getIntegerOption(GRIDSIZE);
             }
 
+            if (arguments.hasOption(THREADS)) {
+                threadCount = arguments.getIntegerOption(THREADS);
+            }
+
 
 
         } catch (Arguments.ArgumentException e) {
@@ -3007,9 +3256,15 @@ public class TimeSlicer {
             }
         }
 
+        // when only the KML contours of the slices are needed the values are accumulated as densities
+        boolean gridDensities = summaryOnly && outputFormat == OutputFormat.KML && contours && !points &&
+                sliceMode == SliceMode.BRANCHES && contourMode != ContourMode.R &&
+                (progress == null || !progress.equalsIgnoreCase("check"));
+
         TimeSlicer timeSlicer = new TimeSlicer(inputFileName, burnin, skipEvery, traitNames, sliceHeights, impute,
                 trueNoise, mrsd, contourMode, sliceMode,summarizeRoot, summarizeTips, normalize, getSDR, getSNR, progress,
-                branchNormalization, set, taxaSet, grid, latMin, latMax, longMin, longMax, descendents, rateString);
+                branchNormalization, set, taxaSet, grid, latMin, latMax, longMin, longMax, descendents, rateString,
+                threadCount, gridDensities);
         timeSlicer.output(outputFileName, summaryOnly, summarizeRoot, summarizeTips, contours, points, outputFormat, hpdValues, outputFileSDR, outputFileSNR);
 
         System.exit(0);
@@ -29,6 +29,7 @@ import dr.app.beast.BeastVersion;
 import dr.app.util.Arguments;
 import dr.app.util.Utils;
 import dr.evolution.io.Importer;
+import dr.evolution.io.MappedNexusImporter;
 import dr.evolution.io.NewickImporter;
 import dr.evolution.io.NexusImporter;
 import dr.evolution.io.TreeImporter;
@@ -38,6 +39,7 @@ import dr.util.Version;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 
@@ -77,7 +79,10 @@ public class TopologyTracer {
 
             TreeImporter importer;
             if (line.toUpperCase().startsWith("#NEXUS")) {
-                importer = new NexusImporter(reader);
+                // the metrics only need the topologies and heights so the node attributes are not kept
+                reader.close();
+                importer = new MappedNexusImporter(new File(treeFile), MappedNexusImporter.getDefaultThreadCount(),
+                        Collections.<String>emptySet());
             } else {
                 importer = new NewickImporter(reader);
             }
@@ -89,7 +94,9 @@ public class TopologyTracer {
                 String line2 = reader2.readLine();
 
                 if (line2.toUpperCase().startsWith("#NEXUS")) {
-                    importer2 = new NexusImporter(reader2);
+                    reader2.close();
+                    importer2 = new MappedNexusImporter(new File(treeFile2), MappedNexusImporter.getDefaultThreadCount(),
+                            Collections.<String>emptySet());
                 } else {
                     importer2 = new NewickImporter(reader2);
                 }
@@ -29,6 +29,7 @@ import dr.app.beast.BeastVersion;
 import dr.app.util.Arguments;
 import dr.evolution.io.Importer;
 import dr.evolution.io.NewickImporter;
+import dr.evolution.io.BinaryTreeImporter;
 import dr.evolution.io.NexusImporter;
 import dr.evolution.io.TreeImporter;
 import dr.evolution.tree.*;
@@ -70,7 +71,7 @@ public class TreeAnnotator {
 
     private double maxState = 1;
 
-    enum Target {
+    public enum Target {
         MAX_CLADE_CREDIBILITY("Maximum clade credibility tree"),
         HIPSTR("Highest independent posterior subtree reconstruction (HIPSTR)"),
         USER_TARGET_TREE("User target tree");
@@ -86,7 +87,7 @@ public class TreeAnnotator {
         }
     }
 
-    enum HeightsSummary {
+    public enum HeightsSummary {
         MEDIAN_HEIGHTS("Median heights"),
         MEAN_HEIGHTS("Mean heights"),
         KEEP_HEIGHTS("Keep target heights"),
@@ -161,8 +162,7 @@ public class TreeAnnotator {
 
         if (targetOption != Target.USER_TARGET_TREE) {
             cladeSystem = new CladeSystem();
-            FileReader fileReader = new FileReader(inputFileName);
-            TreeImporter importer = new NexusImporter(fileReader, true);
+            TreeImporter importer = BinaryTreeImporter.createTreeImporter(inputFileName, true);
             try {
                 totalTrees = 0;
                 while (importer.hasTree()) {
@@ -205,7 +205,6 @@ public class TreeAnnotator {
                 System.err.println("Error Parsing Input Tree: " + e.getMessage());
                 return;
             }
-            fileReader.close();
             progressStream.println();
             progressStream.println();
 
@@ -283,8 +282,7 @@ public class TreeAnnotator {
         stepSize = totalTrees / 60;
         if (stepSize < 1) stepSize = 1;
 
-        FileReader fileReader = new FileReader(inputFileName);
-        NexusImporter importer = new NexusImporter(fileReader);
+        TreeImporter importer = BinaryTreeImporter.createTreeImporter(inputFileName, false);
 
         // this call increments the clade counts and it shouldn't
         // this is remedied with removeClades call after while loop below
@@ -321,7 +319,6 @@ public class TreeAnnotator {
         }
         progressStream.println();
         progressStream.println();
-        fileReader.close();
 
         progressStream.println("Annotating target tree...");
 
@@ -384,7 +381,7 @@ public class TreeAnnotator {
 
         int counter = 0;
         int bestTreeNumber = 0;
-        TreeImporter importer = new NexusImporter(new FileReader(inputFileName), true);
+        TreeImporter importer = BinaryTreeImporter.createTreeImporter(inputFileName, true);
         try {
             while (importer.hasTree()) {
                 Tree tree = importer.importNextTree();
@@ -1701,8 +1698,7 @@ public class TreeAnnotator {
         int reportStepSize = totalTrees / 60;
         if (reportStepSize < 1) reportStepSize = 1;
 
-        final FileReader fileReader = new FileReader(inputFileName);
-        final NexusImporter importer = new NexusImporter(fileReader, true);
+        final TreeImporter importer = BinaryTreeImporter.createTreeImporter(inputFileName, true);
 
         // this call increments the clade counts and it shouldn't
         // this is remedied with removeClades call after while loop below
@@ -1762,7 +1758,6 @@ public class TreeAnnotator {
             final NodeRef node = targetTree.getNode(k);
             targetTree.setNodeHeight(node, ths[k]);
         }
-        fileReader.close();
 
         progressStream.println();
         progressStream.println();
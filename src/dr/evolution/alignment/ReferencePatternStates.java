@@ -0,0 +1,153 @@
+/*
+ * ReferencePatternStates.java
+ *
+ * Copyright (c) 2002-2015 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.evolution.alignment;
+
+import java.util.Arrays;
+
+/**
+ * The states of a pattern list stored as a reference (majority) state for each pattern and, for each taxon,
+ * a sparse list of the patterns at which it differs from the reference. For closely related sequences
+ * this takes memory in proportion to the number of differences rather than taxa x patterns.
+ *
+ * All ambiguous, gap and unknown states are collapsed to a single unknown state equal to the state count.
+ *
+ * @version $Id$
+ */
+public class ReferencePatternStates {
+
+    public ReferencePatternStates(PatternList patternList) {
+        taxonCount = patternList.getTaxonCount();
+        patternCount = patternList.getPatternCount();
+        stateCount = patternList.getDataType().getStateCount();
+
+        // the reference is the most common state of each pattern
+        referenceStates = new int[patternCount];
+        int[] counts = new int[stateCount + 1];
+        for (int i = 0; i < patternCount; i++) {
+            Arrays.fill(counts, 0);
+            for (int j = 0; j < taxonCount; j++) {
+                counts[getState(patternList, j, i)]++;
+            }
+            int reference = 0;
+            for (int state = 1; state <= stateCount; state++) {
+                if (counts[state] > counts[reference]) {
+                    reference = state;
+                }
+            }
+            referenceStates[i] = reference;
+        }
+
+        differencePatterns = new int[taxonCount][];
+        differenceStates = new int[taxonCount][];
+        int[] patterns = new int[patternCount];
+        int[] states = new int[patternCount];
+        long total = 0;
+        for (int j = 0; j < taxonCount; j++) {
+            int count = 0;
+            for (int i = 0; i < patternCount; i++) {
+                int state = getState(patternList, j, i);
+                if (state != referenceStates[i]) {
+                    patterns[count] = i;
+                    states[count] = state;
+                    count++;
+                }
+            }
+            differencePatterns[j] = Arrays.copyOf(patterns, count);
+            differenceStates[j] = Arrays.copyOf(states, count);
+            total += count;
+        }
+        differenceCount = total;
+    }
+
+    private int getState(PatternList patternList, int taxon, int pattern) {
+        return Math.min(patternList.getPatternState(taxon, pattern), stateCount);
+    }
+
+    public int getTaxonCount() {
+        return taxonCount;
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * @return the number of states, which is also the value of the unknown state
+     */
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public int getReferenceState(int pattern) {
+        return referenceStates[pattern];
+    }
+
+    /**
+     * @return the reference state of every pattern (not a copy)
+     */
+    public int[] getReferenceStates() {
+        return referenceStates;
+    }
+
+    /**
+     * @return the patterns at which the taxon differs from the reference in increasing order (not a copy)
+     */
+    public int[] getDifferencePatterns(int taxon) {
+        return differencePatterns[taxon];
+    }
+
+    /**
+     * @return the states of the taxon at each of its difference patterns (not a copy)
+     */
+    public int[] getDifferenceStates(int taxon) {
+        return differenceStates[taxon];
+    }
+
+    public int getPatternState(int taxon, int pattern) {
+        int index = Arrays.binarySearch(differencePatterns[taxon], pattern);
+        return index >= 0 ? differenceStates[taxon][index] : referenceStates[pattern];
+    }
+
+    public long getDifferenceCount() {
+        return differenceCount;
+    }
+
+    /**
+     * @return the proportion of all the states that differ from the reference
+     */
+    public double getDifferenceProportion() {
+        return (double) differenceCount / ((double) taxonCount * patternCount);
+    }
+
+    private final int taxonCount;
+    private final int patternCount;
+    private final int stateCount;
+
+    private final int[] referenceStates;
+    private final int[][] differencePatterns;
+    private final int[][] differenceStates;
+    private final long differenceCount;
+}
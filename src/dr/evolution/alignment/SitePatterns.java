@@ -57,6 +57,11 @@ public class SitePatterns implements SiteList, dr.util.XHTMLable {
      */
     protected int siteCount = 0;
 
+    /**
+     * number of taxa in the patterns
+     */
+    private int taxonCount = 0;
+
     /**
      * number of patterns
      */
@@ -251,6 +256,7 @@ public class SitePatterns implements SiteList, dr.util.XHTMLable {
         if (every <= 0)
             every = 1;
 
+        taxonCount = siteList.getTaxonCount();
         siteCount = ((to - from) / every) + 1;
 
         patternCount = 0;
@@ -319,6 +325,7 @@ public class SitePatterns implements SiteList, dr.util.XHTMLable {
         to = siteList.getSiteCount() - 1;
         every = 1;
 
+        taxonCount = siteList.getTaxonCount();
         siteCount = siteList.getSiteCount();
 
         patternCount = 0;
@@ -576,7 +583,8 @@ public class SitePatterns implements SiteList, dr.util.XHTMLable {
      * @return the length of patterns
      */
     public int getPatternLength() {
-        return getTaxonCount();
+        if (siteList == null) throw new RuntimeException("SitePatterns has no alignment");
+        return taxonCount;
     }
 
     /**
@@ -653,7 +661,7 @@ public class SitePatterns implements SiteList, dr.util.XHTMLable {
      */
     public int getTaxonCount() {
         if (siteList == null) throw new RuntimeException("SitePatterns has no alignment");
-        return siteList.getTaxonCount();
+        return taxonCount;
     }
 
     /**
@@ -0,0 +1,199 @@
+/*
+ * ArrayCoalescentSimulator.java
+ *
+ * Copyright (c) 2002-2015 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.evolution.coalescent;
+
+import dr.math.MathUtils;
+import dr.util.HeapSort;
+
+import java.util.Arrays;
+
+/**
+ * A coalescent simulator for very large trees. Lineages are kept in an array pool from which a random pair is
+ * drawn in constant time, and the tree is built directly in flat arrays: three entries per node in edges (parent,
+ * first child, second child, -1 where missing) and one in heights. Tips are numbered as given and internal nodes
+ * follow in order of increasing height, so the root is the last node. This is the layout used by BigFastTreeModel.
+ *
+ * Between sampling events the cumulative intensities of a batch of coalescent events are drawn at once and then
+ * transformed to times, so each event costs a single call to getInverseIntensity.
+ */
+public class ArrayCoalescentSimulator {
+
+    private static final int BATCH_SIZE = 1024;
+
+    public ArrayCoalescentSimulator() {
+    }
+
+    /**
+     * Simulates a coalescent tree between tips with the given heights.
+     * @param tipHeights the heights of the tips
+     * @param demographic the demographic function to use
+     */
+    public void simulate(double[] tipHeights, DemographicFunction demographic) {
+
+        final int tipCount = tipHeights.length;
+        if (tipCount == 0) {
+            throw new IllegalArgumentException("empty tip set");
+        }
+
+        nodeCount = 2 * tipCount - 1;
+        edges = new int[nodeCount * 3];
+        Arrays.fill(edges, -1);
+        heights = new double[nodeCount];
+        System.arraycopy(tipHeights, 0, heights, 0, tipCount);
+
+        final int[] order = new int[tipCount];
+        if (isContemporaneous(tipHeights)) {
+            for (int i = 0; i < tipCount; i++) {
+                order[i] = i;
+            }
+        } else {
+            HeapSort.sort(tipHeights, order);
+        }
+
+        final int[] lineages = new int[tipCount];
+        final double[] intensities = new double[BATCH_SIZE];
+
+        int lineageCount = 0;
+        int nextTip = 0;
+        int nextNode = tipCount;
+
+        double time = tipHeights[order[0]];
+        double intensity = demographic.getIntensity(time);
+
+        while (nextNode < nodeCount) {
+
+            // add the tips sampled by the current time
+            while (nextTip < tipCount && tipHeights[order[nextTip]] <= time) {
+                lineages[lineageCount++] = order[nextTip++];
+            }
+
+            if (lineageCount < 2) {
+                time = tipHeights[order[nextTip]];
+                intensity = demographic.getIntensity(time);
+                continue;
+            }
+
+            final double samplingTime;
+            final double samplingIntensity;
+            if (nextTip < tipCount) {
+                samplingTime = tipHeights[order[nextTip]];
+                samplingIntensity = demographic.getIntensity(samplingTime);
+            } else {
+                samplingTime = Double.POSITIVE_INFINITY;
+                samplingIntensity = Double.POSITIVE_INFINITY;
+            }
+
+            // draw the intensities of the coalescent events before the next sampling event
+            int count = 0;
+            int k = lineageCount;
+            double x = intensity;
+            boolean sampled = false;
+            while (k > 1 && count < BATCH_SIZE) {
+                final double next = x - Math.log(MathUtils.nextDouble()) / (0.5 * k * (k - 1));
+                if (next >= samplingIntensity) {
+                    // the waiting time is memoryless so the draw is discarded
+                    sampled = true;
+                    break;
+                }
+                x = next;
+                intensities[count++] = x;
+                k--;
+            }
+
+            for (int i = 0; i < count; i++) {
+                time = Math.max(time, demographic.getInverseIntensity(intensities[i]));
+                lineageCount = coalesceTwoLineages(lineages, lineageCount, nextNode++, time);
+            }
+            intensity = x;
+
+            if (sampled) {
+                time = samplingTime;
+                intensity = samplingIntensity;
+            }
+        }
+
+        root = nodeCount - 1;
+    }
+
+    private static boolean isContemporaneous(double[] tipHeights) {
+        for (double height : tipHeights) {
+            if (height != tipHeights[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Joins two random lineages of the pool under a new node, which takes the place of the first one.
+     * @return the new number of lineages
+     */
+    private int coalesceTwoLineages(int[] lineages, int lineageCount, int node, double height) {
+        final int i = MathUtils.nextInt(lineageCount);
+        int j = MathUtils.nextInt(lineageCount - 1);
+        if (j >= i) {
+            j++;
+        }
+
+        final int left = lineages[i];
+        final int right = lineages[j];
+
+        edges[node * 3 + 1] = left;
+        edges[node * 3 + 2] = right;
+        edges[left * 3] = node;
+        edges[right * 3] = node;
+        heights[node] = height;
+
+        lineages[i] = node;
+        lineages[j] = lineages[lineageCount - 1];
+
+        return lineageCount - 1;
+    }
+
+    /**
+     * @return the parent, first child and second child of every node
+     */
+    public int[] getEdges() {
+        return edges;
+    }
+
+    public double[] getHeights() {
+        return heights;
+    }
+
+    public int getRoot() {
+        return root;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    private int nodeCount;
+    private int root = -1;
+    private int[] edges;
+    private double[] heights;
+}
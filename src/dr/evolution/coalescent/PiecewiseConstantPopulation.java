@@ -145,10 +145,6 @@ public class PiecewiseConstantPopulation extends DemographicFunction.Abstract {
         }
     }
 
-    public double getInverseIntensity(double x) {
-        throw new RuntimeException("Not implemented!");
-    }
-
     public double getUpperBound(int i) {
         return 1e9;
     }
@@ -175,6 +171,31 @@ public class PiecewiseConstantPopulation extends DemographicFunction.Abstract {
         intensitiesKnown = false;
     }
 
+    public double getInverseIntensity(double x) {
+
+        if (cif == null) {
+            throw new RuntimeException("Not implemented!");
+        }
+
+        if (!intensitiesKnown) {
+            setIntervals(intervals, thetas);
+        }
+
+        int epoch = Collections.binarySearch(cif, x);
+
+        if (epoch < 0) {
+            epoch = -epoch - 1;
+
+            if (epoch > 0) {
+                return endTime.get(epoch - 1) + (x - cif.get(epoch - 1)) * getEpochDemographic(epoch);
+            } else {
+                return x * getEpochDemographic(0);
+            }
+        } else {
+            return endTime.get(epoch);
+        }
+    }
+
     public DemographicFunction getCopy() {
         PiecewiseConstantPopulation df = new PiecewiseConstantPopulation(new double[intervals.length], new double[thetas.length], getUnits());
         System.arraycopy(intervals, 0, df.intervals, 0, intervals.length);
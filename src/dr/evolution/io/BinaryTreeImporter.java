@@ -0,0 +1,390 @@
+/*
+ * BinaryTreeImporter.java
+ *
+ * Copyright (c) 2002-2023 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.evolution.io;
+
+import dr.evolution.tree.FlexibleNode;
+import dr.evolution.tree.FlexibleTree;
+import dr.evolution.tree.Tree;
+import dr.evolution.util.Taxon;
+import dr.evolution.util.TaxonList;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static dr.evolution.io.BinaryTreeWriter.*;
+
+/**
+ * Reads the trees written by BinaryTreeWriter. The trees have the same taxon numbering and
+ * node and tree attributes as those read by NexusImporter from the equivalent NEXUS tree log
+ * although the children of each node are attached in the order they were logged.
+ */
+public class BinaryTreeImporter implements TreeImporter {
+
+    public BinaryTreeImporter(InputStream stream) throws IOException {
+        this(stream, false);
+    }
+
+    /**
+     * @param stream             the input stream (this will be buffered)
+     * @param ignoreMetaComments if true then node and branch traits are not read into the trees
+     */
+    public BinaryTreeImporter(InputStream stream, boolean ignoreMetaComments) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        this.ignoreMetaComments = ignoreMetaComments;
+    }
+
+    /**
+     * @return true if the file starts with the binary tree log header
+     */
+    public static boolean isBinaryTreeFile(File file) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(magic);
+        } catch (EOFException eofe) {
+            return false;
+        } finally {
+            in.close();
+        }
+        return Arrays.equals(magic, MAGIC);
+    }
+
+    /**
+     * Opens a tree file that is either a binary tree log or a NEXUS file. NEXUS files are read with
+     * a MappedNexusImporter.
+     */
+    public static TreeImporter createTreeImporter(String fileName, boolean ignoreMetaComments) throws IOException {
+        File file = new File(fileName);
+        if (isBinaryTreeFile(file)) {
+            return new BinaryTreeImporter(new FileInputStream(file), ignoreMetaComments);
+        }
+        return new MappedNexusImporter(file, MappedNexusImporter.getDefaultThreadCount(),
+                ignoreMetaComments ? Collections.<String>emptySet() : null);
+    }
+
+    /**
+     * @return the taxon labels in the order of the taxon table
+     */
+    public List<String> getTaxonIds() throws IOException, Importer.ImportException {
+        readHeader();
+        return Collections.unmodifiableList(Arrays.asList(taxonIds));
+    }
+
+    public boolean hasTree() throws IOException, Importer.ImportException {
+        readHeader();
+        if (nextRecord < 0) {
+            try {
+                nextRecord = in.readByte();
+            } catch (EOFException eofe) {
+                // a log that was not closed properly ends after the last complete tree
+                nextRecord = END_OF_TREES;
+            }
+            if (nextRecord == END_OF_TREES) {
+                in.close();
+            } else if (nextRecord != TREE_RECORD) {
+                throw new Importer.BadFormatException("Unknown record type in binary tree file: " + nextRecord);
+            }
+        }
+        return nextRecord == TREE_RECORD;
+    }
+
+    public Tree importNextTree() throws IOException, Importer.ImportException {
+        if (!hasTree()) {
+            return null;
+        }
+        nextRecord = -1;
+        return readTree();
+    }
+
+    public Tree importTree(TaxonList taxonList) throws IOException, Importer.ImportException {
+        setTaxonList(taxonList);
+        return importNextTree();
+    }
+
+    public Tree[] importTrees(TaxonList taxonList) throws IOException, Importer.ImportException {
+        setTaxonList(taxonList);
+        List<Tree> trees = new ArrayList<Tree>();
+        while (hasTree()) {
+            trees.add(importNextTree());
+        }
+        return trees.toArray(new Tree[trees.size()]);
+    }
+
+    private void setTaxonList(TaxonList taxonList) throws IOException, Importer.ImportException {
+        readHeader();
+        if (taxonList == null) {
+            return;
+        }
+        taxonNumberMap.clear();
+        for (int i = 0; i < taxonIds.length; i++) {
+            int index = taxonList.getTaxonIndex(taxonIds[i]);
+            if (index < 0) {
+                throw new Importer.UnknownTaxonException("Taxon in tree, '" + taxonIds[i] + "' is unknown");
+            }
+            taxa[i] = taxonList.getTaxon(index);
+            taxonNumberMap.put(taxa[i], index);
+        }
+    }
+
+    private void readHeader() throws IOException, Importer.ImportException {
+        if (taxonIds != null) {
+            return;
+        }
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new Importer.BadFormatException("Not a binary tree file");
+        }
+        int version = in.readInt();
+        if (version > VERSION) {
+            throw new Importer.BadFormatException("Binary tree file version " + version + " is not supported");
+        }
+
+        int taxonCount = in.readInt();
+        taxonIds = new String[taxonCount];
+        taxa = new Taxon[taxonCount];
+        for (int i = 0; i < taxonCount; i++) {
+            taxonIds[i] = readString(in);
+            taxa[i] = new Taxon(taxonIds[i]);
+            taxonNumberMap.put(taxa[i], i);
+        }
+    }
+
+    private Tree readTree() throws IOException, Importer.ImportException {
+        String name = readString(in);
+
+        int attributeCount = in.readInt();
+        String[] attributeLabels = new String[attributeCount];
+        String[] attributeValues = new String[attributeCount];
+        for (int i = 0; i < attributeCount; i++) {
+            attributeLabels[i] = readString(in);
+            attributeValues[i] = readString(in);
+        }
+
+        byte branchType = in.readByte();
+        int nodeCount = in.readInt();
+        int tipCount = in.readInt();
+        int root = in.readInt();
+
+        lastTips = readIntArray(tipCount, lastTips);
+        lastParents = readIntArray(nodeCount, lastParents);
+        int[] parents = lastParents;
+
+        FlexibleNode[] nodes = new FlexibleNode[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            nodes[i] = new FlexibleNode();
+        }
+        for (int i = 0; i < tipCount; i++) {
+            nodes[i].setTaxon(taxa[lastTips[i]]);
+        }
+
+        // the children of each node in increasing node number unless the order was recorded
+        int[] childCounts = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            if (parents[i] >= 0) {
+                childCounts[parents[i]]++;
+            }
+        }
+        int[][] children = new int[nodeCount][];
+        for (int i = 0; i < nodeCount; i++) {
+            children[i] = new int[childCounts[i]];
+            childCounts[i] = 0;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            if (parents[i] >= 0) {
+                children[parents[i]][childCounts[parents[i]]++] = i;
+            }
+        }
+        BitSet reordered = readBits(nodeCount);
+        for (int i = reordered.nextSetBit(0); i >= 0; i = reordered.nextSetBit(i + 1)) {
+            if (children[i].length == 2) {
+                int first = children[i][0];
+                children[i][0] = children[i][1];
+                children[i][1] = first;
+            } else {
+                for (int j = 0; j < children[i].length; j++) {
+                    children[i][j] = in.readInt();
+                }
+            }
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            for (int child : children[i]) {
+                nodes[i].addChild(nodes[child]);
+            }
+        }
+
+        lastValues = readDoubleArray(nodeCount, lastValues);
+        for (int i = 0; i < nodeCount; i++) {
+            if (branchType == HEIGHTS) {
+                nodes[i].setHeight(lastValues[i]);
+            } else {
+                nodes[i].setLength(lastValues[i]);
+            }
+        }
+
+        readTraits(nodes);
+
+        FlexibleTree tree = new FlexibleTree(nodes[root], branchType == HEIGHTS, branchType != HEIGHTS, taxonNumberMap);
+        tree.setId(name);
+
+        for (int i = 0; i < attributeCount; i++) {
+            tree.setAttribute(attributeLabels[i], parseValue(attributeValues[i]));
+        }
+
+        return tree;
+    }
+
+    private void readTraits(FlexibleNode[] nodes) throws IOException, Importer.ImportException {
+        int traitCount = in.readInt();
+        for (int t = 0; t < traitCount; t++) {
+            String traitName = readString(in);
+            in.readByte(); // node or branch intent
+            byte type = in.readByte();
+            BitSet present = readBits(nodes.length);
+
+            for (int i = present.nextSetBit(0); i >= 0; i = present.nextSetBit(i + 1)) {
+                Object value;
+                switch (type) {
+                    case DOUBLE:
+                        value = in.readDouble();
+                        break;
+                    case INTEGER:
+                        value = in.readInt();
+                        break;
+                    case DOUBLE_ARRAY: {
+                        Object[] array = new Object[in.readInt()];
+                        for (int j = 0; j < array.length; j++) {
+                            array[j] = in.readDouble();
+                        }
+                        value = (array.length == 1 ? array[0] : array);
+                        break;
+                    }
+                    case INTEGER_ARRAY: {
+                        Object[] array = new Object[in.readInt()];
+                        for (int j = 0; j < array.length; j++) {
+                            array[j] = in.readInt();
+                        }
+                        value = (array.length == 1 ? array[0] : array);
+                        break;
+                    }
+                    case STRING:
+                        value = parseValue(readString(in));
+                        break;
+                    default:
+                        throw new Importer.BadFormatException("Unknown trait type in binary tree file: " + type);
+                }
+                if (!ignoreMetaComments && value != null) {
+                    nodes[i].setAttribute(traitName, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Attribute values are parsed in the same way as NexusImporter parses meta comments.
+     */
+    private static Object parseValue(String value) {
+        if (value.trim().length() == 0) {
+            return Boolean.TRUE;
+        }
+        return NexusImporter.parseValue(value);
+    }
+
+    private int[] readIntArray(int length, int[] previous) throws IOException, Importer.ImportException {
+        byte encoding = in.readByte();
+        int[] values;
+        if (encoding == DELTA) {
+            if (previous == null || previous.length != length) {
+                throw new Importer.BadFormatException("Binary tree file has a change list without a previous tree");
+            }
+            values = previous.clone();
+            int changed = in.readInt();
+            for (int i = 0; i < changed; i++) {
+                int index = in.readInt();
+                values[index] = in.readInt();
+            }
+        } else {
+            values = new int[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = in.readInt();
+            }
+        }
+        return values;
+    }
+
+    private double[] readDoubleArray(int length, double[] previous) throws IOException, Importer.ImportException {
+        byte encoding = in.readByte();
+        double[] values;
+        if (encoding == DELTA) {
+            if (previous == null || previous.length != length) {
+                throw new Importer.BadFormatException("Binary tree file has a change list without a previous tree");
+            }
+            values = previous.clone();
+            int changed = in.readInt();
+            for (int i = 0; i < changed; i++) {
+                int index = in.readInt();
+                values[index] = in.readDouble();
+            }
+        } else {
+            values = new double[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = in.readDouble();
+            }
+        }
+        return values;
+    }
+
+    private BitSet readBits(int length) throws IOException {
+        byte[] bytes = new byte[(length + 7) / 8];
+        in.readFully(bytes);
+        BitSet bits = new BitSet(length);
+        for (int i = 0; i < length; i++) {
+            if ((bytes[i >> 3] & (1 << (i & 7))) != 0) {
+                bits.set(i);
+            }
+        }
+        return bits;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private final DataInputStream in;
+    private final boolean ignoreMetaComments;
+
+    private String[] taxonIds = null;
+    private Taxon[] taxa = null;
+    private final Map<Taxon, Integer> taxonNumberMap = new HashMap<Taxon, Integer>();
+
+    private int nextRecord = -1;
+    private int[] lastTips = null;
+    private int[] lastParents = null;
+    private double[] lastValues = null;
+}
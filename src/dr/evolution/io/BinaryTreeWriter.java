@@ -0,0 +1,441 @@
+/*
+ * BinaryTreeWriter.java
+ *
+ * Copyright (c) 2002-2023 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.evolution.io;
+
+import dr.evolution.tree.*;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Writes a sample of trees in a compact binary format that can be read back with BinaryTreeImporter.
+ *
+ * The file starts with a header and a table of taxon labels. Each tree is then written as a record
+ * containing the parent of each node, the node heights (or branch lengths for trees in substitution
+ * units or written to a limited number of decimal places) as doubles and a block for each loggable
+ * node or branch trait. Node numbering is stable
+ * between the samples of a tree model so the parent, tip and height arrays are written as the list
+ * of entries that differ from the previous tree whenever that is smaller than the whole array.
+ *
+ * Traits whose values are plain doubles, integers or arrays of these (and that use the default string
+ * formatting) are written as binary values. All other traits are written as the strings that would
+ * appear in a NEXUS tree log.
+ *
+ * A tree record can be encoded on one thread and written on another (see encodeTree and writeRecord)
+ * as long as the records are written in the order they were encoded.
+ */
+public class BinaryTreeWriter {
+
+    static final byte[] MAGIC = {'B', 'E', 'A', 'S', 'T', 'B', 'T', 'L'};
+    static final int VERSION = 1;
+
+    static final byte END_OF_TREES = 0;
+    static final byte TREE_RECORD = 1;
+
+    static final byte HEIGHTS = 0;
+    static final byte LENGTHS = 1;
+
+    static final byte FULL = 0;
+    static final byte DELTA = 1;
+
+    static final byte NODE_TRAIT = 0;
+    static final byte BRANCH_TRAIT = 1;
+
+    static final byte DOUBLE = 0;
+    static final byte INTEGER = 1;
+    static final byte DOUBLE_ARRAY = 2;
+    static final byte INTEGER_ARRAY = 3;
+    static final byte STRING = 4;
+
+    /**
+     * Writes the header and taxon table.
+     *
+     * @param stream   the output stream (this will be buffered)
+     * @param taxonIds the taxon labels in the order they are numbered in the file
+     */
+    public BinaryTreeWriter(OutputStream stream, List<String> taxonIds) throws IOException {
+        this(stream, taxonIds, -1);
+    }
+
+    /**
+     * Writes the header and taxon table.
+     *
+     * @param stream        the output stream (this will be buffered)
+     * @param taxonIds      the taxon labels in the order they are numbered in the file
+     * @param decimalPlaces if not negative then branch lengths rounded to this number of decimal places
+     *                      are written instead of node heights (as the dp option of a NEXUS tree log)
+     */
+    public BinaryTreeWriter(OutputStream stream, List<String> taxonIds, int decimalPlaces) throws IOException {
+        this.stream = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        this.decimalPlaces = decimalPlaces;
+
+        this.stream.write(MAGIC);
+        this.stream.writeInt(VERSION);
+        this.stream.writeInt(taxonIds.size());
+        int k = 0;
+        for (String id : taxonIds) {
+            writeString(this.stream, id);
+            idMap.put(id, k);
+            k++;
+        }
+    }
+
+    /**
+     * Writes a tree.
+     *
+     * @param name               the name of the tree (e.g., STATE_1000)
+     * @param tree               the tree
+     * @param attributeLabels    labels of attributes of the whole tree (may be null)
+     * @param attributeValues    values of attributes of the whole tree (may be null)
+     * @param branchRates        if not null then branch lengths are written in substitutions
+     * @param treeTraitProviders the providers of node and branch traits to write (may be null)
+     */
+    public void writeTree(String name, Tree tree, String[] attributeLabels, String[] attributeValues,
+                          BranchRates branchRates, TreeTraitProvider[] treeTraitProviders) throws IOException {
+        writeRecord(encodeTree(name, tree, attributeLabels, attributeValues, branchRates, treeTraitProviders));
+    }
+
+    /**
+     * Encodes a tree record without writing it. The records are encoded relative to the previously
+     * encoded tree so they must be passed to writeRecord in the same order.
+     *
+     * @return the record
+     */
+    public byte[] encodeTree(String name, Tree tree, String[] attributeLabels, String[] attributeValues,
+                             BranchRates branchRates, TreeTraitProvider[] treeTraitProviders) throws IOException {
+
+        buffer.reset();
+
+        final boolean lengths = branchRates != null || decimalPlaces >= 0;
+        final int nodeCount = tree.getNodeCount();
+        final int tipCount = tree.getExternalNodeCount();
+        final int root = tree.getRoot().getNumber();
+
+        out.writeByte(TREE_RECORD);
+        writeString(out, name);
+
+        int attributeCount = (attributeLabels == null ? 0 : attributeLabels.length);
+        out.writeInt(attributeCount);
+        for (int i = 0; i < attributeCount; i++) {
+            writeString(out, attributeLabels[i]);
+            writeString(out, attributeValues[i]);
+        }
+
+        out.writeByte(lengths ? LENGTHS : HEIGHTS);
+        out.writeInt(nodeCount);
+        out.writeInt(tipCount);
+        out.writeInt(root);
+
+        int[] tips = new int[tipCount];
+        for (int i = 0; i < tipCount; i++) {
+            Integer index = idMap.get(tree.getTaxonId(i));
+            if (index == null) {
+                throw new IllegalArgumentException("Taxon, " + tree.getTaxonId(i) + ", is not in the taxon table");
+            }
+            tips[i] = index;
+        }
+        writeIntArray(tips, lastTips);
+        lastTips = tips;
+
+        int[] parents = new int[nodeCount];
+        double[] values = new double[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            NodeRef node = tree.getNode(i);
+            NodeRef parent = tree.getParent(node);
+            parents[i] = (parent == null ? -1 : parent.getNumber());
+            if (!lengths) {
+                values[i] = tree.getNodeHeight(node);
+            } else if (parent != null) {
+                double length = tree.getNodeHeight(parent) - tree.getNodeHeight(node);
+                if (branchRates != null) {
+                    length *= branchRates.getBranchRate(tree, node);
+                }
+                values[i] = (decimalPlaces >= 0 ? round(length) : length);
+            }
+        }
+        writeIntArray(parents, lastParents);
+        lastParents = parents;
+
+        writeChildOrder(tree);
+
+        writeDoubleArray(values, lastValues);
+        lastValues = values;
+
+        writeTraits(tree, treeTraitProviders);
+
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Writes a record returned by encodeTree.
+     */
+    public void writeRecord(byte[] record) throws IOException {
+        stream.write(record);
+    }
+
+    /**
+     * Rounds in the same way as the NumberFormat used for the dp option of a NEXUS tree log.
+     */
+    private double round(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return value;
+        }
+        return new BigDecimal(value).setScale(decimalPlaces, RoundingMode.HALF_EVEN).doubleValue();
+    }
+
+    /**
+     * The importer attaches the children of each node in increasing node number. A bit is set for each
+     * node whose children are in a different order and for polytomies the order is written explicitly.
+     */
+    private void writeChildOrder(Tree tree) throws IOException {
+        final int nodeCount = tree.getNodeCount();
+        BitSet reordered = new BitSet(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            NodeRef node = tree.getNode(i);
+            for (int j = 1; j < tree.getChildCount(node); j++) {
+                if (tree.getChild(node, j).getNumber() < tree.getChild(node, j - 1).getNumber()) {
+                    reordered.set(i);
+                    break;
+                }
+            }
+        }
+        writeBits(reordered, nodeCount);
+        for (int i = reordered.nextSetBit(0); i >= 0; i = reordered.nextSetBit(i + 1)) {
+            NodeRef node = tree.getNode(i);
+            int childCount = tree.getChildCount(node);
+            if (childCount > 2) {
+                for (int j = 0; j < childCount; j++) {
+                    out.writeInt(tree.getChild(node, j).getNumber());
+                }
+            }
+        }
+    }
+
+    private void writeTraits(Tree tree, TreeTraitProvider[] treeTraitProviders) throws IOException {
+        List<TreeTrait<?>> traits = new ArrayList<TreeTrait<?>>();
+        if (treeTraitProviders != null) {
+            for (TreeTraitProvider ttp : treeTraitProviders) {
+                for (TreeTrait<?> trait : ttp.getTreeTraits()) {
+                    if (trait.getLoggable() && trait.getIntent() != TreeTrait.Intent.WHOLE_TREE) {
+                        traits.add(trait);
+                    }
+                }
+            }
+        }
+
+        final int nodeCount = tree.getNodeCount();
+        final NodeRef root = tree.getRoot();
+
+        out.writeInt(traits.size());
+        for (TreeTrait<?> trait : traits) {
+            final boolean branch = trait.getIntent() == TreeTrait.Intent.BRANCH;
+            final byte type = getTraitType(trait);
+
+            Object[] values = new Object[nodeCount];
+            BitSet present = new BitSet(nodeCount);
+            for (int i = 0; i < nodeCount; i++) {
+                NodeRef node = tree.getNode(i);
+                if (branch && node == root) {
+                    // branch traits are not logged for the root
+                    continue;
+                }
+                Object value = (type == STRING ? trait.getTraitString(tree, node) : trait.getTrait(tree, node));
+                if (value != null && !(value instanceof double[] && ((double[]) value).length == 0) &&
+                        !(value instanceof int[] && ((int[]) value).length == 0)) {
+                    values[i] = value;
+                    present.set(i);
+                }
+            }
+
+            writeString(out, trait.getTraitName());
+            out.writeByte(branch ? BRANCH_TRAIT : NODE_TRAIT);
+            out.writeByte(type);
+            writeBits(present, nodeCount);
+
+            for (int i = present.nextSetBit(0); i >= 0; i = present.nextSetBit(i + 1)) {
+                switch (type) {
+                    case DOUBLE:
+                        out.writeDouble((Double) values[i]);
+                        break;
+                    case INTEGER:
+                        out.writeInt((Integer) values[i]);
+                        break;
+                    case DOUBLE_ARRAY: {
+                        double[] array = (double[]) values[i];
+                        out.writeInt(array.length);
+                        for (double x : array) {
+                            out.writeDouble(x);
+                        }
+                        break;
+                    }
+                    case INTEGER_ARRAY: {
+                        int[] array = (int[]) values[i];
+                        out.writeInt(array.length);
+                        for (int x : array) {
+                            out.writeInt(x);
+                        }
+                        break;
+                    }
+                    default:
+                        writeString(out, (String) values[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Traits are only written as binary values if they are one of the standard numerical trait types
+     * and format their values in the standard way (so the importer can recreate the NEXUS string).
+     */
+    private byte getTraitType(TreeTrait<?> trait) {
+        Byte type = traitTypes.get(trait.getClass());
+        if (type == null) {
+            type = STRING;
+            if (trait instanceof TreeTrait.D && usesDefaultFormat(trait, TreeTrait.D.class)) {
+                type = DOUBLE;
+            } else if (trait instanceof TreeTrait.I && usesDefaultFormat(trait, TreeTrait.I.class)) {
+                type = INTEGER;
+            } else if (trait instanceof TreeTrait.DA && usesDefaultFormat(trait, TreeTrait.DA.class)) {
+                type = DOUBLE_ARRAY;
+            } else if (trait instanceof TreeTrait.IA && usesDefaultFormat(trait, TreeTrait.IA.class)) {
+                type = INTEGER_ARRAY;
+            }
+            traitTypes.put(trait.getClass(), type);
+        }
+        return type;
+    }
+
+    private static boolean usesDefaultFormat(TreeTrait<?> trait, Class<?> baseClass) {
+        try {
+            return trait.getClass().getMethod("getTraitString", Tree.class, NodeRef.class).getDeclaringClass() == baseClass;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private void writeIntArray(int[] values, int[] previous) throws IOException {
+        int changed = countChanges(values, previous);
+        if (changed >= 0 && 4 + changed * 8 < values.length * 4) {
+            out.writeByte(DELTA);
+            out.writeInt(changed);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != previous[i]) {
+                    out.writeInt(i);
+                    out.writeInt(values[i]);
+                }
+            }
+        } else {
+            out.writeByte(FULL);
+            for (int value : values) {
+                out.writeInt(value);
+            }
+        }
+    }
+
+    private void writeDoubleArray(double[] values, double[] previous) throws IOException {
+        int changed = -1;
+        if (previous != null && previous.length == values.length) {
+            changed = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (Double.doubleToLongBits(values[i]) != Double.doubleToLongBits(previous[i])) {
+                    changed++;
+                }
+            }
+        }
+        if (changed >= 0 && 4 + changed * 12 < values.length * 8) {
+            out.writeByte(DELTA);
+            out.writeInt(changed);
+            for (int i = 0; i < values.length; i++) {
+                if (Double.doubleToLongBits(values[i]) != Double.doubleToLongBits(previous[i])) {
+                    out.writeInt(i);
+                    out.writeDouble(values[i]);
+                }
+            }
+        } else {
+            out.writeByte(FULL);
+            for (double value : values) {
+                out.writeDouble(value);
+            }
+        }
+    }
+
+    private static int countChanges(int[] values, int[] previous) {
+        if (previous == null || previous.length != values.length) {
+            return -1;
+        }
+        int changed = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != previous[i]) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    private void writeBits(BitSet bits, int length) throws IOException {
+        byte[] bytes = new byte[(length + 7) / 8];
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            bytes[i >> 3] |= (byte) (1 << (i & 7));
+        }
+        out.write(bytes);
+    }
+
+    static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public void flush() throws IOException {
+        stream.flush();
+    }
+
+    /**
+     * Writes the end marker and closes the stream.
+     */
+    public void close() throws IOException {
+        stream.writeByte(END_OF_TREES);
+        stream.close();
+    }
+
+    private final DataOutputStream stream;
+    private final int decimalPlaces;
+
+    // the record being encoded
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(buffer);
+
+    private final Map<String, Integer> idMap = new HashMap<String, Integer>();
+    private final Map<Class<?>, Byte> traitTypes = new HashMap<Class<?>, Byte>();
+
+    private int[] lastTips = null;
+    private int[] lastParents = null;
+    private double[] lastValues = null;
+}
@@ -0,0 +1,1149 @@
+/*
+ * MappedNexusImporter.java
+ *
+ * Copyright (c) 2002-2023 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.evolution.io;
+
+import dr.evolution.tree.ArrayTree;
+import dr.evolution.tree.Tree;
+import dr.evolution.util.Taxon;
+import dr.evolution.util.TaxonList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reads the trees of a NEXUS tree file (such as a BEAST tree log) by memory mapping the file. The
+ * calling thread finds the extent of each TREE command and the trees are parsed by a pool of threads
+ * into ArrayTrees while the caller works through the earlier ones. The trees are returned in file order.
+ *
+ * The trees have the same taxon numbering, node numbering, heights and attributes as those read by
+ * NexusImporter from a file with a translate table. Without one, the taxa are numbered in the order of
+ * the taxa block or, failing that, of the first tree and all trees use the same numbering. Node attributes
+ * are only parsed from the meta comments when they are first asked for and can be restricted to a set of
+ * attribute names (an empty set drops them all without decoding them).
+ *
+ * The number of threads defaults to the number of processors and can be set with the
+ * beast.nexus.threads property.
+ */
+public class MappedNexusImporter implements TreeImporter {
+
+    public static final String THREADS_PROPERTY = "beast.nexus.threads";
+
+    private static final int WINDOW_SIZE = 1 << 26;
+    private static final int TREES_PER_THREAD = 4;
+
+    public MappedNexusImporter(File file) throws IOException {
+        this(file, getDefaultThreadCount(), null);
+    }
+
+    /**
+     * @param file           the NEXUS file
+     * @param threadCount    the number of threads parsing trees (1 parses them on the calling thread)
+     * @param attributeNames the node attributes to keep or null to keep them all
+     */
+    public MappedNexusImporter(File file, int threadCount, Set<String> attributeNames) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.fileSize = channel.size();
+        this.threadCount = threadCount;
+        this.attributeNames = attributeNames;
+        this.keepAnnotations = attributeNames == null || !attributeNames.isEmpty();
+    }
+
+    public static int getDefaultThreadCount() {
+        String threads = System.getProperty(THREADS_PROPERTY);
+        if (threads != null) {
+            try {
+                return Math.max(1, Integer.parseInt(threads.trim()));
+            } catch (NumberFormatException nfe) {
+                // use the default
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    public boolean hasTree() throws IOException, Importer.ImportException {
+        readHeader();
+        fillQueue();
+        return !pending.isEmpty();
+    }
+
+    public Tree importNextTree() throws IOException, Importer.ImportException {
+        if (!hasTree()) {
+            return null;
+        }
+        FutureTask<Tree> task = pending.removeFirst();
+        try {
+            return task.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new Importer.ImportException("Interrupted while reading trees");
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof Importer.ImportException) {
+                throw (Importer.ImportException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * The trees are numbered by the file's own translate table or taxa block so the taxon list
+     * is not used.
+     */
+    public Tree importTree(TaxonList taxonList) throws IOException, Importer.ImportException {
+        return importNextTree();
+    }
+
+    public Tree[] importTrees(TaxonList taxonList) throws IOException, Importer.ImportException {
+        List<Tree> trees = new ArrayList<Tree>();
+        while (hasTree()) {
+            trees.add(importNextTree());
+        }
+        return trees.toArray(new Tree[trees.size()]);
+    }
+
+    /**
+     * Stops the parsing threads and closes the file. This is done automatically when the last tree has been read.
+     */
+    public void close() throws IOException {
+        finished = true;
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        channel.close();
+        file.close();
+    }
+
+    // **************************************************************
+    // Header
+    // **************************************************************
+
+    private void readHeader() throws IOException, Importer.ImportException {
+        if (headerRead) {
+            return;
+        }
+        headerRead = true;
+
+        if (!nextToken().equalsIgnoreCase("#NEXUS")) {
+            throw new Importer.BadFormatException("File does not start with #NEXUS");
+        }
+
+        List<String> taxonLabels = null;
+        List<String> translateKeys = null;
+        List<String> translateLabels = null;
+
+        String token = nextToken();
+        while (token != null) {
+            if (token.equalsIgnoreCase("BEGIN")) {
+                String block = nextToken();
+                skipCommand();
+                if (block.equalsIgnoreCase("TAXA")) {
+                    token = nextToken();
+                    while (token != null && !isEndOfBlock(token)) {
+                        if (token.equalsIgnoreCase("TAXLABELS")) {
+                            taxonLabels = new ArrayList<String>();
+                            token = nextToken();
+                            while (token != null && !token.equals(";")) {
+                                taxonLabels.add(token);
+                                token = nextToken();
+                            }
+                        } else {
+                            skipCommand();
+                        }
+                        token = nextToken();
+                    }
+                    skipCommand();
+                } else if (block.equalsIgnoreCase("TREES")) {
+                    while (true) {
+                        long start = offset;
+                        token = nextToken();
+                        if (token == null || isEndOfBlock(token)) {
+                            break;
+                        } else if (token.equalsIgnoreCase("TRANSLATE")) {
+                            translateKeys = new ArrayList<String>();
+                            translateLabels = new ArrayList<String>();
+                            do {
+                                String key = nextToken();
+                                String label = nextToken();
+                                if (key == null || label == null || label.equals(",") || label.equals(";")) {
+                                    throw new Importer.BadFormatException("Missing taxon label in TRANSLATE command of TREES block");
+                                }
+                                translateKeys.add(key);
+                                translateLabels.add(label);
+                                token = nextToken();
+                                if (!",".equals(token) && !";".equals(token)) {
+                                    throw new Importer.BadFormatException("Expecting ',' or ';' after taxon label in TRANSLATE command of TREES block");
+                                }
+                            } while (!token.equals(";"));
+                        } else if (token.equalsIgnoreCase("TREE") || token.equalsIgnoreCase("UTREE")) {
+                            offset = start;
+                            setTaxa(taxonLabels, translateKeys, translateLabels);
+                            return;
+                        } else {
+                            skipCommand();
+                        }
+                    }
+                    // a trees block without trees
+                    skipCommand();
+                } else {
+                    token = nextToken();
+                    while (token != null && !isEndOfBlock(token)) {
+                        skipCommand();
+                        token = nextToken();
+                    }
+                    skipCommand();
+                }
+            }
+            token = nextToken();
+        }
+
+        // no trees
+        finished = true;
+    }
+
+    private static boolean isEndOfBlock(String token) {
+        return token.equalsIgnoreCase("END") || token.equalsIgnoreCase("ENDBLOCK");
+    }
+
+    private void setTaxa(List<String> taxonLabels, List<String> translateKeys, List<String> translateLabels) throws Importer.ImportException {
+        Map<String, Taxon> taxonMap = new HashMap<String, Taxon>();
+        if (taxonLabels != null) {
+            for (String label : taxonLabels) {
+                taxonMap.put(label, new Taxon(label));
+            }
+        }
+
+        if (translateKeys != null) {
+            int n = translateKeys.size();
+            taxa = new Taxon[n];
+            keyMap = new HashMap<String, Integer>();
+            int maxKey = -1;
+            for (int i = 0; i < n; i++) {
+                String key = translateKeys.get(i);
+                String label = translateLabels.get(i);
+                Taxon taxon;
+                if (taxonLabels != null) {
+                    taxon = taxonMap.get(label);
+                    if (taxon == null) {
+                        throw new Importer.UnknownTaxonException("Taxon '" + label + "' in TRANSLATE command but not in the TAXA block");
+                    }
+                } else {
+                    taxon = new Taxon(label);
+                }
+
+                int number = i;
+                if (isDigits(key)) {
+                    number = Integer.parseInt(key) - 1;
+                    maxKey = Math.max(maxKey, number + 1);
+                }
+                if (number < 0 || number >= n || taxa[number] != null) {
+                    throw new Importer.BadFormatException("Translation list keys must be unique and numbered from 1 to " + n + ": " + key);
+                }
+                if (keyMap.put(key, number) != null) {
+                    throw new Importer.BadFormatException("Translation list uses the key, " + key + ", more than once.");
+                }
+                taxa[number] = taxon;
+            }
+
+            // most tree logs use numbers as keys so these are looked up without making a string
+            numericKeys = new int[maxKey + 1];
+            Arrays.fill(numericKeys, -1);
+            for (Map.Entry<String, Integer> entry : keyMap.entrySet()) {
+                if (isDigits(entry.getKey()) && entry.getKey().charAt(0) != '0') {
+                    numericKeys[Integer.parseInt(entry.getKey())] = entry.getValue();
+                }
+            }
+        } else if (taxonLabels != null) {
+            taxa = new Taxon[taxonLabels.size()];
+            keyMap = new HashMap<String, Integer>();
+            for (int i = 0; i < taxa.length; i++) {
+                taxa[i] = taxonMap.get(taxonLabels.get(i));
+                keyMap.put(taxonLabels.get(i), i);
+            }
+        } else {
+            // the taxa are numbered in the order they appear in the first tree
+            taxa = null;
+            keyMap = new HashMap<String, Integer>();
+        }
+    }
+
+    private static boolean isDigits(String key) {
+        if (key.length() == 0 || key.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) < '0' || key.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // **************************************************************
+    // Scanning (on the calling thread)
+    // **************************************************************
+
+    private void fillQueue() throws IOException, Importer.ImportException {
+        int lookAhead = threadCount > 1 ? threadCount * TREES_PER_THREAD : 1;
+        while (!finished && pending.size() < lookAhead) {
+            long start = findNextTree();
+            if (start < 0) {
+                finished = true;
+                if (executor != null) {
+                    executor.shutdown();
+                    executor = null;
+                }
+                break;
+            }
+            long end = findEndOfCommand(start);
+            mapWindow(start, end - start);
+
+            final MappedByteBuffer treeBuffer = buffer;
+            final int from = (int) (start - bufferStart);
+            final int to = (int) (end - bufferStart);
+
+            FutureTask<Tree> task = new FutureTask<Tree>(() -> new TreeParser(treeBuffer, from, to).parse());
+
+            if (taxa == null) {
+                // the first tree defines the taxa so is read before any others are started
+                task.run();
+                if (taxa == null) {
+                    // the tree was badly formatted - the exception will be thrown when it is returned
+                    finished = true;
+                }
+            } else if (threadCount > 1) {
+                if (executor == null) {
+                    executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+                        Thread thread = new Thread(runnable, "MappedNexusImporter");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+                executor.execute(task);
+            } else {
+                task.run();
+            }
+            pending.addLast(task);
+        }
+    }
+
+    /**
+     * @return the file offset of the next TREE command or -1 if there are no more
+     */
+    private long findNextTree() throws IOException, Importer.ImportException {
+        while (true) {
+            skipWhiteSpaceAndComments();
+            long start = offset;
+            String token = nextToken();
+            if (token == null || isEndOfBlock(token)) {
+                return -1;
+            }
+            if (token.equalsIgnoreCase("TREE") || token.equalsIgnoreCase("UTREE")) {
+                offset = start;
+                return start;
+            }
+            if (!token.equals(";")) {
+                throw new Importer.BadFormatException("Unknown command '" + token + "' in TREES block");
+            }
+        }
+    }
+
+    /**
+     * @return the file offset after the ';' that ends the command starting at start
+     */
+    private long findEndOfCommand(long start) throws IOException, Importer.ImportException {
+        long i = start;
+        int depth = 0;
+        int quote = 0;
+        while (true) {
+            int ch = byteAt(i);
+            i++;
+            if (ch < 0) {
+                // an unfinished tree at the end of a log that is still being written
+                offset = i;
+                return i - 1;
+            }
+            if (quote != 0) {
+                if (ch == quote) {
+                    quote = 0;
+                }
+            } else if (ch == '[') {
+                depth++;
+            } else if (ch == ']') {
+                depth--;
+            } else if (depth == 0) {
+                if (ch == ';') {
+                    offset = i;
+                    return i;
+                } else if (ch == '\'' || ch == '"') {
+                    quote = ch;
+                }
+            }
+        }
+    }
+
+    private void mapWindow(long start, long length) throws IOException, Importer.ImportException {
+        if (buffer != null && start >= bufferStart && start + length <= bufferStart + buffer.limit()) {
+            return;
+        }
+        long size = Math.min(fileSize - start, Math.max(WINDOW_SIZE, length));
+        if (size > Integer.MAX_VALUE) {
+            throw new Importer.BadFormatException("Tree is too large to read");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        bufferStart = start;
+    }
+
+    private int byteAt(long i) throws IOException, Importer.ImportException {
+        if (i >= fileSize) {
+            return -1;
+        }
+        if (buffer == null || i < bufferStart || i >= bufferStart + buffer.limit()) {
+            mapWindow(i, 1);
+        }
+        return buffer.get((int) (i - bufferStart)) & 0xFF;
+    }
+
+    private void skipWhiteSpaceAndComments() throws IOException, Importer.ImportException {
+        int ch = byteAt(offset);
+        while (ch >= 0) {
+            if (ch == '[') {
+                int depth = 0;
+                do {
+                    if (ch == '[') {
+                        depth++;
+                    } else if (ch == ']') {
+                        depth--;
+                    }
+                    offset++;
+                    ch = byteAt(offset);
+                } while (depth > 0 && ch >= 0);
+            } else if (Character.isWhitespace(ch)) {
+                offset++;
+                ch = byteAt(offset);
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the next header token. Punctuation is returned as a token of its own.
+     */
+    private String nextToken() throws IOException, Importer.ImportException {
+        skipWhiteSpaceAndComments();
+        int ch = byteAt(offset);
+        if (ch < 0) {
+            return null;
+        }
+        if (ch == ';' || ch == ',' || ch == '=') {
+            offset++;
+            return String.valueOf((char) ch);
+        }
+        StringBuilder token = new StringBuilder();
+        if (ch == '\'' || ch == '"') {
+            int quote = ch;
+            offset++;
+            while ((ch = byteAt(offset)) >= 0) {
+                offset++;
+                if (ch == quote) {
+                    if (byteAt(offset) != quote) {
+                        break;
+                    }
+                    offset++;
+                }
+                token.append((char) ch);
+            }
+        } else {
+            while (ch >= 0 && ch != ';' && ch != ',' && ch != '=' && ch != '[' && !Character.isWhitespace(ch)) {
+                token.append((char) ch);
+                offset++;
+                ch = byteAt(offset);
+            }
+        }
+        // the bytes were appended as Latin-1 so re-decode as UTF-8
+        return new String(token.toString().getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+    }
+
+    private void skipCommand() throws IOException, Importer.ImportException {
+        String token = nextToken();
+        while (token != null && !token.equals(";")) {
+            token = nextToken();
+        }
+    }
+
+    // **************************************************************
+    // Tree parsing (on the pool threads)
+    // **************************************************************
+
+    private static final ArrayTree.CommentParser COMMENT_PARSER = (comment, attributes) -> {
+        try {
+            NexusImporter.parseMetaCommentPairs(comment, attributes);
+        } catch (Importer.BadFormatException bfe) {
+            // ignore it
+        }
+    };
+
+    /**
+     * Parses a single TREE command without recursion. Internal nodes are numbered in the order they
+     * are closed, which is the post-order numbering of FlexibleTree.
+     */
+    private class TreeParser {
+
+        TreeParser(MappedByteBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            this.pos = from;
+            this.end = to;
+        }
+
+        Tree parse() throws Importer.ImportException {
+            // the TREE or UTREE keyword
+            while (pos < end && Character.isLetter(peek())) {
+                pos++;
+            }
+            skipWhiteSpace();
+            if (peek() == '*') {
+                pos++;
+            }
+
+            String treeComment = null;
+            skipWhiteSpace();
+            String name = null;
+            while (pos < end && peek() != '=') {
+                if (peek() == '[') {
+                    treeComment = join(treeComment, readComment());
+                } else if (Character.isWhitespace(peek())) {
+                    pos++;
+                } else if (name == null) {
+                    name = readLabel(true);
+                } else {
+                    throw new Importer.BadFormatException("Missing label for tree'" + name + "' or missing '=' in TREE command of TREES block");
+                }
+            }
+            if (pos >= end) {
+                throw new Importer.BadFormatException("Missing label for tree'" + name + "' or missing '=' in TREE command of TREES block");
+            }
+            pos++;
+
+            String specialComment = null;
+            skipWhiteSpace();
+            while (peek() == '[') {
+                specialComment = join(specialComment, readComment());
+                skipWhiteSpace();
+            }
+            if (peek() != '(') {
+                throw new Importer.BadFormatException("Missing tree definition in TREE command of TREES block");
+            }
+
+            readNewick();
+
+            Tree tree = buildTree();
+            tree.setId(name);
+
+            if (specialComment != null) {
+                // only [&R] and [&W weight] are recognised
+                for (String c : specialComment.split(";")) {
+                    if (c.startsWith("W")) {
+                        try {
+                            tree.setAttribute("weight", Float.valueOf(c.substring(2)));
+                        } catch (NumberFormatException | IndexOutOfBoundsException ex) {
+                            // don't fail, ignore
+                        }
+                    }
+                }
+            }
+
+            if (treeComment != null) {
+                try {
+                    NexusImporter.parseMetaCommentPairs(treeComment, tree);
+                } catch (Importer.BadFormatException e) {
+                    // set generic comment attribute
+                    tree.setAttribute("comment", treeComment);
+                }
+            }
+
+            return tree;
+        }
+
+        private void readNewick() throws Importer.ImportException {
+            int[] open = new int[16];
+            int depth = 0;
+
+            while (true) {
+                skipWhiteSpace();
+                int ch = peek();
+                int node;
+                if (ch == '(') {
+                    pos++;
+                    if (depth == open.length) {
+                        open = Arrays.copyOf(open, depth * 2);
+                    }
+                    open[depth++] = childCount;
+                    continue;
+                } else if (ch == ')') {
+                    if (depth == 0) {
+                        throw new Importer.BadFormatException("Unbalanced ')' in tree in TREES block");
+                    }
+                    pos++;
+                    int first = open[--depth];
+                    node = addInternalNode(first);
+                } else if (ch == ',' || ch == ';' || ch < 0) {
+                    throw new Importer.BadFormatException("Missing taxon label in tree in TREES block");
+                } else {
+                    node = addExternalNode(readTaxonNumber());
+                }
+
+                readNodeSuffix(node);
+
+                skipWhiteSpace();
+                ch = peek();
+                if (ch == ',') {
+                    if (depth == 0) {
+                        throw new Importer.BadFormatException("Missing opening '(' in tree in TREES block");
+                    }
+                    pos++;
+                } else if (ch == ')') {
+                    // closed on the next iteration
+                } else if (depth == 0) {
+                    if (node >= 0) {
+                        throw new Importer.BadFormatException("Missing tree definition in TREE command of TREES block");
+                    }
+                    return;
+                } else {
+                    throw new Importer.BadFormatException("Missing closing ')' in tree in TREES block");
+                }
+            }
+        }
+
+        /**
+         * Reads the label, meta comments and branch length that follow a node.
+         */
+        private void readNodeSuffix(int node) throws Importer.ImportException {
+            String nodeComment = null;
+            String branchComment = null;
+            String label = null;
+            double length = 0.0;
+
+            while (pos < end) {
+                int ch = peek();
+                if (ch == '[') {
+                    if (keepAnnotations) {
+                        nodeComment = join(nodeComment, readComment());
+                    } else {
+                        skipComment();
+                    }
+                } else if (Character.isWhitespace(ch)) {
+                    pos++;
+                } else if (ch == ':' ) {
+                    pos++;
+                    while (pos < end) {
+                        ch = peek();
+                        if (ch == '[') {
+                            if (keepAnnotations) {
+                                branchComment = join(branchComment, readComment());
+                            } else {
+                                skipComment();
+                            }
+                        } else if (Character.isWhitespace(ch)) {
+                            pos++;
+                        } else if (ch == ',' || ch == ')' || ch == ';') {
+                            break;
+                        } else {
+                            length = readDouble();
+                        }
+                    }
+                    break;
+                } else if (ch == ',' || ch == ')' || ch == ';') {
+                    break;
+                } else if (node < 0 && label == null) {
+                    label = readLabel(false);
+                } else {
+                    throw new Importer.BadFormatException("Unexpected character '" + (char) ch + "' in tree in TREES block");
+                }
+            }
+
+            if (node >= 0) {
+                tipLengths[node] = length;
+            } else {
+                internalLengths[-node - 1] = length;
+            }
+
+            if (keepAnnotations && (label != null || nodeComment != null || branchComment != null)) {
+                String[] annotation = new String[]{label, nodeComment, branchComment};
+                if (node >= 0) {
+                    if (tipAnnotations == null || node >= tipAnnotations.length) {
+                        tipAnnotations = tipAnnotations == null ? new String[tipParents.length][] : Arrays.copyOf(tipAnnotations, tipParents.length);
+                    }
+                    tipAnnotations[node] = annotation;
+                } else {
+                    if (internalAnnotations == null || -node - 1 >= internalAnnotations.length) {
+                        internalAnnotations = internalAnnotations == null ? new String[internalParents.length][] : Arrays.copyOf(internalAnnotations, internalParents.length);
+                    }
+                    internalAnnotations[-node - 1] = annotation;
+                }
+                annotated = true;
+            }
+        }
+
+        private int addExternalNode(int number) throws Importer.ImportException {
+            if (number >= tipParents.length) {
+                tipParents = grow(tipParents, number + 1);
+                tipLengths = Arrays.copyOf(tipLengths, tipParents.length);
+            }
+            if (tipParents[number] != UNSET) {
+                throw new Importer.BadFormatException("Taxon number " + (number + 1) + " appears more than once in tree");
+            }
+            tipParents[number] = ROOT;
+            tipCount++;
+            addChild(number);
+            return number;
+        }
+
+        /**
+         * @return the internal node as -(index + 1)
+         */
+        private int addInternalNode(int first) {
+            int index = internalCount++;
+            if (index >= internalParents.length) {
+                internalParents = grow(internalParents, index + 1);
+                internalLengths = Arrays.copyOf(internalLengths, internalParents.length);
+                childStarts = Arrays.copyOf(childStarts, internalParents.length + 1);
+            }
+            internalParents[index] = ROOT;
+
+            // the children of internal nodes are stored in the order the nodes are closed
+            childStarts[index] = childListSize;
+            for (int i = first; i < childCount; i++) {
+                int child = children[i];
+                if (child >= 0) {
+                    tipParents[child] = index;
+                } else {
+                    internalParents[-child - 1] = index;
+                }
+                if (childListSize == childList.length) {
+                    childList = Arrays.copyOf(childList, childListSize * 2);
+                }
+                childList[childListSize++] = child;
+            }
+            childStarts[index + 1] = childListSize;
+            childCount = first;
+
+            int node = -index - 1;
+            addChild(node);
+            return node;
+        }
+
+        private void addChild(int node) {
+            if (childCount == children.length) {
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            children[childCount++] = node;
+        }
+
+        private Tree buildTree() throws Importer.ImportException {
+            if (taxa == null) {
+                // the first tree - the taxa are numbered in the order they appeared
+                Taxon[] firstTaxa = new Taxon[keyMap.size()];
+                for (Map.Entry<String, Integer> entry : keyMap.entrySet()) {
+                    firstTaxa[entry.getValue()] = new Taxon(entry.getKey());
+                }
+                taxa = firstTaxa;
+            }
+            if (tipCount != taxa.length) {
+                throw new Importer.BadFormatException("Tree has " + tipCount + " taxa but " + taxa.length + " were expected");
+            }
+
+            int nodeCount = tipCount + internalCount;
+            int[] parents = new int[nodeCount];
+            double[] lengths = new double[nodeCount];
+            int[] childOffsets = new int[nodeCount + 1];
+            int[] nodeChildren = new int[childListSize];
+
+            for (int i = 0; i < tipCount; i++) {
+                parents[i] = tipCount + tipParents[i];
+                lengths[i] = tipLengths[i];
+            }
+            for (int i = 0; i < internalCount; i++) {
+                int node = tipCount + i;
+                parents[node] = internalParents[i] == ROOT ? -1 : tipCount + internalParents[i];
+                lengths[node] = internalLengths[i];
+                childOffsets[node] = childStarts[i];
+            }
+            childOffsets[nodeCount] = childListSize;
+            for (int i = 0; i < childListSize; i++) {
+                nodeChildren[i] = toNodeNumber(childList[i]);
+            }
+
+            // the root is closed last
+            int root = nodeCount - 1;
+            if (parents[root] != -1) {
+                throw new Importer.BadFormatException("Missing closing ')' in tree in TREES block");
+            }
+            // the root branch length is ignored as in NexusImporter
+            lengths[root] = 0.0;
+
+            // heights from the branch lengths as in FlexibleTree (parents always have higher numbers)
+            double[] heights = new double[nodeCount];
+            double maxDepth = 0.0;
+            for (int i = nodeCount - 2; i >= 0; i--) {
+                double depth = heights[parents[i]];
+                if (lengths[i] > 0.0) {
+                    depth += lengths[i];
+                }
+                heights[i] = depth;
+                if (i < tipCount && depth > maxDepth) {
+                    maxDepth = depth;
+                }
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                heights[i] = maxDepth - heights[i];
+            }
+
+            ArrayTree tree = new ArrayTree(taxa, parents, childOffsets, nodeChildren, heights, lengths);
+
+            if (annotated) {
+                String[] labels = new String[nodeCount];
+                String[][] comments = new String[nodeCount][];
+                for (int node = 0; node < nodeCount; node++) {
+                    String[][] nodeAnnotations = node < tipCount ? tipAnnotations : internalAnnotations;
+                    int index = node < tipCount ? node : node - tipCount;
+                    if (nodeAnnotations == null || index >= nodeAnnotations.length || nodeAnnotations[index] == null) {
+                        continue;
+                    }
+                    String[] annotation = nodeAnnotations[index];
+                    labels[node] = annotation[0];
+                    if (annotation[1] != null || annotation[2] != null) {
+                        comments[node] = annotation[2] == null ? new String[]{annotation[1]} :
+                                (annotation[1] == null ? new String[]{annotation[2]} : new String[]{annotation[1], annotation[2]});
+                    }
+                }
+                tree.setNodeAnnotations(labels, comments, attributeNames, COMMENT_PARSER);
+            }
+
+            return tree;
+        }
+
+        private int toNodeNumber(int node) {
+            return node >= 0 ? node : tipCount - node - 1;
+        }
+
+        private int peek() {
+            return pos < end ? buffer.get(pos) & 0xFF : -1;
+        }
+
+        private void skipWhiteSpace() {
+            while (pos < end && Character.isWhitespace(buffer.get(pos) & 0xFF)) {
+                pos++;
+            }
+        }
+
+        private void skipComment() {
+            int depth = 0;
+            do {
+                int ch = buffer.get(pos++);
+                if (ch == '[') {
+                    depth++;
+                } else if (ch == ']') {
+                    depth--;
+                }
+            } while (depth > 0 && pos < end);
+        }
+
+        /**
+         * @return the contents of a meta comment ([&...]) without the '&' or null for any other comment
+         */
+        private String readComment() {
+            int start = pos;
+            skipComment();
+            if (pos - start > 2 && buffer.get(start + 1) == '&') {
+                return decode(start + 2, pos - 1);
+            }
+            return null;
+        }
+
+        private String join(String comment, String next) {
+            if (next == null) {
+                return comment;
+            }
+            // consecutive meta comments are combined as in Importer
+            return comment == null ? next : comment + ";" + next;
+        }
+
+        /**
+         * Reads a taxon or node label which may be quoted.
+         */
+        private String readLabel(boolean isTreeName) throws Importer.ImportException {
+            int ch = peek();
+            if (ch == '\'' || ch == '"') {
+                StringBuilder label = new StringBuilder();
+                pos++;
+                int start = pos;
+                while (true) {
+                    if (pos >= end) {
+                        throw new Importer.BadFormatException("Missing closing quote in tree in TREES block");
+                    }
+                    if ((buffer.get(pos) & 0xFF) == ch) {
+                        label.append(decode(start, pos));
+                        pos++;
+                        if (peek() != ch) {
+                            break;
+                        }
+                        start = pos;
+                        pos++;
+                    } else {
+                        pos++;
+                    }
+                }
+                // compress multiple spaces into one as in Importer
+                return label.toString().replaceAll("\\s+", " ");
+            }
+
+            int start = pos;
+            while (pos < end) {
+                ch = buffer.get(pos) & 0xFF;
+                if (ch == '[' || Character.isWhitespace(ch) ||
+                        (isTreeName ? ch == '=' : (ch == ':' || ch == ',' || ch == '(' || ch == ')' || ch == ';'))) {
+                    break;
+                }
+                pos++;
+            }
+            if (pos == start) {
+                throw new Importer.BadFormatException("Missing taxon label in tree in TREES block");
+            }
+
+            return decode(start, pos);
+        }
+
+        /**
+         * Reads a taxon label and returns the taxon number.
+         */
+        private int readTaxonNumber() throws Importer.ImportException {
+            if (numericKeys != null) {
+                // look up numerical translate table keys without making a string
+                int key = 0;
+                int i = pos;
+                while (i < end && i - pos < 10) {
+                    int digit = buffer.get(i) - '0';
+                    if (digit < 0 || digit > 9) {
+                        break;
+                    }
+                    key = key * 10 + digit;
+                    i++;
+                }
+                int ch = i < end ? buffer.get(i) & 0xFF : ';';
+                if (i > pos && buffer.get(pos) != '0' && key < numericKeys.length && numericKeys[key] >= 0 &&
+                        (ch == ':' || ch == ',' || ch == ')' || ch == ';' || ch == '[' || Character.isWhitespace(ch))) {
+                    pos = i;
+                    return numericKeys[key];
+                }
+            }
+
+            String key = readLabel(false);
+            Integer number = keyMap.get(key);
+            if (number == null) {
+                if (taxa != null) {
+                    throw new Importer.UnknownTaxonException("Taxon in tree, '" + key + "' is unknown");
+                }
+                number = keyMap.size();
+                keyMap.put(key, number);
+            }
+            return number;
+        }
+
+        private double readDouble() throws Importer.ImportException {
+            int start = pos;
+            while (pos < end) {
+                int ch = buffer.get(pos) & 0xFF;
+                if (ch == ',' || ch == ')' || ch == ';' || ch == '[' || Character.isWhitespace(ch)) {
+                    break;
+                }
+                pos++;
+            }
+            double value = parseDouble(buffer, start, pos);
+            if (Double.isNaN(value) && !decode(start, pos).equalsIgnoreCase("NaN")) {
+                throw new Importer.BadFormatException("Number format error for branch length: " + decode(start, pos));
+            }
+            return value;
+        }
+
+        private String decode(int from, int to) {
+            byte[] bytes = new byte[to - from];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(from + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private final MappedByteBuffer buffer;
+        private int pos;
+        private final int end;
+
+        private int[] children = new int[64];
+        private int childCount = 0;
+
+        private int tipCount = 0;
+        private int[] tipParents = grow(new int[0], taxa != null ? taxa.length : 64);
+        private double[] tipLengths = new double[tipParents.length];
+
+        private int internalCount = 0;
+        private int[] internalParents = new int[tipParents.length];
+        private double[] internalLengths = new double[tipParents.length];
+        private int[] childStarts = new int[tipParents.length + 1];
+
+        private int[] childList = new int[tipParents.length * 2];
+        private int childListSize = 0;
+
+        private boolean annotated = false;
+        private String[][] tipAnnotations = null;
+        private String[][] internalAnnotations = null;
+    }
+
+    private static final int UNSET = -2;
+    private static final int ROOT = -1;
+
+    private static int[] grow(int[] array, int minLength) {
+        int length = Math.max(minLength, array.length * 2);
+        int[] grown = Arrays.copyOf(array, length);
+        Arrays.fill(grown, array.length, length, UNSET);
+        return grown;
+    }
+
+    /**
+     * Parses a decimal number. Numbers with up to 15 significant digits and small exponents (which
+     * includes most branch lengths) are converted exactly without making a string.
+     */
+    static double parseDouble(java.nio.ByteBuffer buffer, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean point = false;
+        boolean any = false;
+        for (; i < to; i++) {
+            int ch = buffer.get(i);
+            if (ch >= '0' && ch <= '9') {
+                any = true;
+                if (mantissa != 0 || ch != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (ch - '0');
+                if (point) {
+                    exponent--;
+                }
+                if (digits > 15) {
+                    break;
+                }
+            } else if (ch == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (any && i < to && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+            int j = i + 1;
+            boolean negativeExponent = false;
+            if (j < to && (buffer.get(j) == '-' || buffer.get(j) == '+')) {
+                negativeExponent = buffer.get(j) == '-';
+                j++;
+            }
+            int e = 0;
+            int start = j;
+            for (; j < to && j - start < 4; j++) {
+                int ch = buffer.get(j);
+                if (ch < '0' || ch > '9') {
+                    break;
+                }
+                e = e * 10 + (ch - '0');
+            }
+            if (j > start) {
+                exponent += negativeExponent ? -e : e;
+                i = j;
+            }
+        }
+
+        if (any && i == to && digits <= 15 && exponent >= -22 && exponent <= 22) {
+            // both the mantissa and the power of ten are exact doubles so the result is correctly rounded
+            double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -value : value;
+        }
+
+        byte[] bytes = new byte[to - from];
+        for (int k = 0; k < bytes.length; k++) {
+            bytes[k] = buffer.get(from + k);
+        }
+        try {
+            return Double.parseDouble(new String(bytes, StandardCharsets.ISO_8859_1));
+        } catch (NumberFormatException nfe) {
+            return Double.NaN;
+        }
+    }
+
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int threadCount;
+    private final Set<String> attributeNames;
+    private final boolean keepAnnotations;
+
+    private boolean headerRead = false;
+    private boolean finished = false;
+    private long offset = 0;
+
+    private MappedByteBuffer buffer = null;
+    private long bufferStart = 0;
+
+    private Taxon[] taxa = null;
+    private Map<String, Integer> keyMap = null;
+    private int[] numericKeys = null;
+
+    private ExecutorService executor = null;
+    private final Deque<FutureTask<Tree>> pending = new ArrayDeque<FutureTask<Tree>>();
+}
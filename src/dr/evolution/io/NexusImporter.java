@@ -1318,7 +1318,7 @@ public class NexusImporter extends Importer implements SequenceImporter, TreeImp
         return dateArray;
     }
 
-    static void parseMetaCommentPairs(String meta, Attributable item) throws Importer.BadFormatException {
+    public static void parseMetaCommentPairs(String meta, Attributable item) throws Importer.BadFormatException {
         if (meta.startsWith("B ")) {
             // a MrBayes annotation
             String[] parts = meta.split(" ");
@@ -28,11 +28,10 @@ package dr.evolution.io;
 import dr.evolution.tree.Tree;
 import dr.util.Identifiable;
 
-import java.io.BufferedReader;
-import java.io.EOFException;
-import java.io.IOException;
-import java.io.Reader;
+import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 
 /**
  * @author Andrew Rambaut
@@ -122,21 +121,7 @@ public class TreeTrace implements Identifiable {
 
         if (line.toUpperCase().startsWith("#NEXUS")) {
             NexusImporter importer = new NexusImporter(reader);
-            Tree[] trees = importer.importTrees(null);
-
-            if (trees.length < 2) {
-                throw new Importer.ImportException("Less than two trees in the trace file");
-            }
-
-            String id1 = trees[0].getId();
-            String id2 = trees[1].getId();
-
-            minState = getStateNumber(id1);
-            stepSize = getStateNumber(id2) - minState;
-
-            for (Tree tree : trees) {
-                trace.add(tree);
-            }
+            return createTreeTrace(importer.importTrees(null));
         } else {
             NewickImporter importer = new NewickImporter(reader);
 
@@ -179,6 +164,50 @@ public class TreeTrace implements Identifiable {
         return trace;
     }
 
+    /**
+     * Loads the trace of trees from a file. NEXUS files are read with a MappedNexusImporter
+     * keeping only the node attributes used by TreeTraceAnalysis.
+     *
+     * @param file the file to load the trees from
+     * @return the TreeTrace
+     * @throws dr.evolution.io.Importer.ImportException
+     *                             thrown when tree file is not correctly formatted
+     * @throws java.io.IOException if general I/O error occurs
+     */
+    public static TreeTrace loadTreeTrace(File file) throws IOException, Importer.ImportException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        String line = reader.readLine();
+        if (line == null || !line.toUpperCase().startsWith("#NEXUS")) {
+            reader.close();
+            return loadTreeTrace(new FileReader(file));
+        }
+        reader.close();
+
+        MappedNexusImporter importer = new MappedNexusImporter(file, MappedNexusImporter.getDefaultThreadCount(),
+                new HashSet<String>(Arrays.asList("changed", "rate")));
+        return createTreeTrace(importer.importTrees(null));
+    }
+
+    private static TreeTrace createTreeTrace(Tree[] trees) throws Importer.ImportException {
+        if (trees.length < 2) {
+            throw new Importer.ImportException("Less than two trees in the trace file");
+        }
+
+        TreeTrace trace = new TreeTrace();
+
+        String id1 = trees[0].getId();
+        String id2 = trees[1].getId();
+
+        int minState = getStateNumber(id1);
+        trace.setMinimumState(minState);
+        trace.setStepSize(getStateNumber(id2) - minState);
+
+        for (Tree tree : trees) {
+            trace.add(tree);
+        }
+        return trace;
+    }
+
     private static int getStateNumber(String id) throws Importer.ImportException {
         try {
             if (id.indexOf('_') != -1) { // probably BEAST tree file
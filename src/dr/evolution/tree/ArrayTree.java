@@ -0,0 +1,362 @@
+/*
+ * ArrayTree.java
+ *
+ * Copyright (c) 2002-2023 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.evolution.tree;
+
+import dr.evolution.util.Taxon;
+import dr.util.Attributable;
+
+import java.util.*;
+
+/**
+ * A compact, read-only tree held in arrays indexed by node number. External nodes are numbered
+ * 0 to n-1 and internal nodes n to 2n-2 (or fewer for polytomies) with the root last.
+ *
+ * Node attributes are kept as the unparsed meta comments of each node and are only parsed when the
+ * attributes of that node are first requested. An optional set of attribute names restricts which
+ * attributes are kept.
+ */
+public class ArrayTree implements Tree {
+
+    /**
+     * Parses a meta comment into attributes (see NexusImporter.parseMetaCommentPairs).
+     */
+    public interface CommentParser {
+        void parse(String comment, Attributable attributes);
+    }
+
+    /**
+     * @param taxa         the taxa of the external nodes in node number order
+     * @param parents      the parent of each node (-1 for the root)
+     * @param childOffsets the children of node i are childList[childOffsets[i]] to childList[childOffsets[i + 1] - 1]
+     * @param childList    the children of each node in order
+     * @param heights      the node heights
+     * @param lengths      the branch lengths
+     */
+    public ArrayTree(Taxon[] taxa, int[] parents, int[] childOffsets, int[] childList,
+                     double[] heights, double[] lengths) {
+        this.taxa = taxa;
+        this.parents = parents;
+        this.childOffsets = childOffsets;
+        this.childList = childList;
+        this.heights = heights;
+        this.lengths = lengths;
+
+        nodes = new Node[parents.length];
+        int root = -1;
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new Node(i);
+            if (parents[i] < 0) {
+                root = i;
+            }
+        }
+        this.root = root;
+    }
+
+    /**
+     * Sets the unparsed node annotations.
+     *
+     * @param labels         the label of each node (or null)
+     * @param comments       the meta comments of each node (or null)
+     * @param attributeNames the names of the attributes to keep or null to keep them all
+     * @param parser         the parser for the meta comments
+     */
+    public void setNodeAnnotations(String[] labels, String[][] comments, Set<String> attributeNames,
+                                   CommentParser parser) {
+        this.labels = labels;
+        this.comments = comments;
+        this.attributeNames = attributeNames;
+        this.parser = parser;
+        this.nodeAttributes = null;
+    }
+
+    private Attributable.AttributeHelper getAttributes(NodeRef node) {
+        if (labels == null && comments == null) {
+            return null;
+        }
+        if (nodeAttributes == null) {
+            nodeAttributes = new Attributable.AttributeHelper[nodes.length];
+            parsed = new boolean[nodes.length];
+        }
+        final int i = node.getNumber();
+        if (!parsed[i]) {
+            final Attributable.AttributeHelper attributes = new Attributable.AttributeHelper();
+            Attributable filter = new Attributable() {
+                public void setAttribute(String name, Object value) {
+                    if (attributeNames == null || attributeNames.contains(name)) {
+                        attributes.setAttribute(name, value);
+                    }
+                }
+
+                public Object getAttribute(String name) {
+                    return attributes.getAttribute(name);
+                }
+
+                public Iterator<String> getAttributeNames() {
+                    return attributes.getAttributeNames();
+                }
+            };
+            if (labels != null && labels[i] != null) {
+                filter.setAttribute("label", labels[i]);
+            }
+            if (comments != null && comments[i] != null) {
+                for (String comment : comments[i]) {
+                    parser.parse(comment, filter);
+                }
+            }
+            if (attributes.getAttributeNames().hasNext()) {
+                nodeAttributes[i] = attributes;
+            }
+            parsed[i] = true;
+            if (comments != null) {
+                comments[i] = null;
+            }
+        }
+        return nodeAttributes[i];
+    }
+
+    // **************************************************************
+    // Tree IMPLEMENTATION
+    // **************************************************************
+
+    public NodeRef getRoot() {
+        return nodes[root];
+    }
+
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    public NodeRef getNode(int i) {
+        return nodes[i];
+    }
+
+    public NodeRef getInternalNode(int i) {
+        return nodes[taxa.length + i];
+    }
+
+    public NodeRef getExternalNode(int i) {
+        return nodes[i];
+    }
+
+    public int getExternalNodeCount() {
+        return taxa.length;
+    }
+
+    public int getInternalNodeCount() {
+        return nodes.length - taxa.length;
+    }
+
+    public Taxon getNodeTaxon(NodeRef node) {
+        int i = node.getNumber();
+        return i < taxa.length ? taxa[i] : null;
+    }
+
+    public boolean hasNodeHeights() {
+        return true;
+    }
+
+    public double getNodeHeight(NodeRef node) {
+        return heights[node.getNumber()];
+    }
+
+    public boolean hasBranchLengths() {
+        return true;
+    }
+
+    public double getBranchLength(NodeRef node) {
+        return lengths[node.getNumber()];
+    }
+
+    public double getNodeRate(NodeRef node) {
+        Object rate = getNodeAttribute(node, "rate");
+        if (rate instanceof Number) {
+            return ((Number) rate).doubleValue();
+        }
+        if (rate instanceof String) {
+            return Double.parseDouble((String) rate);
+        }
+        return 1.0;
+    }
+
+    public Object getNodeAttribute(NodeRef node, String name) {
+        Attributable.AttributeHelper attributes = getAttributes(node);
+        return attributes == null ? null : attributes.getAttribute(name);
+    }
+
+    public Iterator getNodeAttributeNames(NodeRef node) {
+        Attributable.AttributeHelper attributes = getAttributes(node);
+        return attributes == null ? null : attributes.getAttributeNames();
+    }
+
+    public boolean isExternal(NodeRef node) {
+        int i = node.getNumber();
+        return childOffsets[i] == childOffsets[i + 1];
+    }
+
+    public boolean isRoot(NodeRef node) {
+        return node.getNumber() == root;
+    }
+
+    public int getChildCount(NodeRef node) {
+        int i = node.getNumber();
+        return childOffsets[i + 1] - childOffsets[i];
+    }
+
+    public NodeRef getChild(NodeRef node, int j) {
+        return nodes[childList[childOffsets[node.getNumber()] + j]];
+    }
+
+    public NodeRef getParent(NodeRef node) {
+        int parent = parents[node.getNumber()];
+        return parent < 0 ? null : nodes[parent];
+    }
+
+    public Tree getCopy() {
+        return new FlexibleTree(this, true);
+    }
+
+    // **************************************************************
+    // TaxonList IMPLEMENTATION
+    // **************************************************************
+
+    public int getTaxonCount() {
+        return taxa.length;
+    }
+
+    public Taxon getTaxon(int taxonIndex) {
+        return taxonIndex < taxa.length ? taxa[taxonIndex] : null;
+    }
+
+    public String getTaxonId(int taxonIndex) {
+        Taxon taxon = getTaxon(taxonIndex);
+        return taxon == null ? null : taxon.getId();
+    }
+
+    public int getTaxonIndex(String id) {
+        for (int i = 0; i < taxa.length; i++) {
+            if (taxa[i].getId().equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getTaxonIndex(Taxon taxon) {
+        for (int i = 0; i < taxa.length; i++) {
+            if (taxa[i] == taxon) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public List<Taxon> asList() {
+        return Collections.unmodifiableList(Arrays.asList(taxa));
+    }
+
+    public Iterator<Taxon> iterator() {
+        return asList().iterator();
+    }
+
+    public Object getTaxonAttribute(int taxonIndex, String name) {
+        return taxa[taxonIndex].getAttribute(name);
+    }
+
+    // **************************************************************
+    // Units, Identifiable and Attributable IMPLEMENTATION
+    // **************************************************************
+
+    public Type getUnits() {
+        return units;
+    }
+
+    public void setUnits(Type units) {
+        this.units = units;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public void setAttribute(String name, Object value) {
+        if (attributes == null) {
+            attributes = new Attributable.AttributeHelper();
+        }
+        attributes.setAttribute(name, value);
+    }
+
+    public Object getAttribute(String name) {
+        return attributes == null ? null : attributes.getAttribute(name);
+    }
+
+    public Iterator<String> getAttributeNames() {
+        return attributes == null ? null : attributes.getAttributeNames();
+    }
+
+    public String toString() {
+        return TreeUtils.newick(this);
+    }
+
+    private static final class Node implements NodeRef {
+        Node(int number) {
+            this.number = number;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public void setNumber(int n) {
+            throw new UnsupportedOperationException("ArrayTree is read-only");
+        }
+
+        private final int number;
+    }
+
+    private final Taxon[] taxa;
+    private final int[] parents;
+    private final int[] childOffsets;
+    private final int[] childList;
+    private final double[] heights;
+    private final double[] lengths;
+    private final Node[] nodes;
+    private final int root;
+
+    private String[] labels = null;
+    private String[][] comments = null;
+    private Set<String> attributeNames = null;
+    private CommentParser parser = null;
+    private Attributable.AttributeHelper[] nodeAttributes = null;
+    private boolean[] parsed = null;
+
+    private String id = null;
+    private Type units = Type.SUBSTITUTIONS;
+    private Attributable.AttributeHelper attributes = null;
+}
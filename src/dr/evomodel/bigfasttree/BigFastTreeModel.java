@@ -120,6 +120,38 @@ public class BigFastTreeModel extends TreeModel {
         } while (!done);
     }
 
+    /**
+     * Constructs the tree directly from flat arrays (as made by ArrayCoalescentSimulator) without building an
+     * intermediate tree. The first taxa.getTaxonCount() nodes are the tips, edges holds the parent and two
+     * children of every node (-1 where missing) and heights the height of every node.
+     */
+    public BigFastTreeModel(String name, TaxonList taxa, int[] edges, double[] heights, int root) {
+
+        super(name, true);
+        setId(name);
+
+        nodeCount = heights.length;
+        externalNodeCount = taxa.getTaxonCount();
+        internalNodeCount = nodeCount - externalNodeCount;
+
+        if (edges.length != nodeCount * 3 || internalNodeCount != externalNodeCount - 1) {
+            throw new IllegalArgumentException("Edges and heights do not describe a binary tree of the taxa");
+        }
+
+        nodes = new NodeRef[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            nodes[i] = (i < externalNodeCount) ? new Node(i, taxa.getTaxon(i)) : new Node(i);
+        }
+
+        this.edges = edges.clone();
+        storedEdges = new int[nodeCount * 3];
+
+        this.heights = heights.clone();
+        storedHeights = new double[nodeCount];
+
+        this.root = root;
+    }
+
     protected void copyTopology(Tree tree){
         // get a rooted version of the tree to clone
         FlexibleTree binaryTree = new FlexibleTree(tree);
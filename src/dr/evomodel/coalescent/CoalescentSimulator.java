@@ -25,8 +25,11 @@
 
 package dr.evomodel.coalescent;
 
+import dr.evolution.coalescent.ArrayCoalescentSimulator;
 import dr.evolution.tree.*;
+import dr.evolution.util.Taxon;
 import dr.evolution.util.TaxonList;
+import dr.evomodel.bigfasttree.BigFastTreeModel;
 import dr.evomodel.coalescent.demographicmodel.DemographicModel;
 import dr.inference.distribution.ParametricDistributionModel;
 import dr.math.UnivariateFunction;
@@ -128,6 +131,32 @@ public class CoalescentSimulator {
         return simulator.simulateTree(taxa, model.getDemographicFunction());
     }
 
+    /**
+     * Simulates a coalescent tree, given a taxon list, straight into the flat arrays of a BigFastTreeModel.
+     * This scales to millions of taxa.
+     *
+     * @param taxa  the set of taxa to simulate a coalescent tree between
+     * @param model the demographic model to use
+     * @return a simulated coalescent tree
+     */
+    public BigFastTreeModel simulateBigFastTree(TaxonList taxa, DemographicModel model) {
+
+        boolean usingDates = Taxon.getMostRecentDate() != null;
+
+        double[] tipHeights = new double[taxa.getTaxonCount()];
+        if (usingDates) {
+            for (int i = 0; i < tipHeights.length; i++) {
+                tipHeights[i] = taxa.getTaxon(i).getHeight();
+            }
+        }
+
+        ArrayCoalescentSimulator arraySimulator = new ArrayCoalescentSimulator();
+        arraySimulator.simulate(tipHeights, model.getDemographicFunction());
+
+        return new BigFastTreeModel(BigFastTreeModel.BIG_FAST_TREE_MODEL, taxa,
+                arraySimulator.getEdges(), arraySimulator.getHeights(), arraySimulator.getRoot());
+    }
+
     public void attemptToScaleTree(MutableTree tree, double rootHeight) {
         // avoid empty tree
         if (tree.getRoot() == null) return;
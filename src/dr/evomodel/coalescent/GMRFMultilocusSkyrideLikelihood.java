@@ -34,9 +34,11 @@ import dr.inference.model.Likelihood;
 import dr.inference.model.MatrixParameter;
 import dr.inference.model.Model;
 import dr.inference.model.Parameter;
+import dr.inference.model.Variable;
 import dr.util.Author;
 import dr.util.Citable;
 import dr.util.Citation;
+import dr.util.TaskPool;
 import no.uib.cipr.matrix.DenseVector;
 import no.uib.cipr.matrix.SymmTridiagMatrix;
 
@@ -97,6 +99,26 @@ public class GMRFMultilocusSkyrideLikelihood extends OldGMRFSkyrideLikelihood
     private List<Tree> treeList;
     private List<TreeIntervals> intervalsList;
 
+    // the sufficient statistics of each locus, which are only recalculated for the loci whose trees
+    // have changed and are then summed into the shared field
+    private double[][] locusSufficientStatistics;
+    private double[][] storedLocusSufficientStatistics;
+    private double[][] locusNumCoalEvents;
+    private double[][] storedLocusNumCoalEvents;
+    // the first and last grid cells to which each locus adds its ploidy term
+    private int[] firstPloidyIndex;
+    private int[] storedFirstPloidyIndex;
+    private int[] lastPloidyIndex;
+    private int[] storedLastPloidyIndex;
+    private boolean[] locusKnown;
+    private boolean[] storedLocusKnown;
+    // the loci that have changed since the state was stored
+    private boolean[] locusChanged;
+    private int[] dirtyLoci;
+
+    private TaskPool taskPool = null;
+    private int threadCount = 1;
+
     public GMRFMultilocusSkyrideLikelihood(List<Tree> treeList,
                                            Parameter popParameter,
                                            Parameter groupParameter,
@@ -454,8 +476,8 @@ public class GMRFMultilocusSkyrideLikelihood extends OldGMRFSkyrideLikelihood
             TreeModel treeModel = (TreeModel) model;
             int tn = treeList.indexOf(treeModel);
             if (tn >= 0) {
-                //   intervalsList.get(tn).setIntervalsUnknown();  // TODO Why is this slower (?) than remaking whole list?
-                makeTreeIntervalList(treeList, false);
+                intervalsList.get(tn).setIntervalsUnknown();
+                setLocusUnknown(tn);
                 intervalsKnown = false;
                 likelihoodKnown = false;
             } else {
@@ -466,6 +488,51 @@ public class GMRFMultilocusSkyrideLikelihood extends OldGMRFSkyrideLikelihood
         }
     }
 
+    protected void handleVariableChangedEvent(Variable variable, int index, Parameter.ChangeType type) {
+        super.handleVariableChangedEvent(variable, index, type);
+        if (variable == ploidyFactors && locusKnown != null) {
+            // the ploidy factors scale the sufficient statistics of their loci
+            for (int i = 0; i < numTrees; i++) {
+                setLocusUnknown(i);
+            }
+            intervalsKnown = false;
+        }
+    }
+
+    /**
+     * Marks the sufficient statistics of a locus as needing to be recalculated. The first time this happens after
+     * the state is stored the current statistics of the locus are kept so they can be restored.
+     */
+    private void setLocusUnknown(int locus) {
+        if (locusKnown == null) {
+            return;
+        }
+        if (!locusChanged[locus]) {
+            System.arraycopy(locusSufficientStatistics[locus], 0, storedLocusSufficientStatistics[locus], 0, fieldLength);
+            System.arraycopy(locusNumCoalEvents[locus], 0, storedLocusNumCoalEvents[locus], 0, fieldLength);
+            storedFirstPloidyIndex[locus] = firstPloidyIndex[locus];
+            storedLastPloidyIndex[locus] = lastPloidyIndex[locus];
+            storedLocusKnown[locus] = locusKnown[locus];
+            locusChanged[locus] = true;
+        }
+        locusKnown[locus] = false;
+    }
+
+    /**
+     * Sets the number of threads over which the loci whose trees have changed are divided when their
+     * sufficient statistics are recalculated.
+     */
+    public void setThreadCount(int threadCount) {
+        if (taskPool != null) {
+            taskPool.shutdown();
+            taskPool = null;
+        }
+        this.threadCount = Math.max(Math.min(threadCount, numTrees), 1);
+        if (this.threadCount > 1) {
+            taskPool = new TaskPool(this.threadCount, this.threadCount);
+        }
+    }
+
     public void initializationReport() {
         System.out.println("Creating a GMRF smoothed skyride model for multiple loci (SkyGrid)");
         System.out.println("\tPopulation sizes: " + popSizeParameter.getDimension());
@@ -528,9 +595,82 @@ public class GMRFMultilocusSkyrideLikelihood extends OldGMRFSkyrideLikelihood
 
     protected void setupSufficientStatistics() {
 
+        if (locusKnown == null) {
+            locusSufficientStatistics = new double[numTrees][fieldLength];
+            storedLocusSufficientStatistics = new double[numTrees][fieldLength];
+            locusNumCoalEvents = new double[numTrees][fieldLength];
+            storedLocusNumCoalEvents = new double[numTrees][fieldLength];
+            firstPloidyIndex = new int[numTrees];
+            storedFirstPloidyIndex = new int[numTrees];
+            lastPloidyIndex = new int[numTrees];
+            storedLastPloidyIndex = new int[numTrees];
+            locusKnown = new boolean[numTrees];
+            storedLocusKnown = new boolean[numTrees];
+            locusChanged = new boolean[numTrees];
+            dirtyLoci = new int[numTrees];
+        }
+
+        int dirtyCount = 0;
+        for (int i = 0; i < numTrees; i++) {
+            if (!locusKnown[i]) {
+                dirtyLoci[dirtyCount] = i;
+                dirtyCount++;
+            }
+        }
+
+        if (taskPool != null && dirtyCount > 1) {
+            final int count = dirtyCount;
+            final int blockSize = (count + threadCount - 1) / threadCount;
+            taskPool.fork((block, thread) -> {
+                final int end = Math.min((block + 1) * blockSize, count);
+                for (int k = block * blockSize; k < end; k++) {
+                    setupLocusSufficientStatistics(dirtyLoci[k]);
+                }
+            });
+        } else {
+            for (int k = 0; k < dirtyCount; k++) {
+                setupLocusSufficientStatistics(dirtyLoci[k]);
+            }
+        }
+
         Arrays.fill(numCoalEvents, 0);
         Arrays.fill(sufficientStatistics, 0.0);
         Arrays.fill(ploidySums, 0);
+
+        for (int i = 0; i < numTrees; i++) {
+            double[] locusStatistics = locusSufficientStatistics[i];
+            double[] locusEvents = locusNumCoalEvents[i];
+            for (int j = 0; j < fieldLength; j++) {
+                sufficientStatistics[j] += locusStatistics[j];
+                numCoalEvents[j] += locusEvents[j];
+            }
+            // the ploidy terms use the coalescent events of this and the preceding loci
+            double logPloidyFactor = Math.log(1 / getPopulationFactor(i));
+            for (int j = firstPloidyIndex[i]; j >= 0 && j <= lastPloidyIndex[i]; j++) {
+                ploidySums[j] = ploidySums[j] + logPloidyFactor * numCoalEvents[j];
+            }
+        }
+    }
+
+    private void addPloidyIndex(int locus, int gridIndex) {
+        if (firstPloidyIndex[locus] < 0) {
+            firstPloidyIndex[locus] = gridIndex;
+        }
+        lastPloidyIndex[locus] = gridIndex;
+    }
+
+    /**
+     * Calculates the sufficient statistics of one locus. Loci can be calculated at the same time on different threads.
+     */
+    private void setupLocusSufficientStatistics(int i) {
+
+        double[] sufficientStatistics = locusSufficientStatistics[i];
+        double[] numCoalEvents = locusNumCoalEvents[i];
+        Arrays.fill(numCoalEvents, 0);
+        Arrays.fill(sufficientStatistics, 0.0);
+        firstPloidyIndex[i] = -1;
+        lastPloidyIndex[i] = -1;
+
         //index of smallest grid point greater than at least one sampling/coalescent time in current tree
         int minGridIndex;
         //index of greatest grid point less than at least one sampling/coalescent time in current tree
@@ -549,144 +689,143 @@ public class GMRFMultilocusSkyrideLikelihood extends OldGMRFSkyrideLikelihood
         //time of last coalescent event in tree
         double lastCoalescentTime;
 
-        for (int i = 0; i < numTrees; i++) {
-            ploidyFactor = 1 / getPopulationFactor(i);
-            currentTimeIndex = moveToNextTimeIndex(i, 0, currentAndNextTime);
+        ploidyFactor = 1 / getPopulationFactor(i);
+        currentTimeIndex = moveToNextTimeIndex(i, 0, currentAndNextTime);
 
-            numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
-            minGridIndex = 0;
-            while (minGridIndex < numGridPoints - 1 && gridPoints[minGridIndex] <= currentAndNextTime[0]) { // MAS: Unclear about need for -1
-                minGridIndex++;
-            }
-            currentGridIndex = minGridIndex;
+        numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
+        minGridIndex = 0;
+        while (minGridIndex < numGridPoints - 1 && gridPoints[minGridIndex] <= currentAndNextTime[0]) { // MAS: Unclear about need for -1
+            minGridIndex++;
+        }
+        currentGridIndex = minGridIndex;
 
-            lastCoalescentTime = currentAndNextTime[0] + intervalsList.get(i).getTotalDuration();
+        lastCoalescentTime = currentAndNextTime[0] + intervalsList.get(i).getTotalDuration();
 
 //            theLastTime = lastCoalescentTime;
 
-            maxGridIndex = numGridPoints - 1;
-            while ((maxGridIndex >= 0) && (gridPoints[maxGridIndex] >= lastCoalescentTime)) {
-                maxGridIndex = maxGridIndex - 1;
-            }
+        maxGridIndex = numGridPoints - 1;
+        while ((maxGridIndex >= 0) && (gridPoints[maxGridIndex] >= lastCoalescentTime)) {
+            maxGridIndex = maxGridIndex - 1;
+        }
 
-            if (maxGridIndex >= 0 && minGridIndex < numGridPoints) {
+        if (maxGridIndex >= 0 && minGridIndex < numGridPoints) {
 
 
-                //from likelihood of interval between first sampling time and gridPoints[minGridIndex]
+            //from likelihood of interval between first sampling time and gridPoints[minGridIndex]
 
-                while (currentAndNextTime[1] < gridPoints[currentGridIndex]) {
+            while (currentAndNextTime[1] < gridPoints[currentGridIndex]) {
 
-                    //check to see if interval ends with coalescent event
-                    if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
+                //check to see if interval ends with coalescent event
+                if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
 
-                        numCoalEvents[currentGridIndex]++;
-                    }
-                    sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (currentAndNextTime[1] - currentAndNextTime[0]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
-                    currentTimeIndex++;
-                    currentTimeIndex = moveToNextTimeIndex(i, currentTimeIndex, currentAndNextTime);
+                    numCoalEvents[currentGridIndex]++;
+                }
+                sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (currentAndNextTime[1] - currentAndNextTime[0]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
+                currentTimeIndex++;
+                currentTimeIndex = moveToNextTimeIndex(i, currentTimeIndex, currentAndNextTime);
 
-                    numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
+                numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
 
-                }
+            }
 
-                sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (gridPoints[currentGridIndex] - currentAndNextTime[0]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
-                ploidySums[currentGridIndex] = ploidySums[currentGridIndex] + Math.log(ploidyFactor) * numCoalEvents[currentGridIndex];
+            sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (gridPoints[currentGridIndex] - currentAndNextTime[0]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
+            addPloidyIndex(i, currentGridIndex);
 
-                currentGridIndex++;
+            currentGridIndex++;
 
 
-                //from likelihood of intervals between gridPoints[minGridIndex] and gridPoints[maxGridIndex]
+            //from likelihood of intervals between gridPoints[minGridIndex] and gridPoints[maxGridIndex]
 
-                while (currentGridIndex <= maxGridIndex) {
-                    if (currentAndNextTime[1] >= gridPoints[currentGridIndex]) {
-                        sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (gridPoints[currentGridIndex] - gridPoints[currentGridIndex - 1]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
-                        ploidySums[currentGridIndex] = ploidySums[currentGridIndex] + Math.log(ploidyFactor) * numCoalEvents[currentGridIndex];
+            while (currentGridIndex <= maxGridIndex) {
+                if (currentAndNextTime[1] >= gridPoints[currentGridIndex]) {
+                    sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (gridPoints[currentGridIndex] - gridPoints[currentGridIndex - 1]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
+                    addPloidyIndex(i, currentGridIndex);
 
-                        currentGridIndex++;
-                    } else {
+                    currentGridIndex++;
+                } else {
 
-                        sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (currentAndNextTime[1] - gridPoints[currentGridIndex - 1]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
+                    sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (currentAndNextTime[1] - gridPoints[currentGridIndex - 1]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
 
-                        //check to see if interval ends with coalescent event
+                    //check to see if interval ends with coalescent event
+                    if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
+                        numCoalEvents[currentGridIndex]++;
+                    }
+                    currentTimeIndex++;
+                    currentTimeIndex = moveToNextTimeIndex(i, currentTimeIndex, currentAndNextTime);
+
+                    numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
+
+                    while (currentAndNextTime[1] < gridPoints[currentGridIndex]) {
+                        //check to see if interval is coalescent interval or sampling interval
                         if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
                             numCoalEvents[currentGridIndex]++;
                         }
+                        sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (currentAndNextTime[1] - currentAndNextTime[0]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
+
                         currentTimeIndex++;
                         currentTimeIndex = moveToNextTimeIndex(i, currentTimeIndex, currentAndNextTime);
 
                         numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
 
-                        while (currentAndNextTime[1] < gridPoints[currentGridIndex]) {
-                            //check to see if interval is coalescent interval or sampling interval
-                            if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
-                                numCoalEvents[currentGridIndex]++;
-                            }
-                            sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (currentAndNextTime[1] - currentAndNextTime[0]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
-
-                            currentTimeIndex++;
-                            currentTimeIndex = moveToNextTimeIndex(i, currentTimeIndex, currentAndNextTime);
-
-                            numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
-
-                        }
-                        sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (gridPoints[currentGridIndex] - currentAndNextTime[0]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
-                        ploidySums[currentGridIndex] = ploidySums[currentGridIndex] + Math.log(ploidyFactor) * numCoalEvents[currentGridIndex];
-
-                        currentGridIndex++;
                     }
+                    sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (gridPoints[currentGridIndex] - currentAndNextTime[0]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
+                    addPloidyIndex(i, currentGridIndex);
+
+                    currentGridIndex++;
                 }
+            }
 
-                //from likelihood of interval between gridPoints[maxGridIndex] and lastCoalescentTime
+            //from likelihood of interval between gridPoints[maxGridIndex] and lastCoalescentTime
 
-                sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (currentAndNextTime[1] - gridPoints[currentGridIndex - 1]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
+            sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (currentAndNextTime[1] - gridPoints[currentGridIndex - 1]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
 
-                //check to see if interval ends with coalescent event
-                if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
-                    numCoalEvents[currentGridIndex]++;
-                }
+            //check to see if interval ends with coalescent event
+            if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
+                numCoalEvents[currentGridIndex]++;
+            }
 
-                currentTimeIndex++;
+            currentTimeIndex++;
 
-                while ((currentTimeIndex + 1) < intervalsList.get(i).getIntervalCount()) {
+            while ((currentTimeIndex + 1) < intervalsList.get(i).getIntervalCount()) {
 
-                    currentTimeIndex = moveToNextTimeIndex(i, currentTimeIndex, currentAndNextTime);
+                currentTimeIndex = moveToNextTimeIndex(i, currentTimeIndex, currentAndNextTime);
 
-                    numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
+                numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
 
-                    //check to see if interval is coalescent interval or sampling interval
-
-                    if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
-                        numCoalEvents[currentGridIndex]++;
-                    }
-                    sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (currentAndNextTime[1] - currentAndNextTime[0]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
-                    currentAndNextTime[0] = currentAndNextTime[1];
-                    currentTimeIndex++;
+                //check to see if interval is coalescent interval or sampling interval
 
+                if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
+                    numCoalEvents[currentGridIndex]++;
                 }
+                sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (currentAndNextTime[1] - currentAndNextTime[0]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
+                currentAndNextTime[0] = currentAndNextTime[1];
+                currentTimeIndex++;
 
-                // if tree does not overlap with any gridpoints/change-points, in which case logpopsize is constant
+            }
 
-            } else {
-                while ((currentTimeIndex + 1) < intervalsList.get(i).getIntervalCount()) {
-                    //check to see if interval is coalescent interval or sampling interval
-                    if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
-                        numCoalEvents[currentGridIndex]++;
-                    }
-                    sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (currentAndNextTime[1] - currentAndNextTime[0]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
+            // if tree does not overlap with any gridpoints/change-points, in which case logpopsize is constant
 
-                    currentTimeIndex++;
-                    if ((currentTimeIndex + 1) < intervalsList.get(i).getIntervalCount()) {
-                        currentTimeIndex = moveToNextTimeIndex(i, currentTimeIndex, currentAndNextTime);
+        } else {
+            while ((currentTimeIndex + 1) < intervalsList.get(i).getIntervalCount()) {
+                //check to see if interval is coalescent interval or sampling interval
+                if (intervalsList.get(i).getCoalescentEvents(currentTimeIndex + 1) > 0) {
+                    numCoalEvents[currentGridIndex]++;
+                }
+                sufficientStatistics[currentGridIndex] = sufficientStatistics[currentGridIndex] + (currentAndNextTime[1] - currentAndNextTime[0]) * numLineages * (numLineages - 1) * 0.5 * ploidyFactor;
 
-                        numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
+                currentTimeIndex++;
+                if ((currentTimeIndex + 1) < intervalsList.get(i).getIntervalCount()) {
+                    currentTimeIndex = moveToNextTimeIndex(i, currentTimeIndex, currentAndNextTime);
 
-                    }
+                    numLineages = intervalsList.get(i).getLineageCount(currentTimeIndex + 1);
 
                 }
-                ploidySums[currentGridIndex] = ploidySums[currentGridIndex] + Math.log(ploidyFactor) * numCoalEvents[currentGridIndex];
 
             }
+            addPloidyIndex(i, currentGridIndex);
+
         }
+        locusKnown[i] = true;
     }
 
     public double[] getNumCoalEvents() {
@@ -911,6 +1050,10 @@ public class GMRFMultilocusSkyrideLikelihood extends OldGMRFSkyrideLikelihood
         System.arraycopy(numCoalEvents, 0, storedNumCoalEvents, 0, numCoalEvents.length);
         // storedPrecMatrix = precMatrix.copy();
         System.arraycopy(ploidySums, 0, storedPloidySums, 0, ploidySums.length);
+        // the statistics of each locus are kept when it is first changed
+        if (locusChanged != null) {
+            Arrays.fill(locusChanged, false);
+        }
     }
 
 
@@ -924,6 +1067,23 @@ public class GMRFMultilocusSkyrideLikelihood extends OldGMRFSkyrideLikelihood
         double[] tmp2 = ploidySums;
         ploidySums = storedPloidySums;
         storedPloidySums = tmp2;
+
+        for (int i = 0; locusChanged != null && i < numTrees; i++) {
+            if (locusChanged[i]) {
+                tmp = locusSufficientStatistics[i];
+                locusSufficientStatistics[i] = storedLocusSufficientStatistics[i];
+                storedLocusSufficientStatistics[i] = tmp;
+                tmp = locusNumCoalEvents[i];
+                locusNumCoalEvents[i] = storedLocusNumCoalEvents[i];
+                storedLocusNumCoalEvents[i] = tmp;
+                firstPloidyIndex[i] = storedFirstPloidyIndex[i];
+                lastPloidyIndex[i] = storedLastPloidyIndex[i];
+                locusKnown[i] = storedLocusKnown[i];
+                // the tree has been restored so its intervals are calculated again when they are next needed
+                intervalsList.get(i).setIntervalsUnknown();
+                locusChanged[i] = false;
+            }
+        }
     }
 
     // Implementation of GradientWrtParameterProvider
@@ -1164,15 +1324,11 @@ public class GMRFMultilocusSkyrideLikelihood extends OldGMRFSkyrideLikelihood
 
             checkIntervals(); // TODO Is this really necessary?  Computation below does not appear to depend on intervals.
 
-            DenseVector diagonal1 = new DenseVector(fieldLength);
             DenseVector currentGamma = getMeanAdjustedGamma();
 
             double currentLike = handleMissingValues();
 
-            SymmTridiagMatrix currentQ = getScaledWeightMatrix(precisionParameter.getParameterValue(0), lambdaParameter.getParameterValue(0));
-            currentQ.mult(currentGamma, diagonal1);
-
-            currentLike += 0.5 * (fieldLength - 1) * Math.log(precisionParameter.getParameterValue(0)) - 0.5 * currentGamma.dot(diagonal1);
+            currentLike += 0.5 * (fieldLength - 1) * Math.log(precisionParameter.getParameterValue(0)) - 0.5 * getFieldQuadraticForm(currentGamma.getData());
             if (lambdaParameter.getParameterValue(0) == 1) {
                 currentLike -= (fieldLength - 1) / 2.0 * LOG_TWO_TIMES_PI;
             } else {
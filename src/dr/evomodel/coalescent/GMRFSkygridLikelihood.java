@@ -1065,17 +1065,13 @@ public class GMRFSkygridLikelihood extends GMRFSkyrideLikelihood
                 intervalsKnown = true;
             }
 
-            DenseVector diagonal1 = new DenseVector(fieldLength);
             DenseVector currentGamma = new DenseVector(popSizeParameter.getParameterValues());
 
             updateGammaWithCovariates(currentGamma);
 
             double currentLike = handleMissingValues();
 
-            SymmTridiagMatrix currentQ = getScaledWeightMatrix(precisionParameter.getParameterValue(0), lambdaParameter.getParameterValue(0));
-            currentQ.mult(currentGamma, diagonal1);
-
-            currentLike += 0.5 * (fieldLength - 1) * Math.log(precisionParameter.getParameterValue(0)) - 0.5 * currentGamma.dot(diagonal1);
+            currentLike += 0.5 * (fieldLength - 1) * Math.log(precisionParameter.getParameterValue(0)) - 0.5 * getFieldQuadraticForm(currentGamma.getData());
             if (lambdaParameter.getParameterValue(0) == 1) {
                 currentLike -= (fieldLength - 1) / 2.0 * LOG_TWO_TIMES_PI;
             } else {
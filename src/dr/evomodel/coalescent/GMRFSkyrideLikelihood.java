@@ -35,6 +35,7 @@ import dr.inference.model.Model;
 import dr.inference.model.Parameter;
 import dr.inference.model.Variable;
 import dr.math.MathUtils;
+import dr.math.matrixAlgebra.SymmetricTridiagonalMatrix;
 import dr.util.Author;
 import dr.util.Citable;
 import dr.util.Citation;
@@ -82,6 +83,8 @@ public class GMRFSkyrideLikelihood extends AbstractCoalescentLikelihood implemen
 
     protected SymmTridiagMatrix weightMatrix;
     protected SymmTridiagMatrix storedWeightMatrix;
+    private SymmetricTridiagonalMatrix fieldQ;
+    private double[] fieldQGamma;
     protected MatrixParameter dMatrix;
     protected boolean timeAwareSmoothing = TIME_AWARE_IS_ON_BY_DEFAULT;
     protected boolean rescaleByRootHeight;
@@ -483,12 +486,47 @@ public class GMRFSkyrideLikelihood extends AbstractCoalescentLikelihood implemen
         return a;
     }
 
+    /**
+     * Fills a reusable matrix with the scaled weight matrix rather than allocating a new one
+     */
+    public void getScaledWeightMatrix(double precision, double lambda, SymmetricTridiagonalMatrix scaled) {
+        scaled.setScaled(weightMatrix.getDiagonal(), weightMatrix.getOffDiagonal(), precision, lambda);
+    }
+
+    public void getStoredScaledWeightMatrix(double precision, double lambda, SymmetricTridiagonalMatrix scaled) {
+        scaled.setScaled(storedWeightMatrix.getDiagonal(), storedWeightMatrix.getOffDiagonal(), precision, lambda);
+    }
+
+    /**
+     * @return gamma^T Q gamma for the scaled weight matrix Q under the current precision and lambda
+     */
+    protected double getFieldQuadraticForm(double[] gamma) {
+        if (fieldQ == null || fieldQ.getDimension() != fieldLength) {
+            fieldQ = new SymmetricTridiagonalMatrix(fieldLength);
+            fieldQGamma = new double[fieldLength];
+        }
+        getScaledWeightMatrix(precisionParameter.getParameterValue(0), lambdaParameter.getParameterValue(0), fieldQ);
+        fieldQ.multiply(gamma, fieldQGamma);
+        double sum = 0;
+        for (int i = 0; i < fieldLength; i++) {
+            sum += gamma[i] * fieldQGamma[i];
+        }
+        return sum;
+    }
+
 
     protected void storeState() {
         super.storeState();
         System.arraycopy(coalescentIntervals, 0, storedCoalescentIntervals, 0, coalescentIntervals.length);
         System.arraycopy(sufficientStatistics, 0, storedSufficientStatistics, 0, sufficientStatistics.length);
-        storedWeightMatrix = weightMatrix.copy();
+        if (storedWeightMatrix == null || storedWeightMatrix.numRows() != weightMatrix.numRows()) {
+            storedWeightMatrix = weightMatrix.copy();
+        } else {
+            double[] diagonal = weightMatrix.getDiagonal();
+            double[] offDiagonal = weightMatrix.getOffDiagonal();
+            System.arraycopy(diagonal, 0, storedWeightMatrix.getDiagonal(), 0, diagonal.length);
+            System.arraycopy(offDiagonal, 0, storedWeightMatrix.getOffDiagonal(), 0, offDiagonal.length);
+        }
         storedLogFieldLikelihood = logFieldLikelihood;
     }
 
@@ -498,7 +536,9 @@ public class GMRFSkyrideLikelihood extends AbstractCoalescentLikelihood implemen
         // TODO Just swap pointers
         System.arraycopy(storedCoalescentIntervals, 0, coalescentIntervals, 0, storedCoalescentIntervals.length);
         System.arraycopy(storedSufficientStatistics, 0, sufficientStatistics, 0, storedSufficientStatistics.length);
+        SymmTridiagMatrix tmpWeightMatrix = weightMatrix;
         weightMatrix = storedWeightMatrix;
+        storedWeightMatrix = tmpWeightMatrix;
         logFieldLikelihood = storedLogFieldLikelihood;
     }
 
@@ -532,15 +572,11 @@ public class GMRFSkyrideLikelihood extends AbstractCoalescentLikelihood implemen
         makeIntervalsKnown();
 
         double currentLike = 0;
-        DenseVector diagonal1 = new DenseVector(fieldLength);
-        DenseVector currentGamma = new DenseVector(popSizeParameter.getParameterValues());
-
-        SymmTridiagMatrix currentQ = getScaledWeightMatrix(precisionParameter.getParameterValue(0), lambdaParameter.getParameterValue(0));
-        currentQ.mult(currentGamma, diagonal1);
+        double[] currentGamma = popSizeParameter.getParameterValues();
 
 //        currentLike += 0.5 * logGeneralizedDeterminant(currentQ) - 0.5 * currentGamma.dot(diagonal1);
 
-        currentLike += 0.5 * (fieldLength - 1) * Math.log(precisionParameter.getParameterValue(0)) - 0.5 * currentGamma.dot(diagonal1);
+        currentLike += 0.5 * (fieldLength - 1) * Math.log(precisionParameter.getParameterValue(0)) - 0.5 * getFieldQuadraticForm(currentGamma);
         if (lambdaParameter.getParameterValue(0) == 1) {
             currentLike -= (fieldLength - 1) / 2.0 * LOG_TWO_TIMES_PI;
         } else {
@@ -33,9 +33,12 @@ import dr.evolution.tree.Tree;
 import dr.evolution.tree.TreeUtils;
 import dr.evolution.util.TaxonList;
 import dr.evolution.util.Units;
+import dr.evomodel.tree.DefaultTreeModel;
+import dr.evomodel.tree.TreeChangedEvent;
 import dr.evomodel.tree.TreeModel;
 import dr.inference.model.*;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -82,6 +85,16 @@ public class TreeIntervals extends AbstractModel implements Units, IntervalList
         storedIntervals = new Intervals(tree.getNodeCount());
         eventsKnown = false;
 
+        if (tree instanceof DefaultTreeModel && includedLeafSet == null && excludedLeafSets == null) {
+            // the events are kept in order and moved as the node heights change
+            nodeEvents = new NodeEvents(tree.getNodeCount());
+            storedNodeEvents = new NodeEvents(tree.getNodeCount());
+            updatedNodes = new int[tree.getNodeCount()];
+            storedUpdatedNodes = new int[tree.getNodeCount()];
+            rebuildEvents = true;
+            storedRebuildEvents = true;
+        }
+
         addStatistic(new DeltaStatistic());
     }
 
@@ -92,6 +105,23 @@ public class TreeIntervals extends AbstractModel implements Units, IntervalList
     protected void handleModelChangedEvent(Model model, Object object, int index) {
         if (model == tree) {
             // treeModel has changed so recalculate the intervals
+            if (nodeEvents != null) {
+                if (object instanceof TreeChangedEvent && ((TreeChangedEvent) object).isNodeChanged()) {
+                    TreeChangedEvent treeChangedEvent = (TreeChangedEvent) object;
+                    // other node changes (topology or traits) leave the event times as they are
+                    if (treeChangedEvent.isHeightChanged()) {
+                        if (updatedNodeCount < updatedNodes.length) {
+                            updatedNodes[updatedNodeCount] = treeChangedEvent.getNode().getNumber();
+                            updatedNodeCount++;
+                        } else {
+                            rebuildEvents = true;
+                        }
+                    }
+                } else if (!(object instanceof Variable)) {
+                    // a changed node parameter also fires a tree changed event for its node
+                    rebuildEvents = true;
+                }
+            }
             eventsKnown = false;
         }
 
@@ -114,7 +144,14 @@ public class TreeIntervals extends AbstractModel implements Units, IntervalList
      */
     protected void storeState() {
         // copy the intervals into the storedIntervals
-        storedIntervals.copyIntervals(intervals);
+        if (nodeEvents != null) {
+            storedNodeEvents.copyEvents(nodeEvents);
+            System.arraycopy(updatedNodes, 0, storedUpdatedNodes, 0, updatedNodeCount);
+            storedUpdatedNodeCount = updatedNodeCount;
+            storedRebuildEvents = rebuildEvents;
+        } else {
+            storedIntervals.copyIntervals(intervals);
+        }
         storedEventsKnown = eventsKnown;
     }
 
@@ -123,9 +160,21 @@ public class TreeIntervals extends AbstractModel implements Units, IntervalList
      */
     protected void restoreState() {
         // swap the intervals back
-        Intervals tmp = storedIntervals;
-        storedIntervals = intervals;
-        intervals = tmp;
+        if (nodeEvents != null) {
+            NodeEvents tmp = storedNodeEvents;
+            storedNodeEvents = nodeEvents;
+            nodeEvents = tmp;
+
+            int[] tmpNodes = storedUpdatedNodes;
+            storedUpdatedNodes = updatedNodes;
+            updatedNodes = tmpNodes;
+            updatedNodeCount = storedUpdatedNodeCount;
+            rebuildEvents = storedRebuildEvents;
+        } else {
+            Intervals tmp = storedIntervals;
+            storedIntervals = intervals;
+            intervals = tmp;
+        }
 
         eventsKnown = storedEventsKnown;
     }
@@ -172,14 +221,32 @@ public class TreeIntervals extends AbstractModel implements Units, IntervalList
     }
 
     public IntervalList getIntervals() {
-        return intervals;
+        return getEventList();
     }
 
     /**
-     * Recalculates all the intervals from the tree model.
+     * Recalculates all the intervals from the tree model. If the events are being kept in order then
+     * only the events of the nodes whose heights have changed are moved.
      */
     public final void calculateIntervals() {
 
+        if (nodeEvents != null) {
+            if (rebuildEvents) {
+                nodeEvents.setEvents(tree);
+                rebuildEvents = false;
+            } else {
+                for (int i = 0; i < updatedNodeCount; i++) {
+                    int nodeNumber = updatedNodes[i];
+                    nodeEvents.moveEvent(nodeNumber, tree.getNodeHeight(tree.getNode(nodeNumber)));
+                }
+            }
+            updatedNodeCount = 0;
+            nodeEvents.checkFirstEvent();
+
+            eventsKnown = true;
+            return;
+        }
+
         intervals.resetEvents();
         if (includedLeafSet != null || excludedLeafSets != null) {
             collectTimes(tree, getIncludedMRCA(tree), getExcludedMRCAs(tree), intervals);
@@ -241,90 +308,67 @@ public class TreeIntervals extends AbstractModel implements Units, IntervalList
         }
     }
 
+    private IntervalList getEventList() {
+        if (!eventsKnown) {
+            calculateIntervals();
+        }
+        return nodeEvents != null ? nodeEvents : intervals;
+    }
+
     @Override
     public double getStartTime() {
-        return intervals.getStartTime();
+        return getEventList().getStartTime();
     }
 
     @Override
     public int getIntervalCount() {
-        if (!eventsKnown) {
-            calculateIntervals();
-        }
-        return intervals.getIntervalCount();
+        return getEventList().getIntervalCount();
     }
 
     @Override
     public int getSampleCount() {
-        if (!eventsKnown) {
-            calculateIntervals();
-        }
-        return intervals.getSampleCount();
+        return getEventList().getSampleCount();
     }
 
     @Override
     public double getInterval(int i) {
-        if (!eventsKnown) {
-            calculateIntervals();
-        }
-        return intervals.getInterval(i);
+        return getEventList().getInterval(i);
     }
 
     @Override
     public double getIntervalTime(int i) {
-        if(!eventsKnown){
-            calculateIntervals();
-        }
-        return intervals.getIntervalTime(i);
+        return getEventList().getIntervalTime(i);
     }
 
     @Override
     public int getLineageCount(int i) {
-        if (!eventsKnown) {
-            calculateIntervals();
-        }
         if (i >= getIntervalCount()) throw new IllegalArgumentException();
-        return intervals.getLineageCount(i);
+        return getEventList().getLineageCount(i);
     }
 
     @Override
     public int getCoalescentEvents(int i) {
-        if (!eventsKnown) {
-            calculateIntervals();
-        }
-        return intervals.getCoalescentEvents(i);
+        return getEventList().getCoalescentEvents(i);
     }
 
     @Override
     public IntervalType getIntervalType(int i) {
-        if (!eventsKnown) {
-            calculateIntervals();
-        }
-        return intervals.getIntervalType(i);
+        return getEventList().getIntervalType(i);
     }
 
     @Override
     public double getTotalDuration() {
-        if (!eventsKnown) {
-            calculateIntervals();
-        }
-        return intervals.getTotalDuration();
+        return getEventList().getTotalDuration();
     }
 
     @Override
     public boolean isBinaryCoalescent() {
-        if (!eventsKnown) {
-            calculateIntervals();
-        }
-        return intervals.isBinaryCoalescent();
+        return getEventList().isBinaryCoalescent();
     }
 
     @Override
     public boolean isCoalescentOnly() {
-        if (!eventsKnown) {
-            calculateIntervals();
-        }
-        return intervals.isCoalescentOnly();
+        return getEventList().isCoalescentOnly();
     }
 
     @Override
@@ -358,6 +402,177 @@ public class TreeIntervals extends AbstractModel implements Units, IntervalList
 
     }
 
+    /**
+     * The events of all the nodes of a tree kept in order of height (with samples before coalescences
+     * at the same height). When the height of a node changes its event is moved along to its new position
+     * and only the lineage counts of the events it moves past are updated, so a small change to a large
+     * tree doesn't need all the events to be sorted again.
+     */
+    private final class NodeEvents implements IntervalList {
+
+        NodeEvents(int nodeCount) {
+            nodes = new int[nodeCount];
+            positions = new int[nodeCount];
+            times = new double[nodeCount];
+            lineageCounts = new int[nodeCount];
+            isSample = new boolean[nodeCount];
+        }
+
+        void setEvents(Tree tree) {
+            Integer[] order = new Integer[nodes.length];
+            sampleCount = 0;
+            for (int i = 0; i < nodes.length; i++) {
+                NodeRef node = tree.getNode(i);
+                order[i] = i;
+                times[i] = tree.getNodeHeight(node);
+                isSample[i] = tree.isExternal(node);
+                if (isSample[i]) {
+                    sampleCount++;
+                }
+            }
+            // times is indexed by node until the events are in order
+            Arrays.sort(order, (a, b) -> precedes(a, times[a], b, times[b]) ? -1 : (a.equals(b) ? 0 : 1));
+
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = order[i];
+                positions[nodes[i]] = i;
+            }
+            for (int i = 0; i < nodes.length; i++) {
+                times[i] = tree.getNodeHeight(tree.getNode(nodes[i]));
+            }
+            updateLineageCounts(0, nodes.length - 1);
+        }
+
+        /**
+         * Moves the event of a node to the position for its new time
+         */
+        void moveEvent(int node, double time) {
+            final int from = positions[node];
+            int to = from;
+            while (to > 0 && precedes(node, time, nodes[to - 1], times[to - 1])) {
+                nodes[to] = nodes[to - 1];
+                times[to] = times[to - 1];
+                positions[nodes[to]] = to;
+                to--;
+            }
+            while (to < nodes.length - 1 && precedes(nodes[to + 1], times[to + 1], node, time)) {
+                nodes[to] = nodes[to + 1];
+                times[to] = times[to + 1];
+                positions[nodes[to]] = to;
+                to++;
+            }
+            nodes[to] = node;
+            times[to] = time;
+            positions[node] = to;
+
+            // the events after both positions have the same events before them as they did
+            updateLineageCounts(Math.min(from, to), Math.max(from, to));
+        }
+
+        void checkFirstEvent() {
+            if (!isSample[nodes[0]]) {
+                throw new IllegalArgumentException("First event is not a sample event");
+            }
+        }
+
+        void copyEvents(NodeEvents source) {
+            System.arraycopy(source.nodes, 0, nodes, 0, nodes.length);
+            System.arraycopy(source.positions, 0, positions, 0, nodes.length);
+            System.arraycopy(source.times, 0, times, 0, nodes.length);
+            System.arraycopy(source.lineageCounts, 0, lineageCounts, 0, nodes.length);
+            System.arraycopy(source.isSample, 0, isSample, 0, nodes.length);
+            sampleCount = source.sampleCount;
+        }
+
+        private boolean precedes(int node1, double time1, int node2, double time2) {
+            if (time1 != time2) {
+                return time1 < time2;
+            }
+            if (isSample[node1] != isSample[node2]) {
+                return isSample[node1];
+            }
+            return node1 < node2;
+        }
+
+        /**
+         * Recalculates the number of lineages after each event from first to last
+         */
+        private void updateLineageCounts(int first, int last) {
+            int lineages = first == 0 ? 0 : lineageCounts[first - 1];
+            for (int i = first; i <= last; i++) {
+                lineages += isSample[nodes[i]] ? 1 : -1;
+                lineageCounts[i] = lineages;
+            }
+        }
+
+        public int getIntervalCount() {
+            return nodes.length - 1;
+        }
+
+        public int getSampleCount() {
+            return sampleCount;
+        }
+
+        public double getStartTime() {
+            return times[0];
+        }
+
+        public double getInterval(int i) {
+            return times[i + 1] - times[i];
+        }
+
+        public double getIntervalTime(int i) {
+            return times[i];
+        }
+
+        public int getLineageCount(int i) {
+            return lineageCounts[i];
+        }
+
+        public int getCoalescentEvents(int i) {
+            if (i < nodes.length - 2) {
+                return lineageCounts[i] - lineageCounts[i + 1];
+            } else {
+                return lineageCounts[i] - 1;
+            }
+        }
+
+        public IntervalType getIntervalType(int i) {
+            return isSample[nodes[i + 1]] ? IntervalType.SAMPLE : IntervalType.COALESCENT;
+        }
+
+        public double getTotalDuration() {
+            return times[nodes.length - 1];
+        }
+
+        public boolean isBinaryCoalescent() {
+            return true;
+        }
+
+        public boolean isCoalescentOnly() {
+            return true;
+        }
+
+        public void calculateIntervals() {
+            // the intervals are kept up to date as the events are moved
+        }
+
+        public Type getUnits() {
+            return TreeIntervals.this.getUnits();
+        }
+
+        public void setUnits(Type units) {
+            TreeIntervals.this.setUnits(units);
+        }
+
+        private final int[] nodes;
+        private final int[] positions;
+        private final double[] times;
+        private final int[] lineageCounts;
+        private final boolean[] isSample;
+        private int sampleCount;
+    }
+
     // ****************************************************************
     // Private and protected stuff
     // ****************************************************************
@@ -381,4 +596,17 @@ public class TreeIntervals extends AbstractModel implements Units, IntervalList
 
     private boolean eventsKnown = false;
     private boolean storedEventsKnown = false;
+
+    /**
+     * The ordered node events (null if the tree can't report which node heights have changed or
+     * the coalescent is over part of the tree) and the nodes that have changed height since they were updated.
+     */
+    private NodeEvents nodeEvents = null;
+    private NodeEvents storedNodeEvents = null;
+    private int[] updatedNodes = null;
+    private int[] storedUpdatedNodes = null;
+    private int updatedNodeCount = 0;
+    private int storedUpdatedNodeCount = 0;
+    private boolean rebuildEvents = false;
+    private boolean storedRebuildEvents = false;
 }
@@ -74,9 +74,20 @@ public class StructuredCoalescentLikelihood extends AbstractModelLikelihood impl
     private static final boolean ASSOC_MULTIPLICATION = true;
     private static final boolean USE_TRANSPOSE = true;
 
+    //minimum number of multiply-adds (active lineages * demes^2) in an interval before it is split over threads
+    private static final int PARALLEL_WORK_THRESHOLD = 16384;
+
     public StructuredCoalescentLikelihood(Tree tree, BranchRateModel branchRateModel, Parameter popSizes, PatternList patternList,
                                           DataType dataType, String tag, GeneralSubstitutionModel generalSubstitutionModel, int subIntervals,
                                           TaxonList includeSubtree, List<TaxonList> excludeSubtrees, boolean useMAP) throws TreeUtils.MissingTaxonException {
+        this(tree, branchRateModel, popSizes, patternList, dataType, tag, generalSubstitutionModel, subIntervals,
+                includeSubtree, excludeSubtrees, useMAP, 1);
+    }
+
+    public StructuredCoalescentLikelihood(Tree tree, BranchRateModel branchRateModel, Parameter popSizes, PatternList patternList,
+                                          DataType dataType, String tag, GeneralSubstitutionModel generalSubstitutionModel, int subIntervals,
+                                          TaxonList includeSubtree, List<TaxonList> excludeSubtrees, boolean useMAP,
+                                          int threadCount) throws TreeUtils.MissingTaxonException {
 
         super(StructuredCoalescentLikelihoodParser.STRUCTURED_COALESCENT);
 
@@ -106,6 +117,17 @@ public class StructuredCoalescentLikelihood extends AbstractModelLikelihood impl
         this.demes = generalSubstitutionModel.getDataType().getStateCount();
         this.startExpected = new double[this.demes];
         this.endExpected = new double[this.demes];
+        this.startProbs = new double[this.demes];
+        this.endProbs = new double[this.demes];
+        this.sumComponents = new double[this.demes];
+
+        if (threadCount > 1) {
+            this.threadCount = threadCount;
+            this.taskPool = new TaskPool(threadCount, threadCount);
+        } else {
+            this.threadCount = 1;
+            this.taskPool = null;
+        }
 
         int nodeCount = treeModel.getNodeCount();
 
@@ -503,9 +525,9 @@ public class StructuredCoalescentLikelihood extends AbstractModelLikelihood impl
             }
         }*/
 
-        double[] startProbs = new double[demes];
-        double[] endProbs = new double[demes];
         for (int i = 0; i < this.demes; i++) {
+            this.startProbs[i] = 0.0;
+            this.endProbs[i] = 0.0;
             this.startExpected[i] = 0.0;
             this.endExpected[i] = 0.0;
         }
@@ -644,7 +666,7 @@ public class StructuredCoalescentLikelihood extends AbstractModelLikelihood impl
             }
         }
 
-        //TODO evaluate later if this should be done in parallel
+        //the active lineages are split over threads when the interval has enough work; coalescent events stay serial
         //double start = System.currentTimeMillis();
         /*for (ProbDist pd : activeLineageList) {
             pd.incrementIntervalLength(increment, migrationMatrices[this.currentCoalescentInterval]);
@@ -652,13 +674,33 @@ public class StructuredCoalescentLikelihood extends AbstractModelLikelihood impl
                 System.out.println("  " + pd);
             }
         }*/
-        for (int i = 0; i < addedLength; i++) {
-            activeLineageList[i].incrementIntervalLength(increment, migrationMatrices[this.currentCoalescentInterval]);
+        final double[] migrationMatrix = migrationMatrices[this.currentCoalescentInterval];
+        if (taskPool != null && addedLength > 1 && addedLength * demes * demes >= PARALLEL_WORK_THRESHOLD) {
+            incrementActiveLineagesInParallel(increment, migrationMatrix);
+        } else {
+            for (int i = 0; i < addedLength; i++) {
+                activeLineageList[i].incrementIntervalLength(increment, migrationMatrix);
+            }
         }
         //double end = System.currentTimeMillis();
         this.currentCoalescentInterval++;
     }
 
+    /**
+     * The lineages active in an interval evolve independently under the same transition probability matrix,
+     * so contiguous blocks of them are processed on separate threads.
+     */
+    private void incrementActiveLineagesInParallel(final double increment, final double[] migrationMatrix) {
+        final int blockSize = (addedLength + threadCount - 1) / threadCount;
+
+        taskPool.fork((block, thread) -> {
+            final int to = Math.min((block + 1) * blockSize, addedLength);
+            for (int i = block * blockSize; i < to; i++) {
+                activeLineageList[i].incrementIntervalLength(increment, migrationMatrix);
+            }
+        });
+    }
+
     /**
      * Extract coalescent times and tip information into ArrayList times from tree.
      * Upon return times contain the time of each node in the subtree below top, and at the corresponding index
@@ -1242,7 +1284,6 @@ public class StructuredCoalescentLikelihood extends AbstractModelLikelihood impl
         //compute the probability distribution of lineages among demes for a coalescent event
         public double computeCoalescedLineage(ProbDist leftProbDist, ProbDist rightProbDist) {
             double sum = 0.0;
-            double[] sumComponents = new double[demes];
             for (int i = 0; i < demes; i++) {
                 sumComponents[i] = (leftProbDist.endLineageProbs[i] * rightProbDist.endLineageProbs[i])/popSizes.getParameterValue(i);
                 sum += sumComponents[i];
@@ -1268,8 +1309,7 @@ public class StructuredCoalescentLikelihood extends AbstractModelLikelihood impl
 
         //compute the end probability densities and expected numbers of lineages
         public void computeEndLineageDensities(double lineageLength, double[] migrationMatrix) {
-            //TODO this should be possible in parallel for each lineage within the same coalescent interval
-            //TODO will need to collect all the tasks first (i.e. collectEndLineageDensities) and then start in parallel
+            //called for every active lineage of an interval, on separate threads in incrementActiveLineagesInParallel
             for (int k = 0; k < demes; k++) {
                     /*double value = 0.0;
                     for (int l = 0; l < demes; l++) {
@@ -1439,6 +1479,15 @@ public class StructuredCoalescentLikelihood extends AbstractModelLikelihood impl
     //expected ending lineage counts
     private double[] endExpected;
 
+    //work arrays for the interval and coalescent event computations
+    private final double[] startProbs;
+    private final double[] endProbs;
+    private final double[] sumComponents;
+
+    //threads over which the active lineages of an interval are distributed
+    private final int threadCount;
+    private final TaskPool taskPool;
+
     //array with a probability distribution for each node
     private ProbDist[] nodeProbDist;
 
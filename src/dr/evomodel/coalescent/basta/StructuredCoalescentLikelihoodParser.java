@@ -52,6 +52,7 @@ public class StructuredCoalescentLikelihoodParser extends AbstractXMLObjectParse
     public static final String SUBINTERVALS = "subIntervals";
 
     public static final String MAP_RECONSTRUCTION = "useMAP";
+    public static final String THREADS = "threads";
 
     public static final Boolean USE_OLD_CODE = false;
 
@@ -86,6 +87,8 @@ public class StructuredCoalescentLikelihoodParser extends AbstractXMLObjectParse
 
         boolean useMAP = xo.getAttribute(MAP_RECONSTRUCTION, false);
 
+        int threads = xo.getAttribute(THREADS, 1);
+
         BranchRateModel branchRateModel = (BranchRateModel) xo.getChild(BranchRateModel.class);
 
         PatternList patternList = (PatternList) xo.getChild(PatternList.class);
@@ -106,7 +109,7 @@ public class StructuredCoalescentLikelihoodParser extends AbstractXMLObjectParse
                 if (USE_OLD_CODE) {
                     return new OldStructuredCoalescentLikelihood(treeModel, branchRateModel, popSizes, patternList, generalSubstitutionModel, subIntervals, includeSubtree, excludeSubtrees);
                 } else {
-                    return new StructuredCoalescentLikelihood(treeModel, branchRateModel, popSizes, patternList, dataType, tag, generalSubstitutionModel, subIntervals, includeSubtree, excludeSubtrees, useMAP);
+                    return new StructuredCoalescentLikelihood(treeModel, branchRateModel, popSizes, patternList, dataType, tag, generalSubstitutionModel, subIntervals, includeSubtree, excludeSubtrees, useMAP, threads);
                 }
             } catch (TreeUtils.MissingTaxonException mte) {
                 throw new XMLParseException("treeModel missing a taxon from taxon list in " + getParserName() + " element");
@@ -135,6 +138,7 @@ public class StructuredCoalescentLikelihoodParser extends AbstractXMLObjectParse
 
     private final XMLSyntaxRule[] rules = {
             AttributeRule.newIntegerRule(SUBINTERVALS, true),
+            AttributeRule.newIntegerRule(THREADS, true),
             new ElementRule(PatternList.class),
             new ElementRule(TreeModel.class),
             new ElementRule(BranchRateModel.class, true),
@@ -0,0 +1,229 @@
+/*
+ * GMRFBlockUpdateProposal.java
+ *
+ * Copyright (c) 2002-2023 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.evomodel.coalescent.operators;
+
+import dr.math.MathUtils;
+import dr.math.matrixAlgebra.SymmetricTridiagonalMatrix;
+
+/**
+ * The block update of the log population sizes shared by the GMRF skyride and skygrid operators: a draw
+ * from the Gaussian approximation to the full conditional at its mode under the proposed precision, and
+ * the Hastings ratio from the approximation under the current precision. The field precision matrices are
+ * tridiagonal so the Newton-Raphson steps, factorizations and solves are all done in place in buffers that
+ * are allocated once for the operator.
+ */
+class GMRFBlockUpdateProposal {
+
+    GMRFBlockUpdateProposal(int fieldLength, int maxIterations, double stopValue) {
+        this.fieldLength = fieldLength;
+        this.maxIterations = maxIterations;
+        this.stopValue = stopValue;
+
+        forwardQ = new SymmetricTridiagonalMatrix(fieldLength);
+        backwardQ = new SymmetricTridiagonalMatrix(fieldLength);
+        forwardPrecision = new SymmetricTridiagonalMatrix(fieldLength);
+        backwardPrecision = new SymmetricTridiagonalMatrix(fieldLength);
+        jacobian = new SymmetricTridiagonalMatrix(fieldLength);
+
+        forwardQZBeta = new double[fieldLength];
+        backwardQZBeta = new double[fieldLength];
+        mode = new double[fieldLength];
+        mean = new double[fieldLength];
+        gradient = new double[fieldLength];
+        standardNormal = new double[fieldLength];
+        scratch = new double[fieldLength];
+    }
+
+    /**
+     * @return the field precision matrix under the proposed precision, to be filled in before propose()
+     */
+    SymmetricTridiagonalMatrix getForwardQ() {
+        return forwardQ;
+    }
+
+    /**
+     * @return the field precision matrix under the current precision, to be filled in before propose()
+     */
+    SymmetricTridiagonalMatrix getBackwardQ() {
+        return backwardQ;
+    }
+
+    /**
+     * @param sufficientStatistics the weighted coalescent interval lengths
+     * @param numCoalEvents        the number of coalescent events in each grid interval (or null if there is one each)
+     * @param zBeta                the covariate effects on the log population sizes (or null if there are none)
+     * @param currentGamma         the current log population sizes
+     * @param proposedGamma        the proposed log population sizes
+     * @return the log Hastings ratio or negative infinity if the proposal failed
+     */
+    double propose(double[] sufficientStatistics, double[] numCoalEvents, double[] zBeta,
+                   double[] currentGamma, double[] proposedGamma) {
+
+        if (zBeta != null) {
+            forwardQ.multiply(zBeta, forwardQZBeta);
+            backwardQ.multiply(zBeta, backwardQZBeta);
+        }
+
+        if (!findMode(forwardQ, sufficientStatistics, numCoalEvents, forwardQZBeta, currentGamma) ||
+                !approximateAtMode(forwardQ, sufficientStatistics, numCoalEvents, forwardQZBeta, forwardPrecision)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+
+        double standardNormalDot = 0;
+        for (int i = 0; i < fieldLength; i++) {
+            standardNormal[i] = MathUtils.nextGaussian();
+            standardNormalDot += standardNormal[i] * standardNormal[i];
+        }
+
+        // x = mu + v where U v = z
+        forwardPrecision.solveFactor(standardNormal, proposedGamma);
+        for (int i = 0; i < fieldLength; i++) {
+            proposedGamma[i] += mean[i];
+        }
+
+        if (!findMode(backwardQ, sufficientStatistics, numCoalEvents, backwardQZBeta, proposedGamma) ||
+                !approximateAtMode(backwardQ, sufficientStatistics, numCoalEvents, backwardQZBeta, backwardPrecision)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+
+        for (int i = 0; i < fieldLength; i++) {
+            mode[i] = currentGamma[i] - mean[i];
+        }
+        backwardPrecision.multiply(mode, scratch);
+
+        double hRatio = logGeneralizedDeterminant(backwardPrecision) - 0.5 * dot(mode, scratch);
+        hRatio -= logGeneralizedDeterminant(forwardPrecision) - 0.5 * standardNormalDot;
+        return hRatio;
+    }
+
+    /**
+     * Finds the mode of the full conditional of the log population sizes by Newton-Raphson, starting from start
+     *
+     * @return false if the iterations fail or do not converge
+     */
+    private boolean findMode(SymmetricTridiagonalMatrix Q, double[] sufficientStatistics, double[] numCoalEvents,
+                             double[] qzBeta, double[] start) {
+
+        System.arraycopy(start, 0, mode, 0, fieldLength);
+
+        int numberIterations = 0;
+        while (computeGradient(Q, sufficientStatistics, numCoalEvents, qzBeta) > stopValue) {
+
+            jacobian.set(Q);
+            double[] diagonal = jacobian.getDiagonal();
+            for (int i = 0; i < fieldLength; i++) {
+                diagonal[i] += Math.exp(-mode[i]) * sufficientStatistics[i];
+            }
+            if (!jacobian.factor()) {
+                return false;
+            }
+            jacobian.solve(gradient, gradient);
+
+            for (int i = 0; i < fieldLength; i++) {
+                mode[i] += gradient[i];
+            }
+            numberIterations++;
+
+            if (numberIterations > maxIterations) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the norm of the gradient at the mode, which is left in gradient
+     */
+    private double computeGradient(SymmetricTridiagonalMatrix Q, double[] sufficientStatistics, double[] numCoalEvents,
+                                   double[] qzBeta) {
+        Q.multiply(mode, gradient);
+        double norm = 0;
+        for (int i = 0; i < fieldLength; i++) {
+            double numCoal = numCoalEvents == null ? 1.0 : numCoalEvents[i];
+            gradient[i] = -gradient[i] + qzBeta[i] - numCoal + sufficientStatistics[i] * Math.exp(-mode[i]);
+            norm += gradient[i] * gradient[i];
+        }
+        return Math.sqrt(norm);
+    }
+
+    /**
+     * Factors the precision of the Gaussian approximation at the mode and puts its mean in mean
+     *
+     * @return false if the precision is not positive definite
+     */
+    private boolean approximateAtMode(SymmetricTridiagonalMatrix Q, double[] sufficientStatistics, double[] numCoalEvents,
+                                      double[] qzBeta, SymmetricTridiagonalMatrix precision) {
+        precision.set(Q);
+        double[] diagonal = precision.getDiagonal();
+        for (int i = 0; i < fieldLength; i++) {
+            double weight = sufficientStatistics[i] * Math.exp(-mode[i]);
+            double numCoal = numCoalEvents == null ? 1.0 : numCoalEvents[i];
+            diagonal[i] += weight;
+            mean[i] = qzBeta[i] + weight * (mode[i] + 1) - numCoal;
+        }
+        if (!precision.factor()) {
+            return false;
+        }
+        precision.solve(mean, mean);
+        return true;
+    }
+
+    private static double logGeneralizedDeterminant(SymmetricTridiagonalMatrix precision) {
+        double returnValue = 0;
+        for (double u : precision.getFactorDiagonal()) {
+            if (u > 0.0000001) {
+                returnValue += Math.log(u);
+            }
+        }
+        return returnValue;
+    }
+
+    private static double dot(double[] x, double[] y) {
+        double sum = 0;
+        for (int i = 0; i < x.length; i++) {
+            sum += x[i] * y[i];
+        }
+        return sum;
+    }
+
+    private final int fieldLength;
+    private final int maxIterations;
+    private final double stopValue;
+
+    private final SymmetricTridiagonalMatrix forwardQ;
+    private final SymmetricTridiagonalMatrix backwardQ;
+    private final SymmetricTridiagonalMatrix forwardPrecision;
+    private final SymmetricTridiagonalMatrix backwardPrecision;
+    private final SymmetricTridiagonalMatrix jacobian;
+
+    private final double[] forwardQZBeta;
+    private final double[] backwardQZBeta;
+    private final double[] mode;
+    private final double[] mean;
+    private final double[] gradient;
+    private final double[] standardNormal;
+    private final double[] scratch;
+}
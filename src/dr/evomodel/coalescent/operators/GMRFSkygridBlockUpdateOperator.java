@@ -35,7 +35,6 @@ import dr.math.MathUtils;
 import no.uib.cipr.matrix.*;
 
 import java.util.List;
-import java.util.logging.Logger;
 
 /* A Metropolis-Hastings operator to update the log population sizes and precision parameter jointly under a Gaussian Markov random field prior
  *
@@ -46,15 +45,10 @@ import java.util.logging.Logger;
  */
 public class GMRFSkygridBlockUpdateOperator extends AbstractAdaptableOperator {
 
-    private static boolean FAIL_SILENTLY = true;
-
     private double scaleFactor;
     private double lambdaScaleFactor;
     private int fieldLength;
 
-    private int maxIterations;
-    private double stopValue;
-
     private Parameter popSizeParameter;
     private Parameter precisionParameter;
     private Parameter lambdaParameter;
@@ -63,7 +57,8 @@ public class GMRFSkygridBlockUpdateOperator extends AbstractAdaptableOperator {
 
     GMRFSkygridLikelihood gmrfField;
 
-    private double[] zeros;
+    private final GMRFBlockUpdateProposal proposal;
+    private final double[] proposedGamma;
 
     public GMRFSkygridBlockUpdateOperator(GMRFSkygridLikelihood gmrfLikelihood,
                                           double weight, AdaptationMode mode, double scaleFactor,
@@ -80,11 +75,10 @@ public class GMRFSkygridBlockUpdateOperator extends AbstractAdaptableOperator {
         lambdaScaleFactor = 0.0;
         fieldLength = popSizeParameter.getDimension();
 
-        this.maxIterations = maxIterations;
-        this.stopValue = stopValue;
         setWeight(weight);
 
-        zeros = new double[fieldLength];
+        proposal = new GMRFBlockUpdateProposal(fieldLength, maxIterations, stopValue);
+        proposedGamma = new double[fieldLength];
     }
 
     private double getNewLambda(double currentValue, double lambdaScale) {
@@ -114,44 +108,6 @@ public class GMRFSkygridBlockUpdateOperator extends AbstractAdaptableOperator {
         return returnValue;
     }
 
-    public DenseVector getMultiNormalMean(DenseVector CanonVector, BandCholesky Cholesky) {
-
-        DenseVector tempValue = new DenseVector(zeros);
-        DenseVector Mean = new DenseVector(zeros);
-
-        UpperTriangBandMatrix CholeskyUpper = Cholesky.getU();
-
-        // Assume Cholesky factorization of the precision matrix Q = LL^T
-
-        // 1. Solve L\omega = b
-
-        CholeskyUpper.transSolve(CanonVector, tempValue);
-
-        // 2. Solve L^T \mu = \omega
-
-        CholeskyUpper.solve(tempValue, Mean);
-
-        return Mean;
-    }
-
-    public DenseVector getMultiNormal(DenseVector StandNorm, DenseVector Mean, BandCholesky Cholesky) {
-
-        DenseVector returnValue = new DenseVector(zeros);
-
-        UpperTriangBandMatrix CholeskyUpper = Cholesky.getU();
-
-        // 3. Solve L^T v = z
-
-        CholeskyUpper.solve(StandNorm, returnValue);
-
-        // 4. Return x = \mu + v
-
-        returnValue.add(Mean);
-
-        return returnValue;
-    }
-
-
     public static DenseVector getMultiNormal(DenseVector Mean, UpperSPDDenseMatrix Variance) {
         int length = Mean.size();
         DenseVector tempValue = new DenseVector(length);
@@ -208,83 +164,6 @@ public class GMRFSkygridBlockUpdateOperator extends AbstractAdaptableOperator {
         }
     }
 
-    public DenseVector newtonRaphson(double[] data1, double[] data2, DenseVector currentGamma,
-                                     SymmTridiagMatrix proposedQ, DenseVector ZBeta) {
-        return newNewtonRaphson(data1, data2, currentGamma, proposedQ, maxIterations, stopValue, ZBeta);
-    }
-
-    public static DenseVector newNewtonRaphson(double[] data1, double[] data2, DenseVector currentGamma, SymmTridiagMatrix proposedQ,
-                                               int maxIterations, double stopValue, DenseVector ZBeta) {
-
-        DenseVector iterateGamma = currentGamma.copy();
-        DenseVector tempValue = currentGamma.copy();
-
-        int numberIterations = 0;
-
-
-        while (gradient(data1, data2, iterateGamma, proposedQ, ZBeta).norm(Vector.Norm.Two) > stopValue) {
-           try {
-                jacobian(data2, iterateGamma, proposedQ).solve(gradient(data1, data2, iterateGamma, proposedQ, ZBeta), tempValue);
-           } catch (MatrixNotSPDException e) {
-               if (FAIL_SILENTLY) {
-                   // this replicates the old behaviour of throwing an OperatorFailedException and rejecting the move.
-                   return null;
-               }
-               Logger.getLogger("dr.evomodel.coalescent.operators.GMRFMultilocusSkyrideBlockUpdateOperator").fine("Newton-Raphson F");
-               throw new RuntimeException("Newton Raphson algorithm did not converge within " + maxIterations + " step to a norm less than " + stopValue + "\n" +
-                       "Try starting BEAST with a more accurate initial tree.");
-           } catch (MatrixSingularException e) {
-               if (FAIL_SILENTLY) {
-                   // this replicates the old behaviour of throwing an OperatorFailedException and rejecting the move.
-                   return null;
-               }
-               Logger.getLogger("dr.evomodel.coalescent.operators.GMRFMultilocusSkyrideBlockUpdateOperator").fine("Newton-Raphson F");
-               throw new RuntimeException("Newton Raphson algorithm did not converge within " + maxIterations + " step to a norm less than " + stopValue + "\n" +
-                       "Try starting BEAST with a more accurate initial tree.");
-            }
-
-            iterateGamma.add(tempValue);
-            numberIterations++;
-
-            if (numberIterations > maxIterations) {
-                if (FAIL_SILENTLY) {
-                    // this replicates the old behaviour of throwing an OperatorFailedException and rejecting the move.
-                    return null;
-                }
-                Logger.getLogger("dr.evomodel.coalescent.operators.GMRFMultilocusSkyrideBlockUpdateOperator").fine("Newton-Raphson F");
-                throw new RuntimeException("Newton Raphson algorithm did not converge within " + maxIterations + " step to a norm less than " + stopValue + "\n" +
-                        "Try starting BEAST with a more accurate initial tree.");
-            }
-        }
-
-        Logger.getLogger("dr.evomodel.coalescent.operators.GMRFMultilocusSkyrideBlockUpdateOperator").fine("Newton-Raphson S");
-        return iterateGamma;
-
-    }
-
-    private static DenseVector gradient(double[] data1, double[] data2, DenseVector value,
-                                        SymmTridiagMatrix Q, DenseVector ZBeta) {
-
-        DenseVector returnValue = new DenseVector(value.size());
-        DenseVector returnValueCov = new DenseVector(ZBeta.size());
-        Q.mult(value, returnValue);
-        //check this
-        Q.mult(ZBeta, returnValueCov);
-        for (int i = 0; i < value.size(); i++) {
-            returnValue.set(i, -returnValue.get(i) +returnValueCov.get(i) - data1[i] + data2[i] * Math.exp(-value.get(i)));
-        }
-        return returnValue;
-    }
-
-
-    private static SPDTridiagMatrix jacobian(double[] data2, DenseVector value, SymmTridiagMatrix Q) {
-        SPDTridiagMatrix jacobian = new SPDTridiagMatrix(Q, true);
-        for (int i = 0, n = value.size(); i < n; i++) {
-            jacobian.set(i, i, jacobian.get(i, i) + Math.exp(-value.get(i)) * data2[i]);
-        }
-        return jacobian;
-    }
-
     public double doOperation() {
 
         double currentPrecision = precisionParameter.getParameterValue(0);
@@ -296,110 +175,27 @@ public class GMRFSkygridBlockUpdateOperator extends AbstractAdaptableOperator {
         precisionParameter.setParameterValue(0, proposedPrecision);
         lambdaParameter.setParameterValue(0, proposedLambda);
 
-        DenseVector currentGamma = new DenseVector(gmrfField.getPopSizeParameter().getParameterValues());
-        DenseVector proposedGamma;
-
-        SymmTridiagMatrix currentQ = gmrfField.getStoredScaledWeightMatrix(currentPrecision, currentLambda);
-        SymmTridiagMatrix proposedQ = gmrfField.getScaledWeightMatrix(proposedPrecision, proposedLambda);
-
-        double[] wNative = gmrfField.getSufficientStatistics();
-        double[] numCoalEv = gmrfField.getNumCoalEvents();
-
-        UpperSPDBandMatrix forwardQW = new UpperSPDBandMatrix(proposedQ, 1);
-        UpperSPDBandMatrix backwardQW = new UpperSPDBandMatrix(currentQ, 1);
+        double[] currentGamma = gmrfField.getPopSizeParameter().getParameterValues();
 
-        BandCholesky forwardCholesky = new BandCholesky(wNative.length, 1, true);
-        BandCholesky backwardCholesky = new BandCholesky(wNative.length, 1, true);
+        gmrfField.getStoredScaledWeightMatrix(currentPrecision, currentLambda, proposal.getBackwardQ());
+        gmrfField.getScaledWeightMatrix(proposedPrecision, proposedLambda, proposal.getForwardQ());
 
-        DenseVector diagonal1 = new DenseVector(fieldLength);
-        DenseVector diagonal2 = new DenseVector(fieldLength);
-        DenseVector diagonal3 = new DenseVector(fieldLength);
-        DenseVector ZBetaVector = getZBeta(covariates, betaParameter);
-        DenseVector QZBetaProp = new DenseVector(fieldLength);
-        DenseVector QZBetaCurrent = new DenseVector(fieldLength);
-        forwardQW.mult(ZBetaVector, QZBetaProp);
-        backwardQW.mult(ZBetaVector, QZBetaCurrent);
+        double[] zBeta = covariates != null ? getZBeta(covariates, betaParameter).getData() : null;
 
-        DenseVector modeForward = newtonRaphson(numCoalEv, wNative, currentGamma, proposedQ.copy(), ZBetaVector);
+        double hRatio = proposal.propose(gmrfField.getSufficientStatistics(), gmrfField.getNumCoalEvents(), zBeta,
+                currentGamma, proposedGamma);
 
-        if (modeForward == null) {
+        if (hRatio == Double.NEGATIVE_INFINITY) {
             // used to pass on an OperatorFailedException
             return Double.NEGATIVE_INFINITY;
         }
 
-        for (int i = 0; i < fieldLength; i++) {
-            diagonal1.set(i, wNative[i] * Math.exp(-modeForward.get(i)));
-            diagonal2.set(i, modeForward.get(i) + 1);
-
-            forwardQW.set(i, i, diagonal1.get(i) + forwardQW.get(i, i));
-            //diagonal1.set(i, diagonal1.get(i) * diagonal2.get(i) - 1);
-            diagonal1.set(i, QZBetaProp.get(i) + diagonal1.get(i) * diagonal2.get(i) - numCoalEv[i]);
-        }
-
-        forwardCholesky.factor(forwardQW.copy());
-
-        DenseVector forwardMean = getMultiNormalMean(diagonal1, forwardCholesky);
-
-        DenseVector stand_norm = new DenseVector(zeros);
-
-        for (int i = 0; i < zeros.length; i++)
-            stand_norm.set(i, MathUtils.nextGaussian());
-
-        proposedGamma = getMultiNormal(stand_norm, forwardMean, forwardCholesky);
-
-        /*
-        double hRatio = 0;
-        for (int i = 0; i < fieldLength; i++) {
-            diagonal1.set(i, proposedGamma.get(i) - forwardMean.get(i));
-        }
-        diagonal3.zero();
-        forwardQW.mult(diagonal1, diagonal3);
-
-        hRatio -= logGeneralizedDeterminant(forwardCholesky.getU() ) - 0.5 * diagonal1.dot(diagonal3);
-        */
-
         for (int i = 0; i < fieldLength; i++)
-            popSizeParameter.setParameterValueQuietly(i, proposedGamma.get(i));
+            popSizeParameter.setParameterValueQuietly(i, proposedGamma[i]);
 
         ((Parameter.Abstract) popSizeParameter).fireParameterChangedEvent();
 
-
-        double hRatio = 0;
-
-        diagonal1.zero();
-        diagonal2.zero();
-        diagonal3.zero();
-
-        DenseVector modeBackward = newtonRaphson(numCoalEv, wNative, proposedGamma, currentQ.copy(), ZBetaVector);
-
-        if (modeBackward == null) {
-            // used to pass on an OperatorFailedException
-            return Double.NEGATIVE_INFINITY;
-        }
-
-        for (int i = 0; i < fieldLength; i++) {
-            diagonal1.set(i, wNative[i] * Math.exp(-modeBackward.get(i)));
-            diagonal2.set(i, modeBackward.get(i) + 1);
-
-            backwardQW.set(i, i, diagonal1.get(i) + backwardQW.get(i, i));
-            //diagonal1.set(i, diagonal1.get(i) * diagonal2.get(i) - 1);
-            diagonal1.set(i, QZBetaCurrent.get(i) + diagonal1.get(i) * diagonal2.get(i) - numCoalEv[i]);
-        }
-
-        backwardCholesky.factor(backwardQW.copy());
-
-        DenseVector backwardMean = getMultiNormalMean(diagonal1, backwardCholesky);
-
-        for (int i = 0; i < fieldLength; i++) {
-            diagonal1.set(i, currentGamma.get(i) - backwardMean.get(i));
-        }
-
-        backwardQW.mult(diagonal1, diagonal3);
-
-        hRatio += logGeneralizedDeterminant(backwardCholesky.getU()) - 0.5 * diagonal1.dot(diagonal3);
-        hRatio -= logGeneralizedDeterminant(forwardCholesky.getU() ) - 0.5 * stand_norm.dot(stand_norm);
-
-       return hRatio;
+        return hRatio;
     }
 
     //MCMCOperator INTERFACE
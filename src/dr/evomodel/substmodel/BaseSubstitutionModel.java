@@ -269,10 +269,25 @@ public abstract class BaseSubstitutionModel extends AbstractModel
 
         double normalization = setupMatrix();
 
-        eigenDecomposition = eigenSystem.decomposeMatrix(q);
+        EigenDecompositionCache cache = EigenDecompositionCache.getInstance();
+        if (cache.isEnabled()) {
+            // key on the rate matrix before it is decomposed in place
+            EigenDecompositionCache.Key key = cache.createKey(eigenSystem, q, normalization);
+            eigenDecomposition = cache.get(key);
+            if (eigenDecomposition == null) {
+                eigenDecomposition = eigenSystem.decomposeMatrix(q);
+
+                if (eigenDecomposition != null) {
+                    eigenDecomposition.normalizeEigenValues(normalization);
+                    cache.put(key, eigenDecomposition);
+                }
+            }
+        } else {
+            eigenDecomposition = eigenSystem.decomposeMatrix(q);
 
-        if (eigenDecomposition != null)
-            eigenDecomposition.normalizeEigenValues(normalization);
+            if (eigenDecomposition != null)
+                eigenDecomposition.normalizeEigenValues(normalization);
+        }
 
         updateMatrix = false;
     }
@@ -46,7 +46,9 @@ public class EigenDecomposition implements Serializable {
         double[] ievc = Ievc.clone();
         double[] eval = Eval.clone();
 
-        return new EigenDecomposition(evec, ievc, eval);
+        EigenDecomposition copy = new EigenDecomposition(evec, ievc, eval);
+        copy.normalization = normalization;
+        return copy;
     }
 
     /**
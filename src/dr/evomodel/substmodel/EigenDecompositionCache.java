@@ -0,0 +1,167 @@
+/*
+ * EigenDecompositionCache.java
+ *
+ * Copyright (c) 2002-2023 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.evomodel.substmodel;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of eigen decompositions keyed on the (unnormalized) infinitesimal
+ * rate matrix. A single instance is shared by all substitution models so that rate matrices revisited by
+ * rejected proposals or by the chains of an MC3 run are not decomposed again.
+ *
+ * The cache is disabled unless the system property <code>beast.eigen.cache.size</code> is set to a
+ * positive number of entries.
+ */
+public class EigenDecompositionCache {
+
+    public static final String CACHE_SIZE_PROPERTY = "beast.eigen.cache.size";
+
+    private static EigenDecompositionCache instance = null;
+
+    public static synchronized EigenDecompositionCache getInstance() {
+        if (instance == null) {
+            int capacity = 0;
+            String size = System.getProperty(CACHE_SIZE_PROPERTY);
+            if (size != null) {
+                capacity = Integer.parseInt(size);
+            }
+            instance = new EigenDecompositionCache(capacity);
+        }
+        return instance;
+    }
+
+    public EigenDecompositionCache(final int capacity) {
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<Key, EigenDecomposition>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Key, EigenDecomposition> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Creates a key for a rate matrix. This must be called before the matrix is passed to
+     * an EigenSystem as most implementations decompose the matrix in place.
+     *
+     * @param eigenSystem   the system that will decompose the matrix
+     * @param matrix        the infinitesimal rate matrix
+     * @param normalization the normalization that will be applied to the eigenvalues
+     * @return the key
+     */
+    public Key createKey(EigenSystem eigenSystem, double[][] matrix, double normalization) {
+        final int dim = matrix.length;
+        double[] values = new double[dim * dim + 1];
+        int index = 0;
+        for (double[] row : matrix) {
+            System.arraycopy(row, 0, values, index, dim);
+            index += dim;
+        }
+        values[index] = normalization;
+        return new Key(eigenSystem.getClass(), values);
+    }
+
+    /**
+     * @param key the key of the rate matrix
+     * @return a copy of the cached, normalized decomposition or null if there is none
+     */
+    public synchronized EigenDecomposition get(Key key) {
+        EigenDecomposition eigen = cache.get(key);
+        if (eigen == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return eigen.copy();
+    }
+
+    public synchronized void put(Key key, EigenDecomposition eigen) {
+        if (eigen != null) {
+            cache.put(key, eigen.copy());
+        }
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized double getHitRate() {
+        long total = hitCount + missCount;
+        return (total == 0 ? 0.0 : (double) hitCount / total);
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    public synchronized String toString() {
+        return "Eigen decomposition cache: " + hitCount + " hits, " + missCount + " misses (hit rate = " +
+                String.format("%.3f", getHitRate()) + ", " + cache.size() + " of " + capacity + " entries in use)";
+    }
+
+    public static final class Key {
+
+        private Key(Class<?> system, double[] values) {
+            this.system = system;
+            this.values = values;
+            this.hashCode = 31 * system.hashCode() + Arrays.hashCode(values);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return hashCode == other.hashCode && system == other.system && Arrays.equals(values, other.values);
+        }
+
+        private final Class<?> system;
+        private final double[] values;
+        private final int hashCode;
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<Key, EigenDecomposition> cache;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+}
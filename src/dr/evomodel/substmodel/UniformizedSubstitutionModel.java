@@ -28,6 +28,7 @@ package dr.evomodel.substmodel;
 import dr.inference.markovjumps.*;
 import dr.inference.model.Model;
 import dr.math.MathUtils;
+import dr.math.MersenneTwisterFast;
 
 import java.util.logging.Logger;
 
@@ -79,6 +80,16 @@ public class UniformizedSubstitutionModel extends MarkovJumpsSubstitutionModel {
         subordinator = storedSubordinator;
     }
 
+    /**
+     * Constructs the subordinator if the substitution model has changed. This must be called before
+     * the histories are simulated on several threads.
+     */
+    public void prepareSubordinator() {
+        if (updateSubordinator) {
+            constructSubordinator();
+        }
+    }
+
     private void constructSubordinator() {
         substModel.getInfinitesimalMatrix(tmp);
         subordinator = new SubordinatedProcess(tmp, stateCount);
@@ -164,8 +175,61 @@ public class UniformizedSubstitutionModel extends MarkovJumpsSubstitutionModel {
 
         double total = 0;
         for (int i = 0; i < numSimulants; i++) {
-            StateHistory history = null;
-            try {
+            StateHistory history = simulateHistory(startingState, endingState, time, transitionProbability, null);
+            if (history == null) {
+                return Double.NaN;
+            }
+            total += getProcessForSimulant(history);
+            if (saveCompleteHistory) {
+                if (numSimulants == 1) {
+                    completeHistory = history;
+                } else {
+                    throw new RuntimeException("Use single simulant when saving complete histories");
+                }
+            }
+        }
+        return total / (double) numSimulants;
+    }
+
+    /**
+     * As computeCondStatMarkovJumps but safe to call from several threads at once: the draws are made from
+     * the given generator and the sampled history is returned in savedHistory[0] (if savedHistory is not null)
+     * rather than kept as the complete history. prepareSubordinator() must be called first.
+     */
+    public double computeCondStatMarkovJumps(int startingState,
+                                             int endingState,
+                                             double time,
+                                             double transitionProbability,
+                                             MersenneTwisterFast random,
+                                             StateHistory[] savedHistory) {
+
+        if (savedHistory != null && numSimulants > 1) {
+            throw new RuntimeException("Use single simulant when saving complete histories");
+        }
+
+        double total = 0;
+        for (int i = 0; i < numSimulants; i++) {
+            StateHistory history = simulateHistory(startingState, endingState, time, transitionProbability, random);
+            if (history == null) {
+                return Double.NaN;
+            }
+            total += getProcessForSimulant(history);
+            if (savedHistory != null) {
+                savedHistory[0] = history;
+            }
+        }
+        return total / (double) numSimulants;
+    }
+
+    /**
+     * @param random the generator to draw from or null to use MathUtils
+     * @return the simulated history or null if none could be found
+     */
+    private StateHistory simulateHistory(int startingState, int endingState, double time,
+                                         double transitionProbability, MersenneTwisterFast random) {
+        StateHistory history = null;
+        try {
+            if (random == null) {
                 history = UniformizedStateHistory.simulateConditionalOnEndingState(
                         0.0,
                         startingState,
@@ -175,51 +239,55 @@ public class UniformizedSubstitutionModel extends MarkovJumpsSubstitutionModel {
                         stateCount,
                         subordinator
                 );
-            } catch (SubordinatedProcess.Exception e) {
-
-                if (RETURN_UNIFORMLY_DISTRIBUTED_EVENT) {
-                    warn();
-                    history = new StateHistory(0.0, startingState, stateCount);
-                    if (startingState != endingState) {
-                        history.addChange(new StateChange(MathUtils.nextDouble() * time, endingState));
+            } else {
+                history = UniformizedStateHistory.simulateConditionalOnEndingState(
+                        0.0,
+                        startingState,
+                        time,
+                        endingState,
+                        transitionProbability,
+                        stateCount,
+                        subordinator,
+                        random
+                );
+            }
+        } catch (SubordinatedProcess.Exception e) {
+
+            if (RETURN_UNIFORMLY_DISTRIBUTED_EVENT) {
+                warn();
+                history = new StateHistory(0.0, startingState, stateCount);
+                if (startingState != endingState) {
+                    double u = random == null ? MathUtils.nextDouble() : random.nextDouble();
+                    history.addChange(new StateChange(u * time, endingState));
+                }
+                history.addEndingState(new StateChange(time, endingState));
+            } else if (RETURN_NAN) {
+                warn();
+                return null;
+            } else {
+
+                // Error in uniformization; try rejection sampling
+                System.err.println("Attempting rejection sampling after uniformization failure");
+
+                substModel.getInfinitesimalMatrix(tmp);
+                int attempts = 0;
+                boolean success = false;
+
+                while (!success) {
+                    if (attempts >= maxRejectionAttempts) {
+                        throw new RuntimeException("Rejection sampling failure, after uniformization failure");
                     }
-                    history.addEndingState(new StateChange(time, endingState));
-                } else if (RETURN_NAN) {
-                    warn();
-                    return Double.NaN;
-                } else {
 
-                    // Error in uniformization; try rejection sampling
-                    System.err.println("Attempting rejection sampling after uniformization failure");
-
-                    substModel.getInfinitesimalMatrix(tmp);
-                    int attempts = 0;
-                    boolean success = false;
-
-                    while (!success) {
-                        if (attempts >= maxRejectionAttempts) {
-                            throw new RuntimeException("Rejection sampling failure, after uniformization failure");
-                        }
-
-                        history = StateHistory.simulateUnconditionalOnEndingState(0.0, startingState, time, tmp, stateCount);
-                        if (history.getEndingState() == endingState) {
-                            success = true;
-                        }
-
-                        attempts++;
+                    history = StateHistory.simulateUnconditionalOnEndingState(0.0, startingState, time, tmp, stateCount);
+                    if (history.getEndingState() == endingState) {
+                        success = true;
                     }
-                }
-            }
-            total += getProcessForSimulant(history);
-            if (saveCompleteHistory) {
-                if (numSimulants == 1) {
-                    completeHistory = history;
-                } else {
-                    throw new RuntimeException("Use single simulant when saving complete histories");
+
+                    attempts++;
                 }
             }
         }
-        return total / (double) numSimulants;
+        return history;
     }
 
    public StateHistory getStateHistory() {
@@ -0,0 +1,210 @@
+/*
+ * BinaryTreeLogger.java
+ *
+ * Copyright (c) 2002-2023 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.evomodel.tree;
+
+import dr.evolution.io.BinaryTreeWriter;
+import dr.evolution.tree.BranchRates;
+import dr.evolution.tree.Tree;
+import dr.evolution.tree.TreeAttributeProvider;
+import dr.evolution.tree.TreeTraitProvider;
+import dr.inference.loggers.LogFormatter;
+import dr.inference.loggers.MCLogger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A tree logger that writes the binary tree log format of BinaryTreeWriter rather than NEXUS. The
+ * trees can be read with BinaryTreeImporter (which TreeAnnotator and LogCombiner use when given a
+ * binary file) and LogCombiner will convert them to a NEXUS tree file.
+ *
+ * The file is written by a BinaryTreeLogger.Formatter so, as for the other loggers, the output goes
+ * to whichever formatters the logger currently has (MCMCMC moves them to the cold chain's logger).
+ * The taxa are always numbered by the taxon table of the file (as with mapNamesToNumbers in a NEXUS
+ * tree log). Each tree is encoded when it is logged and, if logging is asynchronous, written by the
+ * log writer thread.
+ */
+public class BinaryTreeLogger extends MCLogger {
+
+    /**
+     * @param formatter the destination of the trees
+     * @param condition if not null then this decides which states are logged rather than logEvery
+     */
+    public BinaryTreeLogger(Tree tree, BranchRates branchRates,
+                            TreeAttributeProvider[] treeAttributeProviders,
+                            TreeTraitProvider[] treeTraitProviders,
+                            Formatter formatter, long logEvery,
+                            TreeLogger.LogUpon condition) {
+
+        super(false, 0);
+        addFormatter(formatter);
+        setLogEvery(logEvery);
+
+        this.tree = tree;
+        this.branchRates = branchRates;
+        this.treeAttributeProviders = treeAttributeProviders;
+        this.treeTraitProviders = treeTraitProviders;
+        this.condition = condition;
+    }
+
+    /**
+     * @return the ids of the taxa of the tree in the order they are numbered in the file
+     */
+    public static List<String> getTaxonIds(Tree tree, boolean sortTranslationTable) {
+        List<String> taxonIds = new ArrayList<String>();
+        for (int i = 0; i < tree.getTaxonCount(); i++) {
+            taxonIds.add(tree.getTaxon(i).getId());
+        }
+        if (sortTranslationTable) {
+            Collections.sort(taxonIds);
+        }
+        return taxonIds;
+    }
+
+    public void log(long state) {
+
+        final boolean doIt = condition != null ? condition.logNow(state) :
+                (logEvery < 0 || ((state % logEvery) == 0));
+
+        if (doIt) {
+            List<String> labels = new ArrayList<String>();
+            List<String> values = new ArrayList<String>();
+            if (treeAttributeProviders != null) {
+                for (TreeAttributeProvider tap : treeAttributeProviders) {
+                    String[] attributeLabel = tap.getTreeAttributeLabel();
+                    String[] attributeValue = tap.getAttributeForTree(tree);
+                    for (int i = 0; i < attributeLabel.length; i++) {
+                        labels.add(attributeLabel[i]);
+                        values.add(attributeValue[i]);
+                    }
+                }
+            }
+            final String[] attributeLabels = labels.toArray(new String[labels.size()]);
+            final String[] attributeValues = values.toArray(new String[values.size()]);
+
+            for (LogFormatter logFormatter : getFormatters()) {
+                if (logFormatter instanceof Formatter) {
+                    final Formatter formatter = (Formatter) logFormatter;
+                    // the traits are evaluated now so only the writing is left to the log writer thread
+                    final byte[] record = formatter.encodeTree("STATE_" + state, tree,
+                            attributeLabels, attributeValues, branchRates, treeTraitProviders);
+                    write(new Runnable() {
+                        public void run() {
+                            formatter.writeRecord(record);
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    public Tree getTree() {
+        return tree;
+    }
+
+    /**
+     * The destination of a binary tree log. The file header is written when logging starts and the end
+     * marker when it stops. Text written to it by MCLogger (the title and column labels) is ignored.
+     */
+    public static class Formatter implements LogFormatter {
+
+        /**
+         * @param taxonIds      the taxon labels in the order they are numbered in the file
+         * @param decimalPlaces the number of decimal places for branch lengths or -1 to write node heights
+         */
+        public Formatter(OutputStream stream, List<String> taxonIds, int decimalPlaces) {
+            this.stream = stream;
+            this.taxonIds = taxonIds;
+            this.decimalPlaces = decimalPlaces;
+        }
+
+        public void startLogging(String title) {
+            try {
+                writer = new BinaryTreeWriter(stream, taxonIds, decimalPlaces);
+            } catch (IOException ioe) {
+                throw new RuntimeException("Unable to write binary tree log: " + ioe.getMessage());
+            }
+        }
+
+        byte[] encodeTree(String name, Tree tree, String[] attributeLabels, String[] attributeValues,
+                          BranchRates branchRates, TreeTraitProvider[] treeTraitProviders) {
+            if (writer == null) {
+                throw new IllegalStateException("The binary tree log has not been started");
+            }
+            try {
+                return writer.encodeTree(name, tree, attributeLabels, attributeValues, branchRates, treeTraitProviders);
+            } catch (IOException ioe) {
+                throw new RuntimeException("Unable to write binary tree log: " + ioe.getMessage());
+            }
+        }
+
+        void writeRecord(byte[] record) {
+            try {
+                writer.writeRecord(record);
+            } catch (IOException ioe) {
+                throw new RuntimeException("Unable to write binary tree log: " + ioe.getMessage());
+            }
+        }
+
+        public void logHeading(String heading) {
+        }
+
+        public void logLine(String line) {
+        }
+
+        public void logLabels(String[] labels) {
+        }
+
+        public void logValues(String[] values) {
+        }
+
+        public void stopLogging() {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ioe) {
+                    throw new RuntimeException("Unable to write binary tree log: " + ioe.getMessage());
+                }
+                writer = null;
+            }
+        }
+
+        private final OutputStream stream;
+        private final List<String> taxonIds;
+        private final int decimalPlaces;
+
+        private BinaryTreeWriter writer = null;
+    }
+
+    private final Tree tree;
+    private final BranchRates branchRates;
+    private final TreeAttributeProvider[] treeAttributeProviders;
+    private final TreeTraitProvider[] treeTraitProviders;
+    private final TreeLogger.LogUpon condition;
+}
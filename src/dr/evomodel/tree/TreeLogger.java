@@ -232,6 +232,25 @@ public class TreeLogger extends MCLogger {
 
             buffer.append(" = [&R] ");
 
+            if (isAsynchronous() && !hasLoggableTreeTraits()) {
+                // copy the tree now and leave writing the newick to the log writer thread
+                final TreeSnapshot snapshot = new TreeSnapshot(tree, substitutions ? branchRates : null);
+                final String prefix = buffer.toString();
+                final List<LogFormatter> formatters = getFormatters();
+                write(new Runnable() {
+                    public void run() {
+                        StringBuffer buffer = new StringBuffer(prefix);
+                        snapshot.newick(snapshot.root, buffer);
+                        buffer.append(";");
+                        String line = buffer.toString();
+                        for (LogFormatter formatter : formatters) {
+                            formatter.logLine(line);
+                        }
+                    }
+                });
+                return;
+            }
+
             if (substitutions) {
                 TreeUtils.newick(tree, tree.getRoot(), false, TreeUtils.BranchLengthType.LENGTHS_AS_SUBSTITUTIONS,
                         format, branchRates, treeTraitProviders, idMap, buffer);
@@ -251,6 +270,94 @@ public class TreeLogger extends MCLogger {
         super.stopLogging();
     }
 
+    private boolean hasLoggableTreeTraits() {
+        if (treeTraitProviders != null) {
+            for (TreeTraitProvider ttp : treeTraitProviders) {
+                for (TreeTrait treeTrait : ttp.getTreeTraits()) {
+                    if (treeTrait.getLoggable()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A copy of the topology and branch lengths of the tree from which the same newick string as
+     * TreeUtils.newick (without tree traits) can be written on another thread.
+     */
+    private class TreeSnapshot {
+
+        TreeSnapshot(Tree tree, BranchRates branchRates) {
+            int nodeCount = tree.getNodeCount();
+            root = tree.getRoot().getNumber();
+            children = new int[nodeCount][];
+            lengths = new double[nodeCount];
+            taxonIds = new String[tree.getExternalNodeCount()];
+
+            for (int i = 0; i < nodeCount; i++) {
+                NodeRef node = tree.getNode(i);
+                int childCount = tree.getChildCount(node);
+                children[i] = new int[childCount];
+                for (int j = 0; j < childCount; j++) {
+                    children[i][j] = tree.getChild(node, j).getNumber();
+                }
+                NodeRef parent = tree.getParent(node);
+                if (parent != null) {
+                    // as TreeUtils.newick and BinaryTreeWriter, rather than tree.getBranchLength(node)
+                    lengths[i] = tree.getNodeHeight(parent) - tree.getNodeHeight(node);
+                    if (branchRates != null) {
+                        lengths[i] *= branchRates.getBranchRate(tree, node);
+                    }
+                }
+            }
+            for (int i = 0; i < taxonIds.length; i++) {
+                taxonIds[i] = tree.getTaxonId(i);
+            }
+        }
+
+        void newick(int node, StringBuffer buffer) {
+            if (children[node].length == 0) {
+                if (mapNames || substitutions) {
+                    buffer.append(idMap.get(taxonIds[node]));
+                } else {
+                    String label = taxonIds[node];
+                    if (label.contains(" ") || label.contains(":") || label.contains(";") || label.contains(",")) {
+                        buffer.append("\"");
+                        buffer.append(label);
+                        buffer.append("\"");
+                    } else {
+                        buffer.append(label);
+                    }
+                }
+            } else {
+                buffer.append("(");
+                for (int i = 0; i < children[node].length; i++) {
+                    if (i > 0) {
+                        buffer.append(",");
+                    }
+                    newick(children[node][i], buffer);
+                }
+                buffer.append(")");
+            }
+
+            if (node != root) {
+                buffer.append(":");
+                if (format != null) {
+                    buffer.append(format.format(lengths[node]));
+                } else {
+                    buffer.append(String.valueOf(lengths[node]));
+                }
+            }
+        }
+
+        private final int root;
+        private final int[][] children;
+        private final double[] lengths;
+        private final String[] taxonIds;
+    }
+
     public Tree getTree() {
 		return tree;
 	}
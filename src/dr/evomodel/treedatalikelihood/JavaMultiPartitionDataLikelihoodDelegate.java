@@ -0,0 +1,1185 @@
+/*
+ * JavaMultiPartitionDataLikelihoodDelegate.java
+ *
+ * Copyright (c) 2002-2017 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.evomodel.treedatalikelihood;
+
+import dr.evolution.alignment.PatternList;
+import dr.evolution.alignment.ReferencePatternStates;
+import dr.evolution.alignment.UncertainSiteList;
+import dr.evolution.datatype.DataType;
+import dr.evolution.tree.Tree;
+import dr.evomodel.branchmodel.BranchModel;
+import dr.evomodel.siteratemodel.SiteRateModel;
+import dr.evomodel.substmodel.SubstitutionModel;
+import dr.inference.model.AbstractModel;
+import dr.inference.model.Model;
+import dr.inference.model.Parameter;
+import dr.inference.model.Variable;
+import dr.util.TaskPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * JavaMultiPartitionDataLikelihoodDelegate
+ *
+ * A DataLikelihoodDelegate for many partitions on a shared tree that does not need BEAGLE. One traversal
+ * of the tree is shared by all the partitions and the combined pattern space is split into chunks of
+ * roughly equal cost, one for each thread.
+ *
+ * Partials are rescaled by powers of two at every internal node so no precision is lost and the
+ * likelihood never underflows.
+ *
+ * Partitions of closely related sequences without ambiguities are stored as a reference state for each
+ * pattern plus the differences from it (see ReferencePatternStates) and only the patterns at which some
+ * tip below a node differs get partials of their own at that node.
+ *
+ * @version $Id$
+ */
+public class JavaMultiPartitionDataLikelihoodDelegate extends AbstractModel implements DataLikelihoodDelegate {
+
+    private static final boolean COUNT_CALCULATIONS = true; // keep a cumulative total of number of computations
+
+    private static final double LN2 = Math.log(2.0);
+
+    // "true" or "false" to always or never store the tips as reference states and differences, otherwise
+    // partitions are compressed when few of the patterns at each node differ from the reference
+    private static final String TIP_COMPRESSION_PROPERTY = "java.tip.compression";
+    private static final double COMPRESSION_THRESHOLD = 0.5;
+
+    // count the number of partial likelihood and matrix updates
+    private long totalMatrixUpdateCount = 0;
+    private long totalPartialsUpdateCount = 0;
+    private long totalEvaluationCount = 0;
+
+    /**
+     * @param tree Used for configuration - shouldn't be watched for changes
+     * @param patternLists List of patternLists comprising each partition
+     * @param branchModels Either a single branch model shared by all partitions or one for each partition
+     * @param siteRateModels Either a single site rate model shared by all partitions or one for each partition
+     * @param useAmbiguities Whether to respect state ambiguities in data
+     * @param threadCount The number of threads to divide the patterns between
+     * @throws DelegateTypeException if a branch model has more than one substitution model
+     */
+    public JavaMultiPartitionDataLikelihoodDelegate(Tree tree,
+                                                    List<PatternList> patternLists,
+                                                    List<BranchModel> branchModels,
+                                                    List<SiteRateModel> siteRateModels,
+                                                    boolean useAmbiguities,
+                                                    int threadCount) throws DelegateTypeException {
+
+        super("JavaMultiPartitionDataLikelihoodDelegate");
+        final Logger logger = Logger.getLogger("dr.evomodel");
+
+        setId(patternLists.get(0).getId());
+
+        if (branchModels.size() != 1 && branchModels.size() != patternLists.size()) {
+            throw new IllegalArgumentException("There should be one branch model or one for each partition");
+        }
+        if (siteRateModels.size() != 1 && siteRateModels.size() != patternLists.size()) {
+            throw new IllegalArgumentException("There should be one site rate model or one for each partition");
+        }
+
+        for (BranchModel branchModel : branchModels) {
+            if (branchModel.getSubstitutionModels().size() != 1 || branchModel.requiresMatrixConvolution()) {
+                // only homogeneous substitution processes are supported
+                throw new DelegateTypeException();
+            }
+        }
+
+        nodeCount = tree.getNodeCount();
+        tipCount = tree.getExternalNodeCount();
+        internalNodeCount = nodeCount - tipCount;
+
+        partitionCount = patternLists.size();
+        partitions = new Partition[partitionCount];
+
+        String tipCompression = System.getProperty(TIP_COMPRESSION_PROPERTY, "auto");
+
+        int totalPatternCount = 0;
+        int compressedCount = 0;
+        for (int i = 0; i < partitionCount; i++) {
+            BranchModel branchModel = branchModels.get(branchModels.size() == 1 ? 0 : i);
+            SiteRateModel siteRateModel = siteRateModels.get(siteRateModels.size() == 1 ? 0 : i);
+            PatternList patternList = patternLists.get(i);
+
+            boolean usePartials = useAmbiguities || patternList.areUncertain();
+
+            ReferencePatternStates tipData = null;
+            if (!usePartials && !tipCompression.equalsIgnoreCase("false")) {
+                tipData = new ReferencePatternStates(patternList);
+                if (!tipCompression.equalsIgnoreCase("true") &&
+                        estimateDirtyProportion(tipData, getTaxonIndices(tree, patternList)) > COMPRESSION_THRESHOLD) {
+                    tipData = null;
+                }
+            }
+
+            if (tipData != null) {
+                partitions[i] = new CompressedPartition(i, tree, patternList, branchModel, siteRateModel, tipData);
+                compressedCount++;
+            } else {
+                partitions[i] = new DensePartition(i, tree, patternList, branchModel, siteRateModel, usePartials);
+            }
+            totalPatternCount += partitions[i].patternCount;
+
+            addModel(branchModel);
+            addModel(siteRateModel);
+        }
+        this.totalPatternCount = totalPatternCount;
+
+        this.threadCount = Math.max(1, threadCount);
+        taskPool = new TaskPool(this.threadCount, this.threadCount);
+
+        branchUpdateIndices = new int[nodeCount];
+        branchLengths = new double[nodeCount];
+        operations = new int[internalNodeCount * 3];
+
+        allChunks = createChunks(partitions, this.threadCount);
+
+        logger.info("\nUsing Java Multi-Partition Data Likelihood Delegate");
+        logger.info("  " + partitionCount + " partitions with " + totalPatternCount +
+                " unique site patterns divided between " + allChunks.size() + " thread" +
+                (allChunks.size() > 1 ? "s" : ""));
+        if (compressedCount > 0) {
+            logger.info("  " + compressedCount + " partition" + (compressedCount > 1 ? "s" : "") +
+                    " stored as reference states and differences");
+        }
+
+        updateAllPartitions = true;
+    }
+
+    /**
+     * A part of the pattern space: the patterns [start, end) of a single partition.
+     */
+    static final class Segment {
+        Segment(int partition, int start, int end) {
+            this.partition = partition;
+            this.start = start;
+            this.end = end;
+        }
+
+        final int partition;
+        final int start;
+        final int end;
+
+        double logLikelihood;
+    }
+
+    /**
+     * Split the patterns of the given partitions into at most chunkCount chunks with roughly equal
+     * computational cost. A partition is only split where that is needed to balance the chunks.
+     */
+    static List<List<Segment>> createChunks(int[] partitionNumbers, int[] patternCounts, double[] patternCosts,
+                                            int chunkCount) {
+        double totalCost = 0.0;
+        for (int i = 0; i < partitionNumbers.length; i++) {
+            totalCost += patternCounts[i] * patternCosts[i];
+        }
+        double targetCost = totalCost / chunkCount;
+
+        List<List<Segment>> chunks = new ArrayList<List<Segment>>();
+        List<Segment> chunk = new ArrayList<Segment>();
+        double chunkCost = 0.0;
+
+        for (int i = 0; i < partitionNumbers.length; i++) {
+            int start = 0;
+            while (start < patternCounts[i]) {
+                int end = patternCounts[i];
+                if (chunks.size() < chunkCount - 1) {
+                    int remaining = (int) Math.ceil((targetCost - chunkCost) / patternCosts[i]);
+                    end = Math.min(end, start + Math.max(1, remaining));
+                }
+
+                chunk.add(new Segment(partitionNumbers[i], start, end));
+                chunkCost += (end - start) * patternCosts[i];
+                start = end;
+
+                if (chunkCost >= targetCost && chunks.size() < chunkCount - 1) {
+                    chunks.add(chunk);
+                    chunk = new ArrayList<Segment>();
+                    chunkCost = 0.0;
+                }
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+
+        return chunks;
+    }
+
+    private static List<List<Segment>> createChunks(Partition[] partitions, int chunkCount) {
+        int[] partitionNumbers = new int[partitions.length];
+        int[] patternCounts = new int[partitions.length];
+        double[] patternCosts = new double[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            partitionNumbers[i] = partitions[i].number;
+            patternCounts[i] = partitions[i].patternCount;
+            patternCosts[i] = partitions[i].getPatternCost();
+        }
+        return createChunks(partitionNumbers, patternCounts, patternCosts, chunkCount);
+    }
+
+    @Override
+    public String getReport() {
+        return "Java multi-partition data likelihood: " + partitionCount + " partitions, " +
+                totalPatternCount + " patterns, " + threadCount + " threads";
+    }
+
+    @Override
+    public TreeTraversal.TraversalType getOptimalTraversalType() {
+        return TreeTraversal.TraversalType.POST_ORDER;
+    }
+
+    @Override
+    public int getTraitCount() {
+        return 1;
+    }
+
+    @Override
+    public int getTraitDim() {
+        return totalPatternCount;
+    }
+
+    @Override
+    public RateRescalingScheme getRateRescalingScheme() {
+        return RateRescalingScheme.NONE;
+    }
+
+    public int getPartitionCount() {
+        return partitionCount;
+    }
+
+    /**
+     * @return the log likelihood of a single partition at the last evaluation
+     */
+    public double getPartitionLogLikelihood(int partition) {
+        return partitions[partition].logLikelihood;
+    }
+
+    /**
+     * Calculate the log likelihood of the current state.
+     *
+     * @return the log likelihood.
+     */
+    @Override
+    public double calculateLikelihood(List<BranchOperation> branchOperations, List<NodeOperation> nodeOperations,
+                                      int rootNodeNumber) throws LikelihoodException {
+
+        // only the partitions whose models have changed need updating, otherwise the tree has changed. As
+        // with the BEAGLE multi-partition delegate, a move is assumed not to change both at once.
+        final List<Partition> updated = new ArrayList<Partition>();
+        for (Partition partition : partitions) {
+            if (updateAllPartitions || partition.update) {
+                updated.add(partition);
+            }
+        }
+
+        for (Partition partition : updated) {
+            if (!partition.updateModelValues()) {
+                // If this returns null then there was a numerical error calculating the category rates
+                // (probably a very small alpha) so reject the move.
+                clearUpdateFlags();
+                return Double.NEGATIVE_INFINITY;
+            }
+        }
+
+        final int branchUpdateCount = branchOperations.size();
+        int k = 0;
+        for (BranchOperation op : branchOperations) {
+            branchUpdateIndices[k] = op.getBranchNumber();
+            branchLengths[k] = op.getBranchLength();
+            k++;
+        }
+
+        final int operationCount = nodeOperations.size();
+        k = 0;
+        for (NodeOperation op : nodeOperations) {
+            operations[k] = op.getNodeNumber();
+            operations[k + 1] = op.getLeftChild();
+            operations[k + 2] = op.getRightChild();
+            k += 3;
+        }
+
+        for (Partition partition : updated) {
+            for (int i = 0; i < branchUpdateCount; i++) {
+                partition.matrixBufferHelper.flipOffset(branchUpdateIndices[i]);
+            }
+            for (int i = 0; i < operationCount; i++) {
+                partition.partialBufferHelper.flipOffset(operations[i * 3]);
+            }
+        }
+
+        // the transition matrices (and any per node structure) of each partition are computed by a single thread
+        if (branchUpdateCount > 0 || operationCount > 0) {
+            final int updatedCount = updated.size();
+            taskPool.fork((task, thread) -> {
+                for (int i = task; i < updatedCount; i += threadCount) {
+                    Partition partition = updated.get(i);
+                    partition.updateTransitionMatrices(branchUpdateIndices, branchLengths, branchUpdateCount);
+                    partition.updateNodes(operations, operationCount);
+                }
+            });
+        }
+
+        // while the partials are divided between threads by pattern
+        final List<List<Segment>> chunks;
+        if (updated.size() == partitionCount) {
+            chunks = allChunks;
+        } else {
+            chunks = createChunks(updated.toArray(new Partition[updated.size()]), threadCount);
+        }
+
+        final int chunkCount = chunks.size();
+        taskPool.fork((task, thread) -> {
+            if (task < chunkCount) {
+                for (Segment segment : chunks.get(task)) {
+                    Partition partition = partitions[segment.partition];
+                    partition.updatePartials(operations, operationCount, segment.start, segment.end);
+                    segment.logLikelihood = partition.calculateRootLogLikelihood(rootNodeNumber,
+                            segment.start, segment.end);
+                }
+            }
+        });
+
+        for (Partition partition : updated) {
+            partition.logLikelihood = 0.0;
+        }
+        for (List<Segment> chunk : chunks) {
+            for (Segment segment : chunk) {
+                partitions[segment.partition].logLikelihood += segment.logLikelihood;
+            }
+        }
+
+        if (COUNT_CALCULATIONS) {
+            totalEvaluationCount += 1;
+            totalMatrixUpdateCount += (long) branchUpdateCount * updated.size();
+            totalPartialsUpdateCount += (long) operationCount * updated.size();
+        }
+
+        clearUpdateFlags();
+
+        double logL = 0.0;
+        for (Partition partition : partitions) {
+            logL += partition.logLikelihood;
+        }
+        return logL;
+    }
+
+    private void clearUpdateFlags() {
+        for (Partition partition : partitions) {
+            partition.update = false;
+        }
+        updateAllPartitions = true;
+    }
+
+    @Override
+    public void makeDirty() {
+        for (Partition partition : partitions) {
+            partition.update = true;
+        }
+    }
+
+    @Override
+    protected void handleModelChangedEvent(Model model, Object object, int index) {
+        for (Partition partition : partitions) {
+            if (partition.branchModel == model || partition.siteRateModel == model) {
+                partition.update = true;
+                updateAllPartitions = false;
+            }
+        }
+
+        // Tell TreeDataLikelihood to update all nodes
+        fireModelChanged();
+    }
+
+    @Override
+    protected void handleVariableChangedEvent(Variable variable, int index, Parameter.ChangeType type) {
+
+    }
+
+    /**
+     * Stores the additional state other than model components
+     */
+    @Override
+    public void storeState() {
+        for (Partition partition : partitions) {
+            partition.partialBufferHelper.storeState();
+            partition.matrixBufferHelper.storeState();
+            partition.storedLogLikelihood = partition.logLikelihood;
+        }
+    }
+
+    /**
+     * Restore the additional stored state
+     */
+    @Override
+    public void restoreState() {
+        for (Partition partition : partitions) {
+            partition.partialBufferHelper.restoreState();
+            partition.matrixBufferHelper.restoreState();
+            partition.logLikelihood = partition.storedLogLikelihood;
+        }
+
+        // any pending model changes have been undone
+        clearUpdateFlags();
+    }
+
+    @Override
+    public void setCallback(TreeDataLikelihood treeDataLikelihood) {
+        // Do nothing
+    }
+
+    @Override
+    public void setComputePostOrderStatisticsOnly(boolean computePostOrderStatistic) {
+        // Do nothing
+    }
+
+    @Override
+    public boolean providesPostOrderStatisticsOnly() { return false; }
+
+    @Override
+    public int vectorizeNodeOperations(List<NodeOperation> nodeOperations, int[] operations) {
+        throw new RuntimeException("Not yet implemented");
+    }
+
+    @Override
+    protected void acceptState() {
+    }
+
+    // **************************************************************
+    // INSTANCE PROFILEABLE
+    // **************************************************************
+
+    @Override
+    public long getTotalCalculationCount() {
+        // Can only return one count at the moment so return the number of partials updated
+        return totalPartialsUpdateCount;
+    }
+
+    /**
+     * The models, transition matrices and buffers of a single partition. The transition matrices are laid out
+     * as [category][from state][to state].
+     */
+    private abstract class Partition {
+
+        Partition(int number, PatternList patternList, BranchModel branchModel, SiteRateModel siteRateModel) {
+            this.number = number;
+            this.branchModel = branchModel;
+            this.siteRateModel = siteRateModel;
+            this.substitutionModel = branchModel.getSubstitutionModels().get(0);
+
+            stateCount = patternList.getDataType().getStateCount();
+            categoryCount = siteRateModel.getCategoryCount();
+            patternCount = patternList.getPatternCount();
+            patternWeights = patternList.getPatternWeights();
+
+            // Check for matching state counts
+            int stateCount2 = branchModel.getRootFrequencyModel().getFrequencyCount();
+            if (stateCount != stateCount2) {
+                throw new IllegalArgumentException("Pattern state count (" + stateCount
+                        + ") does not match substitution model state count (" + stateCount2 + ")");
+            }
+
+            // two partials buffers for each internal node and two matrices for each branch (for store restore)
+            partialBufferHelper = new BufferIndexHelper(nodeCount, tipCount);
+            matrixBufferHelper = new BufferIndexHelper(nodeCount, 0);
+
+            matrices = new double[matrixBufferHelper.getBufferCount()][categoryCount * stateCount * stateCount];
+        }
+
+        /**
+         * @return the relative cost of updating one pattern at one node
+         */
+        abstract double getPatternCost();
+
+        /**
+         * Called for each partition, in a single thread, after the transition matrices have been updated and
+         * before the partials are updated.
+         */
+        void updateNodes(int[] operations, int operationCount) {
+        }
+
+        abstract void updatePartials(int[] operations, int operationCount, int start, int end);
+
+        abstract double calculateRootLogLikelihood(int rootNodeNumber, int start, int end);
+
+        boolean updateModelValues() {
+            categoryRates = siteRateModel.getCategoryRates();
+            if (categoryRates == null) {
+                return false;
+            }
+            categoryWeights = siteRateModel.getCategoryProportions();
+            frequencies = branchModel.getRootFrequencyModel().getFrequencies();
+
+            // decompose the rate matrix here, before the threads share the substitution model
+            substitutionModel.getEigenDecomposition();
+            return true;
+        }
+
+        void updateTransitionMatrices(int[] branchIndices, double[] lengths, int count) {
+            final int matrixSize = stateCount * stateCount;
+            final double[] matrix = new double[matrixSize];
+
+            for (int i = 0; i < count; i++) {
+                final double[] destination = matrices[matrixBufferHelper.getOffsetIndex(branchIndices[i])];
+                for (int c = 0; c < categoryCount; c++) {
+                    substitutionModel.getTransitionProbabilities(lengths[i] * categoryRates[c], matrix);
+                    System.arraycopy(matrix, 0, destination, c * matrixSize, matrixSize);
+                }
+            }
+        }
+
+        /**
+         * @return the root log likelihood of a single pattern given its partials laid out as [category][state]
+         */
+        double getSiteLogLikelihood(double[] rootPartials, int offset, int categoryStride) {
+            double sum = 0.0;
+            for (int c = 0; c < categoryCount; c++) {
+                final int v = offset + c * categoryStride;
+                double categorySum = 0.0;
+                for (int i = 0; i < stateCount; i++) {
+                    categorySum += frequencies[i] * rootPartials[v + i];
+                }
+                sum += categoryWeights[c] * categorySum;
+            }
+            return Math.log(sum);
+        }
+
+        final int number;
+
+        final BranchModel branchModel;
+        final SiteRateModel siteRateModel;
+        final SubstitutionModel substitutionModel;
+
+        final int stateCount;
+        final int categoryCount;
+        final int patternCount;
+        final double[] patternWeights;
+
+        final BufferIndexHelper partialBufferHelper;
+        final BufferIndexHelper matrixBufferHelper;
+
+        final double[][] matrices;
+
+        double[] categoryRates;
+        double[] categoryWeights;
+        double[] frequencies;
+
+        boolean update;
+        double logLikelihood;
+        double storedLogLikelihood;
+    }
+
+    /**
+     * A partition that stores the tip states and partials of every pattern. The partials are laid out as
+     * [category][pattern][state].
+     */
+    private final class DensePartition extends Partition {
+
+        DensePartition(int number, Tree tree, PatternList patternList, BranchModel branchModel,
+                       SiteRateModel siteRateModel, boolean usePartials) {
+            super(number, patternList, branchModel, siteRateModel);
+
+            DataType dataType = patternList.getDataType();
+            int[] taxonIndices = getTaxonIndices(tree, patternList);
+
+            tipStates = usePartials ? null : new int[tipCount][];
+            tipPartials = usePartials ? new double[tipCount][] : null;
+
+            for (int i = 0; i < tipCount; i++) {
+                if (usePartials) {
+                    tipPartials[i] = createTipPartials(patternList, dataType, taxonIndices[i]);
+                } else {
+                    tipStates[i] = new int[patternCount];
+                    for (int j = 0; j < patternCount; j++) {
+                        tipStates[i][j] = patternList.getPatternState(taxonIndices[i], j);
+                    }
+                }
+            }
+
+            partials = new double[partialBufferHelper.getBufferCount()][];
+            scaleExponents = new int[partialBufferHelper.getBufferCount()][];
+            for (int i = tipCount; i < partials.length; i++) {
+                partials[i] = new double[categoryCount * patternCount * stateCount];
+                scaleExponents[i] = new int[patternCount];
+            }
+        }
+
+        private double[] createTipPartials(PatternList patternList, DataType dataType, int sequenceIndex) {
+            double[] partials = new double[patternCount * stateCount];
+
+            int v = 0;
+            for (int i = 0; i < patternCount; i++) {
+                if (patternList instanceof UncertainSiteList) {
+                    ((UncertainSiteList) patternList).fillPartials(sequenceIndex, i, partials, v);
+                } else if (patternList.areUncertain()) {
+                    double[] prob = patternList.getUncertainPatternState(sequenceIndex, i);
+                    System.arraycopy(prob, 0, partials, v, stateCount);
+                } else {
+                    boolean[] stateSet = dataType.getStateSet(patternList.getPatternState(sequenceIndex, i));
+                    for (int j = 0; j < stateCount; j++) {
+                        partials[v + j] = stateSet[j] ? 1.0 : 0.0;
+                    }
+                }
+                v += stateCount;
+            }
+
+            return partials;
+        }
+
+        @Override
+        double getPatternCost() {
+            return categoryCount * stateCount * (stateCount + 1.0);
+        }
+
+        @Override
+        void updatePartials(int[] operations, int operationCount, int start, int end) {
+            final int matrixSize = stateCount * stateCount;
+
+            for (int op = 0; op < operationCount; op++) {
+                final int nodeBuffer = partialBufferHelper.getOffsetIndex(operations[op * 3]);
+                final int child1 = operations[op * 3 + 1];
+                final int child2 = operations[op * 3 + 2];
+
+                final double[] destination = partials[nodeBuffer];
+                final int[] exponents = scaleExponents[nodeBuffer];
+
+                final double[] matrices1 = matrices[matrixBufferHelper.getOffsetIndex(child1)];
+                final double[] matrices2 = matrices[matrixBufferHelper.getOffsetIndex(child2)];
+
+                final boolean isTip1 = child1 < tipCount;
+                final boolean isTip2 = child2 < tipCount;
+                final int[] states1 = isTip1 && tipStates != null ? tipStates[child1] : null;
+                final int[] states2 = isTip2 && tipStates != null ? tipStates[child2] : null;
+                final double[] partials1 = isTip1 ? (states1 == null ? tipPartials[child1] : null) :
+                        partials[partialBufferHelper.getOffsetIndex(child1)];
+                final double[] partials2 = isTip2 ? (states2 == null ? tipPartials[child2] : null) :
+                        partials[partialBufferHelper.getOffsetIndex(child2)];
+
+                for (int k = start; k < end; k++) {
+                    double max = 0.0;
+
+                    for (int c = 0; c < categoryCount; c++) {
+                        final int m = c * matrixSize;
+                        final int v = (c * patternCount + k) * stateCount;
+                        // tip partials have no category dimension
+                        final int v1 = isTip1 ? k * stateCount : v;
+                        final int v2 = isTip2 ? k * stateCount : v;
+
+                        for (int i = 0; i < stateCount; i++) {
+                            final int w = m + i * stateCount;
+
+                            final double sum1;
+                            if (states1 != null) {
+                                final int state = states1[k];
+                                sum1 = state < stateCount ? matrices1[w + state] : 1.0;
+                            } else {
+                                sum1 = sumProduct(matrices1, w, partials1, v1, stateCount);
+                            }
+
+                            final double sum2;
+                            if (states2 != null) {
+                                final int state = states2[k];
+                                sum2 = state < stateCount ? matrices2[w + state] : 1.0;
+                            } else {
+                                sum2 = sumProduct(matrices2, w, partials2, v2, stateCount);
+                            }
+
+                            final double value = sum1 * sum2;
+                            destination[v + i] = value;
+                            if (value > max) {
+                                max = value;
+                            }
+                        }
+                    }
+
+                    // rescale by a power of two so the partials keep their full precision
+                    final int exponent = getScaleExponent(max);
+                    if (exponent != 0) {
+                        final double scale = Math.scalb(1.0, -exponent);
+                        for (int c = 0; c < categoryCount; c++) {
+                            final int v = (c * patternCount + k) * stateCount;
+                            for (int i = 0; i < stateCount; i++) {
+                                destination[v + i] *= scale;
+                            }
+                        }
+                    }
+                    exponents[k] = exponent;
+                }
+            }
+        }
+
+        @Override
+        double calculateRootLogLikelihood(int rootNodeNumber, int start, int end) {
+            final double[] rootPartials = partials[partialBufferHelper.getOffsetIndex(rootNodeNumber)];
+
+            final int[] exponentSums = new int[end - start];
+            for (int node = tipCount; node < nodeCount; node++) {
+                final int[] exponents = scaleExponents[partialBufferHelper.getOffsetIndex(node)];
+                for (int k = start; k < end; k++) {
+                    exponentSums[k - start] += exponents[k];
+                }
+            }
+
+            double logL = 0.0;
+            for (int k = start; k < end; k++) {
+                logL += patternWeights[k] * (getSiteLogLikelihood(rootPartials, k * stateCount,
+                        patternCount * stateCount) + exponentSums[k - start] * LN2);
+            }
+
+            return logL;
+        }
+
+        final int[][] tipStates;
+        final double[][] tipPartials;
+
+        final double[][] partials;
+        final int[][] scaleExponents;
+    }
+
+    /**
+     * A partition whose tips are stored as a reference state for each pattern plus the few patterns at which
+     * each tip differs from it. Each node keeps one partials vector for each reference state, which serves
+     * every pattern at which all the tips below the node match the reference, and partials only for the
+     * patterns at which some tip below it differs. Memory and computation then grow with the number of
+     * differences rather than with taxa x patterns.
+     *
+     * Both kinds of partials are laid out as [pattern or reference state][category][state] and their scale
+     * exponents accumulate those of the nodes below.
+     */
+    private final class CompressedPartition extends Partition {
+
+        CompressedPartition(int number, Tree tree, PatternList patternList, BranchModel branchModel,
+                            SiteRateModel siteRateModel, ReferencePatternStates tipData) {
+            super(number, patternList, branchModel, siteRateModel);
+
+            this.tipData = tipData;
+            this.taxonIndices = getTaxonIndices(tree, patternList);
+            this.referenceStates = tipData.getReferenceStates();
+
+            // cumulative weights of the patterns with each reference state
+            cumulativeWeights = new double[stateCount + 1][patternCount + 1];
+            for (int k = 0; k < patternCount; k++) {
+                for (int r = 0; r <= stateCount; r++) {
+                    cumulativeWeights[r][k + 1] = cumulativeWeights[r][k] +
+                            (referenceStates[k] == r ? patternWeights[k] : 0.0);
+                }
+            }
+
+            dirtyProportion = estimateDirtyProportion(tipData, taxonIndices);
+
+            final int bufferCount = partialBufferHelper.getBufferCount();
+            dirtyPatterns = new int[bufferCount][];
+            dirtyCounts = new int[bufferCount];
+            dirtyPartials = new double[bufferCount][];
+            dirtyExponents = new int[bufferCount][];
+            referencePartials = new double[bufferCount][];
+            referenceExponents = new int[bufferCount][];
+            for (int i = tipCount; i < bufferCount; i++) {
+                dirtyPatterns[i] = new int[0];
+                dirtyPartials[i] = new double[0];
+                dirtyExponents[i] = new int[0];
+                referencePartials[i] = new double[(stateCount + 1) * categoryCount * stateCount];
+                referenceExponents[i] = new int[stateCount + 1];
+            }
+        }
+
+        @Override
+        double getPatternCost() {
+            return categoryCount * stateCount * (stateCount + 1.0) *
+                    Math.max(dirtyProportion, 1.0 / internalNodeCount);
+        }
+
+        private int[] getDirtyPatterns(int node) {
+            return node < tipCount ? tipData.getDifferencePatterns(taxonIndices[node]) :
+                    dirtyPatterns[partialBufferHelper.getOffsetIndex(node)];
+        }
+
+        private int getDirtyCount(int node) {
+            return node < tipCount ? tipData.getDifferencePatterns(taxonIndices[node]).length :
+                    dirtyCounts[partialBufferHelper.getOffsetIndex(node)];
+        }
+
+        /**
+         * Merges the lists of patterns at which the children differ from the reference and computes the
+         * partials for each reference state.
+         */
+        @Override
+        void updateNodes(int[] operations, int operationCount) {
+            final int blockSize = categoryCount * stateCount;
+
+            for (int op = 0; op < operationCount; op++) {
+                final int nodeBuffer = partialBufferHelper.getOffsetIndex(operations[op * 3]);
+                final int child1 = operations[op * 3 + 1];
+                final int child2 = operations[op * 3 + 2];
+
+                // the patterns at which either child differs
+                final int[] patterns1 = getDirtyPatterns(child1);
+                final int[] patterns2 = getDirtyPatterns(child2);
+                final int count1 = getDirtyCount(child1);
+                final int count2 = getDirtyCount(child2);
+
+                int[] patterns = dirtyPatterns[nodeBuffer];
+                if (patterns.length < count1 + count2) {
+                    final int capacity = Math.max(count1 + count2, patterns.length * 3 / 2);
+                    patterns = new int[capacity];
+                    dirtyPatterns[nodeBuffer] = patterns;
+                    dirtyPartials[nodeBuffer] = new double[capacity * blockSize];
+                    dirtyExponents[nodeBuffer] = new int[capacity];
+                }
+
+                int i1 = 0;
+                int i2 = 0;
+                int count = 0;
+                while (i1 < count1 || i2 < count2) {
+                    final int pattern1 = i1 < count1 ? patterns1[i1] : Integer.MAX_VALUE;
+                    final int pattern2 = i2 < count2 ? patterns2[i2] : Integer.MAX_VALUE;
+                    if (pattern1 <= pattern2) {
+                        i1++;
+                    }
+                    if (pattern2 <= pattern1) {
+                        i2++;
+                    }
+                    patterns[count] = Math.min(pattern1, pattern2);
+                    count++;
+                }
+                dirtyCounts[nodeBuffer] = count;
+
+                // the partials for each reference state
+                final double[] matrices1 = matrices[matrixBufferHelper.getOffsetIndex(child1)];
+                final double[] matrices2 = matrices[matrixBufferHelper.getOffsetIndex(child2)];
+                final double[] reference1 = child1 < tipCount ? null :
+                        referencePartials[partialBufferHelper.getOffsetIndex(child1)];
+                final double[] reference2 = child2 < tipCount ? null :
+                        referencePartials[partialBufferHelper.getOffsetIndex(child2)];
+                final int[] exponents1 = child1 < tipCount ? null :
+                        referenceExponents[partialBufferHelper.getOffsetIndex(child1)];
+                final int[] exponents2 = child2 < tipCount ? null :
+                        referenceExponents[partialBufferHelper.getOffsetIndex(child2)];
+
+                final double[] destination = referencePartials[nodeBuffer];
+                for (int r = 0; r <= stateCount; r++) {
+                    final int v = r * blockSize;
+                    final double max = computeBlock(destination, v,
+                            matrices1, reference1, v, r, matrices2, reference2, v, r);
+                    referenceExponents[nodeBuffer][r] = scaleBlock(destination, v, blockSize, max) +
+                            (exponents1 != null ? exponents1[r] : 0) + (exponents2 != null ? exponents2[r] : 0);
+                }
+            }
+        }
+
+        /**
+         * Computes the partials of a node for one pattern (or reference state) from those of its children,
+         * each given either as a block of partials or, for a tip, as a single state.
+         *
+         * @return the largest of the partials
+         */
+        private double computeBlock(double[] destination, int offset,
+                                    double[] matrices1, double[] partials1, int offset1, int state1,
+                                    double[] matrices2, double[] partials2, int offset2, int state2) {
+            final int matrixSize = stateCount * stateCount;
+            double max = 0.0;
+
+            for (int c = 0; c < categoryCount; c++) {
+                final int m = c * matrixSize;
+                final int v = c * stateCount;
+
+                for (int i = 0; i < stateCount; i++) {
+                    final int w = m + i * stateCount;
+
+                    final double sum1 = partials1 == null ? (state1 < stateCount ? matrices1[w + state1] : 1.0) :
+                            sumProduct(matrices1, w, partials1, offset1 + v, stateCount);
+                    final double sum2 = partials2 == null ? (state2 < stateCount ? matrices2[w + state2] : 1.0) :
+                            sumProduct(matrices2, w, partials2, offset2 + v, stateCount);
+
+                    final double value = sum1 * sum2;
+                    destination[offset + v + i] = value;
+                    if (value > max) {
+                        max = value;
+                    }
+                }
+            }
+            return max;
+        }
+
+        @Override
+        void updatePartials(int[] operations, int operationCount, int start, int end) {
+            final int blockSize = categoryCount * stateCount;
+
+            for (int op = 0; op < operationCount; op++) {
+                final int nodeBuffer = partialBufferHelper.getOffsetIndex(operations[op * 3]);
+                final int child1 = operations[op * 3 + 1];
+                final int child2 = operations[op * 3 + 2];
+
+                final int[] patterns = dirtyPatterns[nodeBuffer];
+                final int first = lowerBound(patterns, dirtyCounts[nodeBuffer], start);
+                final int last = lowerBound(patterns, dirtyCounts[nodeBuffer], end);
+                if (first == last) {
+                    continue;
+                }
+
+                final double[] destination = dirtyPartials[nodeBuffer];
+                final int[] exponents = dirtyExponents[nodeBuffer];
+
+                final double[] matrices1 = matrices[matrixBufferHelper.getOffsetIndex(child1)];
+                final double[] matrices2 = matrices[matrixBufferHelper.getOffsetIndex(child2)];
+
+                final boolean isTip1 = child1 < tipCount;
+                final boolean isTip2 = child2 < tipCount;
+                final int buffer1 = isTip1 ? -1 : partialBufferHelper.getOffsetIndex(child1);
+                final int buffer2 = isTip2 ? -1 : partialBufferHelper.getOffsetIndex(child2);
+
+                final int[] patterns1 = getDirtyPatterns(child1);
+                final int[] patterns2 = getDirtyPatterns(child2);
+                final int count1 = getDirtyCount(child1);
+                final int count2 = getDirtyCount(child2);
+                final int[] states1 = isTip1 ? tipData.getDifferenceStates(taxonIndices[child1]) : null;
+                final int[] states2 = isTip2 ? tipData.getDifferenceStates(taxonIndices[child2]) : null;
+
+                int i1 = lowerBound(patterns1, count1, patterns[first]);
+                int i2 = lowerBound(patterns2, count2, patterns[first]);
+
+                for (int d = first; d < last; d++) {
+                    final int k = patterns[d];
+                    final int r = referenceStates[k];
+
+                    // each child either differs at this pattern or takes its partials for the reference state
+                    final double[] partials1;
+                    final int offset1;
+                    int state1 = r;
+                    int exponent = 0;
+                    if (i1 < count1 && patterns1[i1] == k) {
+                        if (isTip1) {
+                            partials1 = null;
+                            offset1 = 0;
+                            state1 = states1[i1];
+                        } else {
+                            partials1 = dirtyPartials[buffer1];
+                            offset1 = i1 * blockSize;
+                            exponent += dirtyExponents[buffer1][i1];
+                        }
+                        i1++;
+                    } else if (isTip1) {
+                        partials1 = null;
+                        offset1 = 0;
+                    } else {
+                        partials1 = referencePartials[buffer1];
+                        offset1 = r * blockSize;
+                        exponent += referenceExponents[buffer1][r];
+                    }
+
+                    final double[] partials2;
+                    final int offset2;
+                    int state2 = r;
+                    if (i2 < count2 && patterns2[i2] == k) {
+                        if (isTip2) {
+                            partials2 = null;
+                            offset2 = 0;
+                            state2 = states2[i2];
+                        } else {
+                            partials2 = dirtyPartials[buffer2];
+                            offset2 = i2 * blockSize;
+                            exponent += dirtyExponents[buffer2][i2];
+                        }
+                        i2++;
+                    } else if (isTip2) {
+                        partials2 = null;
+                        offset2 = 0;
+                    } else {
+                        partials2 = referencePartials[buffer2];
+                        offset2 = r * blockSize;
+                        exponent += referenceExponents[buffer2][r];
+                    }
+
+                    final int v = d * blockSize;
+                    final double max = computeBlock(destination, v,
+                            matrices1, partials1, offset1, state1, matrices2, partials2, offset2, state2);
+                    exponents[d] = scaleBlock(destination, v, blockSize, max) + exponent;
+                }
+            }
+        }
+
+        @Override
+        double calculateRootLogLikelihood(int rootNodeNumber, int start, int end) {
+            final int rootBuffer = partialBufferHelper.getOffsetIndex(rootNodeNumber);
+            final int blockSize = categoryCount * stateCount;
+
+            // the weights of the patterns at which all the tips match the reference
+            final double[] weights = new double[stateCount + 1];
+            for (int r = 0; r <= stateCount; r++) {
+                weights[r] = cumulativeWeights[r][end] - cumulativeWeights[r][start];
+            }
+
+            final int[] patterns = dirtyPatterns[rootBuffer];
+            final double[] partials = dirtyPartials[rootBuffer];
+            final int[] exponents = dirtyExponents[rootBuffer];
+            final int first = lowerBound(patterns, dirtyCounts[rootBuffer], start);
+            final int last = lowerBound(patterns, dirtyCounts[rootBuffer], end);
+
+            double logL = 0.0;
+            for (int d = first; d < last; d++) {
+                final int k = patterns[d];
+                logL += patternWeights[k] * (getSiteLogLikelihood(partials, d * blockSize, stateCount) +
+                        exponents[d] * LN2);
+                weights[referenceStates[k]] -= patternWeights[k];
+            }
+
+            for (int r = 0; r <= stateCount; r++) {
+                if (weights[r] > 0.0) {
+                    logL += weights[r] * (getSiteLogLikelihood(referencePartials[rootBuffer], r * blockSize,
+                            stateCount) + referenceExponents[rootBuffer][r] * LN2);
+                }
+            }
+
+            return logL;
+        }
+
+        final ReferencePatternStates tipData;
+        final int[] taxonIndices;
+        final int[] referenceStates;
+        final double[][] cumulativeWeights;
+        final double dirtyProportion;
+
+        final int[][] dirtyPatterns;
+        final int[] dirtyCounts;
+        final double[][] dirtyPartials;
+        final int[][] dirtyExponents;
+        final double[][] referencePartials;
+        final int[][] referenceExponents;
+    }
+
+    /**
+     * Estimates the proportion of patterns at each internal node at which some tip below differs from the
+     * reference, assuming that each difference affects the nodes on a path to the root of average depth.
+     */
+    private double estimateDirtyProportion(ReferencePatternStates tipData, int[] taxonIndices) {
+        final int[] differenceCounts = new int[tipData.getPatternCount()];
+        for (int taxonIndex : taxonIndices) {
+            for (int pattern : tipData.getDifferencePatterns(taxonIndex)) {
+                differenceCounts[pattern]++;
+            }
+        }
+
+        final double depth = Math.log(tipCount) / Math.log(2.0) + 1.0;
+        double sum = 0.0;
+        for (int count : differenceCounts) {
+            sum += Math.min(1.0, count * depth / internalNodeCount);
+        }
+        return sum / differenceCounts.length;
+    }
+
+    /**
+     * @return the index of tip i in the pattern list
+     */
+    private int[] getTaxonIndices(Tree tree, PatternList patternList) {
+        int[] taxonIndices = new int[tipCount];
+        for (int i = 0; i < tipCount; i++) {
+            // Find the id of tip i in the patternList
+            String id = tree.getTaxonId(i);
+            int index = patternList.getTaxonIndex(id);
+
+            if (index == -1) {
+                throw new RuntimeException("Taxon, " + id + ", in tree, " + tree.getId() +
+                        ", is not found in patternList, " + patternList.getId());
+            }
+            taxonIndices[i] = index;
+        }
+        return taxonIndices;
+    }
+
+    /**
+     * @return the exponent of the power of two that rescales the largest partial to [1, 2)
+     */
+    private static int getScaleExponent(double max) {
+        if (max > 0.0 && !Double.isInfinite(max)) {
+            return Math.getExponent(max);
+        }
+        return 0;
+    }
+
+    private static int scaleBlock(double[] values, int offset, int length, double max) {
+        final int exponent = getScaleExponent(max);
+        if (exponent != 0) {
+            final double scale = Math.scalb(1.0, -exponent);
+            for (int i = offset; i < offset + length; i++) {
+                values[i] *= scale;
+            }
+        }
+        return exponent;
+    }
+
+    /**
+     * @return the index of the first of the sorted values that is at least the key
+     */
+    private static int lowerBound(int[] values, int count, int key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static double sumProduct(double[] matrix, int m, double[] partials, int v, int stateCount) {
+        double sum = 0.0;
+        for (int j = 0; j < stateCount; j++) {
+            sum += matrix[m + j] * partials[v + j];
+        }
+        return sum;
+    }
+
+    // **************************************************************
+    // INSTANCE VARIABLES
+    // **************************************************************
+
+    private final int nodeCount;
+    private final int tipCount;
+    private final int internalNodeCount;
+
+    private final int partitionCount;
+    private final Partition[] partitions;
+    private final int totalPatternCount;
+
+    private final int threadCount;
+    private final TaskPool taskPool;
+    private final List<List<Segment>> allChunks;
+
+    private final int[] branchUpdateIndices;
+    private final double[] branchLengths;
+    private final int[] operations;
+
+    /**
+     * Flag to recompute every partition (when the tree changes) rather than just those whose models changed
+     */
+    private boolean updateAllPartitions;
+}
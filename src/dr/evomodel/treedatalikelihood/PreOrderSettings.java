@@ -20,6 +20,10 @@ public class PreOrderSettings {
         this.useAmbiguities = useAmbiguities;
     }
 
+    public boolean isUsePreOrder() {
+        return usePreOrder;
+    }
+
     public static PreOrderSettings getDefault() {
         return new PreOrderSettings(false, false, false, false);
     }
@@ -647,6 +647,16 @@ public class ContinuousDataLikelihoodDelegate extends AbstractModel implements D
         return cdi;
     }
 
+    /**
+     * Sets the number of threads over which the integrator divides the traits (or the nodes at each level of the
+     * tree when there is a single trait).
+     */
+    public void setThreadCount(int threadCount) {
+        if (cdi instanceof ContinuousDiffusionIntegrator.Basic) {
+            ((ContinuousDiffusionIntegrator.Basic) cdi).setThreadCount(threadCount);
+        }
+    }
+
     final ContinuousRateTransformation getRateTransformation() {
         return rateTransformation;
     }
@@ -43,6 +43,8 @@ import dr.xml.*;
 import org.ejml.data.DenseMatrix64F;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static dr.math.matrixAlgebra.missingData.MissingOps.*;
 
@@ -116,8 +118,13 @@ public class IntegratedFactorAnalysisLikelihood extends AbstractModelLikelihood
 
         this.usePrecisionCache = cacheProvider.useCache();
 
-        if (usePrecisionCache && this.taskPool.getNumThreads() > 1) {
-            throw new IllegalArgumentException("Cannot currently parallelize cached precisions");
+        if (usePrecisionCache) {
+            this.observedPatterns = new HashedMissingArray[numTaxa];
+            for (int taxon = 0; taxon < numTaxa; ++taxon) {
+                observedPatterns[taxon] = new HashedMissingArray(observedIndicators[taxon]);
+            }
+        } else {
+            this.observedPatterns = null;
         }
 
         if (this.taskPool.getNumTaxon() != numTaxa) {
@@ -264,6 +271,7 @@ public class IntegratedFactorAnalysisLikelihood extends AbstractModelLikelihood
         statisticsKnown = false;
         innerProductsKnown = false;
         observedInnerProductKnown = false;
+        clearPrecisionCache();
     }
 
     @Override
@@ -276,10 +284,14 @@ public class IntegratedFactorAnalysisLikelihood extends AbstractModelLikelihood
         observedInnerProductKnown = false;
 
         if (variable == loadingsTransposed) {
+            clearPrecisionCache();
             statisticsKnown = false;
             likelihoodKnown = false;
             fireModelChanged(this);
         } else if (variable == traitParameter || variable == traitPrecision) {
+            if (variable == traitPrecision) {
+                clearPrecisionCache();
+            }
             innerProductsKnown = false; // TODO: why does this not go to false when the loadings change???
             statisticsKnown = false;
             likelihoodKnown = false;
@@ -294,6 +306,7 @@ public class IntegratedFactorAnalysisLikelihood extends AbstractModelLikelihood
         storedLogLikelihood = logLikelihood;
         storedLikelihoodKnow = likelihoodKnown;
         storedStatisticsKnown = statisticsKnown;
+        storedPrecisionCache = precisionCache;
 
         System.arraycopy(partials, 0, storedPartials, 0, partials.length);
         System.arraycopy(normalizationConstants, 0,
@@ -312,6 +325,7 @@ public class IntegratedFactorAnalysisLikelihood extends AbstractModelLikelihood
         logLikelihood = storedLogLikelihood;
         likelihoodKnown = storedLikelihoodKnow;
         statisticsKnown = storedStatisticsKnown;
+        precisionCache = storedPrecisionCache;
 
         double[] tmp1 = partials;
         partials = storedPartials;
@@ -463,71 +477,104 @@ public class IntegratedFactorAnalysisLikelihood extends AbstractModelLikelihood
         throw new RuntimeException("not yet implemented");
     }
 
+    private void computeObservedInnerProduct() {
+        for (int row = 0; row < numFactors; ++row) {
+            for (int col = row; col < numFactors; ++col) {
+                double sum = 0;
+                for (int k : fullyObservedTraits) {
+
+                    sum += loadings[row * dimTrait + k] * //loadingsTransposed.getParameterValue(k, row) *
+                            gamma[k] *
+                            loadings[col * dimTrait + k]; // loadingsTransposed.getParameterValue(k, col);
+                }
+                observedInnerProduct.set(row, col, sum);
+                observedInnerProduct.set(col, row, sum);
+
+            }
+        }
+    }
+
     private void computePrecisionForTaxon(final DenseMatrix64F precision, final int taxon,
                                           final int numFactors) {
 
         final double[] observed = observedIndicators[taxon]; // TODO: only store for partiallyMissing?
 
-        HashedMissingArray observedArray = null;
-        DenseMatrix64F hashedPrecision = null;
-
-        if (usePrecisionCache) {
-            observedArray = new HashedMissingArray(observed);
-            hashedPrecision = precisionMatrixMap.get(observedArray);
+        // Compute L D_i \Gamma D_i^t L^t
+        for (int row = 0; row < numFactors; ++row) {
+            for (int col = row; col < numFactors; ++col) {
+                double sum = observedInnerProduct.get(row, col);
+                for (int k : partiallyMissingTraits) {
+                    double thisPrecision = (observed[k] == 1.0) ?
+                            gamma[k] // traitPrecision.getParameterValue(k)
+                            : nuggetPrecision;
+                    sum += loadings[row * dimTrait + k] * //loadingsTransposed.getParameterValue(k, row) *
+                            thisPrecision *
+                            loadings[col * dimTrait + k]; // loadingsTransposed.getParameterValue(k, col);
+                }
+                precision.unsafe_set(row, col, sum);
+                precision.unsafe_set(col, row, sum); // Symmetric matrix
+            }
         }
+    }
 
+    private CachedPrecision getCachedPrecision(final int taxon, final DenseMatrix64F precision) {
 
-        if (!usePrecisionCache || hashedPrecision == null) { // TODO: remove code duplication with below
-            if (!observedInnerProductKnown) {
-                for (int row = 0; row < numFactors; ++row) {
-                    for (int col = row; col < numFactors; ++col) {
-                        double sum = 0;
-                        for (int k : fullyObservedTraits) {
-
-                            sum += loadings[row * dimTrait + k] * //loadingsTransposed.getParameterValue(k, row) *
-                                    gamma[k] *
-                                    loadings[col * dimTrait + k]; // loadingsTransposed.getParameterValue(k, col);
-                        }
-                        observedInnerProduct.set(row, col, sum);
-                        observedInnerProduct.set(col, row, sum);
+        // Taxa with the same observed traits share the same precision, determinant and variance
+        final HashedMissingArray pattern = observedPatterns[taxon];
+        final Map<HashedMissingArray, CachedPrecision> cache = precisionCache;
 
-                    }
-                }
+        precisionCacheLookups.incrementAndGet();
+        CachedPrecision cached = cache.get(pattern);
+        if (cached == null) {
+            cached = cache.computeIfAbsent(pattern, key -> {
+                precisionCacheMisses.incrementAndGet();
+                computePrecisionForTaxon(precision, taxon, numFactors);
+                return new CachedPrecision(precision);
+            });
+        }
+        return cached;
+    }
 
-                observedInnerProductKnown = true;
+    private void clearPrecisionCache() {
+        if (usePrecisionCache) {
+            precisionCache = new ConcurrentHashMap<>();
+            if (DEBUG) {
+                System.err.println("Hash CLEARED");
             }
+        }
+    }
 
-            // Compute L D_i \Gamma D_i^t L^t
-            for (int row = 0; row < numFactors; ++row) {
-                for (int col = row; col < numFactors; ++col) {
-                    double sum = observedInnerProduct.get(row, col);
-                    for (int k : partiallyMissingTraits) {
-                        double thisPrecision = (observed[k] == 1.0) ?
-                                gamma[k] // traitPrecision.getParameterValue(k)
-                                : nuggetPrecision;
-                        sum += loadings[row * dimTrait + k] * //loadingsTransposed.getParameterValue(k, row) *
-                                thisPrecision *
-                                loadings[col * dimTrait + k]; // loadingsTransposed.getParameterValue(k, col);
-                    }
-                    precision.unsafe_set(row, col, sum);
-                    precision.unsafe_set(col, row, sum); // Symmetric matrix
-                }
-            }
+    public double getPrecisionCacheHitRate() {
+        final long lookups = precisionCacheLookups.get();
+        return lookups == 0 ? 0.0 : 1.0 - (double) precisionCacheMisses.get() / lookups;
+    }
 
-            if (usePrecisionCache) {
-                precisionMatrixMap.put(observedArray, precision);
-            }
+    private static class CachedPrecision {
 
-        } else {
-            System.arraycopy(hashedPrecision.getData(), 0,
-                    precision.getData(), 0, numFactors * numFactors);
+        final DenseMatrix64F precision;
+        final InversionResult determinant;
+        final DenseMatrix64F variance;
+
+        CachedPrecision(DenseMatrix64F source) {
+            this.precision = source.copy();
+            this.determinant = safeDeterminant(precision, false);
+            if (STORE_VARIANCE) {
+                this.variance = new DenseMatrix64F(source.getNumRows(), source.getNumCols());
+                safeInvert2(precision, variance, true);
+            } else {
+                this.variance = null;
+            }
         }
     }
 
     private static final boolean TIMING = false;
     private static final boolean USE_INNER_PRODUCT_CACHE = true;
 
-    private Map<HashedMissingArray, DenseMatrix64F> precisionMatrixMap = new HashMap<>();
+    private final HashedMissingArray[] observedPatterns;
+    private Map<HashedMissingArray, CachedPrecision> precisionCache = new ConcurrentHashMap<>();
+    private Map<HashedMissingArray, CachedPrecision> storedPrecisionCache = precisionCache;
+    private final AtomicLong precisionCacheLookups = new AtomicLong();
+    private final AtomicLong precisionCacheMisses = new AtomicLong();
 
     private void fillInMeanForTaxon(final WrappedVector output, final DenseMatrix64F precision,
                                     final int taxon) {
@@ -635,7 +682,15 @@ public class IntegratedFactorAnalysisLikelihood extends AbstractModelLikelihood
         // Work with mean in-place
         final WrappedVector mean = new WrappedVector.Raw(partials, partialsOffset, numFactors);
 
-        computePrecisionForTaxon(precision, taxon, numFactors);
+        final CachedPrecision cached = (usePrecisionCache && observedDimensions[taxon] > 0) ?
+                getCachedPrecision(taxon, precision) : null;
+
+        if (cached != null) {
+            System.arraycopy(cached.precision.getData(), 0,
+                    precision.getData(), 0, numFactors * numFactors);
+        } else {
+            computePrecisionForTaxon(precision, taxon, numFactors);
+        }
         fillInMeanForTaxon(mean, precision, taxon);
 
         if (DEBUG) {
@@ -664,7 +719,8 @@ public class IntegratedFactorAnalysisLikelihood extends AbstractModelLikelihood
             }
 
 
-            InversionResult ci = safeDeterminant(precision, false); //TODO: figure out how to remove this (I don't want to do it twice) (see safeMultivariateIntegrator.IncreaseVariances)
+            InversionResult ci = (cached != null) ? cached.determinant :
+                    safeDeterminant(precision, false); //TODO: figure out how to remove this (I don't want to do it twice) (see safeMultivariateIntegrator.IncreaseVariances)
             effDim = ci.getEffectiveDimension();
             factorLogDeterminant = ci.getReturnCode() == InversionResult.Code.NOT_OBSERVED ? 0 : ci.getLogDeterminant();
 //            factorLogDeterminant = ci.getLogDeterminant();
@@ -704,7 +760,12 @@ public class IntegratedFactorAnalysisLikelihood extends AbstractModelLikelihood
         precisionType.fillRemainderInPartials(partials, partialsOffset, constant, numFactors);
 
         if (STORE_VARIANCE) {
-            safeInvert2(precision, variance, true);
+            if (cached != null) {
+                System.arraycopy(cached.variance.getData(), 0,
+                        variance.getData(), 0, numFactors * numFactors);
+            } else {
+                safeInvert2(precision, variance, true);
+            }
             unwrap(variance, partials, partialsOffset + numFactors + numFactors * numFactors);
         }
 
@@ -721,11 +782,9 @@ public class IntegratedFactorAnalysisLikelihood extends AbstractModelLikelihood
             variances[i] = new DenseMatrix64F(numFactors, numFactors);
         }
 
-        if (usePrecisionCache) {
-            precisionMatrixMap.clear();
-            if (DEBUG) {
-                System.err.println("Hash CLEARED");
-            }
+        if (!observedInnerProductKnown) {
+            computeObservedInnerProduct();
+            observedInnerProductKnown = true;
         }
 
         if (TIMING) { // Do not use threads or lambda when timing
@@ -1028,6 +1087,10 @@ public class IntegratedFactorAnalysisLikelihood extends AbstractModelLikelihood
 
         sb.append("logLikelihood = ").append(getLogLikelihood()).append("\n");
 
+        if (usePrecisionCache) {
+            sb.append("precision cache hit rate = ").append(getPrecisionCacheHitRate()).append("\n");
+        }
+
         if (logComponents != 0.0) {
             sb.append("total likelihood = ").append((getLogLikelihood() + logComponents)).append("\n");
         }
@@ -26,11 +26,13 @@
 package dr.evomodel.treedatalikelihood.continuous.cdi;
 
 import dr.math.matrixAlgebra.WrappedVector;
+import dr.util.TaskPool;
 import dr.xml.Reportable;
 import org.ejml.data.DenseMatrix64F;
 import org.ejml.ops.CommonOps;
 
 import java.util.Arrays;
+import java.util.function.Consumer;
 
 import static dr.math.matrixAlgebra.missingData.MissingOps.wrap;
 
@@ -136,7 +138,7 @@ public interface ContinuousDiffusionIntegrator extends Reportable {
 
 //    void getVariancePreOrderDerivative(BranchSufficientStatistics statistics, DenseMatrix64F gradient);
 
-    class Basic implements ContinuousDiffusionIntegrator {
+    class Basic implements ContinuousDiffusionIntegrator, Cloneable {
 
 //        private int instance = -1;
         private InstanceDetails details = new InstanceDetails();
@@ -192,6 +194,9 @@ public interface ContinuousDiffusionIntegrator extends Reportable {
             this.dimPartialForTrait = precisionType.getPartialsDimension(dimTrait);
             this.dimPartial = numTraits * dimPartialForTrait;
 
+            this.traitBegin = 0;
+            this.traitEnd = numTraits;
+
             if (DEBUG) {
                 System.err.println("numTraits: " + numTraits);
                 System.err.println("dimTrait: " + dimTrait);
@@ -202,6 +207,72 @@ public interface ContinuousDiffusionIntegrator extends Reportable {
             }
 
             allocateStorage();
+            allocateWorkspace();
+        }
+
+        /**
+         * Sets the number of threads used to update the partials. Each thread has its own copy of this integrator
+         * that shares the partials and branch matrices but has its own temporary storage. The traits are divided
+         * between the threads and, if there is only one trait, nodes at the same level of the tree are updated
+         * at the same time.
+         */
+        public void setThreadCount(int threadCount) {
+            if (taskPool != null) {
+                taskPool.shutdown();
+                taskPool = null;
+                workers = null;
+            }
+            if (threadCount > 1) {
+                taskPool = new TaskPool(threadCount, threadCount);
+                workers = new Basic[threadCount];
+                for (int i = 0; i < threadCount; ++i) {
+                    workers[i] = createWorker();
+                }
+            }
+        }
+
+        private Basic createWorker() {
+            final Basic worker;
+            try {
+                worker = (Basic) clone();
+            } catch (CloneNotSupportedException e) {
+                throw new RuntimeException(e);
+            }
+            worker.taskPool = null;
+            worker.workers = null;
+            worker.allocateWorkspace();
+            return worker;
+        }
+
+        /**
+         * Allocates the temporary storage used while updating the partials of a trait.
+         */
+        void allocateWorkspace() {
+            // Do nothing
+        }
+
+        private void setWorkerState(Basic worker, int traitBegin, int traitEnd) {
+            worker.traitBegin = traitBegin;
+            worker.traitEnd = traitEnd;
+            worker.precisionOffset = precisionOffset;
+            worker.precisionLogDet = precisionLogDet;
+        }
+
+        private boolean useTraitBlocks() {
+            return workers != null && numTraits > 1;
+        }
+
+        private void forEachTraitBlock(final Consumer<Basic> task) {
+            final int blockCount = workers.length;
+            taskPool.fork((block, thread) -> {
+                final int traitBegin = numTraits * block / blockCount;
+                final int traitEnd = numTraits * (block + 1) / blockCount;
+                if (traitBegin < traitEnd) {
+                    final Basic worker = workers[block];
+                    setWorkerState(worker, traitBegin, traitEnd);
+                    task.accept(worker);
+                }
+            });
         }
 
 //        @Override
@@ -442,8 +513,20 @@ public interface ContinuousDiffusionIntegrator extends Reportable {
         }
 
         @Override
-        public void calculateRootLogLikelihood(int rootBufferIndex, int priorBufferIndex, int precisionIndex,
-                                               final double[] logLikelihoods, boolean incrementOuterProducts, boolean isIntegratedProcess) {
+        public void calculateRootLogLikelihood(final int rootBufferIndex, final int priorBufferIndex,
+                                               final int precisionIndex, final double[] logLikelihoods,
+                                               final boolean incrementOuterProducts, final boolean isIntegratedProcess) {
+            if (useTraitBlocks()) {
+                forEachTraitBlock(worker -> worker.calculateRootLogLikelihoodForTraits(rootBufferIndex,
+                        priorBufferIndex, precisionIndex, logLikelihoods, incrementOuterProducts, isIntegratedProcess));
+            } else {
+                calculateRootLogLikelihoodForTraits(rootBufferIndex, priorBufferIndex, precisionIndex,
+                        logLikelihoods, incrementOuterProducts, isIntegratedProcess);
+            }
+        }
+
+        void calculateRootLogLikelihoodForTraits(int rootBufferIndex, int priorBufferIndex, int precisionIndex,
+                                                 final double[] logLikelihoods, boolean incrementOuterProducts, boolean isIntegratedProcess) {
             assert(logLikelihoods.length == numTraits);
             assert(!isIntegratedProcess);
 
@@ -454,11 +537,11 @@ public interface ContinuousDiffusionIntegrator extends Reportable {
                 System.err.println("Prior buffer index is " + priorBufferIndex);
             }
 
-            int rootOffset = dimPartial * rootBufferIndex;
-            int priorOffset = dimPartial * priorBufferIndex;
+            int rootOffset = dimPartial * rootBufferIndex + dimPartialForTrait * traitBegin;
+            int priorOffset = dimPartial * priorBufferIndex + dimPartialForTrait * traitBegin;
 
-            // TODO For each trait in parallel
-            for (int trait = 0; trait < numTraits; ++trait) {
+            // For each trait in this block
+            for (int trait = traitBegin; trait < traitEnd; ++trait) {
 
                 double SS = 0;
                 int pob = precisionOffset;
@@ -551,6 +634,25 @@ public interface ContinuousDiffusionIntegrator extends Reportable {
 
             updatePrecisionOffsetAndDeterminant(precisionIndex);
 
+            if (useTraitBlocks()) {
+                forEachTraitBlock(worker -> worker.updatePartials(operations, operationCount,
+                        computeRemainders, incrementOuterProducts));
+            } else if (workers != null && !incrementOuterProducts) {
+                // the outer-products are summed over nodes so only nodes without them are updated in parallel
+                updatePartialsByLevel(operations, operationCount, computeRemainders);
+            } else {
+                updatePartials(operations, operationCount, computeRemainders, incrementOuterProducts);
+            }
+
+            if (DEBUG) {
+                System.err.println("End");
+                System.err.println("");
+            }
+        }
+
+        private void updatePartials(final int[] operations, int operationCount,
+                                    boolean computeRemainders, boolean incrementOuterProducts) {
+
             int offset = 0;
             for (int op = 0; op < operationCount; ++op) {
 
@@ -570,13 +672,81 @@ public interface ContinuousDiffusionIntegrator extends Reportable {
 
                 offset += ContinuousDiffusionIntegrator.OPERATION_TUPLE_SIZE;
             }
+        }
 
-            if (DEBUG) {
-                System.err.println("End");
-                System.err.println("");
+        /**
+         * Updates the nodes at each level of the tree in parallel. The level of a node is one more than the
+         * highest level of its children, where the children that are not updated by these operations are at
+         * level 0, so the nodes at a level only depend on nodes at lower levels.
+         */
+        private void updatePartialsByLevel(final int[] operations, int operationCount,
+                                           final boolean computeRemainders) {
+
+            if (bufferLevels == null) {
+                bufferLevels = new int[bufferCount];
+            }
+            if (operationLevels == null || operationLevels.length < operationCount) {
+                operationLevels = new int[operationCount];
+                operationOrder = new int[operationCount];
+            }
+
+            int levelCount = 0;
+            int offset = 0;
+            for (int op = 0; op < operationCount; ++op) {
+                final int level = 1 + Math.max(bufferLevels[operations[offset + 1]], bufferLevels[operations[offset + 3]]);
+                bufferLevels[operations[offset]] = level;
+                operationLevels[op] = level;
+                levelCount = Math.max(levelCount, level);
+                offset += ContinuousDiffusionIntegrator.OPERATION_TUPLE_SIZE;
+            }
+
+            // order the operations by level
+            final int[] levelStarts = new int[levelCount + 2];
+            for (int op = 0; op < operationCount; ++op) {
+                bufferLevels[operations[op * ContinuousDiffusionIntegrator.OPERATION_TUPLE_SIZE]] = 0;
+                levelStarts[operationLevels[op] + 1]++;
+            }
+            for (int level = 1; level <= levelCount + 1; ++level) {
+                levelStarts[level] += levelStarts[level - 1];
+            }
+            final int[] position = levelStarts.clone();
+            for (int op = 0; op < operationCount; ++op) {
+                operationOrder[position[operationLevels[op]]++] = op;
+            }
+
+            for (int level = 1; level <= levelCount; ++level) {
+                final int start = levelStarts[level];
+                final int count = levelStarts[level + 1] - start;
+
+                if (count == 1) {
+                    updatePartial(operations, operationOrder[start], computeRemainders);
+                } else {
+                    final int blockCount = workers.length;
+                    taskPool.fork((block, thread) -> {
+                        final Basic worker = workers[block];
+                        final int blockEnd = start + count * (block + 1) / blockCount;
+                        setWorkerState(worker, 0, numTraits);
+                        for (int i = start + count * block / blockCount; i < blockEnd; ++i) {
+                            worker.updatePartial(operations, operationOrder[i], computeRemainders);
+                        }
+                    });
+                }
             }
         }
 
+        private void updatePartial(final int[] operations, int op, boolean computeRemainders) {
+            final int offset = op * ContinuousDiffusionIntegrator.OPERATION_TUPLE_SIZE;
+            updatePartial(
+                    operations[offset    ],
+                    operations[offset + 1],
+                    operations[offset + 2],
+                    operations[offset + 3],
+                    operations[offset + 4],
+                    computeRemainders,
+                    false
+            );
+        }
+
         @Override
         public void updateBrownianDiffusionMatrices(int precisionIndex, final int[] probabilityIndices,
                                                     final double[] edgeLengths, final double[] driftRates,
@@ -649,6 +819,17 @@ public interface ContinuousDiffusionIntegrator extends Reportable {
         int precisionOffset;
         double precisionLogDet;
 
+        // The traits updated by this instance, which are all of them except in the copies used by worker threads
+        int traitBegin;
+        int traitEnd;
+
+        private TaskPool taskPool = null;
+        private Basic[] workers = null;
+
+        private int[] bufferLevels;
+        private int[] operationLevels;
+        private int[] operationOrder;
+
         static final boolean INLINE = true;
 
         @Override
@@ -659,10 +840,25 @@ public interface ContinuousDiffusionIntegrator extends Reportable {
                 final int jBuffer, // sibling
                 final int jMatrix) {
 
+            if (useTraitBlocks()) {
+                forEachTraitBlock(worker -> worker.updatePreOrderPartialForTraits(
+                        kBuffer, iBuffer, iMatrix, jBuffer, jMatrix));
+            } else {
+                updatePreOrderPartialForTraits(kBuffer, iBuffer, iMatrix, jBuffer, jMatrix);
+            }
+        }
+
+        void updatePreOrderPartialForTraits(
+                final int kBuffer, // parent
+                final int iBuffer, // node
+                final int iMatrix,
+                final int jBuffer, // sibling
+                final int jMatrix) {
+
             // Determine buffer offsets
-            int kbo = dimPartial * kBuffer;
-            int ibo = dimPartial * iBuffer;
-            int jbo = dimPartial * jBuffer;
+            int kbo = dimPartial * kBuffer + dimPartialForTrait * traitBegin;
+            int ibo = dimPartial * iBuffer + dimPartialForTrait * traitBegin;
+            int jbo = dimPartial * jBuffer + dimPartialForTrait * traitBegin;
 
             // Determine matrix offsets
             final int imo = iMatrix; //TODO: not sure why we need iMatrix & jMatrix to begin with?
@@ -679,8 +875,8 @@ public interface ContinuousDiffusionIntegrator extends Reportable {
                 System.err.println("\tvi: " + vi + " vj: " + vj);
             }
 
-            // For each trait // TODO in parallel
-            for (int trait = 0; trait < numTraits; ++trait) {
+            // For each trait in this block
+            for (int trait = traitBegin; trait < traitEnd; ++trait) {
 
                 // A. Get current precision of k and j
                 final double pk = preOrderPartials[kbo + dimTrait];
@@ -802,9 +998,9 @@ public interface ContinuousDiffusionIntegrator extends Reportable {
                 final boolean incrementOuterProducts
         ) {
             // Determine buffer offsets
-            int kbo = dimPartial * kBuffer;
-            int ibo = dimPartial * iBuffer;
-            int jbo = dimPartial * jBuffer;
+            int kbo = dimPartial * kBuffer + dimPartialForTrait * traitBegin;
+            int ibo = dimPartial * iBuffer + dimPartialForTrait * traitBegin;
+            int jbo = dimPartial * jBuffer + dimPartialForTrait * traitBegin;
 
             // Determine matrix offsets
             final int imo = iMatrix; //TODO: just use iMatrix * jMatrix? (also, why do we need these?)
@@ -819,8 +1015,8 @@ public interface ContinuousDiffusionIntegrator extends Reportable {
                 System.err.println("\tvar : " + branchLengths[imo]);
             }
 
-            // For each trait // TODO in parallel
-            for (int trait = 0; trait < numTraits; ++trait) {
+            // For each trait in this block
+            for (int trait = traitBegin; trait < traitEnd; ++trait) {
 
                 // Increase variance along the branches i -> k and j -> k
 
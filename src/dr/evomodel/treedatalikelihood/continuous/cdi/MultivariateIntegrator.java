@@ -67,6 +67,11 @@ public class MultivariateIntegrator extends ContinuousDiffusionIntegrator.Basic
 
     private void allocateStorage() {
         inverseDiffusions = new double[dimProcess * dimProcess * diffusionCount];
+    }
+
+    @Override
+    void allocateWorkspace() {
+        super.allocateWorkspace();
 
         vector0 = new double[dimTrait];
         matrix0 = new DenseMatrix64F(dimTrait, dimTrait);
@@ -150,7 +155,7 @@ public class MultivariateIntegrator extends ContinuousDiffusionIntegrator.Basic
     }
 
     @Override
-    public void updatePreOrderPartial(
+    void updatePreOrderPartialForTraits(
             final int kBuffer, // parent
             final int iBuffer, // node
             final int iMatrix,
@@ -158,9 +163,9 @@ public class MultivariateIntegrator extends ContinuousDiffusionIntegrator.Basic
             final int jMatrix) {
 
         // Determine buffer offsets
-        int kbo = dimPartial * kBuffer;
-        int ibo = dimPartial * iBuffer;
-        int jbo = dimPartial * jBuffer;
+        int kbo = dimPartial * kBuffer + dimPartialForTrait * traitBegin;
+        int ibo = dimPartial * iBuffer + dimPartialForTrait * traitBegin;
+        int jbo = dimPartial * jBuffer + dimPartialForTrait * traitBegin;
 
         // Determine matrix offsets
         final int imo = iMatrix;
@@ -179,8 +184,8 @@ public class MultivariateIntegrator extends ContinuousDiffusionIntegrator.Basic
 //                System.err.println("precisionOffset = " + precisionOffset);
         }
 
-        // For each trait // TODO in parallel
-        for (int trait = 0; trait < numTraits; ++trait) {
+        // For each trait in this block
+        for (int trait = traitBegin; trait < traitEnd; ++trait) {
 
             // A. Get current precision of k and j
             final DenseMatrix64F Pk = wrap(preOrderPartials, kbo + dimTrait, dimTrait, dimTrait);
@@ -290,9 +295,9 @@ public class MultivariateIntegrator extends ContinuousDiffusionIntegrator.Basic
         }
 
         // Determine buffer offsets
-        int kbo = dimPartial * kBuffer;
-        int ibo = dimPartial * iBuffer;
-        int jbo = dimPartial * jBuffer;
+        int kbo = dimPartial * kBuffer + dimPartialForTrait * traitBegin;
+        int ibo = dimPartial * iBuffer + dimPartialForTrait * traitBegin;
+        int jbo = dimPartial * jBuffer + dimPartialForTrait * traitBegin;
 
         // Determine matrix offsets
         final int imo = iMatrix;
@@ -310,8 +315,8 @@ public class MultivariateIntegrator extends ContinuousDiffusionIntegrator.Basic
             System.err.println("precisionOffset = " + precisionOffset);
         }
 
-        // For each trait // TODO in parallel
-        for (int trait = 0; trait < numTraits; ++trait) {
+        // For each trait in this block
+        for (int trait = traitBegin; trait < traitEnd; ++trait) {
 
             // Layout, offset, dim
             // trait, 0, dT
@@ -703,9 +708,9 @@ public class MultivariateIntegrator extends ContinuousDiffusionIntegrator.Basic
     }
 
     @Override
-    public void calculateRootLogLikelihood(int rootBufferIndex, int priorBufferIndex, int precisionIndex,
-                                           final double[] logLikelihoods,
-                                           boolean incrementOuterProducts, boolean isIntegratedProcess) {
+    void calculateRootLogLikelihoodForTraits(int rootBufferIndex, int priorBufferIndex, int precisionIndex,
+                                             final double[] logLikelihoods,
+                                             boolean incrementOuterProducts, boolean isIntegratedProcess) {
         assert (logLikelihoods.length == numTraits);
 
         assert (!incrementOuterProducts);
@@ -716,15 +721,15 @@ public class MultivariateIntegrator extends ContinuousDiffusionIntegrator.Basic
             System.err.println("Prior buffer index is " + priorBufferIndex);
         }
 
-        int rootOffset = dimPartial * rootBufferIndex;
-        int priorOffset = dimPartial * priorBufferIndex;
+        int rootOffset = dimPartial * rootBufferIndex + dimPartialForTrait * traitBegin;
+        int priorOffset = dimPartial * priorBufferIndex + dimPartialForTrait * traitBegin;
 
         updatePrecisionOffsetAndDeterminant(precisionIndex);
 
         final DenseMatrix64F Vd = wrap(inverseDiffusions, precisionOffset, dimTrait, dimTrait);
 
-        // TODO For each trait in parallel
-        for (int trait = 0; trait < numTraits; ++trait) {
+        // For each trait in this block
+        for (int trait = traitBegin; trait < traitEnd; ++trait) {
 
             final DenseMatrix64F PRoot = wrap(partials, rootOffset + dimTrait, dimTrait, dimTrait);
             final DenseMatrix64F PPrior = wrap(partials, priorOffset + dimTrait, dimTrait, dimTrait);
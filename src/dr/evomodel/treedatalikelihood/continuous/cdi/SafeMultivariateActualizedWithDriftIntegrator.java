@@ -84,6 +84,11 @@ public class SafeMultivariateActualizedWithDriftIntegrator extends SafeMultivari
     private void allocateStorage() {
 
         actualizations = new double[dimTrait * dimTrait * bufferCount];
+    }
+
+    @Override
+    void allocateWorkspace() {
+        super.allocateWorkspace();
 
         matrixQdiPip = new DenseMatrix64F(dimTrait, dimTrait);
         matrixQdjPjp = new DenseMatrix64F(dimTrait, dimTrait);
@@ -74,6 +74,11 @@ public class SafeMultivariateDiagonalActualizedWithDriftIntegrator extends SafeM
 
         diagonal1mActualizations = new double[dimTrait * bufferCount];
         stationaryVariances = new double[dimProcess * dimProcess * diffusionCount];
+    }
+
+    @Override
+    void allocateWorkspace() {
+        super.allocateWorkspace();
 
         vectorDiagQdi = new double[dimTrait];
         vectorDiagQdj = new double[dimTrait];
@@ -34,6 +34,11 @@ public class SafeMultivariateIntegrator extends MultivariateIntegrator {
 
         precisions = new double[dimTrait * dimTrait * bufferCount];
         variances = new double[dimTrait * dimTrait * bufferCount];
+    }
+
+    @Override
+    void allocateWorkspace() {
+        super.allocateWorkspace();
 
         vectorDelta = new double[dimTrait];
         vectorPMk = new double[dimTrait];
@@ -167,7 +172,7 @@ public class SafeMultivariateIntegrator extends MultivariateIntegrator {
     ///////////////////////////////////////////////////////////////////////////
 
     @Override
-    public void updatePreOrderPartial(
+    void updatePreOrderPartialForTraits(
             final int kBuffer, // parent
             final int iBuffer, // node
             final int iMatrix,
@@ -175,9 +180,9 @@ public class SafeMultivariateIntegrator extends MultivariateIntegrator {
             final int jMatrix) {
 
         // Determine buffer offsets
-        int kbo = dimPartial * kBuffer;
-        int ibo = dimPartial * iBuffer;
-        int jbo = dimPartial * jBuffer;
+        int kbo = dimPartial * kBuffer + dimPartialForTrait * traitBegin;
+        int ibo = dimPartial * iBuffer + dimPartialForTrait * traitBegin;
+        int jbo = dimPartial * jBuffer + dimPartialForTrait * traitBegin;
 
         // Determine matrix offsets
         final int imo = dimTrait * dimTrait * iMatrix;
@@ -202,8 +207,8 @@ public class SafeMultivariateIntegrator extends MultivariateIntegrator {
             System.err.println("\tVdi: " + Vdi);
         }
 
-        // For each trait // TODO in parallel
-        for (int trait = 0; trait < numTraits; ++trait) {
+        // For each trait in this block
+        for (int trait = traitBegin; trait < traitEnd; ++trait) {
 
             // A. Get current precision of k and j
             final DenseMatrix64F Pk = wrap(preOrderPartials, kbo + dimTrait, dimTrait, dimTrait);
@@ -326,9 +331,9 @@ public class SafeMultivariateIntegrator extends MultivariateIntegrator {
         }
 
         // Determine buffer offsets
-        int kbo = dimPartial * kBuffer;
-        int ibo = dimPartial * iBuffer;
-        int jbo = dimPartial * jBuffer;
+        int kbo = dimPartial * kBuffer + dimPartialForTrait * traitBegin;
+        int ibo = dimPartial * iBuffer + dimPartialForTrait * traitBegin;
+        int jbo = dimPartial * jBuffer + dimPartialForTrait * traitBegin;
 
         // Determine matrix offsets
         final int imo = dimTrait * dimTrait * iMatrix;
@@ -352,8 +357,8 @@ public class SafeMultivariateIntegrator extends MultivariateIntegrator {
             System.err.println("\tVdj: " + Vdj);
         }
 
-        // For each trait // TODO in parallel
-        for (int trait = 0; trait < numTraits; ++trait) {
+        // For each trait in this block
+        for (int trait = traitBegin; trait < traitEnd; ++trait) {
 
             // Layout, offset, dim
             // trait, 0, dT
@@ -587,9 +592,9 @@ public class SafeMultivariateIntegrator extends MultivariateIntegrator {
     }
 
     @Override
-    public void calculateRootLogLikelihood(int rootBufferIndex, int priorBufferIndex, int precisionIndex,
-                                           final double[] logLikelihoods,
-                                           boolean incrementOuterProducts, boolean isIntegratedProcess) {
+    void calculateRootLogLikelihoodForTraits(int rootBufferIndex, int priorBufferIndex, int precisionIndex,
+                                             final double[] logLikelihoods,
+                                             boolean incrementOuterProducts, boolean isIntegratedProcess) {
         assert (logLikelihoods.length == numTraits);
 
         assert (!incrementOuterProducts);
@@ -601,14 +606,14 @@ public class SafeMultivariateIntegrator extends MultivariateIntegrator {
             System.err.println("Prior buffer index is " + priorBufferIndex);
         }
 
-        int rootOffset = dimPartial * rootBufferIndex;
-        int priorOffset = dimPartial * priorBufferIndex;
+        int rootOffset = dimPartial * rootBufferIndex + dimPartialForTrait * traitBegin;
+        int priorOffset = dimPartial * priorBufferIndex + dimPartialForTrait * traitBegin;
 
         final DenseMatrix64F Pd = wrap(diffusions, precisionOffset, dimProcess, dimProcess);
 //        final DenseMatrix64F Vd = wrap(inverseDiffusions, precisionOffset, dimTrait, dimTrait);
 
-        // TODO For each trait in parallel
-        for (int trait = 0; trait < numTraits; ++trait) {
+        // For each trait in this block
+        for (int trait = traitBegin; trait < traitEnd; ++trait) {
 
             final DenseMatrix64F PPrior = wrap(partials, priorOffset + dimTrait, dimTrait, dimTrait);
             final DenseMatrix64F VPrior = wrap(partials, priorOffset + dimTrait + dimTrait * dimTrait, dimTrait, dimTrait);
@@ -62,6 +62,12 @@ public class SafeMultivariateWithDriftIntegrator extends SafeMultivariateIntegra
     private void allocateStorage() {
 
         displacements = new double[dimTrait * bufferCount];
+    }
+
+    @Override
+    void allocateWorkspace() {
+        super.allocateWorkspace();
+
         vectorDispi = new double[dimTrait];
         vectorDispj = new double[dimTrait];
     }
@@ -42,6 +42,7 @@ import dr.evomodel.tree.TreeModel;
 import dr.evomodel.tipstatesmodel.TipStatesModel;
 import dr.inference.loggers.LogColumn;
 import dr.inference.loggers.NumberColumn;
+import dr.inference.markovjumps.CompactStateHistories;
 import dr.inference.markovjumps.MarkovJumpsRegisterAcceptor;
 import dr.inference.markovjumps.MarkovJumpsType;
 import dr.inference.model.Parameter;
@@ -98,6 +99,8 @@ public class MarkovJumpsBeagleTreeLikelihood extends AncestralStateBeagleTreeLik
 
         tmpProbabilities = new double[stateCount * stateCount * categoryCount];
         condJumps = new double[categoryCount][stateCount * stateCount];
+        categoryRates = new double[categoryCount];
+        blockSampler = new MarkovJumpsBlockSampler(patternCount, stateCount, 1);
     }
 
     public MarkovJumpsBeagleTreeLikelihood(PatternList patternList, TreeModel treeModel,
@@ -215,7 +218,11 @@ public class MarkovJumpsBeagleTreeLikelihood extends AncestralStateBeagleTreeLik
 
 
                     if (histories == null) {
-                        histories = new String[treeModel.getNodeCount()][patternCount];
+                        histories = new CompactStateHistories[treeModel.getNodeCount()][];
+                        for (int n = 0; n < histories.length; n++) {
+                            histories[n] = blockSampler.createHistories();
+                        }
+                        historyDataType = substitutionModel.getDataType();
                     } else {
                         throw new RuntimeException("Only one complete history per markovJumpTreeLikelihood is allowed");
                     }
@@ -336,6 +343,19 @@ public class MarkovJumpsBeagleTreeLikelihood extends AncestralStateBeagleTreeLik
         useCompactHistory = in;
     }
 
+    /**
+     * Sets the number of threads over which the sites are divided when the jumps and histories are sampled
+     * by uniformization. This must be called before the registers are added. The sites are always sampled
+     * in blocks, each with its own generator, so the samples don't depend on the number of threads.
+     */
+    public void setThreadCount(int threadCount) {
+        if (histories != null) {
+            throw new IllegalStateException("The thread count must be set before the complete history is registered");
+        }
+        blockSampler.shutdown();
+        blockSampler = new MarkovJumpsBlockSampler(patternCount, stateCount, threadCount);
+    }
+
 //    public double[] getRewardsForNodeAndPattern(Tree tree, NodeRef node, int pattern) {
 //        double[] rtn = new double[numRegisters];
 //        for (int r = 0; r < numRegisters; r++) {
@@ -379,12 +399,23 @@ public class MarkovJumpsBeagleTreeLikelihood extends AncestralStateBeagleTreeLik
     }
 
     public String getHistoryForNode(Tree tree, NodeRef node, int site) {
-        return getHistory(tree)[node.getNumber()][site];
+        refresh(tree);
+        int siteNumber = (useCompactHistory) ? site + 1 : -1;
+        return histories[node.getNumber()][site / MarkovJumpsBlockSampler.BLOCK_SIZE].toStringChanges(
+                site % MarkovJumpsBlockSampler.BLOCK_SIZE, siteNumber, historyDataType);
     }
 
     public String[][] getHistory(Tree tree) {
         refresh(tree);
-        return histories;
+        String[][] allHistories = new String[histories.length][patternCount];
+        for (int i = 0; i < histories.length; i++) {
+            for (int j = 0; j < patternCount; j++) {
+                int siteNumber = (useCompactHistory) ? j + 1 : -1;
+                allHistories[i][j] = histories[i][j / MarkovJumpsBlockSampler.BLOCK_SIZE].toStringChanges(
+                        j % MarkovJumpsBlockSampler.BLOCK_SIZE, siteNumber, historyDataType);
+            }
+        }
+        return allHistories;
     }
 
 //    private static String formattedValue(double[] values) {
@@ -474,26 +505,14 @@ public class MarkovJumpsBeagleTreeLikelihood extends AncestralStateBeagleTreeLik
                                                     boolean saveHistory) {
 
 
-        // Fill condJumps with sampled values for this branch for each site
-        for (int j = 0; j < patternCount; j++) {
-            final int category = rateCategory == null ? 0 : rateCategory[j];
-            final double categoryRate = siteRateModel.getRateForCategory(category);
-            final int matrixIndex = category * stateCount * stateCount;
-            double value = thisMarkovJumps.computeCondStatMarkovJumps(
-                    parentStates[j],
-                    childStates[j],
-                    substTime * branchRate * categoryRate,
-                    probabilities[matrixIndex + parentStates[j] * stateCount + childStates[j]]
-            );
-            if (scaleByTime) {
-                value /= branchRate * categoryRate;
-            }
-            thisExpectedJumps[childNum][j] = value;
-            if (saveHistory) {
-                int site = (useCompactHistory) ? j + 1 : -1;
-                histories[childNum][j] = thisMarkovJumps.getCompleteHistory(site, parentTime, childTime);
-            }
+        for (int i = 0; i < categoryCount; i++) {
+            categoryRates[i] = siteRateModel.getRateForCategory(i);
         }
+
+        // Fill thisExpectedJumps with sampled values for this branch for each site
+        blockSampler.sample(thisMarkovJumps, substTime, branchRate, categoryRates, rateCategory, parentStates,
+                childStates, probabilities, scaleByTime, parentTime, childTime, thisExpectedJumps[childNum],
+                saveHistory && histories != null ? histories[childNum] : null);
     }
 
     private void computeIntegratedMarkovJumpsForBranch(MarkovJumpsSubstitutionModel thisMarkovJumps,
@@ -695,7 +714,10 @@ public class MarkovJumpsBeagleTreeLikelihood extends AncestralStateBeagleTreeLik
     //    private List<double[][]> storedExpectedJumps;
     private boolean logHistory = false;
     private boolean useCompactHistory = false;
-    private String[][] histories = null;
+    private CompactStateHistories[][] histories = null; // [node][block of sites]
+    private DataType historyDataType;
+    private MarkovJumpsBlockSampler blockSampler;
+    private double[] categoryRates;
     private boolean[] scaleByTime;
     private double[] tmpProbabilities;
     private double[][] condJumps;
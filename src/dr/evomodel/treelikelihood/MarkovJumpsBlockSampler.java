@@ -0,0 +1,163 @@
+/*
+ * MarkovJumpsBlockSampler.java
+ *
+ * Copyright (c) 2002-2015 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+
+package dr.evomodel.treelikelihood;
+
+import dr.evomodel.substmodel.UniformizedSubstitutionModel;
+import dr.inference.markovjumps.CompactStateHistories;
+import dr.inference.markovjumps.StateHistory;
+import dr.math.MathUtils;
+import dr.math.MersenneTwisterFast;
+import dr.util.TaskPool;
+
+/**
+ * Samples the jumps and histories of the sites on a branch by uniformization in contiguous blocks of
+ * BLOCK_SIZE sites. Each block draws from its own generator, which is reseeded from MathUtils for each
+ * branch, and the blocks are spread over the threads, so the samples for a given seed are the same
+ * whatever the number of threads.
+ *
+ * @version $Id$
+ */
+public class MarkovJumpsBlockSampler {
+
+    // the number of sites sampled with each generator
+    public static final int BLOCK_SIZE = 64;
+
+    public MarkovJumpsBlockSampler(int patternCount, int stateCount, int threadCount) {
+        this.patternCount = patternCount;
+        this.stateCount = stateCount;
+        this.blockCount = Math.max((patternCount + BLOCK_SIZE - 1) / BLOCK_SIZE, 1);
+        this.taskPool = new TaskPool(blockCount, Math.max(threadCount, 1));
+        this.blockRandoms = new MersenneTwisterFast[blockCount];
+        for (int b = 0; b < blockCount; b++) {
+            blockRandoms[b] = new MersenneTwisterFast();
+        }
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    public int getBlockStart(int block) {
+        return block * BLOCK_SIZE;
+    }
+
+    public int getBlockEnd(int block) {
+        return Math.min(patternCount, (block + 1) * BLOCK_SIZE);
+    }
+
+    /**
+     * @return a history for each block of sites
+     */
+    public CompactStateHistories[] createHistories() {
+        CompactStateHistories[] histories = new CompactStateHistories[blockCount];
+        for (int b = 0; b < blockCount; b++) {
+            histories[b] = new CompactStateHistories(getBlockEnd(b) - getBlockStart(b));
+        }
+        return histories;
+    }
+
+    /**
+     * Samples the jumps of every site on a branch.
+     *
+     * @param markovJumps   the uniformized process
+     * @param substTime     the length of the branch in time
+     * @param branchRate    the rate of the branch
+     * @param categoryRates the rate of each rate category
+     * @param rateCategory  the rate category of each site, or null if there is only one
+     * @param parentStates  the state of each site at the parent
+     * @param childStates   the state of each site at the child
+     * @param probabilities the transition probabilities of the branch for each rate category
+     * @param scaleByTime   whether the jumps are divided by the rate
+     * @param parentTime    the height of the parent
+     * @param childTime     the height of the child
+     * @param jumps         receives the jumps of each site
+     * @param histories     receives the changes of each block of sites, or null if they aren't kept
+     */
+    public void sample(final UniformizedSubstitutionModel markovJumps,
+                       final double substTime,
+                       final double branchRate,
+                       final double[] categoryRates,
+                       final int[] rateCategory,
+                       final int[] parentStates,
+                       final int[] childStates,
+                       final double[] probabilities,
+                       final boolean scaleByTime,
+                       final double parentTime,
+                       final double childTime,
+                       final double[] jumps,
+                       final CompactStateHistories[] histories) {
+
+        // everything the tasks share is brought up to date on this thread first
+        markovJumps.prepareSubordinator();
+        for (MersenneTwisterFast random : blockRandoms) {
+            int seed = MathUtils.nextInt();
+            random.setSeed(seed == 0 ? 1 : seed);
+        }
+
+        taskPool.fork((block, thread) -> {
+            MersenneTwisterFast random = blockRandoms[block];
+            StateHistory[] savedHistory = histories != null ? new StateHistory[1] : null;
+            if (histories != null) {
+                histories[block].clear();
+            }
+            for (int j = getBlockStart(block); j < getBlockEnd(block); j++) {
+                final int category = rateCategory == null ? 0 : rateCategory[j];
+                final double categoryRate = categoryRates[category];
+                final int matrixIndex = category * stateCount * stateCount;
+                double value = markovJumps.computeCondStatMarkovJumps(
+                        parentStates[j],
+                        childStates[j],
+                        substTime * branchRate * categoryRate,
+                        probabilities[matrixIndex + parentStates[j] * stateCount + childStates[j]],
+                        random,
+                        savedHistory
+                );
+                if (scaleByTime) {
+                    value /= branchRate * categoryRate;
+                }
+                jumps[j] = value;
+                if (histories != null) {
+                    savedHistory[0].rescaleTimesOfEvents(parentTime, childTime);
+                    savedHistory[0].addChangesTo(histories[block]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the threads (if any have been started).
+     */
+    public void shutdown() {
+        taskPool.shutdown();
+    }
+
+    private final int patternCount;
+    private final int stateCount;
+    private final int blockCount;
+    private final TaskPool taskPool;
+    private final MersenneTwisterFast[] blockRandoms;
+}
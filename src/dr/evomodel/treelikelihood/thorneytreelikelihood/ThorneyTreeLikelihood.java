@@ -35,8 +35,6 @@ import dr.inference.model.Parameter;
 import dr.inference.model.Variable;
 import dr.xml.Reportable;
 
-import java.util.Arrays;
-
 /**
  * ApproximatePoissonTreeLikelihood - a tree likelihood which uses an ML tree as expected number
  * of substitutions and assumes that these are drawn from a gamma (with mean == variance).
@@ -74,11 +72,18 @@ public class ThorneyTreeLikelihood extends AbstractModelLikelihood implements Re
 
         }
 
-        updateNode = new boolean[treeModel.getNodeCount()];
-        Arrays.fill(updateNode, true);
+        int nodeCount = treeModel.getNodeCount();
+
+        updateNode = new boolean[nodeCount];
+        dirtyNodes = new int[nodeCount];
+        dirtyNodeCount = 0;
+        updateAllNodes();
 
-        branchLogL = new double[treeModel.getNodeCount()];
-        storedBranchLogL = new double[treeModel.getNodeCount()];
+        branchLogL = new double[nodeCount];
+        changedBranch = new boolean[nodeCount];
+        changedBranches = new int[nodeCount];
+        changedBranchLogL = new double[nodeCount];
+        changedBranchCount = 0;
         likelihoodKnown = false;
 
         cachedRoot = treeModel.getRoot().getNumber();
@@ -91,16 +96,19 @@ public class ThorneyTreeLikelihood extends AbstractModelLikelihood implements Re
 
 
     /**
-     * Set update flag for node and remove it's old contribution to the likelihood.
-     * Also handle the root and children so that the 1 branch between children is marked as updated.
+     * Set update flag for the branch above a node. Only the flagged branches have their
+     * contribution to the likelihood recalculated.
      * @param node
      */
     protected void updateNode(NodeRef node) {
+        updateNode(node.getNumber());
+    }
 
-        updateNode[node.getNumber()] = true;
-        NodeRef parent = treeModel.getParent(node);
-        if (parent != null && !updateNode[parent.getNumber()]) {
-            updateNode(parent);
+    private void updateNode(int nodeIndex) {
+        if (!updateNode[nodeIndex]) {
+            updateNode[nodeIndex] = true;
+            dirtyNodes[dirtyNodeCount] = nodeIndex;
+            dirtyNodeCount++;
         }
         likelihoodKnown = false;
     }
@@ -126,7 +134,7 @@ public class ThorneyTreeLikelihood extends AbstractModelLikelihood implements Re
      * Set update flag for a node and all its descendents
      */
     protected void updateNodeAndDescendents(NodeRef node) {
-        updateNode[node.getNumber()] = true;
+        updateNode(node);
 
         for (int i = 0; i < treeModel.getChildCount(node); i++) {
             NodeRef child = treeModel.getChild(node, i);
@@ -142,7 +150,9 @@ public class ThorneyTreeLikelihood extends AbstractModelLikelihood implements Re
     protected void updateAllNodes() {
         for (int i = 0; i < treeModel.getNodeCount(); i++) {
             updateNode[i] = true;
+            dirtyNodes[i] = i;
         }
+        dirtyNodeCount = treeModel.getNodeCount();
         likelihoodKnown = false;
     }
 
@@ -174,17 +184,9 @@ public class ThorneyTreeLikelihood extends AbstractModelLikelihood implements Re
                     // above being updated as well. Node events occur when a node
                     // is added to a branch, removed from a branch or its height or
                     // rate changes.
+                    // Changes to the root and its children are picked up when the likelihood is calculated.
                     NodeRef node= ((TreeChangedEvent) object).getNode();
                     updateNodeAndChildren(node);
-                    if(treeModel.getRoot()== node){
-                        // If the root is changed then the old root's children must be updated so that they are
-                        // no longer counted as 1 branch in the likelihood
-                        // This currently updates more often than needed.
-                        NodeRef oldRootNode = treeModel.getNode(cachedRoot);
-                        if(oldRootNode!=node){
-                            updateNodeAndChildren(oldRootNode);
-                        }
-                    }
 
                 } else if (((TreeChangedEvent) object).isTreeChanged()) {
                     // Full tree events result in a complete updating of the tree likelihood
@@ -223,8 +225,10 @@ public class ThorneyTreeLikelihood extends AbstractModelLikelihood implements Re
         storedCachedRoot = cachedRoot;
         storedCachedRootChild1 = cachedRootChild1;
         storedCachedRootChild2 = cachedRootChild2;
+        storedTotalLogL = totalLogL;
 
-        System.arraycopy(branchLogL, 0, storedBranchLogL, 0, branchLogL.length);
+        // only the branches changed since the last store need to be restored
+        clearChangedBranches();
     }
 
     /**
@@ -238,15 +242,44 @@ public class ThorneyTreeLikelihood extends AbstractModelLikelihood implements Re
         cachedRoot = storedCachedRoot;
         cachedRootChild1 = storedCachedRootChild1;
         cachedRootChild2 = storedCachedRootChild2;
-        System.arraycopy(storedBranchLogL, 0, branchLogL, 0, branchLogL.length);
+
+        for (int i = 0; i < changedBranchCount; i++) {
+            branchLogL[changedBranches[i]] = changedBranchLogL[i];
+        }
+        clearChangedBranches();
+        totalLogL = storedTotalLogL;
     }
 
     protected void acceptState() {
-        cachedRoot = treeModel.getRoot().getNumber();
-        cachedRootChild1 = treeModel.getChild(treeModel.getRoot(), 0).getNumber();
-        cachedRootChild2 = treeModel.getChild(treeModel.getRoot(), 1).getNumber();
     } // nothing to do
 
+    private void clearChangedBranches() {
+        for (int i = 0; i < changedBranchCount; i++) {
+            changedBranch[changedBranches[i]] = false;
+        }
+        changedBranchCount = 0;
+    }
+
+    /**
+     * Sets the contribution of a branch, recording its old value so that it can be restored
+     * and updating the running sum.
+     */
+    private void setBranchLogL(int nodeIndex, double logL) {
+        if (!changedBranch[nodeIndex]) {
+            changedBranch[nodeIndex] = true;
+            changedBranches[changedBranchCount] = nodeIndex;
+            changedBranchLogL[changedBranchCount] = branchLogL[nodeIndex];
+            changedBranchCount++;
+        }
+        if (Double.isInfinite(logL) || Double.isInfinite(branchLogL[nodeIndex]) || Double.isNaN(logL)) {
+            // the running sum can't be updated by differences
+            resumRequired = true;
+        } else {
+            totalLogL += logL - branchLogL[nodeIndex];
+        }
+        branchLogL[nodeIndex] = logL;
+    }
+
     // **************************************************************
     // Likelihood IMPLEMENTATION
     // **************************************************************
@@ -285,61 +318,58 @@ public class ThorneyTreeLikelihood extends AbstractModelLikelihood implements Re
 //        }
 //        return branchLogL[nodeIndex];
 //    }
-    private double calculateLogLikelihoodLinear() {
+    private double calculateLogLikelihood() {
 
-//        makeDirty();
-//Could make this faster by only adding the changed values
         int root = treeModel.getRoot().getNumber();
         int rootChild1 = treeModel.getChild(treeModel.getRoot(), 0).getNumber();
         int rootChild2 = treeModel.getChild(treeModel.getRoot(), 1).getNumber();
 
-        //
-        updateNode[rootChild1] = updateNode[rootChild1] || updateNode[rootChild2] ;
-
-        branchLogL[root]=0.0;
-        branchLogL[rootChild2]=0.0;
-
-        double logL = 0.0;
-        for (int i = 0; i < treeModel.getNodeCount(); i++) {
-            if (updateNode[i] && i != root && i != rootChild2) {
-                NodeRef node = treeModel.getNode(i);
-                // skip the root and the second child of the root (this is added to the first child)
+        if (root != cachedRoot || rootChild1 != cachedRootChild1 || rootChild2 != cachedRootChild2) {
+            // the branches either side of the root are counted as one so if the root has moved
+            // the old and new root branches need recalculating
+            updateNode(cachedRoot);
+            updateNode(cachedRootChild1);
+            updateNode(cachedRootChild2);
+            updateNode(root);
+            updateNode(rootChild1);
+            updateNode(rootChild2);
+
+            cachedRoot = root;
+            cachedRootChild1 = rootChild1;
+            cachedRootChild2 = rootChild2;
+        }
 
-                double time = treeModel.getBranchLength(node);
-                double mutations = branchLengthProvider.getBranchLength(treeModel, node);
+        if (updateNode[rootChild2]) {
+            updateNode(rootChild1);
+        }
 
-                if (i == rootChild1) {
-                    // sum the branches on both sides of the root
-                    NodeRef node2 = treeModel.getNode(rootChild2);
-                    time += treeModel.getBranchLength(node2);
-                    mutations += branchLengthProvider.getBranchLength(treeModel, node2);
-                }
-//                double mean = expected * sequenceLength;
+        // resum from scratch after a full update to avoid accumulating rounding errors in the running sum
+        resumRequired = dirtyNodeCount == treeModel.getNodeCount();
 
-//                gamma.setScale(1.0);
-//                branchLogL[i] = gamma.logPdf(x);
+        for (int i = 0; i < dirtyNodeCount; i++) {
+            int nodeIndex = dirtyNodes[i];
+            double logL;
+            if (nodeIndex == root || nodeIndex == rootChild2) {
+                // skip the root and the second child of the root (this is added to the first child)
+                logL = 0.0;
+            } else {
+                logL = likelihoodDelegate.calculateBranchLogLikelihood(treeModel.getNode(nodeIndex), rootChild1, rootChild2);
+            }
+            setBranchLogL(nodeIndex, logL);
+            updateNode[nodeIndex] = false;
+        }
+        dirtyNodeCount = 0;
 
-                branchLogL[i] = thorneyBranchLengthLikelihoodDelegate.getLogLikelihood(mutations,time);
-            //SaddlePointExpansion.logPoissonProbability(mean,(int)x); //SaddlePointExpansion.logBinomialProbability((int)x, sequenceLength, expected, 1.0D - expected);
+        if (resumRequired) {
+            totalLogL = 0.0;
+            for (double logL : branchLogL) {
+                totalLogL += logL;
             }
-            updateNode[i] = false;
-            logL += branchLogL[i];
         }
 
-        return logL;
+        return totalLogL;
     }
 
-    private double calculateLogLikelihood() {
-
-        int root = treeModel.getRoot().getNumber();
-        int rootChild1 = treeModel.getChild(treeModel.getRoot(), 0).getNumber();
-        int rootChild2 = treeModel.getChild(treeModel.getRoot(), 1).getNumber();
-        updateNode[rootChild1] = updateNode[rootChild1] || updateNode[rootChild2] ;
-        assert updateNode[root];
-
-        return likelihoodDelegate.calculateLogLikelihood(treeModel.getRoot(), root, rootChild1, rootChild2);
-
-    }
     public final Model getModel() {
         return this;
     }
@@ -377,74 +407,37 @@ public class ThorneyTreeLikelihood extends AbstractModelLikelihood implements Re
     }
 
     private interface LikelihoodDelegate {
-        double calculateLogLikelihood(NodeRef node, int root, int rootChild1, int rootChild2);
+        double calculateBranchLogLikelihood(NodeRef node, int rootChild1, int rootChild2);
     }
 
     private class additiveRateLikelihood implements LikelihoodDelegate{
 
-        public double calculateLogLikelihood(NodeRef node, int root, int rootChild1, int rootChild2) {
-            int nodeIndex = node.getNumber();
-
-            if (updateNode[nodeIndex]) {
-                double logL;
-                if(nodeIndex==root || nodeIndex==rootChild2){
-                    logL=0;
-                }else{
-                    double time = treeModel.getBranchLength(node);
-                    double mutations = branchLengthProvider.getBranchLength(treeModel, node);
-
-                    if (nodeIndex == rootChild1) {
-                        // sum the branches on both sides of the root
-                        NodeRef node2 = treeModel.getNode(rootChild2);
-                        time += treeModel.getBranchLength(node2);
-                        mutations += branchLengthProvider.getBranchLength(treeModel, node2);
-                    }
-//                gamma.setScale(1.0);
-//                branchLogL[i] = gamma.logPdf(x);
-                        logL = thorneyBranchLengthLikelihoodDelegate.getLogLikelihood(mutations, time); //SaddlePointExpansion.logBinomialProbability((int)x, sequenceLength, expected, 1.0D - expected);
-
-                }
+        public double calculateBranchLogLikelihood(NodeRef node, int rootChild1, int rootChild2) {
+            double time = treeModel.getBranchLength(node);
+            double mutations = branchLengthProvider.getBranchLength(treeModel, node);
 
-                for (int i = 0; i < treeModel.getChildCount(node); i++) {
-                    logL += this.calculateLogLikelihood(treeModel.getChild(node, i),root,rootChild1,rootChild2);
-                }
-                branchLogL[nodeIndex] = logL;
-                updateNode[nodeIndex] = false;
+            if (node.getNumber() == rootChild1) {
+                // sum the branches on both sides of the root
+                NodeRef node2 = treeModel.getNode(rootChild2);
+                time += treeModel.getBranchLength(node2);
+                mutations += branchLengthProvider.getBranchLength(treeModel, node2);
             }
-            return branchLogL[nodeIndex];
+            return thorneyBranchLengthLikelihoodDelegate.getLogLikelihood(mutations, time); //SaddlePointExpansion.logBinomialProbability((int)x, sequenceLength, expected, 1.0D - expected);
         }
     }
     private class branchRateModelLikelihood implements LikelihoodDelegate{
 
-        public double calculateLogLikelihood(NodeRef node, int root, int rootChild1, int rootChild2) {
-            int nodeIndex = node.getNumber();
-
-            if (updateNode[nodeIndex]) {
-                double logL;
-                if(nodeIndex==root || nodeIndex==rootChild2){
-                    logL=0;
-                }else{
-                    double expectation = treeModel.getBranchLength(node) * branchRateModel.getBranchRate(treeModel, node);
-                    double mutations = branchLengthProvider.getBranchLength(treeModel, node);
-
-                    if (nodeIndex == rootChild1) {
-                        // sum the branches on both sides of the root
-                        NodeRef node2 = treeModel.getNode(rootChild2);
-                        expectation += treeModel.getBranchLength(node2)*branchRateModel.getBranchRate(treeModel, node2);
-                        mutations += branchLengthProvider.getBranchLength(treeModel, node2);
-                    }
-//                gamma.setScale(1.0);
-//                branchLogL[i] = gamma.logPdf(x);
-                    logL = thorneyBranchLengthLikelihoodDelegate.getLogLikelihood(mutations, expectation); //SaddlePointExpansion.logBinomialProbability((int)x, sequenceLength, expected, 1.0D - expected);
-                }
+        public double calculateBranchLogLikelihood(NodeRef node, int rootChild1, int rootChild2) {
+            double expectation = treeModel.getBranchLength(node) * branchRateModel.getBranchRate(treeModel, node);
+            double mutations = branchLengthProvider.getBranchLength(treeModel, node);
 
-                for (int i = 0; i < treeModel.getChildCount(node); i++) {
-                    logL += this.calculateLogLikelihood(treeModel.getChild(node, i),root,rootChild1,rootChild2);
-                }
-                branchLogL[nodeIndex] = logL;
-                updateNode[nodeIndex] = false;
+            if (node.getNumber() == rootChild1) {
+                // sum the branches on both sides of the root
+                NodeRef node2 = treeModel.getNode(rootChild2);
+                expectation += treeModel.getBranchLength(node2)*branchRateModel.getBranchRate(treeModel, node2);
+                mutations += branchLengthProvider.getBranchLength(treeModel, node2);
             }
-            return branchLogL[nodeIndex];
+            return thorneyBranchLengthLikelihoodDelegate.getLogLikelihood(mutations, expectation); //SaddlePointExpansion.logBinomialProbability((int)x, sequenceLength, expected, 1.0D - expected);
         }
 
     }
@@ -469,6 +462,12 @@ public class ThorneyTreeLikelihood extends AbstractModelLikelihood implements Re
      */
     protected boolean[] updateNode;
 
+    /**
+     * The flagged nodes so that clean branches are never visited
+     */
+    private int[] dirtyNodes;
+    private int dirtyNodeCount;
+
     private double logLikelihood;
     private double storedLogLikelihood;
     private boolean likelihoodKnown;
@@ -480,8 +479,22 @@ public class ThorneyTreeLikelihood extends AbstractModelLikelihood implements Re
     private int storedCachedRootChild1;
     private int storedCachedRootChild2;
     private LikelihoodDelegate likelihoodDelegate;
+
+    /**
+     * The log likelihood of the branch above each node and their running sum
+     */
     private double[] branchLogL;
-    private double[] storedBranchLogL;
+    private double totalLogL = 0.0;
+    private double storedTotalLogL = 0.0;
+    private boolean resumRequired;
+
+    /**
+     * The branches changed since the last store and their stored values
+     */
+    private boolean[] changedBranch;
+    private int[] changedBranches;
+    private double[] changedBranchLogL;
+    private int changedBranchCount;
 
 
 }
@@ -80,6 +80,7 @@ public class GMRFSkyrideLikelihoodParser extends AbstractXMLObjectParser {
     public static final String DIST_INDICES = "covIndicesMissingDistant";
     public static final String GLM_MODEL = "glmModel";
     public static final String USE_GLM_MODEL = "useGlmModel";
+    public static final String THREADS = "threads";
 
     public String getParserName() {
         return SKYLINE_LIKELIHOOD;
@@ -414,14 +415,17 @@ public class GMRFSkyrideLikelihoodParser extends AbstractXMLObjectParser {
                 }
 
             } else {
+                GMRFMultilocusSkyrideLikelihood likelihood;
                 if (xo.getChild(GRID_POINTS) != null) {
-                    return new GMRFMultilocusSkyrideLikelihood(treeList, popParameter, groupParameter, precParameter,
+                    likelihood = new GMRFMultilocusSkyrideLikelihood(treeList, popParameter, groupParameter, precParameter,
                             lambda, betaParameter, dMatrix, timeAwareSmoothing, gridPoints, covariates, ploidyFactors,
                             firstObservedIndex, lastObservedIndex, covPrecParamRecent, covPrecParamDistant, recentIndices, distantIndices, betaList, deltaList);
                 } else {
-                    return new GMRFMultilocusSkyrideLikelihood(treeList, popParameter, groupParameter, precParameter,
+                    likelihood = new GMRFMultilocusSkyrideLikelihood(treeList, popParameter, groupParameter, precParameter,
                             lambda, betaParameter, dMatrix, timeAwareSmoothing, cutOff.getParameterValue(0), (int) numGridPoints.getParameterValue(0), phi, ploidyFactors);
                 }
+                likelihood.setThreadCount(xo.getAttribute(THREADS, 1));
+                return likelihood;
             }
         }
     }
@@ -468,6 +472,7 @@ public class GMRFSkyrideLikelihoodParser extends AbstractXMLObjectParser {
             }, true),
             AttributeRule.newBooleanRule(RESCALE_BY_ROOT_ISSUE, true),
             AttributeRule.newBooleanRule(RANDOMIZE_TREE, true),
+            AttributeRule.newIntegerRule(THREADS, true),
             AttributeRule.newBooleanRule(TIME_AWARE_SMOOTHING, true),
             AttributeRule.newBooleanRule(OLD_SKYRIDE, true),
             AttributeRule.newBooleanRule(BUILD_MAPPING, true)
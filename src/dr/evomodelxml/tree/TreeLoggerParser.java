@@ -27,6 +27,7 @@ package dr.evomodelxml.tree;
 
 import dr.evolution.colouring.TreeColouringProvider;
 import dr.evolution.tree.*;
+import dr.evomodel.tree.BinaryTreeLogger;
 import dr.evomodel.tree.TreeLogger;
 import dr.inference.loggers.LogFormatter;
 import dr.inference.loggers.Loggable;
@@ -38,7 +39,7 @@ import dr.inferencexml.loggers.LoggerParser;
 import dr.util.Identifiable;
 import dr.xml.*;
 
-import java.io.PrintWriter;
+import java.io.*;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.List;
@@ -59,6 +60,7 @@ public class TreeLoggerParser extends LoggerParser {
     public static final String SORT_TRANSLATION_TABLE = "sortTranslationTable";
     public static final String MAP_NAMES = "mapNamesToNumbers";
     public static final String DECIMAL_PLACES = "dp";
+    public static final String BINARY = "binary";
     //    public static final String NORMALISE_MEAN_RATE_TO = "normaliseMeanRateTo";
 
     public static final String FILTER_TRAITS = "traitFilter";
@@ -318,14 +320,30 @@ public class TreeLoggerParser extends LoggerParser {
 
         // decimal places
         final int dp = xo.getAttribute(DECIMAL_PLACES, -1);
+        decimalPlaces = dp;
         if (dp != -1) {
             format = NumberFormat.getNumberInstance(Locale.ENGLISH);
             format.setMaximumFractionDigits(dp);
         }
 
-        final PrintWriter pw = getLogFile(xo, getParserName());
+        binary = xo.getAttribute(BINARY, false);
+        if (binary) {
+            if (!xo.hasAttribute(FILE_NAME)) {
+                throw new XMLParseException("A binary tree log must be written to a file");
+            }
+            File file = XMLParser.getLogFile(xo, FILE_NAME);
+            try {
+                binaryStream = new FileOutputStream(file);
+            } catch (FileNotFoundException fnfe) {
+                throw new XMLParseException("File '" + file.getAbsolutePath() +
+                        "' can not be opened for " + getParserName() + " element.");
+            }
+            formatter = null;
+        } else {
+            final PrintWriter pw = getLogFile(xo, getParserName());
 
-        formatter = new TabDelimitedFormatter(pw);
+            formatter = new TabDelimitedFormatter(pw);
+        }
 
         treeAttributeProviders = new TreeAttributeProvider[taps.size()];
         taps.toArray(treeAttributeProviders);
@@ -336,6 +354,10 @@ public class TreeLoggerParser extends LoggerParser {
         // I think the default should be numbers - using names results in larger files and end user never
         // sees the numbers anyway as any software loading the nexus files does the translation - JH
         mapNames = xo.getAttribute(MAP_NAMES, true);
+        if (binary && !mapNames) {
+            throw new XMLParseException("A binary tree log always numbers the taxa so " + MAP_NAMES +
+                    " can not be false");
+        }
 
         condition = logEvery == 0 ? (TreeLogger.LogUpon) xo.getChild(TreeLogger.LogUpon.class) : null;
     }
@@ -346,6 +368,20 @@ public class TreeLoggerParser extends LoggerParser {
     public Object parseXMLObject(XMLObject xo) throws XMLParseException {
         parseXMLParameters(xo);
 
+        if (binary) {
+            BinaryTreeLogger.Formatter binaryFormatter = new BinaryTreeLogger.Formatter(binaryStream,
+                    BinaryTreeLogger.getTaxonIds(tree, sortTranslationTable), decimalPlaces);
+            BinaryTreeLogger logger = new BinaryTreeLogger(tree, branchRates,
+                    treeAttributeProviders, treeTraitProviders,
+                    binaryFormatter, logEvery, condition);
+
+            if (title != null) {
+                logger.setTitle(title);
+            }
+
+            return logger;
+        }
+
         TreeLogger logger = new TreeLogger(tree, branchRates,
                 treeAttributeProviders, treeTraitProviders,
                 formatter, logEvery, nexusFormat, sortTranslationTable, mapNames, format, condition/*,
@@ -364,9 +400,12 @@ public class TreeLoggerParser extends LoggerParser {
     protected boolean sortTranslationTable;
     protected BranchRates branchRates;
     protected NumberFormat format = null;
+    protected int decimalPlaces;
     protected TreeLogger.LogUpon condition;
     protected boolean mapNames;
     protected LogFormatter formatter;
+    protected boolean binary;
+    protected OutputStream binaryStream;
     protected TreeAttributeProvider[] treeAttributeProviders;
     protected TreeTraitProvider[] treeTraitProviders;
     protected int logEvery;
@@ -396,6 +435,8 @@ public class TreeLoggerParser extends LoggerParser {
             AttributeRule.newStringRule(FILTER_TRAITS, true),
             AttributeRule.newBooleanRule(MAP_NAMES, true),
             AttributeRule.newIntegerRule(DECIMAL_PLACES, true),
+            AttributeRule.newBooleanRule(BINARY, true,
+                    "Whether to write the trees in the compact binary tree log format instead of NEXUS"),
 
             new ElementRule(Tree.class, "The tree which is to be logged"),
 //            new ElementRule(BranchRates.class, true),
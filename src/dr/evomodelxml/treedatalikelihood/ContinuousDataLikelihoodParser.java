@@ -68,6 +68,7 @@ public class ContinuousDataLikelihoodParser extends AbstractXMLObjectParser impl
 
     private static final String FORCE_DRIFT = "forceDrift";
     private static final String FORCE_OU = "forceOU";
+    private static final String THREADS = "threads";
 
     private static final String STRENGTH_OF_SELECTION_MATRIX = "strengthOfSelectionMatrix";
 
@@ -215,6 +216,7 @@ public class ContinuousDataLikelihoodParser extends AbstractXMLObjectParser impl
 
         ContinuousDataLikelihoodDelegate delegate = new ContinuousDataLikelihoodDelegate(treeModel,
                 diffusionProcessDelegate, dataModel, rootPrior, rateTransformation, rateModel, allowSingular);
+        delegate.setThreadCount(xo.getAttribute(THREADS, 1));
 
         if (dataModel instanceof IntegratedFactorAnalysisLikelihood) {
             ((IntegratedFactorAnalysisLikelihood) dataModel).setLikelihoodDelegate(delegate);
@@ -311,6 +313,7 @@ public class ContinuousDataLikelihoodParser extends AbstractXMLObjectParser impl
             AttributeRule.newBooleanRule(ALLOW_SINGULAR, true),
             AttributeRule.newBooleanRule(FORCE_DRIFT, true),
             AttributeRule.newBooleanRule(FORCE_OU, true),
+            AttributeRule.newIntegerRule(THREADS, true),
             AttributeRule.newStringRule(TreeTraitParserUtilities.TRAIT_NAME, true),
             TreeTraitParserUtilities.jitterRules(true),
     };
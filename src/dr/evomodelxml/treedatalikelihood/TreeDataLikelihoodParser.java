@@ -123,7 +123,11 @@ public class TreeDataLikelihoodParser extends AbstractXMLObjectParser {
         }
 
         boolean useJava = Boolean.parseBoolean(System.getProperty("java.only", "false"));
-        if (useJava) {
+
+        // without BEAGLE, partitions are better evaluated together in Java than one after another
+        boolean useJavaMultiPartition = patternLists.size() > 1 && !useBeagle3MultiPartition && !settings.isUsePreOrder() &&
+                (useJava || !BeagleFunctionality.IS_BEAGLE_AVAILABLE());
+        if (useJava && !useJavaMultiPartition) {
             logger.warning("  Java-only computation is not available - ignoring this option.");
         }
 
@@ -178,6 +182,33 @@ public class TreeDataLikelihoodParser extends AbstractXMLObjectParser {
 
         }
 
+        if (useJavaMultiPartition) {
+
+            logger.info("\nCreating Java multi-partition tree data likelihood for " + patternLists.size() + " partitions");
+
+            if (beagleInstanceCount > 1) {
+                logger.warning("  -beagle_instances option is not compatible with the Java multi-partition likelihood");
+            }
+
+            try {
+                DataLikelihoodDelegate dataLikelihoodDelegate = new JavaMultiPartitionDataLikelihoodDelegate(
+                        treeModel,
+                        patternLists,
+                        branchModels,
+                        siteRateModels,
+                        useAmbiguities,
+                        beagleThreadCount
+                );
+
+                return new TreeDataLikelihood(
+                        dataLikelihoodDelegate,
+                        treeModel,
+                        branchRateModel);
+            } catch (DataLikelihoodDelegate.DelegateTypeException dte) {
+                logger.info("  Java multi-partition likelihood only supports homogeneous substitution models");
+            }
+        }
+
         // The multipartition data likelihood isn't available so make a set of single partition data likelihoods
         List<Likelihood> treeDataLikelihoods = new ArrayList<>();
 
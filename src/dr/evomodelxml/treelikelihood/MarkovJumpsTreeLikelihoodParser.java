@@ -65,6 +65,7 @@ public class MarkovJumpsTreeLikelihoodParser extends AncestralStateTreeLikelihoo
     public static final String NUMBER_OF_SIMULANTS = "numberOfSimulants";
     public static final String REPORT_UNCONDITIONED_COLUMNS = "reportUnconditionedValues";
     private static final String ALLOW_COMPRESSED_SITES = "allowCompressedSites";
+    public static final String THREADS = "threads";
 
 
     public String getParserName() {
@@ -121,6 +122,8 @@ public class MarkovJumpsTreeLikelihoodParser extends AncestralStateTreeLikelihoo
                 conditionalProbabilitiesInLogSpace
         );
 
+        treeLikelihood.setThreadCount(xo.getAttribute(THREADS, 1));
+
         int registersFound = parseAllChildren(xo, treeLikelihood, dataType.getStateCount(), jumpTag,
                 MarkovJumpsType.COUNTS, false); // For backwards compatibility
 
@@ -229,6 +232,7 @@ public class MarkovJumpsTreeLikelihoodParser extends AncestralStateTreeLikelihoo
                     AttributeRule.newBooleanRule(LOG_HISTORY, true),
                     AttributeRule.newBooleanRule(COMPACT_HISTORY, true),
                     AttributeRule.newBooleanRule(ALLOW_COMPRESSED_SITES, true),
+                    AttributeRule.newIntegerRule(THREADS, true),
                     new ElementRule(PARTIALS_RESTRICTION, new XMLSyntaxRule[] {
                             new ElementRule(TaxonList.class),
                             new ElementRule(Parameter.class),
@@ -0,0 +1,371 @@
+/*
+ * BinnedKernelDensityEstimator2D.java
+ *
+ * Copyright (c) 2002-2023 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.geo;
+
+import dr.geo.contouring.ContourMaker;
+import dr.geo.contouring.ContourMode;
+import dr.geo.contouring.ContourWithSynder;
+import dr.math.distributions.NormalDistribution;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates bi-variate points one at a time for a kernel density estimate that uses a fixed amount of
+ * memory. The first points are kept as they are and, if no more are added, the density is exactly that of
+ * KernelDensityEstimator2D. Once there are more points they are linearly binned onto a square grid whose
+ * extent doubles along an axis when a point falls outside it. The density is then estimated from the
+ * weighted grid nodes with the same bandwidth rule, limits and evaluation grid as KernelDensityEstimator2D
+ * (the bandwidth quartiles come from the binned marginals).
+ */
+public class BinnedKernelDensityEstimator2D {
+
+    public static final int DEFAULT_BIN_COUNT = 257;
+    public static final int DEFAULT_EXACT_COUNT = 10000;
+
+    private static final int GRID_SIZE = 50;
+    private static final double MARGIN = 0.1;
+
+    public BinnedKernelDensityEstimator2D() {
+        this(DEFAULT_BIN_COUNT, DEFAULT_EXACT_COUNT);
+    }
+
+    /**
+     * @param binCount   the number of grid nodes along each axis (an odd number so the grid can be coarsened)
+     * @param exactCount the number of points to keep before binning
+     */
+    public BinnedKernelDensityEstimator2D(int binCount, int exactCount) {
+        if (binCount < 3 || binCount % 2 == 0) {
+            throw new IllegalArgumentException("the bin count must be an odd number greater than 1");
+        }
+        this.binCount = binCount;
+        this.exactCount = exactCount;
+        this.exactX = new double[Math.min(exactCount, 64)];
+        this.exactY = new double[exactX.length];
+    }
+
+    /**
+     * Adds a point (points that are not finite are ignored).
+     */
+    public void addPoint(double x, double y) {
+        if (Double.isNaN(x) || Double.isInfinite(x) || Double.isNaN(y) || Double.isInfinite(y)) {
+            return;
+        }
+        if (count < exactCount) {
+            if (count == exactX.length) {
+                exactX = Arrays.copyOf(exactX, Math.min(2 * count, exactCount));
+                exactY = Arrays.copyOf(exactY, exactX.length);
+            }
+            exactX[count] = x;
+            exactY[count] = y;
+        } else {
+            if (weights == null) {
+                startBinning();
+            }
+            bin(x, y);
+        }
+        updateMoments(x, y);
+        count++;
+        kde = null;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return true if the density is estimated from the points themselves rather than from the grid
+     */
+    public boolean isExact() {
+        return weights == null;
+    }
+
+    /**
+     * @param mode           the contouring algorithm (JAVA or SNYDER)
+     * @param limitBandwidth true if the bandwidths should be at most 0.5
+     * @return a contour maker for the density of the points added so far
+     */
+    public ContourMaker getContourMaker(ContourMode mode, boolean limitBandwidth) {
+        if (mode != ContourMode.JAVA && mode != ContourMode.SNYDER) {
+            throw new IllegalArgumentException("Unsupported contour mode for binned densities: " + mode);
+        }
+        if (isExact()) {
+            double[] x = new double[count];
+            double[] y = new double[count];
+            System.arraycopy(exactX, 0, x, 0, count);
+            System.arraycopy(exactY, 0, y, 0, count);
+            if (mode == ContourMode.JAVA) {
+                return new KernelDensityEstimator2D(x, y, limitBandwidth);
+            }
+            return new ContourWithSynder(x, y, limitBandwidth);
+        }
+
+        if (kde == null || limitedBandwidth != limitBandwidth) {
+            computeDensity(limitBandwidth);
+        }
+        if (mode == ContourMode.JAVA) {
+            return new KernelDensityEstimator2D(gridX, gridY, kde);
+        }
+        return new ContourWithSynder(gridX, gridY, kde);
+    }
+
+    private void updateMoments(double x, double y) {
+        if (count == 0) {
+            minX = maxX = x;
+            minY = maxY = y;
+        } else {
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+        // Welford's updates
+        double n = count + 1;
+        double deltaX = x - meanX;
+        meanX += deltaX / n;
+        sumSquaresX += deltaX * (x - meanX);
+        double deltaY = y - meanY;
+        meanY += deltaY / n;
+        sumSquaresY += deltaY * (y - meanY);
+    }
+
+    private void startBinning() {
+        weights = new double[binCount * binCount];
+        // leave room around the points seen so far so the grid rarely has to grow
+        double rangeX = getRange(minX, maxX);
+        double rangeY = getRange(minY, maxY);
+        originX = minX - rangeX / 4;
+        originY = minY - rangeY / 4;
+        deltaX = 1.5 * rangeX / (binCount - 1);
+        deltaY = 1.5 * rangeY / (binCount - 1);
+        for (int i = 0; i < count; i++) {
+            bin(exactX[i], exactY[i]);
+        }
+        exactX = null;
+        exactY = null;
+    }
+
+    private static double getRange(double min, double max) {
+        double range = max - min;
+        if (range > 0) {
+            return range;
+        }
+        return min != 0 ? Math.abs(min) * 1E-3 : 1E-3;
+    }
+
+    private void bin(double x, double y) {
+        final int last = binCount - 1;
+        while (x < originX) {
+            coarsen(true, true);
+        }
+        while (x > originX + last * deltaX) {
+            coarsen(true, false);
+        }
+        while (y < originY) {
+            coarsen(false, true);
+        }
+        while (y > originY + last * deltaY) {
+            coarsen(false, false);
+        }
+
+        double tx = (x - originX) / deltaX;
+        double ty = (y - originY) / deltaY;
+        int i = Math.min((int) tx, last - 1);
+        int j = Math.min((int) ty, last - 1);
+        double fx = Math.min(tx - i, 1.0);
+        double fy = Math.min(ty - j, 1.0);
+
+        int k = i * binCount + j;
+        weights[k] += (1.0 - fx) * (1.0 - fy);
+        weights[k + 1] += (1.0 - fx) * fy;
+        weights[k + binCount] += fx * (1.0 - fy);
+        weights[k + binCount + 1] += fx * fy;
+    }
+
+    /**
+     * Doubles the spacing of the grid along one axis, extending it either downwards or upwards. The old
+     * nodes fall either on a new node or half way between two so their weights are shared linearly.
+     */
+    private void coarsen(boolean xAxis, boolean downwards) {
+        final int last = binCount - 1;
+        final int shift = downwards ? last : 0;
+        double[] coarse = new double[weights.length];
+        for (int i = 0; i < binCount; i++) {
+            for (int j = 0; j < binCount; j++) {
+                double w = weights[i * binCount + j];
+                if (w == 0.0) {
+                    continue;
+                }
+                int k = (xAxis ? i : j) + shift;
+                int lower = k / 2;
+                if (k % 2 == 0) {
+                    coarse[index(xAxis, lower, i, j)] += w;
+                } else {
+                    coarse[index(xAxis, lower, i, j)] += w / 2;
+                    coarse[index(xAxis, lower + 1, i, j)] += w / 2;
+                }
+            }
+        }
+        weights = coarse;
+        if (xAxis) {
+            originX -= shift * deltaX;
+            deltaX *= 2;
+        } else {
+            originY -= shift * deltaY;
+            deltaY *= 2;
+        }
+    }
+
+    private int index(boolean xAxis, int node, int i, int j) {
+        return xAxis ? node * binCount + j : i * binCount + node;
+    }
+
+    private void computeDensity(boolean limitBandwidth) {
+        double[] marginalX = new double[binCount];
+        double[] marginalY = new double[binCount];
+        for (int i = 0; i < binCount; i++) {
+            for (int j = 0; j < binCount; j++) {
+                double w = weights[i * binCount + j];
+                marginalX[i] += w;
+                marginalY[j] += w;
+            }
+        }
+
+        double[] h = new double[]{
+                getBandwidth(marginalX, originX, deltaX, sumSquaresX),
+                getBandwidth(marginalY, originY, deltaY, sumSquaresY)
+        };
+        if (limitBandwidth) {
+            h[0] = Math.min(h[0], 0.5);
+            h[1] = Math.min(h[1], 0.5);
+        }
+
+        double marginX = (maxX - minX) * MARGIN;
+        double marginY = (maxY - minY) * MARGIN;
+        gridX = makeSequence(minX - marginX, maxX + marginX, GRID_SIZE);
+        gridY = makeSequence(minY - marginY, maxY + marginY, GRID_SIZE);
+
+        double[][] ax = getKernel(gridX, originX, deltaX, h[0]);
+        double[][] ay = getKernel(gridY, originY, deltaY, h[1]);
+
+        // z = ax * weights * ay' / (n * hx * hy) computed one axis at a time
+        double[][] partial = new double[GRID_SIZE][binCount];
+        for (int g = 0; g < GRID_SIZE; g++) {
+            for (int i = 0; i < binCount; i++) {
+                double a = ax[g][i];
+                if (a == 0.0) {
+                    continue;
+                }
+                int offset = i * binCount;
+                for (int j = 0; j < binCount; j++) {
+                    partial[g][j] += a * weights[offset + j];
+                }
+            }
+        }
+
+        double scale = count * h[0] * h[1];
+        kde = new double[GRID_SIZE][GRID_SIZE];
+        for (int g = 0; g < GRID_SIZE; g++) {
+            for (int l = 0; l < GRID_SIZE; l++) {
+                double value = 0.0;
+                for (int j = 0; j < binCount; j++) {
+                    value += partial[g][j] * ay[l][j];
+                }
+                kde[g][l] = value / scale;
+            }
+        }
+        limitedBandwidth = limitBandwidth;
+    }
+
+    private double[][] getKernel(double[] grid, double origin, double delta, double h) {
+        double[][] kernel = new double[grid.length][binCount];
+        for (int g = 0; g < grid.length; g++) {
+            for (int i = 0; i < binCount; i++) {
+                kernel[g][i] = NormalDistribution.pdf((grid[g] - (origin + i * delta)) / h, 0, 1);
+            }
+        }
+        return kernel;
+    }
+
+    /**
+     * The normal reference bandwidth of KernelDensityEstimator2D.bandwidthNRD divided by 4.
+     */
+    private double getBandwidth(double[] marginal, double origin, double delta, double sumSquares) {
+        double iqr = (getQuantile(marginal, origin, delta, 0.75) - getQuantile(marginal, origin, delta, 0.25)) / 1.34;
+        double sd = Math.sqrt(sumSquares / Math.max(count - 1, 1));
+        return 1.06 * Math.min(sd, iqr) * Math.pow(count, -0.2);
+    }
+
+    /**
+     * @return the quantile of the binned points taking the weight of each node to be spread evenly
+     * over the half spacing either side of it.
+     */
+    private static double getQuantile(double[] marginal, double origin, double delta, double p) {
+        double total = 0.0;
+        for (double w : marginal) {
+            total += w;
+        }
+        double target = p * total;
+        double cumulative = 0.0;
+        for (int i = 0; i < marginal.length; i++) {
+            if (marginal[i] > 0.0 && cumulative + marginal[i] >= target) {
+                double fraction = (target - cumulative) / marginal[i];
+                return origin + (i - 0.5 + fraction) * delta;
+            }
+            cumulative += marginal[i];
+        }
+        return origin + (marginal.length - 1) * delta;
+    }
+
+    private static double[] makeSequence(double start, double end, int length) {
+        double[] seq = new double[length];
+        double by = (end - start) / (length - 1);
+        double value = start;
+        for (int i = 0; i < length; i++, value += by) {
+            seq[i] = value;
+        }
+        return seq;
+    }
+
+    private final int binCount;
+    private final int exactCount;
+
+    private double[] exactX;
+    private double[] exactY;
+    private int count = 0;
+
+    private double minX, maxX, minY, maxY;
+    private double meanX = 0.0, meanY = 0.0;
+    private double sumSquaresX = 0.0, sumSquaresY = 0.0;
+
+    private double[] weights = null;
+    private double originX, originY;
+    private double deltaX, deltaY;
+
+    private double[] gridX;
+    private double[] gridY;
+    private double[][] kde = null;
+    private boolean limitedBandwidth;
+}
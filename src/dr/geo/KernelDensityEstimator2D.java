@@ -68,7 +68,7 @@ public class KernelDensityEstimator2D implements ContourMaker {
 //        return(list(x = gx, y = gy, z = z))
 //    }
 
-    /*
+    /**
      * @param x x-coordinates of observations
      * @param y y-coordinates of observations
      * @param h bi-variate smoothing bandwidths
@@ -105,6 +105,21 @@ public class KernelDensityEstimator2D implements ContourMaker {
         doKDE2D();
     }
     
+    /*
+     * @param gx x-grid points
+     * @param gy y-grid points
+     * @param z density already estimated at the grid points
+     */
+    public KernelDensityEstimator2D(final double[] gx, final double[] gy, final double[][] z) {
+        this.x = null;
+        this.y = null;
+        this.n = gx.length;
+        this.gx = gx;
+        this.gy = gy;
+        this.z = z;
+        this.limitBandwidth = false;
+    }
+
     public KernelDensityEstimator2D(final double[] x, final double[] y, boolean limitBandwidth) {
         this(x,y,null,50,null,limitBandwidth);
     }
@@ -40,6 +40,10 @@ public class ContourWithSynder extends KernelDensityEstimator2D  {
         super(x, y, h, n, lims);
     }
 
+    public ContourWithSynder(final double[] gx, final double[] gy, final double[][] z) {
+        super(gx, gy, z);
+    }
+
     public ContourWithSynder(final double[] x, final double[] y, boolean bandwidthLimit) {
         super(x, y, bandwidthLimit);
     }
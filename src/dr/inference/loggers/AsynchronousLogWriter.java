@@ -0,0 +1,173 @@
+/*
+ * AsynchronousLogWriter.java
+ *
+ * Copyright (c) 2002-2023 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.inference.loggers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A single background thread that formats and writes log output in the order it was submitted.
+ * Loggers take a snapshot of the values to be logged on the chain thread and submit the formatting
+ * and writing as a task. The queue of pending tasks is bounded so that a chain that logs faster
+ * than the output can be written is blocked rather than accumulating snapshots.
+ *
+ * The writer is disabled unless the system property <code>beast.log.async</code> is set to the
+ * number of pending log entries to allow.
+ */
+public class AsynchronousLogWriter {
+
+    public static final String BUFFER_SIZE_PROPERTY = "beast.log.async";
+
+    private static AsynchronousLogWriter instance = null;
+    private static boolean initialized = false;
+
+    /**
+     * @return the shared writer or null if asynchronous logging is disabled
+     */
+    public static synchronized AsynchronousLogWriter getInstance() {
+        if (!initialized) {
+            String size = System.getProperty(BUFFER_SIZE_PROPERTY);
+            if (size != null && Integer.parseInt(size) > 0) {
+                instance = new AsynchronousLogWriter(Integer.parseInt(size));
+            }
+            initialized = true;
+        }
+        return instance;
+    }
+
+    /**
+     * Waits until everything submitted to the shared writer (if there is one) has been written.
+     */
+    public static void flushAll() {
+        AsynchronousLogWriter writer;
+        synchronized (AsynchronousLogWriter.class) {
+            writer = instance;
+        }
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    public AsynchronousLogWriter(int capacity) {
+        queue = new ArrayBlockingQueue<Runnable>(capacity);
+
+        thread = new Thread(new Runnable() {
+            public void run() {
+                writeLoop();
+            }
+        }, "BEAST log writer");
+        thread.setDaemon(true);
+        thread.start();
+
+        // make sure nothing is lost if the program exits without stopping the loggers
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                flush();
+            }
+        }));
+    }
+
+    /**
+     * Queues a task, blocking while the queue is full.
+     */
+    public void submit(Runnable task) {
+        checkError();
+        synchronized (this) {
+            submitted++;
+        }
+        try {
+            queue.put(task);
+        } catch (InterruptedException ie) {
+            synchronized (this) {
+                submitted--;
+            }
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to log");
+        }
+    }
+
+    /**
+     * Waits until all the tasks submitted so far have been completed.
+     */
+    public void flush() {
+        if (Thread.currentThread() == thread) {
+            return;
+        }
+        synchronized (this) {
+            while (completed < submitted && error == null) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        checkError();
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Runnable task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException ie) {
+                return;
+            }
+
+            try {
+                task.run();
+            } catch (Throwable t) {
+                synchronized (this) {
+                    error = t;
+                }
+            }
+
+            synchronized (this) {
+                completed++;
+                notifyAll();
+            }
+        }
+    }
+
+    private void checkError() {
+        Throwable t;
+        synchronized (this) {
+            t = error;
+            error = null;
+        }
+        if (t != null) {
+            throw new RuntimeException("Error writing log: " + t.getMessage(), t);
+        }
+    }
+
+    private final BlockingQueue<Runnable> queue;
+    private final Thread thread;
+
+    private long submitted = 0;
+    private long completed = 0;
+    private Throwable error = null;
+}
@@ -168,30 +168,77 @@ public class MCLogger implements Logger {
         return columns.get(index).getFormatted();
     }
 
-    protected void logHeading(String heading) {
-        for (LogFormatter formatter : formatters) {
-            formatter.logHeading(heading);
-        }
+    protected void logHeading(final String heading) {
+        final List<LogFormatter> formatters = this.formatters;
+        write(new Runnable() {
+            public void run() {
+                for (LogFormatter formatter : formatters) {
+                    formatter.logHeading(heading);
+                }
+            }
+        });
     }
 
-    protected void logLine(String line) {
-        for (LogFormatter formatter : formatters) {
-            formatter.logLine(line);
-        }
+    protected void logLine(final String line) {
+        final List<LogFormatter> formatters = this.formatters;
+        write(new Runnable() {
+            public void run() {
+                for (LogFormatter formatter : formatters) {
+                    formatter.logLine(line);
+                }
+            }
+        });
     }
 
-    protected void logLabels(String[] labels) {
-        for (LogFormatter formatter : formatters) {
-            formatter.logLabels(labels);
-        }
+    protected void logLabels(final String[] labels) {
+        final List<LogFormatter> formatters = this.formatters;
+        write(new Runnable() {
+            public void run() {
+                for (LogFormatter formatter : formatters) {
+                    formatter.logLabels(labels);
+                }
+            }
+        });
     }
 
-    protected void logValues(String[] values) {
-        for (LogFormatter formatter : formatters) {
-            formatter.logValues(values);
+    protected void logValues(final String[] values) {
+        final List<LogFormatter> formatters = this.formatters;
+        write(new Runnable() {
+            public void run() {
+                for (LogFormatter formatter : formatters) {
+                    formatter.logValues(values);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs an output task on the log writer thread if logging is asynchronous, otherwise immediately.
+     * Tasks must only use the state captured when they were created.
+     */
+    protected void write(Runnable task) {
+        if (writer != null) {
+            writer.submit(task);
+        } else {
+            task.run();
         }
     }
 
+    /**
+     * Sets the writer used to format and write the output of this logger on a separate thread, or null to write
+     * it on the chain thread. This must be called before logging starts.
+     */
+    public void setAsynchronousWriter(AsynchronousLogWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * @return true if the output of this logger is formatted and written on a separate thread
+     */
+    protected boolean isAsynchronous() {
+        return writer != null;
+    }
+
     public void startLogging() {
 
         for (LogFormatter formatter : formatters) {
@@ -241,12 +288,35 @@ public class MCLogger implements Logger {
 
             final int columnCount = getColumnCount();
 
-            String[] values = new String[columnCount + (performanceReport ? 2 : 1)];
+            final String[] values = new String[columnCount + (performanceReport ? 2 : 1)];
 
             values[0] = Long.toString(state);
 
-            for (int i = 0; i < columnCount; i++) {
-                values[i + 1] = getColumnFormatted(i);
+            final double[] numbers;
+            if (writer != null) {
+                // take the values of numerical columns now and leave their formatting to the writer thread
+                if (deferredColumns == null || deferredColumns.length != columnCount) {
+                    deferredColumns = new NumberColumn[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        LogColumn column = getColumn(i);
+                        if (column instanceof NumberColumn && ((NumberColumn) column).isFormattedFromValue()) {
+                            deferredColumns[i] = (NumberColumn) column;
+                        }
+                    }
+                }
+                numbers = new double[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    if (deferredColumns[i] != null) {
+                        numbers[i] = deferredColumns[i].getDoubleValue();
+                    } else {
+                        values[i + 1] = getColumnFormatted(i);
+                    }
+                }
+            } else {
+                numbers = null;
+                for (int i = 0; i < columnCount; i++) {
+                    values[i + 1] = getColumnFormatted(i);
+                }
             }
 
             if (performanceReport) {
@@ -265,7 +335,24 @@ public class MCLogger implements Logger {
                 }
             }
 
-            logValues(values);
+            if (numbers != null) {
+                final NumberColumn[] columns = deferredColumns;
+                final List<LogFormatter> formatters = this.formatters;
+                write(new Runnable() {
+                    public void run() {
+                        for (int i = 0; i < columns.length; i++) {
+                            if (columns[i] != null) {
+                                values[i + 1] = columns[i].getFormatted(numbers[i]);
+                            }
+                        }
+                        for (LogFormatter formatter : formatters) {
+                            formatter.logValues(values);
+                        }
+                    }
+                });
+            } else {
+                logValues(values);
+            }
         }
 
         if (performanceReport && !performanceReportStarted && state >= performanceReportDelay) {
@@ -276,6 +363,10 @@ public class MCLogger implements Logger {
 
     public void stopLogging() {
 
+        if (writer != null) {
+            writer.flush();
+        }
+
         for (LogFormatter formatter : formatters) {
             formatter.stopLogging();
         }
@@ -289,6 +380,9 @@ public class MCLogger implements Logger {
 
     protected long logEvery = 0;
 
+    private AsynchronousLogWriter writer = AsynchronousLogWriter.getInstance();
+    private NumberColumn[] deferredColumns = null;
+
     public List<LogFormatter> getFormatters() {
         return formatters;
     }
@@ -101,7 +101,7 @@ public abstract class NumberColumn extends LogColumn.Abstract {
 	public int getDecimalPlaces() { return dp; }
 	
 
-    public String formatValue(double value) {
+    public synchronized String formatValue(double value) {
        if (dp < 0 && sf < 0) {
 			// return it at full precision
 			return Double.toString(value);
@@ -159,6 +159,34 @@ public abstract class NumberColumn extends LogColumn.Abstract {
 		return pattern;
 	}
 
+	/**
+	 * Returns a value previously obtained from getDoubleValue() formatted as getFormatted()
+	 * would have done. Only valid if isFormattedFromValue() is true.
+	 */
+	public String getFormatted(double value) {
+		StringBuilder buffer = new StringBuilder(formatValue(value));
+		while (buffer.length() < getMinimumWidth()) {
+			buffer.append(' ');
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * @return true if the formatted value is determined by getDoubleValue() alone, i.e., the column
+	 * does not override getFormattedValue(), so that the formatting can be deferred.
+	 */
+	public boolean isFormattedFromValue() {
+		for (Class c = getClass(); c != NumberColumn.class; c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod("getFormattedValue");
+				return false;
+			} catch (NoSuchMethodException e) {
+				// not overridden at this level
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Returns the current value as a double.
 	 */
@@ -0,0 +1,177 @@
+/*
+ * RuntimeMetricsLogger.java
+ *
+ * Copyright (c) 2002-2015 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.inference.loggers;
+
+import dr.util.RuntimeMetrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Switches on the runtime metrics registry and periodically writes all its metrics to a file,
+ * either appending rows to a CSV table or replacing a JSON snapshot. As a Loggable it gives the
+ * total time spent in each category of metric so this can be followed in an ordinary log.
+ */
+public class RuntimeMetricsLogger implements Logger, Loggable {
+
+    public enum Format {
+        CSV,
+        JSON
+    }
+
+    public RuntimeMetricsLogger(File file, Format format, long logEvery) {
+        this.file = file;
+        this.format = format;
+        this.logEvery = logEvery;
+
+        RuntimeMetrics.setEnabled(true);
+    }
+
+    public void startLogging() {
+        if (format == Format.CSV) {
+            PrintWriter writer = openWriter(false);
+            writer.println("state,category,name,count,totalSeconds,meanMicros,medianMicros,p99Micros,utilisation");
+            writer.close();
+        }
+    }
+
+    public void log(long state) {
+        if (logEvery > 0 && state % logEvery == 0) {
+            dump(state);
+        }
+    }
+
+    public void stopLogging() {
+        dump(-1);
+    }
+
+    /**
+     * Writes the current values of all the metrics, labelled with the given state (or -1 for the end of the run).
+     */
+    public void dump(long state) {
+        if (format == Format.CSV) {
+            PrintWriter writer = openWriter(true);
+            for (RuntimeMetrics.Category category : RuntimeMetrics.Category.values()) {
+                for (RuntimeMetrics.Metric metric : RuntimeMetrics.getMetrics(category)) {
+                    writer.println(state + "," + category + "," + quoteCSV(metric.getName()) + "," +
+                            metric.getCount() + "," + format(metric.getTotalSeconds()) + "," +
+                            format(metric.getMeanMicros()) + "," + format(metric.getQuantileMicros(0.5)) + "," +
+                            format(metric.getQuantileMicros(0.99)) + "," +
+                            (category == RuntimeMetrics.Category.THREAD_POOL ? format(metric.getUtilisation()) : ""));
+                }
+            }
+            writer.close();
+        } else {
+            PrintWriter writer = openWriter(false);
+            writer.println("{");
+            writer.println("  \"state\": " + state + ",");
+            RuntimeMetrics.Category[] categories = RuntimeMetrics.Category.values();
+            for (int i = 0; i < categories.length; i++) {
+                writer.println("  \"" + categories[i] + "\": [");
+                List<RuntimeMetrics.Metric> metrics = RuntimeMetrics.getMetrics(categories[i]);
+                for (int j = 0; j < metrics.size(); j++) {
+                    writer.print("    " + toJSON(metrics.get(j)));
+                    writer.println(j < metrics.size() - 1 ? "," : "");
+                }
+                writer.println(i < categories.length - 1 ? "  ]," : "  ]");
+            }
+            writer.println("}");
+            writer.close();
+        }
+    }
+
+    private String toJSON(RuntimeMetrics.Metric metric) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"name\": \"").append(metric.getName().replace("\\", "\\\\").replace("\"", "\\\"")).append("\"");
+        sb.append(", \"count\": ").append(metric.getCount());
+        sb.append(", \"totalSeconds\": ").append(format(metric.getTotalSeconds()));
+        sb.append(", \"meanMicros\": ").append(format(metric.getMeanMicros()));
+        sb.append(", \"medianMicros\": ").append(format(metric.getQuantileMicros(0.5)));
+        sb.append(", \"p99Micros\": ").append(format(metric.getQuantileMicros(0.99)));
+        if (metric.getCategory() == RuntimeMetrics.Category.THREAD_POOL) {
+            sb.append(", \"utilisation\": ").append(format(metric.getUtilisation()));
+        }
+        sb.append(", \"histogram\": [");
+        long[] histogram = metric.getHistogram();
+        int last = histogram.length - 1;
+        while (last > 0 && histogram[last] == 0) {
+            last--;
+        }
+        for (int i = 0; i <= last; i++) {
+            sb.append(i > 0 ? ", " : "").append(histogram[i]);
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    private static String quoteCSV(String value) {
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private static String format(double value) {
+        return Double.isNaN(value) ? "NaN" : String.format(Locale.US, "%.6g", value);
+    }
+
+    private PrintWriter openWriter(boolean append) {
+        try {
+            return new PrintWriter(new FileOutputStream(file, append));
+        } catch (IOException ioe) {
+            throw new RuntimeException("Unable to write runtime metrics to file: " + file.getAbsolutePath());
+        }
+    }
+
+    // **************************************************************
+    // Loggable IMPLEMENTATION
+    // **************************************************************
+
+    public LogColumn[] getColumns() {
+        List<LogColumn> columns = new ArrayList<LogColumn>();
+        for (final RuntimeMetrics.Category category : RuntimeMetrics.Category.values()) {
+            columns.add(new NumberColumn("metrics." + category + ".seconds") {
+                public double getDoubleValue() {
+                    double seconds = 0.0;
+                    for (RuntimeMetrics.Metric metric : RuntimeMetrics.getMetrics(category)) {
+                        seconds += metric.getTotalSeconds();
+                    }
+                    return seconds;
+                }
+            });
+        }
+        return columns.toArray(new LogColumn[columns.size()]);
+    }
+
+    private final File file;
+    private final Format format;
+    private final long logEvery;
+}
@@ -28,12 +28,14 @@ package dr.inference.markovchain;
 import dr.evomodel.continuous.GibbsIndependentCoalescentOperator;
 import dr.inference.model.*;
 import dr.inference.operators.*;
+import dr.util.RuntimeMetrics;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
 /**
@@ -193,6 +195,10 @@ public final class MarkovChain implements Serializable {
             final int op = schedule.getNextOperatorIndex();
             final MCMCOperator mcmcOperator = schedule.getOperator(op);
 
+            // steps are only costed once the full evaluation tests are over
+            final boolean costStep = schedule.isCostAware() && !usingFullEvaluation;
+            final long stepTime = costStep ? System.nanoTime() : 0L;
+
             double oldScore = currentScore;
             if (usingFullEvaluation) {
                 diagnosticDensities = new HashMap<String, Double>();
@@ -214,6 +220,9 @@ public final class MarkovChain implements Serializable {
 
             logr[0] = -Double.MAX_VALUE;
 
+            final boolean metrics = RuntimeMetrics.isEnabled();
+            long metricsTime = metrics ? System.nanoTime() : 0L;
+
             // The new model is proposed
             // assert Profiler.startProfile("Operate");
 
@@ -229,6 +238,10 @@ public final class MarkovChain implements Serializable {
             }
 
             // assert Profiler.stopProfile("Operate");
+            if (metrics) {
+                metricsTime = recordOperatorMetric(RuntimeMetrics.Category.OPERATOR_PROPOSE, mcmcOperator, metricsTime);
+            }
+
             if (hastingsRatio == Double.NEGATIVE_INFINITY) {
                 // Should the evaluation be short-cutted?
                 // Previously this was set to false if OperatorFailedException was thrown.
@@ -261,6 +274,10 @@ public final class MarkovChain implements Serializable {
                 // The new model is evaluated
                 score = evaluate(likelihood);
 
+                if (metrics) {
+                    metricsTime = recordOperatorMetric(RuntimeMetrics.Category.OPERATOR_EVALUATE, mcmcOperator, metricsTime);
+                }
+
                 if (PROFILE) {
                     long duration = System.currentTimeMillis() - elapsedTime;
                     mcmcOperator.addEvaluationTime(duration);
@@ -374,6 +391,11 @@ public final class MarkovChain implements Serializable {
                     fireBestModel(currentState, currentModel);
                 }
 
+                if (metrics) {
+                    // the accept and reject timings exclude the full evaluation tests above
+                    metricsTime = System.nanoTime();
+                }
+
                 accept = mcmcOperator instanceof GibbsOperator || acceptor.accept(oldScore, score, hastingsRatio, logr);
 
                 deviation = score - oldScore;
@@ -390,6 +412,10 @@ public final class MarkovChain implements Serializable {
                 currentModel.acceptModelState();
                 currentScore = score;
 
+                if (metrics) {
+                    recordOperatorMetric(RuntimeMetrics.Category.OPERATOR_ACCEPT, mcmcOperator, metricsTime);
+                }
+
             } else {
                 if (DEBUG) {
                     System.out.println("** Move rejected: new score = " + score
@@ -402,6 +428,10 @@ public final class MarkovChain implements Serializable {
 
                 currentModel.restoreModelState();
 
+                if (metrics) {
+                    recordOperatorMetric(RuntimeMetrics.Category.OPERATOR_REJECT, mcmcOperator, metricsTime);
+                }
+
                 if (usingFullEvaluation) {
                     // This is a test that the state is correctly restored. The
                     // restored state is fully evaluated and the likelihood compared with
@@ -438,6 +468,9 @@ public final class MarkovChain implements Serializable {
             }
             // assert Profiler.stopProfile("Restore");
 
+            if (costStep) {
+                schedule.recordStep(op, System.nanoTime() - stepTime, accept, deviation);
+            }
 
             if (isAdapting(mcmcOperator)) {
                 adaptAcceptanceProbability((AdaptableMCMCOperator) mcmcOperator, logr[0]);
@@ -541,6 +574,18 @@ public final class MarkovChain implements Serializable {
         return logPosterior;
     }
 
+    /**
+     * Records the time since the given time against the operator and returns the current time.
+     */
+    private static long recordOperatorMetric(RuntimeMetrics.Category category, MCMCOperator operator, long since) {
+        long now = System.nanoTime();
+        RuntimeMetrics.getMetric(category, operator, OPERATOR_NAMER).record(now - since);
+        return now;
+    }
+
+    private static final Function<Object, String> OPERATOR_NAMER =
+            operator -> ((MCMCOperator) operator).getOperatorName();
+
     public boolean isAdapting(MCMCOperator operator) {
         return (isCurrentlyAdapting && operator instanceof AdaptableMCMCOperator);
     }
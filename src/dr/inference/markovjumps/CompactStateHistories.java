@@ -0,0 +1,129 @@
+/*
+ * CompactStateHistories.java
+ *
+ * Copyright (c) 2002-2023 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.inference.markovjumps;
+
+import dr.evolution.datatype.Codons;
+import dr.evolution.datatype.DataType;
+
+import java.util.Arrays;
+
+/**
+ * The state changes of the complete histories of a run of sites along one branch, held in primitive
+ * arrays rather than as a StateHistory or String per site. The sites are added in order and the
+ * histories are only formatted as strings when they are asked for.
+ */
+public class CompactStateHistories {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    public CompactStateHistories(int siteCount) {
+        offsets = new int[siteCount + 1];
+        times = new double[INITIAL_CAPACITY];
+        states = new int[2 * INITIAL_CAPACITY];
+    }
+
+    public int getSiteCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Removes the histories of all the sites so they can be added again
+     */
+    public void clear() {
+        sitesAdded = 0;
+        changeCount = 0;
+    }
+
+    /**
+     * Adds a change to the history of the next site
+     */
+    public void addChange(double time, int previousState, int state) {
+        if (changeCount == times.length) {
+            times = Arrays.copyOf(times, 2 * times.length);
+            states = Arrays.copyOf(states, 2 * states.length);
+        }
+        times[changeCount] = time;
+        states[2 * changeCount] = previousState;
+        states[2 * changeCount + 1] = state;
+        changeCount++;
+    }
+
+    /**
+     * Ends the history of the next site so the following changes belong to the site after it
+     */
+    public void endSite() {
+        if (sitesAdded == getSiteCount()) {
+            throw new IllegalStateException("Histories have already been added for all " + getSiteCount() + " sites");
+        }
+        sitesAdded++;
+        offsets[sitesAdded] = changeCount;
+    }
+
+    /**
+     * @return the number of changes in the history of a site or -1 if it hasn't been added
+     */
+    public int getChangeCount(int site) {
+        if (site >= sitesAdded) {
+            return -1;
+        }
+        return offsets[site + 1] - offsets[site];
+    }
+
+    /**
+     * @param site       the index of the site in this run of sites
+     * @param siteNumber the site number to put in each event (if greater than zero)
+     * @return the history of the site in the same format as StateHistory.toStringChanges or null
+     * if it hasn't been added
+     */
+    public String toStringChanges(int site, int siteNumber, DataType dataType) {
+        if (site >= sitesAdded) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = offsets[site]; i < offsets[site + 1]; i++) {
+            if (i > offsets[site]) {
+                sb.append(",");
+            }
+            int previousState = states[2 * i];
+            int state = states[2 * i + 1];
+            if (dataType instanceof Codons) {
+                StateHistory.addEventToStringBuilder(sb, dataType.getTriplet(previousState), dataType.getTriplet(state),
+                        times[i], siteNumber);
+            } else {
+                StateHistory.addEventToStringBuilder(sb, dataType.getCode(previousState), dataType.getCode(state),
+                        times[i], siteNumber);
+            }
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+
+    private final int[] offsets;
+    private double[] times;
+    private int[] states;
+    private int sitesAdded = 0;
+    private int changeCount = 0;
+}
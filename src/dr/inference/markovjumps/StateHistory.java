@@ -309,6 +309,24 @@ public class StateHistory {
         return sb.toString();
     }
 
+    /**
+     * Adds the changes that toStringChanges lists as the history of the next site of histories
+     */
+    public void addChangesTo(CompactStateHistories histories) {
+        int currentState = stateList.get(0).getState();
+        for (int i = 1; i < stateList.size() - 1; i++) {
+            int nextState = stateList.get(i).getState();
+            if (isFiltered) {
+                currentState = stateList.get(i).getPreviousState();
+            }
+            if (nextState != currentState) {
+                histories.addChange(stateList.get(i).getTime(), currentState, nextState);
+                currentState = nextState;
+            }
+        }
+        histories.endSite();
+    }
+
     public static void addEventToStringBuilder(StringBuilder sb, String source, String dest, double time, int site) {
         // AR changed this to match an attribute array:
         sb.append("{");
@@ -27,11 +27,10 @@ package dr.inference.markovjumps;
 
 import dr.math.GammaFunction;
 import dr.math.MathUtils;
+import dr.math.MersenneTwisterFast;
 import dr.math.matrixAlgebra.Vector;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 
 /**
@@ -43,6 +42,8 @@ import java.util.List;
  * <p/>
  * Hobolth A and Stone E (2009) Simulation from endpoint-conditioned, continuous-time Markov chains on a finite
  * state space, with applications to molecular evolution. Annals of Applied Statistics, 3, 1204-1231.
+ * <p/>
+ * The draws that take a MersenneTwisterFast may be made from several threads at once.
  *
  * @author Marc A. Suchard
  */
@@ -52,9 +53,7 @@ public class SubordinatedProcess {
     public SubordinatedProcess(double[] Q, int stateCount) {
         this.stateCount = stateCount;
         poissonRate = getMaxRate(Q, stateCount);
-        dtmcCache = new ArrayList<double[]>();
-        dtmcCache.add(makeIndentityMatrx(stateCount));
-        dtmcCache.add(constructDtmcMatrix(Q, stateCount));
+        dtmcCache = new double[][]{makeIndentityMatrx(stateCount), constructDtmcMatrix(Q, stateCount)};
         tmp = new double[stateCount];
         this.Q = Q;
     }
@@ -64,11 +63,12 @@ public class SubordinatedProcess {
     }
 
     private double getCachedExp(double x) {
-        if (x != cachedXForExp) {
-            cachedXForExp = x;
-            cachedExpValue = Math.exp(x);
+        double[] cached = cachedExp;
+        if (x != cached[0]) {
+            cached = new double[]{x, Math.exp(x)};
+            cachedExp = cached;
         }
-        return cachedExpValue;
+        return cached[1];
     }
 
     /**
@@ -79,16 +79,27 @@ public class SubordinatedProcess {
      */
 
     public double[] getDtmcProbabilities(int nSteps) {
-        if (nSteps > dtmcCache.size() - 1) {
-            double[] dtmcOneStep = dtmcCache.get(1);
-            for (int step = dtmcCache.size() - 1; step <= nSteps; step++) {
-                double[] lastDtmcMatrix = dtmcCache.get(step);
-                double[] nextDtmcMatrix = new double[stateCount * stateCount];
-                MarkovJumpsCore.matrixMultiply(lastDtmcMatrix, dtmcOneStep, stateCount, nextDtmcMatrix);
-                dtmcCache.add(nextDtmcMatrix);
+        double[][] cache = dtmcCache;
+        if (nSteps > cache.length - 1) {
+            cache = extendDtmcCache(nSteps);
+        }
+        return cache[nSteps];
+    }
+
+    private synchronized double[][] extendDtmcCache(int nSteps) {
+        double[][] cache = dtmcCache;
+        if (nSteps > cache.length - 1) {
+            // the cache is replaced rather than added to so that other threads can read it without locking
+            double[][] extended = Arrays.copyOf(cache, Math.max(nSteps + 1, 2 * cache.length));
+            double[] dtmcOneStep = cache[1];
+            for (int step = cache.length; step < extended.length; step++) {
+                extended[step] = new double[stateCount * stateCount];
+                MarkovJumpsCore.matrixMultiply(extended[step - 1], dtmcOneStep, stateCount, extended[step]);
             }
+            dtmcCache = extended;
+            cache = extended;
         }
-        return dtmcCache.get(nSteps);
+        return cache;
     }
 
     /**
@@ -153,6 +164,17 @@ public class SubordinatedProcess {
         return times;
     }
 
+    public double[] drawTransitionTimes(double timeDuration, int totalNumberOfChanges, MersenneTwisterFast random) {
+        double[] times = new double[totalNumberOfChanges];
+        for (int i = 0; i < totalNumberOfChanges; i++) {
+            times[i] = timeDuration * random.nextDouble();
+        }
+        if (times.length > 1) {
+            Arrays.sort(times);
+        }
+        return times;
+    }
+
     /**
      * Simulate the next transition in the subordinated process, equation in remark 7
      *
@@ -167,6 +189,25 @@ public class SubordinatedProcess {
         return MathUtils.randomChoicePDF(tmp);
     }
 
+    /**
+     * As drawNextChainState but drawing from the given generator
+     *
+     * @param pdf working space of length stateCount
+     */
+    public int drawNextChainState(int currentState, int endingState, int totalNumberOfChanges, int thisChangeNumber,
+                                  MersenneTwisterFast random, double[] pdf) {
+        computePdfNextChainState(currentState, endingState, totalNumberOfChanges, thisChangeNumber, pdf);
+
+        double U = random.nextDouble() * MathUtils.getTotal(pdf);
+        for (int i = 0; i < stateCount; i++) {
+            U -= pdf[i];
+            if (U < 0.0) {
+                return i;
+            }
+        }
+        throw new Error("drawNextChainState falls through -- negative, infinite or NaN components in the distribution");
+    }
+
     public void computePdfNextChainState(int currentState, int endingState, int totalNumberOfChanges, int thisChangeNumber,
                                          double[] pdf) {
         double[] R = getDtmcProbabilities(1);
@@ -196,6 +237,11 @@ public class SubordinatedProcess {
         return drawNumberOfChanges(startingState, endingState, time, ctmcProbability, MathUtils.nextDouble());
     }
 
+    public int drawNumberOfChanges(int startingState, int endingState, double time, double ctmcProbability,
+                                   MersenneTwisterFast random) throws SubordinatedProcess.Exception {
+        return drawNumberOfChanges(startingState, endingState, time, ctmcProbability, random.nextDouble());
+    }
+
     public int drawNumberOfChanges(int startingState, int endingState, double time, double ctmcProbability,
                                    double cutoff) throws SubordinatedProcess.Exception {
         int drawnNumber = -1;
@@ -289,13 +335,12 @@ public class SubordinatedProcess {
         return I;
     }
 
-    private final List<double[]> dtmcCache;
+    private volatile double[][] dtmcCache;
     private final double poissonRate;
     private final int stateCount;
     private final double[] tmp;
 
-    private double cachedXForExp = Double.NaN;
-    private double cachedExpValue;
+    private volatile double[] cachedExp = new double[]{Double.NaN, Double.NaN};
 
     private static final boolean DEBUG = false;
     private static final boolean THROW_EXCEPTION = true;
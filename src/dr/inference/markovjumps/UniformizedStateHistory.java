@@ -26,6 +26,7 @@
 package dr.inference.markovjumps;
 
 import dr.math.MathUtils;
+import dr.math.MersenneTwisterFast;
 
 /**
  * A class to represent a complete state history of a continuous-time Markov chain in the
@@ -128,5 +129,51 @@ public class UniformizedStateHistory extends StateHistory {
         return history;
     }
 
+    /**
+     * As simulateConditionalOnEndingState but drawing from the given generator so that histories can be
+     * simulated on several threads with a shared subordinator
+     */
+    public static StateHistory simulateConditionalOnEndingState(double startingTime,
+                                                                int startingState,
+                                                                double endingTime,
+                                                                int endingState,
+                                                                double transitionProbability,
+                                                                int stateCount,
+                                                                SubordinatedProcess subordinator,
+                                                                MersenneTwisterFast random) throws SubordinatedProcess.Exception {
+
+        StateHistory history = new UniformizedStateHistory(startingTime, startingState, stateCount, subordinator);
+
+        double timeDuration = endingTime - startingTime;
+
+        int stateChanges = subordinator.drawNumberOfChanges(startingState, endingState, timeDuration,
+                transitionProbability, random);
+
+        if (stateChanges == 1) {
+            if (startingState != endingState) {
+                double transitionTime = (timeDuration) * random.nextDouble();
+                history.addChange(new StateChange(startingTime + transitionTime, endingState));
+            }
+        } else if (stateChanges > 1) {
+
+            double[] transitionTimes = subordinator.drawTransitionTimes(timeDuration, stateChanges, random);
+            double[] pdf = new double[stateCount];
+            int currentState = startingState;
+            for (int i = 1; i < stateChanges; i++) {
+                int nextState = subordinator.drawNextChainState(currentState, endingState, stateChanges, i, random, pdf);
+                if (nextState != currentState) {
+                    history.addChange(new StateChange(startingTime + transitionTimes[i-1], nextState));
+                    currentState = nextState;
+                }
+            }
+            if (currentState != endingState) {
+                history.addChange(new StateChange(startingTime + transitionTimes[stateChanges-1], endingState));
+            }
+        }
+
+        history.addEndingState(new StateChange(endingTime, endingState));
+        return history;
+    }
+
     final private SubordinatedProcess subordinator;
 }
@@ -37,6 +37,7 @@ import dr.inference.model.Model;
 import dr.inference.operators.*;
 import dr.util.Identifiable;
 import dr.util.NumberFormatter;
+import dr.util.RuntimeMetrics;
 import dr.xml.Spawnable;
 
 import java.io.File;
@@ -284,6 +285,10 @@ public class MCMC implements Identifiable, Spawnable, Loggable {
                 }
             }
 
+            if (RuntimeMetrics.isEnabled()) {
+                RuntimeMetrics.printReport(System.out, 10);
+            }
+
             // How should premature finish be flagged?
         }
 
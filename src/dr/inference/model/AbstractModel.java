@@ -27,6 +27,7 @@ package dr.inference.model;
 
 import dr.inference.parallel.MPISerializable;
 import dr.util.Keywordable;
+import dr.util.RuntimeMetrics;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -257,6 +258,10 @@ public abstract class AbstractModel implements Model, ModelListener, VariableLis
                 m.storeModelState();
             }
 
+            // the metric only includes the time spent on this model's own state
+            final boolean metrics = RuntimeMetrics.isEnabled();
+            final long time = metrics ? System.nanoTime() : 0L;
+
             for (Variable variable : variables) {
 //                System.out.println("\t" + variable.getVariableName() + "/" + variable.getClass().getCanonicalName());
                 variable.storeVariableValues();
@@ -264,6 +269,10 @@ public abstract class AbstractModel implements Model, ModelListener, VariableLis
 
             storeState();
             isValidState = false;
+
+            if (metrics) {
+                RuntimeMetrics.record(RuntimeMetrics.Category.MODEL_STORE, this, System.nanoTime() - time);
+            }
         }
     }
 
@@ -271,16 +280,28 @@ public abstract class AbstractModel implements Model, ModelListener, VariableLis
         if (!isValidState) {
             //System.out.println("RESTORE MODEL: " + getModelName() + "/" + getId());
 
+            final boolean metrics = RuntimeMetrics.isEnabled();
+            long time = metrics ? System.nanoTime() : 0L;
+
             for (Variable variable : variables) {
                 variable.restoreVariableValues();
             }
+
+            // the metric only includes the time spent on this model's own state
+            time = metrics ? System.nanoTime() - time : 0L;
+
             for (Model m : models) {
                 m.restoreModelState();
             }
 
+            final long restoreTime = metrics ? System.nanoTime() : 0L;
             restoreState();
             isValidState = true;
 
+            if (metrics) {
+                RuntimeMetrics.record(RuntimeMetrics.Category.MODEL_RESTORE, this, time + System.nanoTime() - restoreTime);
+            }
+
             listenerHelper.fireModelRestored(this);
         }
     }
@@ -27,6 +27,7 @@ package dr.inference.model;
 
 import dr.util.Keywordable;
 import dr.util.NumberFormatter;
+import dr.util.RuntimeMetrics;
 import dr.xml.Reportable;
 
 import java.util.*;
@@ -204,6 +205,7 @@ public class CompoundLikelihood implements Likelihood, Profileable, Reportable,
         } else {
 
             try {
+                final long time = System.nanoTime();
                 List<Future<Double>> results = pool.invokeAll(likelihoodCallers);
 
                 for (Future<Double> result : results) {
@@ -211,6 +213,15 @@ public class CompoundLikelihood implements Likelihood, Profileable, Reportable,
                     logLikelihood += logL;
                 }
 
+                if (RuntimeMetrics.isEnabled()) {
+                    long busyTime = 0;
+                    for (Callable<Double> caller : likelihoodCallers) {
+                        busyTime += ((LikelihoodCaller) caller).lastTime;
+                    }
+                    RuntimeMetrics.recordPool(this, System.nanoTime() - time, busyTime,
+                            threadCount > 0 ? threadCount : likelihoodCallers.size());
+                }
+
             } catch (InterruptedException e) {
                 e.printStackTrace();
             } catch (ExecutionException e) {
@@ -234,12 +245,16 @@ public class CompoundLikelihood implements Likelihood, Profileable, Reportable,
         double logLikelihood = 0.0;
         int i = 0;
         for (Likelihood likelihood : likelihoods) {
-            if (EVALUATION_TIMERS) {
-                // this code is only compiled if EVALUATION_TIMERS is true
+            if (EVALUATION_TIMERS || RuntimeMetrics.isEnabled()) {
                 long time = System.nanoTime();
                 double l = likelihood.getLogLikelihood();
-                evaluationTimes[i] += System.nanoTime() - time;
-                evaluationCounts[i] ++;
+                time = System.nanoTime() - time;
+                if (EVALUATION_TIMERS) {
+                    // this code is only compiled if EVALUATION_TIMERS is true
+                    evaluationTimes[i] += time;
+                    evaluationCounts[i] ++;
+                }
+                RuntimeMetrics.record(RuntimeMetrics.Category.LIKELIHOOD, likelihood, time);
 
                 if( l == Double.NEGATIVE_INFINITY )
                     return Double.NEGATIVE_INFINITY;
@@ -553,11 +568,15 @@ public class CompoundLikelihood implements Likelihood, Profileable, Reportable,
             if (DEBUG_PARALLEL_EVALUATION) {
                 System.err.print("Invoking thread #" + index + " for " + likelihood.getId() + ": ");
             }
-            if (EVALUATION_TIMERS) {
+            if (EVALUATION_TIMERS || RuntimeMetrics.isEnabled()) {
                 long time = System.nanoTime();
                 double logL = likelihood.getLogLikelihood();
-                evaluationTimes[index] += System.nanoTime() - time;
-                evaluationCounts[index] ++;
+                lastTime = System.nanoTime() - time;
+                if (EVALUATION_TIMERS) {
+                    evaluationTimes[index] += lastTime;
+                    evaluationCounts[index] ++;
+                }
+                RuntimeMetrics.record(RuntimeMetrics.Category.LIKELIHOOD, likelihood, lastTime);
                 return logL;
             }
             return likelihood.getLogLikelihood();
@@ -565,6 +584,9 @@ public class CompoundLikelihood implements Likelihood, Profileable, Reportable,
 
         private final Likelihood likelihood;
         private final int index;
+
+        // the duration of the last call, read by the calling thread once all the calls are complete
+        private long lastTime;
     }
 
     public static final boolean DEBUG_PARALLEL_EVALUATION = false;
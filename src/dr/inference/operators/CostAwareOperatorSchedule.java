@@ -0,0 +1,255 @@
+/*
+ * CostAwareOperatorSchedule.java
+ *
+ * Copyright (c) 2002-2015 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.inference.operators;
+
+import dr.xml.Reportable;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * An operator schedule that, during an initial adaptation period, measures the wall-clock cost of each
+ * operator's steps and the squared jump distance they produce. It then chooses operators in proportion to
+ * their weight multiplied by a factor reflecting their jump distance per second, relative to the average
+ * under the original weights, bounded by minFactor and maxFactor. After the adaptation period the factors
+ * are frozen and the final selection weights are reported.
+ *
+ * The jump distance is the movement in parameter space, standardized by the spread of the values moved, for
+ * operators that report it (JumpDistanceOperator). For other operators the change in the log posterior is used
+ * instead. As these are not on the same scale
+ * each operator is compared with the average of the operators measured in the same way.
+ */
+public class CostAwareOperatorSchedule extends SimpleOperatorSchedule implements Reportable {
+
+    public CostAwareOperatorSchedule(int operatorUseThreshold, double operatorAcceptanceThreshold,
+                                     long adaptationLength, long updateEvery,
+                                     double minFactor, double maxFactor) {
+        super(operatorUseThreshold, operatorAcceptanceThreshold);
+
+        if (minFactor <= 0.0 || minFactor > 1.0 || maxFactor < 1.0) {
+            throw new IllegalArgumentException("The weight factor bounds must satisfy 0 < min <= 1 <= max");
+        }
+
+        this.adaptationLength = adaptationLength;
+        this.updateEvery = Math.max(1, updateEvery);
+        this.minFactor = minFactor;
+        this.maxFactor = maxFactor;
+    }
+
+    @Override
+    public boolean isCostAware() {
+        return !frozen;
+    }
+
+    @Override
+    public void recordStep(int index, long nanos, boolean accepted, double logPosteriorChange) {
+        if (frozen) {
+            return;
+        }
+
+        MCMCOperator operator = getOperator(index);
+        OperatorCost cost = getCost(operator);
+
+        double squaredJump = 0.0;
+        if (accepted) {
+            if (cost.jumpDistance) {
+                squaredJump = ((JumpDistanceOperator) operator).getSquaredJumpDistance();
+            } else {
+                squaredJump = logPosteriorChange * logPosteriorChange;
+            }
+            if (Double.isNaN(squaredJump) || Double.isInfinite(squaredJump)) {
+                // e.g. leaving an initial state of zero probability
+                squaredJump = 0.0;
+            }
+        }
+
+        cost.steps++;
+        cost.nanos += nanos;
+        cost.squaredJump += squaredJump;
+
+        steps++;
+        if (steps >= adaptationLength) {
+            updateFactors();
+            frozen = true;
+            Logger.getLogger("dr.inference").info("\nOperator weights after cost-aware adaptation:\n" + getReport());
+        } else if (steps % updateEvery == 0) {
+            updateFactors();
+        }
+    }
+
+    @Override
+    protected double getOperatorWeight(MCMCOperator operator) {
+        OperatorCost cost = costs.get(operator);
+        return operator.getWeight() * (cost != null ? cost.factor : 1.0);
+    }
+
+    /**
+     * @return the current multiplier of the operator's weight
+     */
+    public double getWeightFactor(MCMCOperator operator) {
+        OperatorCost cost = costs.get(operator);
+        return cost != null ? cost.factor : 1.0;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * @return the number of steps recorded during the adaptation period
+     */
+    public long getAdaptationCount() {
+        return steps;
+    }
+
+    /**
+     * @return the current multipliers of the operators' weights in the order of the operators
+     */
+    public double[] getWeightFactors() {
+        double[] factors = new double[getOperatorCount()];
+        for (int i = 0; i < factors.length; i++) {
+            factors[i] = getWeightFactor(getOperator(i));
+        }
+        return factors;
+    }
+
+    /**
+     * Restores the state of the adaptation (e.g., from a checkpoint). The factors are frozen if the
+     * adaptation period is over, otherwise adaptation continues from these factors.
+     *
+     * @param adaptationCount the number of steps recorded during the adaptation period
+     * @param factors         the multipliers of the operators' weights in the order of the operators
+     */
+    public void setAdaptationState(long adaptationCount, double[] factors) {
+        if (factors.length != getOperatorCount()) {
+            throw new IllegalArgumentException("Expected " + getOperatorCount() + " weight factors but got " +
+                    factors.length);
+        }
+        for (int i = 0; i < factors.length; i++) {
+            getCost(getOperator(i)).factor = factors[i];
+        }
+        steps = adaptationCount;
+        frozen = steps >= adaptationLength;
+        operatorsHasBeenUpdated();
+    }
+
+    private OperatorCost getCost(MCMCOperator operator) {
+        OperatorCost cost = costs.get(operator);
+        if (cost == null) {
+            cost = new OperatorCost(operator instanceof JumpDistanceOperator);
+            costs.put(operator, cost);
+        }
+        return cost;
+    }
+
+    private void updateFactors() {
+        updateFactors(true);
+        updateFactors(false);
+        operatorsHasBeenUpdated();
+    }
+
+    /**
+     * Updates the factors of the operators whose jump distance is (or is not) measured in parameter space.
+     */
+    private void updateFactors(boolean jumpDistance) {
+        // the jump distance per second of each operator and their average under the original weights
+        double totalWeight = 0.0;
+        double meanEfficiency = 0.0;
+        for (int i = 0; i < getOperatorCount(); i++) {
+            MCMCOperator operator = getOperator(i);
+            OperatorCost cost = costs.get(operator);
+            if (cost != null && cost.nanos > 0 && cost.jumpDistance == jumpDistance) {
+                totalWeight += operator.getWeight();
+                meanEfficiency += operator.getWeight() * cost.getEfficiency();
+            }
+        }
+
+        if (totalWeight == 0.0 || meanEfficiency == 0.0) {
+            return;
+        }
+        meanEfficiency /= totalWeight;
+
+        for (OperatorCost cost : costs.values()) {
+            if (cost.nanos > 0 && cost.jumpDistance == jumpDistance) {
+                double factor = cost.getEfficiency() / meanEfficiency;
+                cost.factor = Math.max(minFactor, Math.min(maxFactor, factor));
+            }
+        }
+    }
+
+    // **************************************************************
+    // Reportable IMPLEMENTATION
+    // **************************************************************
+
+    public String getReport() {
+        double totalWeight = 0.0;
+        for (int i = 0; i < getOperatorCount(); i++) {
+            totalWeight += getOperatorWeight(getOperator(i));
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-50s %10s %10s %12s %12s %10s\n", "Operator", "Weight", "Factor",
+                "Time/Op(us)", "Jump^2/s", "Pr(select)"));
+        for (int i = 0; i < getOperatorCount(); i++) {
+            MCMCOperator operator = getOperator(i);
+            OperatorCost cost = getCost(operator);
+            sb.append(String.format("%-50s %10.4g %10.4g %12.4g %12.4g %10.4f\n", operator.getOperatorName(),
+                    operator.getWeight(), cost.factor,
+                    cost.steps > 0 ? cost.nanos / (cost.steps * 1.0E3) : 0.0, cost.getEfficiency(),
+                    getOperatorWeight(operator) / totalWeight));
+        }
+        return sb.toString();
+    }
+
+    private static class OperatorCost {
+        OperatorCost(boolean jumpDistance) {
+            this.jumpDistance = jumpDistance;
+        }
+
+        // whether the jump distance is measured in parameter space rather than the log posterior
+        final boolean jumpDistance;
+
+        long steps = 0;
+        long nanos = 0;
+        double squaredJump = 0.0;
+        double factor = 1.0;
+
+        double getEfficiency() {
+            return nanos > 0 ? squaredJump / (nanos / 1.0E9) : 0.0;
+        }
+    }
+
+    private final Map<MCMCOperator, OperatorCost> costs = new IdentityHashMap<MCMCOperator, OperatorCost>();
+
+    private final long adaptationLength;
+    private final long updateEvery;
+    private final double minFactor;
+    private final double maxFactor;
+
+    private long steps = 0;
+    private boolean frozen = false;
+}
@@ -73,6 +73,24 @@ public interface OperatorSchedule extends Serializable {
      */
     long getMinimumAcceptAndRejectCount();
 
+    /**
+     * @return true if the chain should report the cost of each step with recordStep
+     */
+    default boolean isCostAware() {
+        return false;
+    }
+
+    /**
+     * Records a completed step of the chain.
+     * @param index the index of the operator that was used
+     * @param nanos the wall-clock time of the whole step
+     * @param accepted whether the move was accepted
+     * @param logPosteriorChange the change in the log posterior if the move was accepted
+     */
+    default void recordStep(int index, long nanos, boolean accepted, double logPosteriorChange) {
+        // ignored unless the schedule is cost aware
+    }
+
     enum OptimizationTransform {
 
         LOG("log") {
@@ -41,7 +41,7 @@ import java.util.List;
  * @author Andrew Rambaut
  * @version $Id: RandomWalkOperator.java,v 1.16 2005/06/14 10:40:34 rambaut Exp $
  */
-public class RandomWalkOperator extends AbstractAdaptableOperator {
+public class RandomWalkOperator extends AbstractAdaptableOperator implements JumpDistanceOperator {
 
     public enum BoundaryCondition {
         rejecting,
@@ -111,6 +111,8 @@ public class RandomWalkOperator extends AbstractAdaptableOperator {
      */
     public double doOperation() {
 
+        standardizedJump.reset();
+
         // a random dimension to perturb
         if (parameter.getDimension() <= 0) {
             throw new RuntimeException("Illegal Dimension");
@@ -140,6 +142,7 @@ public class RandomWalkOperator extends AbstractAdaptableOperator {
 
             // parameter takes new value scaled back into interval [lower, upper]
             parameter.setParameterValue(dim, (x2 * (upper - lower)) + lower);
+            recordJump(dim, oldValue);
             
             // HR is the ratio of Jacobians for the before and after values in interval [0,1]
             return Transform.LOGIT.getLogJacobian(x1) - Transform.LOGIT.getLogJacobian(x2);
@@ -152,6 +155,7 @@ public class RandomWalkOperator extends AbstractAdaptableOperator {
 
             // parameter takes new value tranlated back into interval [lower, +Inf]
             parameter.setParameterValue(dim, x2 + lower);
+            recordJump(dim, oldValue);
 
             // HR is the ratio of Jacobians for the before and after values
             return Transform.LOG.getLogJacobian(x1) - Transform.LOG.getLogJacobian(x2);
@@ -167,6 +171,7 @@ public class RandomWalkOperator extends AbstractAdaptableOperator {
             }
 
             parameter.setParameterValue(dim, newValue);
+            recordJump(dim, oldValue);
 
             if (parameter.check()) {
                 return 0.0;
@@ -250,6 +255,14 @@ public class RandomWalkOperator extends AbstractAdaptableOperator {
         return newValue;
     }
 
+    private void recordJump(int dim, double oldValue) {
+        standardizedJump.add(dim, oldValue, parameter.getParameterValue(dim));
+    }
+
+    public double getSquaredJumpDistance() {
+        return standardizedJump.getSquaredJump();
+    }
+
     //MCMCOperator INTERFACE
     public final String getOperatorName() {
         return RandomWalkOperatorParser.RANDOM_WALK_OPERATOR + "(" + parameter.getParameterName() + ")";
@@ -286,4 +299,5 @@ public class RandomWalkOperator extends AbstractAdaptableOperator {
     private List<Integer> updateMap;
     private int updateMapSize;
     private final BoundaryCondition boundaryCondition;
+    private final StandardizedJump standardizedJump = new StandardizedJump();
 }
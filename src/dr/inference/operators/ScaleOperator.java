@@ -43,7 +43,7 @@ import java.util.logging.Logger;
  * @author Andrew Rambaut
  * @version $Id: ScaleOperator.java,v 1.20 2005/06/14 10:40:34 rambaut Exp $
  */
-public class ScaleOperator extends AbstractAdaptableOperator {
+public class ScaleOperator extends AbstractAdaptableOperator implements JumpDistanceOperator {
     private final boolean REJECT_IF_OUT_OF_BOUNDS = true;
 
     private Parameter indicator;
@@ -92,6 +92,8 @@ public class ScaleOperator extends AbstractAdaptableOperator {
 
         double logq;
 
+        standardizedJump.reset();
+
         final Bounds<Double> bounds = variable.getBounds();
         final int dim = variable.getSize();
 
@@ -113,6 +115,7 @@ public class ScaleOperator extends AbstractAdaptableOperator {
                     throw new RuntimeException("proposed value greater than upper bound");
                 }
 
+                standardizedJump.add(i, variable.getValue(i), value);
                 variable.setValue(i, value);
 
             }
@@ -131,6 +134,7 @@ public class ScaleOperator extends AbstractAdaptableOperator {
             for (int i = 0; i < dim; i++) {
                 // For scale all we scale by the same factor (i.e., not relative to their individual
                 // origins).
+                standardizedJump.add(i, variable.getValue(i), variable.getValue(i) * scale);
                 variable.setValue(i, variable.getValue(i) * scale);
             }
 
@@ -214,6 +218,7 @@ public class ScaleOperator extends AbstractAdaptableOperator {
                 throw new RuntimeException("proposed value greater than upper bound: " + newValue + " (" + variable.getId() + ")");
             }
 
+            standardizedJump.add(index, oldValue, newValue);
             variable.setValue(index, newValue);
 
             // provides a hook for subclasses
@@ -223,6 +228,10 @@ public class ScaleOperator extends AbstractAdaptableOperator {
         return logq;
     }
 
+    public double getSquaredJumpDistance() {
+        return standardizedJump.getSquaredJump();
+    }
+
     /**
      * This method should be overridden by operators that need to do something just before the return of doOperation.
      *
@@ -269,4 +278,5 @@ public class ScaleOperator extends AbstractAdaptableOperator {
     private boolean scaleAllIndependently = false;
     private int degreesOfFreedom = 0;
     private double scaleFactor = 0.5;
+    private final StandardizedJump standardizedJump = new StandardizedJump();
 }
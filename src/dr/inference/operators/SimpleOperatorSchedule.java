@@ -81,13 +81,20 @@ public class SimpleOperatorSchedule implements OperatorSchedule, Loggable {
 	}
 
 	private double getWeight(int index) {
-		return operators.get(availableOperators.get(index)).getWeight();
+		return getOperatorWeight(operators.get(availableOperators.get(index)));
+	}
+
+	/**
+	 * @return the weight with which this operator is chosen, by default its own weight
+	 */
+	protected double getOperatorWeight(MCMCOperator operator) {
+		return operator.getWeight();
 	}
 
 	private double calculateTotalWeight() {
 		double totalWeight = 0.0;
 		for (int i : availableOperators) {
-			totalWeight += operators.get(i).getWeight();
+			totalWeight += getOperatorWeight(operators.get(i));
 		}
 		return totalWeight;
 	}
@@ -0,0 +1,88 @@
+/*
+ * StandardizedJump.java
+ *
+ * Copyright (c) 2002-2015 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.inference.operators;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates the squared jump of a proposal with the move in each dimension divided by the standard deviation
+ * of the values that dimension had when it was proposed from. Those values are states of the chain, so the
+ * jumps of operators on parameters of very different scales can be compared.
+ *
+ * @version $Id$
+ */
+public class StandardizedJump {
+
+    /**
+     * Starts a new proposal.
+     */
+    public void reset() {
+        squaredJump = 0.0;
+    }
+
+    /**
+     * Adds the move of one dimension to the jump of the current proposal. Nothing is added until the values
+     * of the dimension have varied.
+     *
+     * @param dim      the dimension moved
+     * @param oldValue the value before the proposal
+     * @param newValue the proposed value
+     */
+    public void add(int dim, double oldValue, double newValue) {
+        ensureDimension(dim + 1);
+
+        // Welford's updates
+        counts[dim]++;
+        final double delta = oldValue - means[dim];
+        means[dim] += delta / counts[dim];
+        sumSquares[dim] += delta * (oldValue - means[dim]);
+
+        if (counts[dim] > 1 && sumSquares[dim] > 0.0) {
+            final double jump = newValue - oldValue;
+            squaredJump += jump * jump / (sumSquares[dim] / (counts[dim] - 1));
+        }
+    }
+
+    /**
+     * @return the standardized squared jump of the current proposal
+     */
+    public double getSquaredJump() {
+        return squaredJump;
+    }
+
+    private void ensureDimension(int dimension) {
+        if (counts.length < dimension) {
+            counts = Arrays.copyOf(counts, dimension);
+            means = Arrays.copyOf(means, dimension);
+            sumSquares = Arrays.copyOf(sumSquares, dimension);
+        }
+    }
+
+    private long[] counts = new long[0];
+    private double[] means = new double[0];
+    private double[] sumSquares = new double[0];
+    private double squaredJump = 0.0;
+}
@@ -25,6 +25,7 @@
 
 package dr.inference.state;
 
+import dr.inference.loggers.AsynchronousLogWriter;
 import dr.inference.markovchain.MarkovChain;
 import dr.inference.markovchain.MarkovChainListener;
 import dr.inference.model.Model;
@@ -53,6 +54,9 @@ public class StateSaverChainListener implements MarkovChainListener {
 
             double lnL = markovChain.getCurrentScore();
 
+            // make sure the logs are complete up to the checkpointed state
+            AsynchronousLogWriter.flushAll();
+
             stateSaver.saveState(markovChain, state, lnL);
         }
     }
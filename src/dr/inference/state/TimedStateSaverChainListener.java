@@ -25,6 +25,7 @@
 
 package dr.inference.state;
 
+import dr.inference.loggers.AsynchronousLogWriter;
 import dr.inference.markovchain.MarkovChain;
 import dr.inference.model.Model;
 
@@ -41,6 +42,9 @@ public class TimedStateSaverChainListener extends StateSaverChainListener {
     public void currentState(long state, MarkovChain markovChain, Model currentModel) {
         if (getTimeInSeconds() >= endTime) {
             double lnL = markovChain.getCurrentScore();
+            // make sure the logs are complete up to the checkpointed state
+            AsynchronousLogWriter.flushAll();
+
             stateSaver.saveState(markovChain, state, lnL);
             markovChain.pleaseStop();
         }
@@ -0,0 +1,91 @@
+/*
+ * RuntimeMetricsLoggerParser.java
+ *
+ * Copyright (c) 2002-2015 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.inferencexml.loggers;
+
+import dr.inference.loggers.RuntimeMetricsLogger;
+import dr.util.FileHelpers;
+import dr.xml.*;
+
+import java.io.File;
+
+/**
+ * Parses a runtime metrics logger. Placed within the mcmc element it writes the metrics file,
+ * referenced from a log it adds the time spent in each category as columns.
+ */
+public class RuntimeMetricsLoggerParser extends AbstractXMLObjectParser {
+
+    public static final String RUNTIME_METRICS = "runtimeMetrics";
+    public static final String LOG_EVERY = LoggerParser.LOG_EVERY;
+    public static final String FORMAT = LoggerParser.FORMAT;
+
+    public String getParserName() {
+        return RUNTIME_METRICS;
+    }
+
+    public Object parseXMLObject(XMLObject xo) throws XMLParseException {
+
+        final File file = XMLParser.getLogFile(xo, FileHelpers.FILE_NAME);
+
+        // logEvery of zero only writes the metrics at the end
+        long logEvery = xo.getLongIntegerAttribute(LOG_EVERY, 0);
+
+        RuntimeMetricsLogger.Format format;
+        String formatName = xo.getAttribute(FORMAT, RuntimeMetricsLogger.Format.CSV.name());
+        try {
+            format = RuntimeMetricsLogger.Format.valueOf(formatName.toUpperCase());
+        } catch (IllegalArgumentException iae) {
+            throw new XMLParseException("Unknown format, " + formatName + ", for " + getParserName() +
+                    " element; expected csv or json");
+        }
+
+        return new RuntimeMetricsLogger(file, format, logEvery);
+    }
+
+    //************************************************************************
+    // AbstractXMLObjectParser implementation
+    //************************************************************************
+
+    public XMLSyntaxRule[] getSyntaxRules() {
+        return rules;
+    }
+
+    private final XMLSyntaxRule[] rules = {
+            new StringAttributeRule(FileHelpers.FILE_NAME,
+                    "The name of the file to write the metrics to"),
+            AttributeRule.newLongIntegerRule(LOG_EVERY, true),
+            new StringAttributeRule(FORMAT, "The format of the file, either csv (default) or json", true),
+            AttributeRule.newBooleanRule(LoggerParser.ALLOW_OVERWRITE_LOG, true)
+    };
+
+    public String getParserDescription() {
+        return "Records evaluation counts and timings of likelihoods, operators, models and thread pools " +
+                "and writes them periodically to a file";
+    }
+
+    public Class getReturnType() {
+        return RuntimeMetricsLogger.class;
+    }
+}
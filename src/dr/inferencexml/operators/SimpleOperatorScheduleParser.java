@@ -25,6 +25,7 @@
 
 package dr.inferencexml.operators;
 
+import dr.inference.operators.CostAwareOperatorSchedule;
 import dr.inference.operators.MCMCOperator;
 import dr.inference.operators.OperatorSchedule;
 import dr.inference.operators.SimpleOperatorSchedule;
@@ -44,6 +45,12 @@ public class SimpleOperatorScheduleParser extends AbstractXMLObjectParser {
     public static final String ACCEPTANCE_THRESHOLD = "minAcceptance";
     public static final String USE_THRESHOLD = "minUsage";
 
+    public static final String COST_AWARE = "costAware";
+    public static final String ADAPTATION_LENGTH = "adaptationLength";
+    public static final String UPDATE_EVERY = "updateEvery";
+    public static final String MIN_FACTOR = "minWeightFactor";
+    public static final String MAX_FACTOR = "maxWeightFactor";
+
     public String getParserName() {
         return OPERATOR_SCHEDULE;
     }
@@ -53,7 +60,24 @@ public class SimpleOperatorScheduleParser extends AbstractXMLObjectParser {
         int useThreshold = xo.getAttribute(USE_THRESHOLD, 1000);
         double acceptanceThreshold = xo.getAttribute(ACCEPTANCE_THRESHOLD, 0.0);
 
-        SimpleOperatorSchedule schedule = new SimpleOperatorSchedule(useThreshold, acceptanceThreshold);
+        SimpleOperatorSchedule schedule;
+        if (xo.getAttribute(COST_AWARE, false)) {
+            long adaptationLength = xo.getLongIntegerAttribute(ADAPTATION_LENGTH);
+            long updateEvery = xo.getLongIntegerAttribute(UPDATE_EVERY, Math.max(1, adaptationLength / 100));
+            double minFactor = xo.getAttribute(MIN_FACTOR, 0.2);
+            double maxFactor = xo.getAttribute(MAX_FACTOR, 5.0);
+            if (minFactor <= 0.0 || minFactor > 1.0 || maxFactor < 1.0) {
+                throw new XMLParseException("The " + MIN_FACTOR + " must be in (0, 1] and the " + MAX_FACTOR +
+                        " must be at least 1");
+            }
+
+            schedule = new CostAwareOperatorSchedule(useThreshold, acceptanceThreshold,
+                    adaptationLength, updateEvery, minFactor, maxFactor);
+            Logger.getLogger("dr.inference").info("  Operator weights adapted to cost over the first " +
+                    adaptationLength + " states, within factors of " + minFactor + " to " + maxFactor);
+        } else {
+            schedule = new SimpleOperatorSchedule(useThreshold, acceptanceThreshold);
+        }
 
         if (xo.hasAttribute(SEQUENTIAL)) {
             schedule.setSequential(xo.getBooleanAttribute(SEQUENTIAL));
@@ -98,7 +122,12 @@ public class SimpleOperatorScheduleParser extends AbstractXMLObjectParser {
             new ElementRule(MCMCOperator.class, 1, Integer.MAX_VALUE),
             AttributeRule.newStringRule(OPTIMIZATION_SCHEDULE, true),
             AttributeRule.newDoubleRule(ACCEPTANCE_THRESHOLD, true, "Acceptance rate below which an operator will be switched off"),
-            AttributeRule.newIntegerRule(USE_THRESHOLD, true, "Minimum number of usage before testing acceptance threshold")
+            AttributeRule.newIntegerRule(USE_THRESHOLD, true, "Minimum number of usage before testing acceptance threshold"),
+            AttributeRule.newBooleanRule(COST_AWARE, true, "Adapt the operator weights to their jump distance per second"),
+            AttributeRule.newLongIntegerRule(ADAPTATION_LENGTH, true, "Number of states over which the weights are adapted"),
+            AttributeRule.newLongIntegerRule(UPDATE_EVERY, true, "Number of states between weight updates"),
+            AttributeRule.newDoubleRule(MIN_FACTOR, true, "Smallest multiple of its weight an operator may be given"),
+            AttributeRule.newDoubleRule(MAX_FACTOR, true, "Largest multiple of its weight an operator may be given")
     };
 
     public String getParserDescription() {
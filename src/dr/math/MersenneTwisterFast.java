@@ -72,9 +72,11 @@ import java.io.Serializable;
  * <p/>
  * - added gamma RV method (Marc Suchard)
  * <p/>
- * This is now package private - it should be accessed using the instance in Random
+ * A generator is not thread-safe. Most code should draw from the shared instance through
+ * MathUtils; code that samples on several threads (e.g., MarkovJumpsBeagleTreeLikelihood)
+ * can own a generator for each thread or block of work, seeded from MathUtils.
  */
-class MersenneTwisterFast implements Serializable {
+public class MersenneTwisterFast implements Serializable {
 	/**
 	 *
 	 */
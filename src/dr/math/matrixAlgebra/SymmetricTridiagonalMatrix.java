@@ -0,0 +1,168 @@
+/*
+ * SymmetricTridiagonalMatrix.java
+ *
+ * Copyright (c) 2002-2023 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.math.matrixAlgebra;
+
+/**
+ * A symmetric tridiagonal matrix held in two primitive arrays, with a Cholesky factorization
+ * A = U^T U that is computed into buffers of its own. Nothing is allocated after construction
+ * so the same matrix can be filled, factored and solved with at every step of an iterative method.
+ */
+public class SymmetricTridiagonalMatrix {
+
+    public SymmetricTridiagonalMatrix(int dimension) {
+        this.dimension = dimension;
+        diagonal = new double[dimension];
+        offDiagonal = new double[Math.max(dimension - 1, 0)];
+        factorDiagonal = new double[dimension];
+        factorOffDiagonal = new double[Math.max(dimension - 1, 0)];
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * @return the diagonal which may be changed in place
+     */
+    public double[] getDiagonal() {
+        return diagonal;
+    }
+
+    /**
+     * @return the off-diagonal (element i is A[i][i+1]) which may be changed in place
+     */
+    public double[] getOffDiagonal() {
+        return offDiagonal;
+    }
+
+    public void set(SymmetricTridiagonalMatrix matrix) {
+        set(matrix.diagonal, matrix.offDiagonal);
+    }
+
+    public void set(double[] diagonal, double[] offDiagonal) {
+        System.arraycopy(diagonal, 0, this.diagonal, 0, dimension);
+        System.arraycopy(offDiagonal, 0, this.offDiagonal, 0, this.offDiagonal.length);
+    }
+
+    /**
+     * Sets this matrix to precision * (lambda * W + (1 - lambda) * I) for a weight matrix W
+     */
+    public void setScaled(double[] weightDiagonal, double[] weightOffDiagonal, double precision, double lambda) {
+        if (lambda == 1) {
+            for (int i = 0; i < dimension; i++) {
+                diagonal[i] = weightDiagonal[i] * precision;
+            }
+            for (int i = 0; i < offDiagonal.length; i++) {
+                offDiagonal[i] = weightOffDiagonal[i] * precision;
+            }
+        } else {
+            for (int i = 0; i < dimension; i++) {
+                diagonal[i] = precision * (1 - lambda + lambda * weightDiagonal[i]);
+            }
+            for (int i = 0; i < offDiagonal.length; i++) {
+                offDiagonal[i] = weightOffDiagonal[i] * precision * lambda;
+            }
+        }
+    }
+
+    /**
+     * result = A x (result must not be x)
+     */
+    public void multiply(double[] x, double[] result) {
+        if (dimension == 1) {
+            result[0] = diagonal[0] * x[0];
+            return;
+        }
+        result[0] = diagonal[0] * x[0] + offDiagonal[0] * x[1];
+        for (int i = 1; i < dimension - 1; i++) {
+            result[i] = offDiagonal[i - 1] * x[i - 1] + diagonal[i] * x[i] + offDiagonal[i] * x[i + 1];
+        }
+        int last = dimension - 1;
+        result[last] = offDiagonal[last - 1] * x[last - 1] + diagonal[last] * x[last];
+    }
+
+    /**
+     * Computes the upper bidiagonal Cholesky factor U with A = U^T U
+     *
+     * @return false if the matrix is not positive definite
+     */
+    public boolean factor() {
+        double pivot = diagonal[0];
+        for (int i = 0; ; i++) {
+            if (!(pivot > 0.0)) {
+                return false;
+            }
+            factorDiagonal[i] = Math.sqrt(pivot);
+            if (i == dimension - 1) {
+                return true;
+            }
+            factorOffDiagonal[i] = offDiagonal[i] / factorDiagonal[i];
+            pivot = diagonal[i + 1] - factorOffDiagonal[i] * factorOffDiagonal[i];
+        }
+    }
+
+    /**
+     * @return the diagonal of the Cholesky factor computed by the last call to factor()
+     */
+    public double[] getFactorDiagonal() {
+        return factorDiagonal;
+    }
+
+    /**
+     * Solves U^T x = b with the Cholesky factor (x may be b)
+     */
+    public void solveFactorTranspose(double[] b, double[] x) {
+        x[0] = b[0] / factorDiagonal[0];
+        for (int i = 1; i < dimension; i++) {
+            x[i] = (b[i] - factorOffDiagonal[i - 1] * x[i - 1]) / factorDiagonal[i];
+        }
+    }
+
+    /**
+     * Solves U x = b with the Cholesky factor (x may be b)
+     */
+    public void solveFactor(double[] b, double[] x) {
+        int last = dimension - 1;
+        x[last] = b[last] / factorDiagonal[last];
+        for (int i = last - 1; i >= 0; i--) {
+            x[i] = (b[i] - factorOffDiagonal[i] * x[i + 1]) / factorDiagonal[i];
+        }
+    }
+
+    /**
+     * Solves A x = b with the Cholesky factor (x may be b)
+     */
+    public void solve(double[] b, double[] x) {
+        solveFactorTranspose(b, x);
+        solveFactor(x, x);
+    }
+
+    private final int dimension;
+    private final double[] diagonal;
+    private final double[] offDiagonal;
+    private final double[] factorDiagonal;
+    private final double[] factorOffDiagonal;
+}
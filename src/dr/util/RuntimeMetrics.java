@@ -0,0 +1,290 @@
+/*
+ * RuntimeMetrics.java
+ *
+ * Copyright (c) 2002-2015 Alexei Drummond, Andrew Rambaut and Marc Suchard
+ *
+ * This file is part of BEAST.
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership and licensing.
+ *
+ * BEAST is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ *  BEAST is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with BEAST; if not, write to the
+ * Free Software Foundation, Inc., 51 Franklin St, Fifth Floor,
+ * Boston, MA  02110-1301  USA
+ */
+
+package dr.util;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A registry of timing metrics that can be switched on at runtime. While it is switched off the
+ * instrumented code pays only for a single flag check. It can be enabled from the XML (see
+ * RuntimeMetricsLogger) or for any run with -Dbeast.metrics=true.
+ *
+ * Metrics are keyed by the component that owns them (a likelihood, operator, model or thread pool)
+ * so that looking one up does not need its name.
+ */
+public class RuntimeMetrics {
+
+    public static final String METRICS_PROPERTY = "beast.metrics";
+
+    public enum Category {
+        LIKELIHOOD("likelihood"),
+        OPERATOR_PROPOSE("propose"),
+        OPERATOR_EVALUATE("evaluate"),
+        OPERATOR_ACCEPT("accept"),
+        OPERATOR_REJECT("reject"),
+        MODEL_STORE("store"),
+        MODEL_RESTORE("restore"),
+        THREAD_POOL("threadPool");
+
+        Category(String name) {
+            this.name = name;
+        }
+
+        public String toString() {
+            return name;
+        }
+
+        private final String name;
+    }
+
+    private static volatile boolean enabled = Boolean.getBoolean(METRICS_PROPERTY);
+
+    private static final Map<Category, ConcurrentHashMap<Object, Metric>> metrics;
+
+    static {
+        metrics = new EnumMap<Category, ConcurrentHashMap<Object, Metric>>(Category.class);
+        for (Category category : Category.values()) {
+            metrics.put(category, new ConcurrentHashMap<Object, Metric>());
+        }
+    }
+
+    private RuntimeMetrics() {
+        // static registry
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        RuntimeMetrics.enabled = enabled;
+    }
+
+    /**
+     * @return the metric for this owner, creating it (and naming it after the owner's id) if necessary
+     */
+    public static Metric getMetric(Category category, Object owner) {
+        return getMetric(category, owner, RuntimeMetrics::getName);
+    }
+
+    public static Metric getMetric(Category category, Object owner, Function<Object, String> namer) {
+        ConcurrentHashMap<Object, Metric> map = metrics.get(category);
+        Metric metric = map.get(owner);
+        if (metric == null) {
+            metric = map.computeIfAbsent(owner, key -> new Metric(category, namer.apply(key)));
+        }
+        return metric;
+    }
+
+    /**
+     * Records a single timed event if metrics are switched on.
+     */
+    public static void record(Category category, Object owner, long nanos) {
+        if (enabled) {
+            getMetric(category, owner).record(nanos);
+        }
+    }
+
+    /**
+     * Records one parallel section of a thread pool if metrics are switched on.
+     * @param wallNanos the elapsed time of the whole section
+     * @param busyNanos the time summed over all the tasks in the section
+     * @param threads the number of threads available to the section
+     */
+    public static void recordPool(Object pool, long wallNanos, long busyNanos, int threads) {
+        if (enabled) {
+            getMetric(Category.THREAD_POOL, pool).recordPool(wallNanos, busyNanos, threads);
+        }
+    }
+
+    /**
+     * @return all the metrics in a category, sorted by decreasing total time
+     */
+    public static List<Metric> getMetrics(Category category) {
+        List<Metric> list = new ArrayList<Metric>(metrics.get(category).values());
+        list.sort((m1, m2) -> Long.compare(m2.getTotalNanos(), m1.getTotalNanos()));
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Prints the most expensive components in each category that has any metrics.
+     */
+    public static void printReport(PrintStream out, int maxPerCategory) {
+        out.println();
+        out.println("Runtime metrics (most expensive " + maxPerCategory + " per category):");
+        for (Category category : Category.values()) {
+            List<Metric> list = getMetrics(category);
+            if (list.isEmpty()) {
+                continue;
+            }
+            out.println(String.format(Locale.US, "  %-12s %-40s %12s %12s %12s %12s%s", category, "name",
+                    "count", "seconds", "mean(us)", "p99(us)", category == Category.THREAD_POOL ? "  utilisation" : ""));
+            for (Metric metric : list.subList(0, Math.min(maxPerCategory, list.size()))) {
+                out.println(String.format(Locale.US, "  %-12s %-40s %12d %12.3f %12.2f %12.1f%s", "",
+                        metric.getName(), metric.getCount(), metric.getTotalSeconds(), metric.getMeanMicros(),
+                        metric.getQuantileMicros(0.99), category == Category.THREAD_POOL ?
+                                String.format(Locale.US, "  %11.3f", metric.getUtilisation()) : ""));
+            }
+        }
+        out.println();
+    }
+
+    public static void reset() {
+        for (ConcurrentHashMap<Object, Metric> map : metrics.values()) {
+            map.clear();
+        }
+    }
+
+    private static String getName(Object owner) {
+        if (owner instanceof Identifiable) {
+            String id = ((Identifiable) owner).getId();
+            if (id != null) {
+                return id;
+            }
+        }
+        return owner.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(owner));
+    }
+
+    /**
+     * A count, total time and power-of-two latency histogram for one component. Updates are thread safe.
+     */
+    public static class Metric {
+
+        public static final int HISTOGRAM_BINS = 64;
+
+        Metric(Category category, String name) {
+            this.category = category;
+            this.name = name;
+        }
+
+        public void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            histogram.incrementAndGet(getBin(nanos));
+        }
+
+        void recordPool(long wallNanos, long busyNanos, int threads) {
+            record(wallNanos);
+            this.busyNanos.add(busyNanos);
+            this.capacityNanos.add(wallNanos * threads);
+        }
+
+        public Category getCategory() {
+            return category;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public double getTotalSeconds() {
+            return getTotalNanos() / 1.0E9;
+        }
+
+        public double getMeanMicros() {
+            long n = getCount();
+            return n > 0 ? getTotalNanos() / (n * 1.0E3) : 0.0;
+        }
+
+        /**
+         * @return an upper bound on the given quantile of the latency, from the histogram bin that contains it
+         */
+        public double getQuantileMicros(double quantile) {
+            long n = 0;
+            long[] bins = getHistogram();
+            for (long bin : bins) {
+                n += bin;
+            }
+            if (n == 0) {
+                return 0.0;
+            }
+            long target = (long) Math.ceil(quantile * n);
+            long cumulative = 0;
+            for (int i = 0; i < bins.length; i++) {
+                cumulative += bins[i];
+                if (cumulative >= Math.max(target, 1)) {
+                    return getBinUpperNanos(i) / 1.0E3;
+                }
+            }
+            return getBinUpperNanos(bins.length - 1) / 1.0E3;
+        }
+
+        /**
+         * @return the counts of events whose latency in nanoseconds is less than 2^i (and at least 2^(i-1))
+         */
+        public long[] getHistogram() {
+            long[] bins = new long[HISTOGRAM_BINS];
+            for (int i = 0; i < bins.length; i++) {
+                bins[i] = histogram.get(i);
+            }
+            return bins;
+        }
+
+        /**
+         * @return the fraction of the available thread time that was spent in tasks, or NaN if this
+         * is not a thread pool metric
+         */
+        public double getUtilisation() {
+            long capacity = capacityNanos.sum();
+            return capacity > 0 ? (double) busyNanos.sum() / capacity : Double.NaN;
+        }
+
+        private static int getBin(long nanos) {
+            return Math.min(64 - Long.numberOfLeadingZeros(Math.max(nanos, 0)), HISTOGRAM_BINS - 1);
+        }
+
+        private static double getBinUpperNanos(int bin) {
+            return Math.pow(2.0, bin);
+        }
+
+        private final Category category;
+        private final String name;
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private final LongAdder capacityNanos = new LongAdder();
+        private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BINS);
+    }
+}
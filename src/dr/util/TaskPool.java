@@ -68,10 +68,17 @@ public class TaskPool {
 
         final ExecutorService pool;
 
+        // the threads only ever run work the caller waits for so they needn't keep the JVM alive
+        final ThreadFactory factory = runnable -> {
+            Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        };
+
         if (threadCount > 1) {
-            pool = Executors.newFixedThreadPool(threadCount);
+            pool = Executors.newFixedThreadPool(threadCount, factory);
         } else if (threadCount < 0) {
-            pool = Executors.newCachedThreadPool();
+            pool = Executors.newCachedThreadPool(factory);
         } else {
             pool = null;
         }
@@ -102,23 +109,39 @@ public class TaskPool {
                 pool = setupParallelServices(threadCount);
             }
 
+            final long[] busyTimes = RuntimeMetrics.isEnabled() ? new long[indices.size()] : null;
+
             List<Callable<E>> calls = new ArrayList<>();
 
             for (final TaskIndices indexSet : indices) {
-                calls.add(() -> map.map(indexSet.start, indexSet.stop, indexSet.task));
+                if (busyTimes != null) {
+                    calls.add(() -> {
+                        long time = System.nanoTime();
+                        E value = map.map(indexSet.start, indexSet.stop, indexSet.task);
+                        busyTimes[indexSet.task] = System.nanoTime() - time;
+                        return value;
+                    });
+                } else {
+                    calls.add(() -> map.map(indexSet.start, indexSet.stop, indexSet.task));
+                }
             }
 
             try {
 
+                final long time = System.nanoTime();
                 List<Future<E>> futures = pool.invokeAll(calls);
+                recordUtilisation(busyTimes, time);
 
                 result = futures.get(0).get();
                 for (int i = 1; i < futures.size(); ++i) {
                     result = reduce.apply(result, futures.get(i).get());
                 }
 
-            } catch (InterruptedException | ExecutionException exception) {
-                exception.printStackTrace();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the task pool", exception);
+            } catch (ExecutionException exception) {
+                throw new RuntimeException(exception.getCause());
             }
 
         }
@@ -142,21 +165,56 @@ public class TaskPool {
 
             List<Callable<Object>> calls = new ArrayList<>();
 
+            final long[] busyTimes = RuntimeMetrics.isEnabled() ? new long[indices.size()] : null;
+
             for (final TaskIndices indexSet : indices) {
 
                 calls.add(Executors.callable(() -> {
+                            final long time = busyTimes != null ? System.nanoTime() : 0L;
                             for (int task = indexSet.start; task < indexSet.stop; ++task) {
                                 runnable.execute(task, indexSet.task);
                             }
+                            if (busyTimes != null) {
+                                busyTimes[indexSet.task] = System.nanoTime() - time;
+                            }
                         }
                 ));
             }
 
             try {
-                pool.invokeAll(calls);
+                final long time = System.nanoTime();
+                List<Future<Object>> futures = pool.invokeAll(calls);
+                recordUtilisation(busyTimes, time);
+
+                for (Future<Object> future : futures) {
+                    future.get();
+                }
             } catch (InterruptedException exception) {
-                exception.printStackTrace();
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the task pool", exception);
+            } catch (ExecutionException exception) {
+                throw new RuntimeException(exception.getCause());
+            }
+        }
+    }
+
+    /**
+     * Stops the threads of the pool (if any have been started). The pool starts new threads if it is used again.
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    private void recordUtilisation(long[] busyTimes, long startTime) {
+        if (busyTimes != null) {
+            long busyTime = 0;
+            for (long time : busyTimes) {
+                busyTime += time;
             }
+            RuntimeMetrics.recordPool(this, System.nanoTime() - startTime, busyTime, indices.size());
         }
     }
 }
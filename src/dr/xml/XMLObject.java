@@ -30,6 +30,7 @@ import org.w3c.dom.NamedNodeMap;
 
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.StringTokenizer;
 import java.util.Vector;
@@ -520,6 +521,19 @@ public class XMLObject {
         } else throw new IllegalArgumentException();
     }
 
+    /**
+     * Removes the text children once they have been parsed into the native object
+     * so that large elements (e.g., sequences) don't hold on to their raw text.
+     */
+    void releaseText() {
+        Iterator<Object> iterator = children.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() instanceof String) {
+                iterator.remove();
+            }
+        }
+    }
+
     /**
      * @return the ith child of this XMLObject, without processing.
      */
@@ -32,9 +32,13 @@ import dr.inference.model.Parameter;
 import dr.inferencexml.loggers.LoggerParser;
 import dr.util.*;
 import org.w3c.dom.*;
+import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
 import org.xml.sax.helpers.DefaultHandler;
 
 import java.io.*;
@@ -46,6 +50,9 @@ public class XMLParser {
     public static final String IDREF = "idref";
     public static final String CONCURRENT = "concurrent";
     public static final String VERSION = "version";
+    public static final String STREAMING_PROPERTY = "beast.xml.streaming";
+
+    private static final Set<String> RELEASE_TEXT_ELEMENTS = new HashSet<String>(Arrays.asList("sequence", "newick"));
 
     private Vector<Thread> threads = new Vector<Thread>();
     protected boolean strictXML;
@@ -84,24 +91,103 @@ public class XMLParser {
                     replaced = true;
                 }
             }
+            DeferredParser oldDeferred = deferredParserStore.get(parserName);
+            if (oldDeferred != null) {
+                if (!canReplace) {
+                    throw new IllegalArgumentException("New parser (" + parser.getParserName()
+                            + ") in {" + parser.getReturnType() + "} cannot replace existing parser ("
+                            + oldDeferred.getSource() + ")");
+                } else {
+                    replaced = true;
+                }
+                deferredParserStore.remove(parserName);
+            }
             parserStore.put(parserName, parser);
         }
 
         return replaced;
     }
 
+    /**
+     * Registers a parser that will only be instantiated when one of its element names is
+     * first encountered. The replacement rules are the same as for addXMLObjectParser.
+     *
+     * @param deferred   the deferred parser
+     * @param canReplace can this parser replace an existing one with the same name
+     * @return true if an existing parser was replaced
+     */
+    public boolean addDeferredXMLObjectParser(DeferredParser deferred, boolean canReplace) {
+
+        boolean replaced = false;
+        String[] parserNames = deferred.getParserNames();
+
+        if (!canReplace) {
+            for (String parserName : parserNames) {
+                XMLObjectParser oldParser = parserStore.get(parserName);
+                DeferredParser oldDeferred = deferredParserStore.get(parserName);
+                if (oldParser != null || oldDeferred != null) {
+                    throw new IllegalArgumentException("New parser (" + deferred.getSource()
+                            + ") cannot replace existing parser ("
+                            + (oldParser != null ? oldParser.getParserName() : oldDeferred.getSource()) + ")");
+                }
+            }
+        }
+
+        for (String parserName : parserNames) {
+            if (parserStore.remove(parserName) != null || deferredParserStore.containsKey(parserName)) {
+                replaced = true;
+            }
+            deferredParserStore.put(parserName, deferred);
+        }
+
+        return replaced;
+    }
+
     public Iterator getParserNames() {
+        loadDeferredParsers();
         return parserStore.keySet().iterator();
     }
 
     public XMLObjectParser getParser(String name) {
-        return parserStore.get(name);
+        XMLObjectParser parser = parserStore.get(name);
+        if (parser == null && deferredParserStore.containsKey(name)) {
+            parser = loadDeferredParser(deferredParserStore.get(name));
+        }
+        return parser;
     }
 
     public Iterator getParsers() {
+        loadDeferredParsers();
         return parserStore.values().iterator();
     }
 
+    private void loadDeferredParsers() {
+        while (!deferredParserStore.isEmpty()) {
+            loadDeferredParser(deferredParserStore.values().iterator().next());
+        }
+    }
+
+    private XMLObjectParser loadDeferredParser(DeferredParser deferred) {
+        XMLObjectParser parser = null;
+        try {
+            parser = deferred.load();
+        } catch (Exception e) {
+            System.err.println("\nFailed to load parser: " + e.getMessage());
+            System.err.println("line = " + deferred.getSource() + "\n");
+        }
+
+        // only bind the names that this deferred parser still owns
+        for (String parserName : deferred.getParserNames()) {
+            if (deferredParserStore.get(parserName) == deferred) {
+                deferredParserStore.remove(parserName);
+                if (parser != null) {
+                    parserStore.put(parserName, parser);
+                }
+            }
+        }
+        return parser;
+    }
+
     public Iterator getThreads() {
         return threads.iterator();
     }
@@ -133,6 +219,11 @@ public class XMLParser {
             javax.xml.parsers.ParserConfigurationException {
 
         InputSource in = new InputSource(reader);
+
+        if (isStreaming()) {
+            return new StreamingConverter(target, false).parse(in, false);
+        }
+
         javax.xml.parsers.DocumentBuilderFactory documentBuilderFactory = javax.xml.parsers.DocumentBuilderFactory.newInstance();
 
         javax.xml.parsers.DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
@@ -156,6 +247,12 @@ public class XMLParser {
             javax.xml.parsers.ParserConfigurationException {
 
         InputSource in = new InputSource(reader);
+
+        if (isStreaming()) {
+            new StreamingConverter(null, run).parse(in, true);
+            return objectStore;
+        }
+
         javax.xml.parsers.DocumentBuilderFactory documentBuilderFactory = javax.xml.parsers.DocumentBuilderFactory.newInstance();
 
         javax.xml.parsers.DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
@@ -164,13 +261,7 @@ public class XMLParser {
 
         Element e = document.getDocumentElement();
         if (e.getTagName().equals("beast")) {
-            // If the 'version' is attribute is present then check it is not an more recent version...
-            if (e.hasAttribute(VERSION)) {
-                String xmlVersion = e.getAttribute(VERSION);
-                if (version != null && Version.Utils.isMoreRecent(xmlVersion, version.getVersion())) {
-                   throw new XMLParseException("The version of BEAUti that generated this XML (" + xmlVersion + ") is more recent than the version of BEAST running it (" + version.getVersion() + "). This may be incompatible and cause unpredictable errors.");
-                }
-            }
+            checkVersion(e);
 
             concurrent = false;
             root = (XMLObject) convert(e, null, null, run, true);
@@ -182,6 +273,23 @@ public class XMLParser {
         return objectStore;
     }
 
+    /**
+     * @return true if the XML should be converted as it is read rather than from a complete DOM
+     */
+    private static boolean isStreaming() {
+        return Boolean.parseBoolean(System.getProperty(STREAMING_PROPERTY));
+    }
+
+    private void checkVersion(Element e) throws XMLParseException {
+        // If the 'version' is attribute is present then check it is not an more recent version...
+        if (e.hasAttribute(VERSION)) {
+            String xmlVersion = e.getAttribute(VERSION);
+            if (version != null && Version.Utils.isMoreRecent(xmlVersion, version.getVersion())) {
+               throw new XMLParseException("The version of BEAUti that generated this XML (" + xmlVersion + ") is more recent than the version of BEAST running it (" + version.getVersion() + "). This may be incompatible and cause unpredictable errors.");
+            }
+        }
+    }
+
     private class MyErrorHandler extends DefaultHandler {
         public void warning(SAXParseException e) throws SAXException {
             System.out.println("Warning: ");
@@ -211,76 +319,326 @@ public class XMLParser {
         return root;
     }
 
-    private Object convert(Element e, Class target, XMLObject parent, boolean run, boolean doParse) throws XMLParseException {
+    /**
+     * Converts the document as it is read by a SAX parser so that no DOM of the whole file is built.
+     * Each element is given a childless DOM element holding its name and attributes and is parsed
+     * as soon as its end tag is read, exactly as the DOM based convert would do. The content of
+     * repeat elements is recorded and replayed.
+     */
+    private class StreamingConverter extends DefaultHandler implements LexicalHandler {
 
-        int index = -1;
+        StreamingConverter(Class target, boolean run) {
+            this.target = target;
+            this.run = run;
+        }
 
-        if (e.hasAttribute(IDREF)) {
+        /**
+         * @param in           the XML source
+         * @param fullParse    whether the whole document is being parsed (rather than searched for a target)
+         * @return the target object if there is one
+         */
+        Object parse(InputSource in, boolean fullParse) throws IOException, SAXException,
+                XMLParseException, javax.xml.parsers.ParserConfigurationException {
+
+            javax.xml.parsers.DocumentBuilderFactory documentBuilderFactory = javax.xml.parsers.DocumentBuilderFactory.newInstance();
+            document = documentBuilderFactory.newDocumentBuilder().newDocument();
+
+            javax.xml.parsers.SAXParserFactory saxParserFactory = javax.xml.parsers.SAXParserFactory.newInstance();
+            XMLReader xmlReader = saxParserFactory.newSAXParser().getXMLReader();
+            xmlReader.setContentHandler(this);
+            xmlReader.setProperty("http://xml.org/sax/properties/lexical-handler", this);
+            if (fullParse) {
+                xmlReader.setErrorHandler(new MyErrorHandler());
+            }
+            checkVersion = fullParse;
 
-            String idref = e.getAttribute(IDREF);
+            try {
+                xmlReader.parse(in);
+            } catch (TargetFoundException tfe) {
+                return tfe.object;
+            } catch (ConversionException ce) {
+                throw ce.xpe;
+            }
+            return null;
+        }
 
-            if (e.hasAttribute("index")) {
-                index = Integer.parseInt(e.getAttribute("index"));
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            try {
+                handleStart(qName, attributes);
+            } catch (XMLParseException xpe) {
+                throw new ConversionException(xpe);
             }
-            if ((e.getAttributes().getLength() > 1 || e.getChildNodes().getLength() > 1) && index == -1) {
-                throw new XMLParseException("Object with idref=" + idref + " must not have other content or attributes (or perhaps it was not intended to be a reference?).");
+        }
+
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            try {
+                handleEnd(qName);
+            } catch (XMLParseException xpe) {
+                throw new ConversionException(xpe);
             }
+        }
 
+        public void characters(char[] ch, int start, int length) {
+            handleText(new String(ch, start, length));
+        }
 
-            XMLObject restoredXMLObject = objectStore.get(idref);
-            if (index != -1) {
+        public void comment(char[] ch, int start, int length) {
+            handleComment();
+        }
 
-                if (restoredXMLObject.getNativeObject() instanceof List) {
+        public void startDTD(String name, String publicId, String systemId) { }
 
-                    restoredXMLObject = new XMLObject(restoredXMLObject, index);
-                } else {
-                    throw new XMLParseException("Trying to get indexed object from non-list");
-                }
+        public void endDTD() { }
+
+        public void startEntity(String name) { }
+
+        public void endEntity(String name) { }
+
+        public void startCDATA() { }
+
+        public void endCDATA() { }
+
+        private void handleStart(String tag, Attributes attributes) throws XMLParseException, SAXException {
+            if (recording != null) {
+                recording.add(new Event(Event.START, tag, new AttributesImpl(attributes)));
+                recordingDepth++;
+            } else {
+                start(tag, attributes);
+            }
+        }
+
+        private void handleEnd(String tag) throws XMLParseException, SAXException {
+            if (recording != null && recordingDepth > 0) {
+                recording.add(new Event(Event.END, tag, null));
+                recordingDepth--;
+            } else {
+                end();
             }
+        }
 
-            if (restoredXMLObject == null) {
-                throw new XMLParseException("Object with idref=" + idref + " has not been previously declared.");
+        private void handleText(String value) {
+            if (recording != null) {
+                recording.add(new Event(Event.TEXT, value, null));
+            } else {
+                text.append(value);
             }
+        }
 
-            if (restoredXMLObject.getNativeObject() == null) {
-                throw new XMLParseException("Object with idref=" + idref + " has not been parsed.");
+        private void handleComment() {
+            if (recording != null) {
+                recording.add(new Event(Event.COMMENT, null, null));
+            } else {
+                // comments split the text into separate nodes in the DOM
+                flushText();
+                if (!stack.isEmpty()) stack.get(stack.size() - 1).childNodeCount++;
             }
+        }
 
-            XMLObjectParser parser = parserStore.get(e.getTagName());
-            boolean classMatch = parser != null && parser.getReturnType().isAssignableFrom(restoredXMLObject.getNativeObject().getClass());
+        private void start(String tag, Attributes attributes) throws XMLParseException, SAXException {
+            flushText();
 
-            if (!e.getTagName().equals(restoredXMLObject.getName()) && !classMatch) {
-                String msg = "Element named " + e.getTagName() + " with idref=" + idref +
-                        " does not match stored object with same id and tag name " + restoredXMLObject.getName();
-                if (strictXML) {
-                    throw new XMLParseException(msg);
-                } else if (parserWarnings) {
-//                    System.err.println("WARNING: " + msg);
-                    java.util.logging.Logger.getLogger("dr.xml").warning(msg);
+            Element e = document.createElement(tag);
+            for (int i = 0; i < attributes.getLength(); i++) {
+                e.setAttribute(attributes.getQName(i), attributes.getValue(i));
+            }
+
+            Frame parent = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+            Frame frame = new Frame(e);
+
+            if (parent == null) {
+                if (!tag.equals("beast")) {
+                    throw new dr.xml.XMLParseException("Unknown root document element, " + tag);
+                }
+                if (checkVersion) {
+                    checkVersion(e);
                 }
+                concurrent = false;
+            } else {
+                parent.childNodeCount++;
+                if (parent.ignored || parent.xo == null) {
+                    // the content of references is not converted
+                    frame.ignored = true;
+                    stack.add(frame);
+                    return;
+                }
+                if (verbose) System.out.println("Parsing " + tag);
             }
 
-            if (verbose) System.out.println("  Restoring idref=" + idref);
+            if (e.hasAttribute(IDREF)) {
+                stack.add(frame);
+                return;
+            }
 
+            // don't parse elements that may be legal here with global parsers
+            final boolean doParse = parent == null || parent.parser == null || !parent.parser.isAllowed(tag);
 
-            return new Reference(restoredXMLObject);
+            frame.repeats = startConversion(e);
+            frame.xo = new XMLObject(e, parent == null ? null : parent.xo);
+            frame.parser = doParse ? getParser(tag) : null;
+            stack.add(frame);
 
-        } else {
-            int repeats = 1;
-            if (e.getTagName().equals(CONCURRENT)) {
-                if (concurrent) throw new XMLParseException("Nested concurrent elements not allowed.");
-                concurrent = true;
+            if (frame.repeats != 1) {
+                // the content is recorded and converted when the end is read, so a count of zero skips it
+                recording = new ArrayList<Event>();
+                recordingDepth = 0;
+            }
+        }
+
+        private void end() throws XMLParseException, SAXException {
+            Frame frame = stack.get(stack.size() - 1);
+
+            if (recording != null) {
+                // the end of a repeat element so convert its content the required number of times
+                List<Event> events = recording;
+                recording = null;
+                for (int k = 0; k < frame.repeats; k++) {
+                    for (Event event : events) {
+                        switch (event.type) {
+                            case Event.START:
+                                handleStart(event.value, event.attributes);
+                                break;
+                            case Event.END:
+                                handleEnd(event.value);
+                                break;
+                            case Event.TEXT:
+                                handleText(event.value);
+                                break;
+                            case Event.COMMENT:
+                                handleComment();
+                                break;
+                        }
+                    }
+                }
+                if (frame.repeats > 1) repeatDepth--;
+            }
+
+            flushText();
+            stack.remove(stack.size() - 1);
+
+            if (frame.ignored) {
+                return;
+            }
+
+            Object result;
+            if (frame.xo == null) {
+                result = restoreReference(frame.element, frame.childNodeCount);
+            } else {
+                result = finishConversion(frame.element, frame.xo, frame.parser, run);
+            }
+
+            if (stack.isEmpty()) {
+                root = (XMLObject) result;
+            } else {
+                stack.get(stack.size() - 1).xo.addChild(result);
+
+                if (target != null && result instanceof XMLObject) {
+                    Object obj = ((XMLObject) result).getNativeObject();
+                    if (obj != null && target.isInstance(obj)) {
+                        throw new TargetFoundException(obj);
+                    }
+                }
+            }
+        }
 
-                threads = new Vector<Thread>();
-            } else if (e.getTagName().equals("repeat")) {
-                repeats = Integer.parseInt(e.getAttribute("count"));
+        private void flushText() {
+            if (text.length() > 0) {
+                if (!stack.isEmpty()) {
+                    Frame frame = stack.get(stack.size() - 1);
+                    frame.childNodeCount++;
+                    String trimmed = text.toString().trim();
+                    if (trimmed.length() > 0 && frame.xo != null && !frame.ignored) {
+                        // just add text as a child of type String object
+                        frame.xo.addChild(trimmed);
+                    }
+                }
+                text.setLength(0);
             }
+        }
+
+        private final Class target;
+        private final boolean run;
+        private boolean checkVersion;
+
+        private Document document;
+        private final List<Frame> stack = new ArrayList<Frame>();
+        private final StringBuilder text = new StringBuilder();
+
+        private List<Event> recording = null;
+        private int recordingDepth = 0;
+    }
+
+    /**
+     * An element that is being read by the StreamingConverter. References have no XMLObject.
+     */
+    private static class Frame {
+        Frame(Element element) {
+            this.element = element;
+        }
+
+        final Element element;
+        XMLObject xo = null;
+        XMLObjectParser parser = null;
+        int repeats = 1;
+        int childNodeCount = 0;
+        boolean ignored = false;
+    }
+
+    /**
+     * A recorded SAX event in the content of a repeat element.
+     */
+    private static class Event {
+        static final int START = 0;
+        static final int END = 1;
+        static final int TEXT = 2;
+        static final int COMMENT = 3;
+
+        Event(int type, String value, Attributes attributes) {
+            this.type = type;
+            this.value = value;
+            this.attributes = attributes;
+        }
+
+        final int type;
+        final String value;
+        final Attributes attributes;
+    }
+
+    /**
+     * Carries an XMLParseException out of the SAX parser.
+     */
+    private static class ConversionException extends SAXException {
+        ConversionException(XMLParseException xpe) {
+            super(xpe.getMessage());
+            this.xpe = xpe;
+        }
+
+        final XMLParseException xpe;
+    }
+
+    /**
+     * Stops the SAX parser when an object of the target class has been parsed.
+     */
+    private static class TargetFoundException extends SAXException {
+        TargetFoundException(Object object) {
+            this.object = object;
+        }
+
+        final Object object;
+    }
+
+    private Object convert(Element e, Class target, XMLObject parent, boolean run, boolean doParse) throws XMLParseException {
+
+        if (e.hasAttribute(IDREF)) {
+
+            return restoreReference(e, e.getChildNodes().getLength());
+
+        } else {
+            int repeats = startConversion(e);
 
             XMLObject xo = new XMLObject(e, parent);
 
-            final XMLObjectParser parser = doParse ? parserStore.get(xo.getName()) : null;
+            final XMLObjectParser parser = doParse ? getParser(xo.getName()) : null;
 
-            String id = null;
             NodeList nodes = e.getChildNodes();
             for (int k = 0; k < repeats; k++) {
                 for (int i = 0; i < nodes.getLength(); i++) {
@@ -313,85 +671,206 @@ public class XMLParser {
                     }
                 }
             }
-            if (e.hasAttribute(ID)) {
-                id = e.getAttribute(ID);
+
+            if (repeats > 1) repeatDepth--;
+
+            return finishConversion(e, xo, parser, run);
+        }
+    }
+
+    /**
+     * Looks up the object referred to by an element with an idref attribute.
+     *
+     * @param e          the element
+     * @param childCount the number of child nodes (elements and text) of the element
+     * @return a reference to the stored object
+     * @throws XMLParseException if the reference is malformed or the object doesn't exist
+     */
+    private Object restoreReference(Element e, int childCount) throws XMLParseException {
+
+        int index = -1;
+
+        String idref = e.getAttribute(IDREF);
+
+        if (e.hasAttribute("index")) {
+            index = Integer.parseInt(e.getAttribute("index"));
+        }
+        if ((e.getAttributes().getLength() > 1 || childCount > 1) && index == -1) {
+            throw new XMLParseException("Object with idref=" + idref + " must not have other content or attributes (or perhaps it was not intended to be a reference?).");
+        }
+
+
+        XMLObject restoredXMLObject = objectStore.get(idref);
+        if (index != -1) {
+
+            if (restoredXMLObject.getNativeObject() instanceof List) {
+
+                restoredXMLObject = new XMLObject(restoredXMLObject, index);
+            } else {
+                throw new XMLParseException("Trying to get indexed object from non-list");
             }
+        }
 
-            if ((id != null) && objectStore.get(id) != null) {
-                throw new XMLParseException("Object with Id=" + id + " already exists");
+        if (restoredXMLObject == null) {
+            throw new XMLParseException("Object with idref=" + idref + " has not been previously declared.");
+        }
+
+        if (restoredXMLObject.getNativeObject() == null) {
+            throw new XMLParseException("Object with idref=" + idref + " has not been parsed.");
+        }
+
+        XMLObjectParser parser = getParser(e.getTagName());
+        boolean classMatch = parser != null && parser.getReturnType().isAssignableFrom(restoredXMLObject.getNativeObject().getClass());
+
+        if (!e.getTagName().equals(restoredXMLObject.getName()) && !classMatch) {
+            String msg = "Element named " + e.getTagName() + " with idref=" + idref +
+                    " does not match stored object with same id and tag name " + restoredXMLObject.getName();
+            if (strictXML) {
+                throw new XMLParseException(msg);
+            } else if (parserWarnings) {
+//                    System.err.println("WARNING: " + msg);
+                java.util.logging.Logger.getLogger("dr.xml").warning(msg);
             }
+        }
 
-            Object obj = null;
-            if (parser != null) {
-                obj = parser.parseXMLObject(xo, id, objectStore, strictXML);
+        if (verbose) System.out.println("  Restoring idref=" + idref);
 
-                if (obj instanceof Identifiable) {
-                    ((Identifiable) obj).setId(id);
-                }
 
-                if (obj instanceof Citable) {
-                    addCitable((Citable)obj);
-                }
+        return new Reference(restoredXMLObject);
+    }
 
-                if (obj instanceof CompoundLikelihood) {
-                    Likelihood.FULL_LIKELIHOOD_SET.addAll(((CompoundLikelihood) obj).getLikelihoods());
-                } else if (obj instanceof Likelihood) {
-                    Likelihood.FULL_LIKELIHOOD_SET.add((Likelihood) obj);
-                } else if (obj instanceof Model) {
-                    Model.FULL_MODEL_SET.add((Model) obj);
-                } else if (obj instanceof Parameter) {
-                    Parameter.FULL_PARAMETER_SET.add((Parameter) obj);
-                }
+    /**
+     * Handles the concurrent and repeat elements before the children of an element are converted.
+     *
+     * @param e the element
+     * @return the number of times the children of the element should be converted
+     * @throws XMLParseException if concurrent elements are nested
+     */
+    private int startConversion(Element e) throws XMLParseException {
+        int repeats = 1;
+        if (e.getTagName().equals(CONCURRENT)) {
+            if (concurrent) throw new XMLParseException("Nested concurrent elements not allowed.");
+            concurrent = true;
+
+            threads = new Vector<Thread>();
+        } else if (e.getTagName().equals("repeat")) {
+            repeats = Integer.parseInt(e.getAttribute("count"));
+            if (repeats > 1) repeatDepth++;
+        }
+        return repeats;
+    }
 
-                xo.setNativeObject(obj);
-            } else {
-                // The element doesn't have a specific parser so is likely to be an internal
-                // element to another parser. However, it has an ID then it is likely to be
-                // something that was intended to parse so give a warning.
-                if (e.hasAttribute(ID)) { // object has ID
-                    java.util.logging.Logger.getLogger("dr.xml").warning("Element called, " + xo.getName() +
-                            ", has an ID, " + e.getAttribute(ID) + ", but no parser.");
-                }
+    /**
+     * Parses, stores and (if required) runs an element once all its children have been converted.
+     *
+     * @param e      the element
+     * @param xo     the XMLObject holding the converted children
+     * @param parser the parser for the element or null if it is not to be parsed
+     * @param run    whether to run Runnable objects
+     * @return the XMLObject
+     * @throws XMLParseException if the element cannot be parsed
+     */
+    private XMLObject finishConversion(Element e, XMLObject xo, XMLObjectParser parser, boolean run) throws XMLParseException {
+
+        String id = null;
+        if (e.hasAttribute(ID)) {
+            id = e.getAttribute(ID);
+        }
+
+        if ((id != null) && objectStore.get(id) != null) {
+            throw new XMLParseException("Object with Id=" + id + " already exists");
+        }
+
+        Object obj = null;
+        if (parser != null) {
+            obj = parser.parseXMLObject(xo, id, objectStore, strictXML);
+
+            if (obj instanceof Identifiable) {
+                ((Identifiable) obj).setId(id);
             }
 
-            if (id != null) {
-                if (verbose) System.out.println("  Storing " + xo.getName() + " with id=" + id);
+            if (obj instanceof Citable) {
+                addCitable((Citable)obj);
+            }
 
-                objectStore.put(id, xo);
+            if (obj instanceof CompoundLikelihood) {
+                Likelihood.FULL_LIKELIHOOD_SET.addAll(((CompoundLikelihood) obj).getLikelihoods());
+            } else if (obj instanceof Likelihood) {
+                Likelihood.FULL_LIKELIHOOD_SET.add((Likelihood) obj);
+            } else if (obj instanceof Model) {
+                Model.FULL_MODEL_SET.add((Model) obj);
+            } else if (obj instanceof Parameter) {
+                Parameter.FULL_PARAMETER_SET.add((Parameter) obj);
             }
 
-            if (run) {
-                if (e.getTagName().equals(CONCURRENT)) {
-                    for (int i = 0; i < xo.getChildCount(); i++) {
-                        Object child = xo.getChild(i);
-                        if (child instanceof Runnable) {
-                            Thread thread = new Thread((Runnable) child);
-                            thread.start();
-                            threads.add(thread);
-                        } else throw new XMLParseException("Concurrent element children must be runnable!");
-                    }
-                    concurrent = false;
-                    // wait for all threads collected to die
-                    for (Object thread1 : threads) {
-                        waitForThread((Thread) thread1);
-                    }
-                } else if (obj instanceof Runnable && !concurrent) {
+            xo.setNativeObject(obj);
+
+            if (obj != null && RELEASE_TEXT_ELEMENTS.contains(xo.getName())) {
+                // the raw text of large elements (sequences, trees) is no longer needed once parsed
+                xo.releaseText();
+                if (repeatDepth == 0) {
+                    // the DOM is revisited by repeated elements
+                    releaseText(e);
+                }
+            }
+        } else {
+            // The element doesn't have a specific parser so is likely to be an internal
+            // element to another parser. However, it has an ID then it is likely to be
+            // something that was intended to parse so give a warning.
+            if (e.hasAttribute(ID)) { // object has ID
+                java.util.logging.Logger.getLogger("dr.xml").warning("Element called, " + xo.getName() +
+                        ", has an ID, " + e.getAttribute(ID) + ", but no parser.");
+            }
+        }
 
-                    executingRunnable();
+        if (id != null) {
+            if (verbose) System.out.println("  Storing " + xo.getName() + " with id=" + id);
 
-                    if (obj instanceof Spawnable && !((Spawnable) obj).getSpawnable()) {
-                        ((Spawnable) obj).run();
-                    } else {
-                        Thread thread = new Thread((Runnable) obj);
+            objectStore.put(id, xo);
+        }
+
+        if (run) {
+            if (e.getTagName().equals(CONCURRENT)) {
+                for (int i = 0; i < xo.getChildCount(); i++) {
+                    Object child = xo.getChild(i);
+                    if (child instanceof Runnable) {
+                        Thread thread = new Thread((Runnable) child);
                         thread.start();
                         threads.add(thread);
-                        waitForThread(thread);
-                    }
+                    } else throw new XMLParseException("Concurrent element children must be runnable!");
+                }
+                concurrent = false;
+                // wait for all threads collected to die
+                for (Object thread1 : threads) {
+                    waitForThread((Thread) thread1);
+                }
+            } else if (obj instanceof Runnable && !concurrent) {
+
+                executingRunnable();
+
+                if (obj instanceof Spawnable && !((Spawnable) obj).getSpawnable()) {
+                    ((Spawnable) obj).run();
+                } else {
+                    Thread thread = new Thread((Runnable) obj);
+                    thread.start();
+                    threads.add(thread);
+                    waitForThread(thread);
                 }
-                threads.removeAllElements();
             }
+            threads.removeAllElements();
+        }
+
+        return xo;
+    }
 
-            return xo;
+    private static void releaseText(Element e) {
+        Node child = e.getFirstChild();
+        while (child != null) {
+            Node next = child.getNextSibling();
+            if (child instanceof Text) {
+                e.removeChild(child);
+            }
+            child = next;
         }
     }
 
@@ -605,13 +1084,31 @@ public class XMLParser {
 
     //    private final Hashtable<String, XMLObject> store = new Hashtable<String, XMLObject>();
     private final Map<String, XMLObjectParser> parserStore = new TreeMap<String, XMLObjectParser>(new ParserComparator());
+    private final Map<String, DeferredParser> deferredParserStore = new TreeMap<String, DeferredParser>(new ParserComparator());
     private final Map<String, XMLObject> objectStore = new LinkedHashMap<String, XMLObject>();
     private final Map<Pair<String, String>, List<Citation>> citationStore = new LinkedHashMap<Pair<String, String>, List<Citation>>();
     private boolean concurrent = false;
+    private int repeatDepth = 0;
     private XMLObject root = null;
 
     private boolean verbose = false;
 
+    /**
+     * A parser whose element names are known in advance but which is only instantiated when
+     * one of them is first needed.
+     */
+    public interface DeferredParser {
+
+        String[] getParserNames();
+
+        /**
+         * @return a description of where the parser comes from for error messages
+         */
+        String getSource();
+
+        XMLObjectParser load() throws Exception;
+    }
+
     public static class Utils {
 
         /**
@@ -17,6 +17,8 @@ import dr.evomodel.treelikelihood.MarkovJumpsBeagleTreeLikelihood;
 import dr.evomodel.branchratemodel.BranchRateModel;
 import dr.math.MathUtils;
 
+import java.util.Arrays;
+
 /**
  * @author Marc Suchard
  */
@@ -121,6 +123,94 @@ public class MarkovJumpsTest extends TraceCorrelationAssert {
         assertEquals(valuesFromR, averages, 1E-2);
     }
 
+    private MarkovJumpsBeagleTreeLikelihood createJumpsLikelihood(boolean useUniformization, int threadCount) {
+        FrequencyModel f = new FrequencyModel(Nucleotides.INSTANCE,
+                new Parameter.Default(new double[]{0.40, 0.25, 0.25, 0.10}));
+        HKY hky = new HKY(new Parameter.Default(HKYParser.KAPPA, 10.0, 0, 100), f);
+        GammaSiteRateModel siteRateModel = new GammaSiteRateModel("gammaModel", 0.5, 4);
+        siteRateModel.setSubstitutionModel(hky);
+
+        MarkovJumpsBeagleTreeLikelihood mjTreeLikelihood = new MarkovJumpsBeagleTreeLikelihood(
+                new SitePatterns(alignment, null, 0, -1, 1, true),
+                treeModel,
+                new HomogeneousBranchModel(hky),
+                siteRateModel,
+                null,
+                null,
+                false,
+                PartialsRescalingScheme.AUTO,
+                true,
+                null,
+                hky.getDataType(),
+                "stateTag",
+                false, // use MAP
+                true, // return ML
+                useUniformization,
+                false,
+                1
+        );
+        mjTreeLikelihood.setThreadCount(threadCount);
+
+        Parameter registerParameter = new Parameter.Default(registerValues[0]);
+        registerParameter.setId(registerTages[0]);
+        mjTreeLikelihood.addRegister(registerParameter, registerTypes[0], registerScales[0]);
+
+        return mjTreeLikelihood;
+    }
+
+    /**
+     * @return the sampled jumps for each branch and site of the given number of draws
+     */
+    private double[][][] sampleJumps(int threadCount, int drawCount) {
+        MarkovJumpsBeagleTreeLikelihood mjTreeLikelihood = createJumpsLikelihood(true, threadCount);
+
+        MathUtils.setSeed(666);
+        double[][][] draws = new double[drawCount][][];
+        for (int i = 0; i < drawCount; i++) {
+            mjTreeLikelihood.getLogLikelihood();
+            double[][] jumps = mjTreeLikelihood.getMarkovJumpsForRegister(treeModel, 0);
+            draws[i] = new double[jumps.length][];
+            for (int j = 0; j < jumps.length; j++) {
+                draws[i][j] = jumps[j].clone();
+            }
+            mjTreeLikelihood.makeDirty();
+        }
+        return draws;
+    }
+
+    private static double getMeanTotal(double[][][] draws) {
+        double total = 0.0;
+        for (double[][] draw : draws) {
+            for (double[] branch : draw) {
+                for (double value : branch) {
+                    total += value;
+                }
+            }
+        }
+        return total / draws.length;
+    }
+
+    public void testThreads() {
+        // the Java implementation of BEAGLE
+        System.setProperty("java.only", "true");
+
+        createAlignment(PRIMATES_TAXON_SEQUENCE, Nucleotides.INSTANCE);
+        treeModel = createPrimateTreeModel();
+
+        // each block of sites has its own generator so the number of threads doesn't matter
+        double[][][] one = sampleJumps(1, 3);
+        assertTrue(Arrays.deepEquals(one, sampleJumps(2, 3)));
+        assertTrue(Arrays.deepEquals(one, sampleJumps(4, 3)));
+
+        // the sampled jumps have the same mean as the integrated ones
+        MarkovJumpsBeagleTreeLikelihood integrated = createJumpsLikelihood(false, 1);
+        integrated.getLogLikelihood();
+        double expected = getMeanTotal(new double[][][]{integrated.getMarkovJumpsForRegister(treeModel, 0)});
+
+        assertEquals(expected, getMeanTotal(sampleJumps(1, 200)), expected * 0.05);
+        assertEquals(expected, getMeanTotal(sampleJumps(4, 200)), expected * 0.05);
+    }
+
     private static double[][] registerValues = {
             {
                     0, 1, 1, 1,
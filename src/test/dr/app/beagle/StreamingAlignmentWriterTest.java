@@ -0,0 +1,102 @@
+package test.dr.app.beagle;
+
+import dr.app.beagle.tools.StreamingAlignmentWriter;
+import dr.evolution.datatype.Codons;
+import dr.evolution.datatype.Nucleotides;
+import junit.framework.TestCase;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test that blocks of sites written in any order end up in the right place of the streamed alignment
+ */
+public class StreamingAlignmentWriterTest extends TestCase {
+
+    private static final List<String> NAMES = Arrays.asList("human", "chimp", "internalNodeHeight0.1");
+
+    private File createFile() throws Exception {
+        File file = File.createTempFile("streaming", ".out");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static int[] states(int... states) {
+        return states;
+    }
+
+    public void testFasta() throws Exception {
+        File file = createFile();
+        StreamingAlignmentWriter writer = new StreamingAlignmentWriter(file.getPath(),
+                StreamingAlignmentWriter.Format.FASTA, Nucleotides.INSTANCE, NAMES, 10);
+
+        // two interleaved partitions, each written in two blocks with the last block first
+        writer.writeSites("human", states(0, 1, 2), 2, 6, 2);
+        writer.writeSites("human", states(3, 3, 3), 3, 0, 2);
+        writer.writeSites("human", states(1, 1, 1, 1, 1), 5, 1, 2);
+        writer.writeSites("chimp", states(2, 2, 2, 2, 2, 2, 2), 7, 3, 1);
+        writer.close();
+
+        assertEquals(Arrays.asList(">human", "TCTCTCACCC", ">chimp", "---GGGGGGG",
+                ">internalNodeHeight0.1", "----------"), Files.readAllLines(file.toPath()));
+    }
+
+    public void testNexus() throws Exception {
+        File file = createFile();
+        StreamingAlignmentWriter writer = new StreamingAlignmentWriter(file.getPath(),
+                StreamingAlignmentWriter.Format.NEXUS, Codons.UNIVERSAL, NAMES, 2);
+        writer.writeSites("chimp", states(0, 63), 2, 0, 1);
+        writer.close();
+
+        List<String> lines = Files.readAllLines(file.toPath());
+        assertEquals("#NEXUS", lines.get(0));
+        assertEquals("\tdimensions ntax=3 nchar=6;", lines.get(2));
+        assertEquals("\thuman\t------", lines.get(5));
+        assertEquals("\tchimp\t" + Codons.UNIVERSAL.getTriplet(0) + Codons.UNIVERSAL.getTriplet(63), lines.get(6));
+        assertEquals("\t'internalNodeHeight0.1'\t------", lines.get(7));
+        assertEquals(";", lines.get(8));
+        assertEquals("end;", lines.get(9));
+    }
+
+    public void testBinary() throws Exception {
+        File file = createFile();
+        StreamingAlignmentWriter writer = new StreamingAlignmentWriter(file.getPath(),
+                StreamingAlignmentWriter.Format.BINARY, Nucleotides.INSTANCE, NAMES, 4);
+        writer.writeSites("internalNodeHeight0.1", states(3, 2, 1, 0), 4, 0, 1);
+        writer.close();
+
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        assertEquals(StreamingAlignmentWriter.BINARY_MAGIC, in.readInt());
+        assertEquals(3, in.readInt());
+        assertEquals(4, in.readInt());
+        int gap = in.readInt();
+        assertEquals(Nucleotides.INSTANCE.getGapState(), gap);
+        for (String name : NAMES) {
+            assertEquals(name, in.readUTF());
+        }
+        byte[] data = new byte[12];
+        in.readFully(data);
+        assertEquals(-1, in.read());
+        in.close();
+
+        byte g = (byte) gap;
+        assertTrue(Arrays.equals(new byte[]{g, g, g, g, g, g, g, g, 3, 2, 1, 0}, data));
+    }
+
+    public void testUnknownSequence() throws Exception {
+        StreamingAlignmentWriter writer = new StreamingAlignmentWriter(createFile().getPath(),
+                StreamingAlignmentWriter.Format.FASTA, Nucleotides.INSTANCE, NAMES, 4);
+        try {
+            writer.writeSites("gorilla", states(0), 1, 0, 1);
+            fail("Expected an unknown sequence name to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package test.dr.app.beagle;
+
+import dr.app.beagle.tools.BeagleSequenceSimulator;
+import dr.app.beagle.tools.Partition;
+import dr.app.beagle.tools.StreamingAlignmentWriter;
+import dr.evolution.alignment.SimpleAlignment;
+import dr.evolution.datatype.Nucleotides;
+import dr.evolution.io.NewickImporter;
+import dr.evomodel.branchmodel.HomogeneousBranchModel;
+import dr.evomodel.branchratemodel.DefaultBranchRateModel;
+import dr.evomodel.siteratemodel.GammaSiteRateModel;
+import dr.evomodel.substmodel.FrequencyModel;
+import dr.evomodel.substmodel.nucleotide.HKY;
+import dr.evomodel.tree.DefaultTreeModel;
+import dr.evomodel.tree.TreeModel;
+import dr.inference.model.Parameter;
+import dr.math.MathUtils;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test that streaming a simulated alignment gives the same sequences as simulating it in memory
+ */
+public class StreamingSimulationTest extends TestCase {
+
+    private static final int SITE_COUNT = 50;
+
+    private TreeModel treeModel;
+
+    public void setUp() throws Exception {
+        // the Java implementation of BEAGLE
+        System.setProperty("java.only", "true");
+
+        treeModel = new DefaultTreeModel(new NewickImporter(
+                "((human:0.1,chimp:0.15):0.05,(gorilla:0.2,(orangutan:0.1,siamang:0.3):0.1):0.05);").importTree(null));
+    }
+
+    private BeagleSequenceSimulator createSimulator(long seed) {
+        FrequencyModel freqModel = new FrequencyModel(Nucleotides.INSTANCE,
+                new Parameter.Default(new double[]{0.1, 0.2, 0.3, 0.4}));
+        HKY hky = new HKY(new Parameter.Default(1, 5.0), freqModel);
+
+        GammaSiteRateModel siteRateModel = new GammaSiteRateModel("gammaModel", 0.5, 4);
+        siteRateModel.setSubstitutionModel(hky);
+
+        // the partition takes its random number seed from MathUtils
+        MathUtils.setSeed(seed);
+        Partition partition = new Partition(treeModel, new HomogeneousBranchModel(hky), siteRateModel,
+                new DefaultBranchRateModel(), freqModel, 0, SITE_COUNT - 1, 1);
+
+        ArrayList<Partition> partitions = new ArrayList<Partition>();
+        partitions.add(partition);
+        return new BeagleSequenceSimulator(partitions);
+    }
+
+    private List<String> simulateToFile(long seed, boolean parallel, int blockSize) throws Exception {
+        File file = File.createTempFile("simulation", ".fasta");
+        file.deleteOnExit();
+        createSimulator(seed).simulate(parallel, true, file.getPath(), StreamingAlignmentWriter.Format.FASTA, blockSize);
+        return Files.readAllLines(file.toPath());
+    }
+
+    public void testSingleBlock() throws Exception {
+        SimpleAlignment alignment = createSimulator(666).simulate(false, true);
+        List<String> lines = simulateToFile(666, false, SITE_COUNT);
+
+        assertEquals(2 * alignment.getSequenceCount(), lines.size());
+        for (int i = 0; i < alignment.getSequenceCount(); i++) {
+            assertEquals(">" + alignment.getTaxonId(i), lines.get(2 * i));
+            assertEquals(alignment.getAlignedSequenceString(i), lines.get(2 * i + 1));
+        }
+    }
+
+    public void testBlocks() throws Exception {
+        List<String> lines = simulateToFile(666, false, 7);
+
+        // the blocks each have their own random numbers so the number of threads doesn't matter
+        assertEquals(lines, simulateToFile(666, true, 7));
+        // but they are not the random numbers of the whole partition
+        assertFalse(lines.equals(simulateToFile(666, false, SITE_COUNT)));
+    }
+}
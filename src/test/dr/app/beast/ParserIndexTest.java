@@ -0,0 +1,120 @@
+package test.dr.app.beast;
+
+import dr.app.beast.BeastParser;
+import dr.app.beast.ParserIndex;
+import dr.evoxml.AlignmentParser;
+import dr.evoxml.TaxonParser;
+import dr.xml.XMLObjectParser;
+import dr.xml.XMLParser;
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test that the parser index round trips, is rejected once out of date and that deferred parsers are loaded on demand
+ */
+public class ParserIndexTest extends TestCase {
+
+    private static final String PARSERS_FILE = "release" + BeastParser.PARSER_PROPERTIES_SUFFIX;
+
+    private File directory;
+
+    public void setUp() throws Exception {
+        directory = File.createTempFile("parserIndex", "");
+        assertTrue(directory.delete() && directory.mkdir());
+    }
+
+    public void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        String line = reader.readLine();
+        while (line != null) {
+            lines.add(line);
+            line = reader.readLine();
+        }
+        reader.close();
+        return lines;
+    }
+
+    private static List<ParserIndex.Entry> read(List<String> lines) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append("\n");
+        }
+        return ParserIndex.read(BeastParser.class, PARSERS_FILE, new ByteArrayInputStream(sb.toString().getBytes("UTF-8")));
+    }
+
+    private static ParserIndex.Entry find(List<ParserIndex.Entry> entries, String parserName) {
+        for (ParserIndex.Entry entry : entries) {
+            if (Arrays.asList(entry.getParserNames()).contains(parserName)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    public void testIndex() throws Exception {
+        List<ParserIndex.Entry> entries = ParserIndex.create(BeastParser.class, PARSERS_FILE);
+        File file = ParserIndex.write(BeastParser.class, PARSERS_FILE, entries, directory);
+        List<String> lines = readLines(file);
+
+        List<ParserIndex.Entry> read = read(lines);
+        assertNotNull(read);
+        assertEquals(entries.size(), read.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(entries.get(i).getSource(), read.get(i).getSource());
+            assertTrue(Arrays.equals(entries.get(i).getParserNames(), read.get(i).getParserNames()));
+        }
+
+        ParserIndex.Entry taxon = find(read, TaxonParser.TAXON);
+        assertEquals(TaxonParser.class, taxon.load().getClass());
+
+        // pointing an entry at a different parser class changes the class files it was indexed from
+        List<String> changed = new ArrayList<String>(lines);
+        for (int i = 1; i < changed.size(); i++) {
+            if (changed.get(i).startsWith(TaxonParser.class.getName() + "\t")) {
+                changed.set(i, changed.get(i).replace(TaxonParser.class.getName(), AlignmentParser.class.getName()));
+            }
+        }
+        assertNull(read(changed));
+
+        List<String> badChecksum = new ArrayList<String>(lines);
+        badChecksum.set(0, badChecksum.get(0) + "0");
+        assertNull(read(badChecksum));
+    }
+
+    public void testDeferredParsers() throws Exception {
+        List<ParserIndex.Entry> entries = ParserIndex.create(BeastParser.class, PARSERS_FILE);
+        ParserIndex.Entry taxon = find(entries, TaxonParser.TAXON);
+
+        XMLParser parser = new XMLParser(false, false, false, null);
+        assertFalse(parser.addDeferredXMLObjectParser(taxon, false));
+
+        // the parser is created when it is first asked for and then kept
+        XMLObjectParser loaded = parser.getParser(TaxonParser.TAXON);
+        assertEquals(TaxonParser.class, loaded.getClass());
+        assertSame(loaded, parser.getParser(TaxonParser.TAXON));
+
+        try {
+            parser.addDeferredXMLObjectParser(taxon, false);
+            fail("a deferred parser shouldn't replace a loaded one unless allowed");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+        assertTrue(parser.addDeferredXMLObjectParser(taxon, true));
+
+        // a parser added directly replaces a deferred one that hasn't been loaded
+        assertTrue(parser.addXMLObjectParser(new TaxonParser(), true));
+        assertNotSame(loaded, parser.getParser(TaxonParser.TAXON));
+    }
+}
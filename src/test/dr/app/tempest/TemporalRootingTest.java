@@ -0,0 +1,79 @@
+package test.dr.app.tempest;
+
+import dr.app.tempest.TemporalRooting;
+import dr.evolution.io.NewickImporter;
+import dr.evolution.tree.FlexibleTree;
+import dr.evolution.tree.NodeRef;
+import dr.evolution.tree.Tree;
+import dr.evolution.util.Date;
+import dr.evolution.util.Units;
+import dr.stats.Regression;
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Test the root-to-tip regression and the choice of root on a small dated tree with a strict clock
+ */
+public class TemporalRootingTest extends TestCase {
+
+    private static final double RATE = 0.01;
+    private static final double ROOT_DATE = 1980.0;
+
+    // a tree with a strict clock of RATE from a root at ROOT_DATE that has been rooted on the branch to d:
+    // ((a:0.1,b:0.14):0.1,(c:0.15,(d:0.08,(e:0.07,f:0.11):0.05):0.05):0.15);
+    private static final String NEWICK = "(d:0.04,((e:0.07,f:0.11):0.05,(c:0.15,(a:0.1,b:0.14):0.25):0.05):0.04);";
+
+    private static final Map<String, Double> DATES = new HashMap<String, Double>();
+
+    static {
+        DATES.put("a", 2000.0);
+        DATES.put("b", 2004.0);
+        DATES.put("c", 2010.0);
+        DATES.put("d", 2008.0);
+        DATES.put("e", 2012.0);
+        DATES.put("f", 2016.0);
+    }
+
+    private Tree tree;
+    private TemporalRooting temporalRooting;
+
+    public void setUp() throws Exception {
+        tree = new FlexibleTree(new NewickImporter(NEWICK).importTree(null));
+        for (int i = 0; i < tree.getTaxonCount(); i++) {
+            tree.getTaxon(i).setAttribute("date", new Date(DATES.get(tree.getTaxonId(i)), Units.Type.YEARS, false));
+        }
+        temporalRooting = new TemporalRooting(tree);
+    }
+
+    public void testRootToTipRegression() {
+        assertFalse(temporalRooting.isContemporaneous());
+        assertEquals(16.0, temporalRooting.getDateRange(), 1.0E-12);
+
+        Regression regression = temporalRooting.getRootToTipRegression(tree);
+
+        assertEquals(-0.01983673469387755, regression.getGradient(), 1.0E-12);
+        assertEquals(40.09877551020408, regression.getIntercept(), 1.0E-9);
+        assertEquals(2021.4403292181069, regression.getXIntercept(), 1.0E-9);
+        assertEquals(-0.6699402771272535, regression.getCorrelationCoefficient(), 1.0E-12);
+        assertEquals(0.019732244897959533, regression.getResidualMeanSquared(), 1.0E-12);
+    }
+
+    public void testFindRoot() {
+        for (TemporalRooting.RootingFunction rootingFunction : TemporalRooting.RootingFunction.values()) {
+            Tree rooted = temporalRooting.findRoot(tree, rootingFunction);
+
+            Regression regression = temporalRooting.getRootToTipRegression(rooted);
+            assertEquals(rootingFunction.toString(), RATE, regression.getGradient(), 1.0E-8);
+            assertEquals(rootingFunction.toString(), ROOT_DATE, regression.getXIntercept(), 1.0E-4);
+            assertEquals(rootingFunction.toString(), 1.0, regression.getCorrelationCoefficient(), 1.0E-8);
+
+            for (int i = 0; i < rooted.getExternalNodeCount(); i++) {
+                NodeRef tip = rooted.getExternalNode(i);
+                double expected = RATE * (DATES.get(rooted.getNodeTaxon(tip).getId()) - ROOT_DATE);
+                assertEquals(rootingFunction.toString(), expected, temporalRooting.getRootToTipDistance(rooted, tip), 1.0E-6);
+            }
+        }
+    }
+}
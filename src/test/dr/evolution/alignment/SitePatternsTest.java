@@ -0,0 +1,70 @@
+package test.dr.evolution.alignment;
+
+import dr.evolution.alignment.SimpleAlignment;
+import dr.evolution.alignment.SitePatterns;
+import dr.evolution.datatype.Nucleotides;
+import dr.evolution.sequence.Sequence;
+import dr.evolution.util.Taxon;
+import junit.framework.TestCase;
+
+/**
+ * Test that site patterns keep the number of taxa they were built with when sequences are added to the alignment
+ */
+public class SitePatternsTest extends TestCase {
+
+    private static final String[] SEQUENCES = {
+            "ACGTACGTAA-CGTTA",
+            "ACGTACGTAA-CGTTA",
+            "ACGAACGTAA-CGTTC",
+            "ACGAACGTAA-CGTTC"
+    };
+
+    private static final String[] NEW_SEQUENCES = {
+            "ACGTTCGTAAACGTTA",
+            "GCGAACGTAA-CGTTC"
+    };
+
+    private static SimpleAlignment createAlignment(String[] sequences) {
+        SimpleAlignment alignment = new SimpleAlignment();
+        alignment.setDataType(Nucleotides.INSTANCE);
+        for (int i = 0; i < sequences.length; i++) {
+            alignment.addSequence(new Sequence(new Taxon("taxon" + i), sequences[i]));
+        }
+        return alignment;
+    }
+
+    private static void checkTaxonCount(SitePatterns patterns, SimpleAlignment alignment) {
+        int patternCount = patterns.getPatternCount();
+
+        for (int i = 0; i < NEW_SEQUENCES.length; i++) {
+            alignment.addSequence(new Sequence(new Taxon("new" + i), NEW_SEQUENCES[i]));
+        }
+        assertEquals(SEQUENCES.length + NEW_SEQUENCES.length, alignment.getTaxonCount());
+
+        assertEquals(SEQUENCES.length, patterns.getTaxonCount());
+        assertEquals(SEQUENCES.length, patterns.getPatternLength());
+        assertEquals(patternCount, patterns.getPatternCount());
+        for (int k = 0; k < patterns.getPatternCount(); k++) {
+            assertEquals(patterns.getPatternLength(), patterns.getPattern(k).length);
+        }
+    }
+
+    public void testTaxonCount() {
+        SimpleAlignment alignment = createAlignment(SEQUENCES);
+        checkTaxonCount(new SitePatterns(alignment), alignment);
+    }
+
+    public void testTaxonCountOfCodonPosition() {
+        SimpleAlignment alignment = createAlignment(SEQUENCES);
+        checkTaxonCount(new SitePatterns(alignment, 1, -1, 3), alignment);
+    }
+
+    public void testTaxonCountWithMask() {
+        SimpleAlignment alignment = createAlignment(SEQUENCES);
+        boolean[] mask = new boolean[alignment.getSiteCount()];
+        for (int i = 0; i < mask.length; i += 2) {
+            mask[i] = true;
+        }
+        checkTaxonCount(new SitePatterns(alignment, mask), alignment);
+    }
+}
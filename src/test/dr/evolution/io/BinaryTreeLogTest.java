@@ -0,0 +1,170 @@
+package test.dr.evolution.io;
+
+import dr.evolution.io.BinaryTreeImporter;
+import dr.evolution.io.BinaryTreeWriter;
+import dr.evolution.io.NewickImporter;
+import dr.evolution.tree.*;
+import dr.evomodel.tree.BinaryTreeLogger;
+import dr.inference.loggers.LogFormatter;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test that trees written in the binary tree log format are read back unchanged
+ */
+public class BinaryTreeLogTest extends TestCase {
+
+    private static final List<String> TAXA = Arrays.asList("a", "b", "c", "d", "e");
+
+    private final TreeTrait.D heightTrait = new TreeTrait.D() {
+        public String getTraitName() {
+            return "h";
+        }
+
+        public Intent getIntent() {
+            return Intent.NODE;
+        }
+
+        public Double getTrait(Tree tree, NodeRef node) {
+            return tree.isExternal(node) ? null : tree.getNodeHeight(node);
+        }
+    };
+
+    private final TreeTrait.IA countTrait = new TreeTrait.IA() {
+        public String getTraitName() {
+            return "n";
+        }
+
+        public Intent getIntent() {
+            return Intent.BRANCH;
+        }
+
+        public int[] getTrait(Tree tree, NodeRef node) {
+            return new int[]{node.getNumber(), tree.getChildCount(node)};
+        }
+    };
+
+    private final TreeTrait.S stateTrait = new TreeTrait.S() {
+        public String getTraitName() {
+            return "state";
+        }
+
+        public Intent getIntent() {
+            return Intent.NODE;
+        }
+
+        public String getTrait(Tree tree, NodeRef node) {
+            return tree.isExternal(node) ? tree.getTaxonId(node.getNumber()) : null;
+        }
+    };
+
+    public void testRoundTrip() throws Exception {
+        FlexibleTree tree1 = (FlexibleTree) new NewickImporter("((a:1.0,(d:0.5,b:1.5):0.25):2.0,(e:0.5,c:3.0):0.5);").importTree(null);
+        FlexibleTree tree2 = (FlexibleTree) new NewickImporter("((a:1.0,(d:0.5,b:1.5):0.25):2.0,(e:0.5,c:3.0):0.5);").importTree(null);
+        // a small change so the second tree is written as a list of changes
+        tree2.setNodeHeight(tree2.getRoot(), tree2.getNodeHeight(tree2.getRoot()) + 1.0);
+        FlexibleTree tree3 = (FlexibleTree) new NewickImporter("(((c:1.0,a:1.0):1.0,b:2.0):1.0,e:3.0,d:3.0);").importTree(null);
+
+        Tree[] trees = {tree1, tree2, tree3};
+        TreeTraitProvider[] traits = {new TreeTraitProvider.Helper(Arrays.<TreeTrait>asList(heightTrait, countTrait, stateTrait))};
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        BinaryTreeWriter writer = new BinaryTreeWriter(stream, TAXA);
+        for (int i = 0; i < trees.length; i++) {
+            writer.writeTree("STATE_" + i, trees[i], new String[]{"lnP"}, new String[]{"-" + i + ".5"}, null, traits);
+        }
+        writer.close();
+
+        BinaryTreeImporter importer = new BinaryTreeImporter(new ByteArrayInputStream(stream.toByteArray()));
+        assertEquals(TAXA, importer.getTaxonIds());
+
+        for (int i = 0; i < trees.length; i++) {
+            assertTrue(importer.hasTree());
+            Tree tree = importer.importNextTree();
+
+            assertEquals("STATE_" + i, tree.getId());
+            assertEquals(-i - 0.5, tree.getAttribute("lnP"));
+            // the children are in the same order as the original
+            assertEquals(TreeUtils.newick(trees[i]), TreeUtils.newick(tree));
+
+            for (int j = 0; j < tree.getTaxonCount(); j++) {
+                // taxa are numbered by their position in the taxon table
+                assertEquals(TAXA.get(j), tree.getTaxonId(j));
+            }
+
+            for (int j = 0; j < tree.getNodeCount(); j++) {
+                NodeRef node = tree.getNode(j);
+                if (tree.isExternal(node)) {
+                    assertNull(tree.getNodeAttribute(node, "h"));
+                    assertEquals(tree.getNodeTaxon(node).getId(), tree.getNodeAttribute(node, "state"));
+                } else {
+                    assertEquals(tree.getNodeHeight(node), tree.getNodeAttribute(node, "h"));
+                    assertNull(tree.getNodeAttribute(node, "state"));
+                }
+                if (tree.isRoot(node)) {
+                    assertNull(tree.getNodeAttribute(node, "n"));
+                } else {
+                    Object[] counts = (Object[]) tree.getNodeAttribute(node, "n");
+                    assertEquals(2, counts.length);
+                    assertEquals(tree.getChildCount(node), counts[1]);
+                }
+            }
+        }
+        assertFalse(importer.hasTree());
+    }
+
+    public void testFormatterSwap() throws Exception {
+        Tree tree1 = new NewickImporter("((a:1.0,(d:0.5,b:1.5):0.25):2.0,(e:0.5,c:3.0):0.5);").importTree(null);
+        Tree tree2 = new NewickImporter("(((c:1.0,a:1.0):1.0,b:2.0):1.0,(e:1.5,d:1.5):1.5);").importTree(null);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        BinaryTreeLogger logger1 = new BinaryTreeLogger(tree1, null, null, null,
+                new BinaryTreeLogger.Formatter(stream, TAXA, -1), 10, null);
+        BinaryTreeLogger logger2 = new BinaryTreeLogger(tree2, null, null, null,
+                new BinaryTreeLogger.Formatter(new ByteArrayOutputStream(), TAXA, -1), 10, null);
+
+        // as MCMCMC does: only the cold chain's logger is started and the others have no formatters
+        logger1.startLogging();
+        List<LogFormatter> formatters = logger1.getFormatters();
+        logger2.setFormatters(Collections.<LogFormatter>emptyList());
+
+        logger1.log(0L);
+        logger2.log(0L);
+
+        // the second chain becomes the cold chain
+        logger2.setFormatters(formatters);
+        logger1.setFormatters(Collections.<LogFormatter>emptyList());
+
+        logger1.log(10L);
+        logger2.log(10L);
+        logger2.stopLogging();
+
+        BinaryTreeImporter importer = new BinaryTreeImporter(new ByteArrayInputStream(stream.toByteArray()));
+        Tree tree = importer.importNextTree();
+        assertEquals("STATE_0", tree.getId());
+        assertEquals(TreeUtils.newick(tree1), TreeUtils.newick(tree));
+        tree = importer.importNextTree();
+        assertEquals("STATE_10", tree.getId());
+        assertEquals(TreeUtils.newick(tree2), TreeUtils.newick(tree));
+        assertFalse(importer.hasTree());
+    }
+
+    public void testDecimalPlaces() throws Exception {
+        Tree tree = new NewickImporter("((a:1.004,(d:0.5,b:1.5):0.251):2.0,(e:0.5,c:3.0):0.5);").importTree(null);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        BinaryTreeLogger logger = new BinaryTreeLogger(tree, null, null, null,
+                new BinaryTreeLogger.Formatter(stream, TAXA, 2), 1, null);
+        logger.startLogging();
+        logger.log(0L);
+        logger.stopLogging();
+
+        Tree imported = new BinaryTreeImporter(new ByteArrayInputStream(stream.toByteArray())).importNextTree();
+        assertEquals("((a:1.0,(d:0.5,b:1.5):0.25):2.0,(e:0.5,c:3.0):0.5);", TreeUtils.newick(imported));
+    }
+}
@@ -0,0 +1,97 @@
+package test.dr.evolution.io;
+
+import dr.evolution.io.MappedNexusImporter;
+import dr.evolution.io.NexusImporter;
+import dr.evolution.tree.NodeRef;
+import dr.evolution.tree.Tree;
+import dr.evolution.tree.TreeUtils;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringReader;
+import java.util.Collections;
+
+/**
+ * Test that MappedNexusImporter reads the same trees as NexusImporter
+ */
+public class MappedNexusImporterTest extends TestCase {
+
+    private static final String TREES = "#NEXUS\n" +
+            "[comment]\n" +
+            "Begin taxa;\n" +
+            "\tDimensions ntax=4;\n" +
+            "\tTaxlabels a b c 'd d';\n" +
+            "End;\n" +
+            "Begin trees;\n" +
+            "\tTranslate\n" +
+            "\t\t1 a,\n" +
+            "\t\t2 b,\n" +
+            "\t\t3 c,\n" +
+            "\t\t4 'd d'\n" +
+            "\t\t;\n" +
+            "tree STATE_0 [&lnP=-10.5] = [&R] ((1[&rate=0.5]:1.0,2:2.0)[&x={1,2}]:0.5,(3:1.5,4:[&rate=2.0]1.5E0):1.0);\n" +
+            "tree STATE_10 [&lnP=-11.5] = [&R] (((4:1.0,2:1.0):0.25,3:1.25):2.0,1:3.25);\n" +
+            "tree STATE_20 [&lnP=-12.5] = [&R] (1:0.5,2:0.5,3:Infinity,4:0.125);\n" +
+            "End;\n";
+
+    public void testSameTrees() throws Exception {
+        File file = File.createTempFile("trees", ".trees");
+        file.deleteOnExit();
+        FileWriter writer = new FileWriter(file);
+        writer.write(TREES);
+        writer.close();
+
+        for (int threadCount = 1; threadCount <= 2; threadCount++) {
+            NexusImporter nexusImporter = new NexusImporter(new StringReader(TREES));
+            MappedNexusImporter importer = new MappedNexusImporter(file, threadCount, null);
+
+            int count = 0;
+            while (nexusImporter.hasTree()) {
+                assertTrue(importer.hasTree());
+                Tree expected = nexusImporter.importNextTree();
+                Tree tree = importer.importNextTree();
+
+                assertEquals(expected.getId(), tree.getId());
+                assertEquals(expected.getAttribute("lnP"), tree.getAttribute("lnP"));
+                assertEquals(TreeUtils.newick(expected), TreeUtils.newick(tree));
+                assertEquals(expected.getNodeCount(), tree.getNodeCount());
+
+                for (int i = 0; i < tree.getNodeCount(); i++) {
+                    NodeRef expectedNode = expected.getNode(i);
+                    NodeRef node = tree.getNode(i);
+                    assertEquals(expected.getNodeHeight(expectedNode), tree.getNodeHeight(node));
+                    assertEquals(expected.getBranchLength(expectedNode), tree.getBranchLength(node));
+                    assertEquals(expected.getNodeAttribute(expectedNode, "rate"), tree.getNodeAttribute(node, "rate"));
+                    if (expected.isExternal(expectedNode)) {
+                        assertEquals(expected.getNodeTaxon(expectedNode).getId(), tree.getNodeTaxon(node).getId());
+                    } else {
+                        assertEquals(expected.getParent(expectedNode) == null ? -1 : expected.getParent(expectedNode).getNumber(),
+                                tree.getParent(node) == null ? -1 : tree.getParent(node).getNumber());
+                    }
+                }
+                count++;
+            }
+            assertFalse(importer.hasTree());
+            assertEquals(3, count);
+        }
+    }
+
+    public void testSelectedAttributes() throws Exception {
+        File file = File.createTempFile("trees", ".trees");
+        file.deleteOnExit();
+        FileWriter writer = new FileWriter(file);
+        writer.write(TREES);
+        writer.close();
+
+        MappedNexusImporter importer = new MappedNexusImporter(file, 1, Collections.singleton("x"));
+        Tree tree = importer.importNextTree();
+        // the tree attributes are always kept
+        assertEquals(-10.5, tree.getAttribute("lnP"));
+        for (int i = 0; i < tree.getNodeCount(); i++) {
+            assertNull(tree.getNodeAttribute(tree.getNode(i), "rate"));
+        }
+        Object[] x = (Object[]) tree.getNodeAttribute(tree.getParent(tree.getExternalNode(0)), "x");
+        assertEquals(2, x.length);
+    }
+}
@@ -0,0 +1,93 @@
+package test.dr.evomodel.coalescent;
+
+import dr.evolution.coalescent.ArrayCoalescentSimulator;
+import dr.evolution.coalescent.ConstantPopulation;
+import dr.evolution.coalescent.DemographicFunction;
+import dr.evolution.coalescent.PiecewiseConstantPopulation;
+import dr.evolution.tree.NodeRef;
+import dr.evolution.util.Taxa;
+import dr.evolution.util.Taxon;
+import dr.evolution.util.Units;
+import dr.evomodel.bigfasttree.BigFastTreeModel;
+import dr.math.MathUtils;
+import junit.framework.TestCase;
+
+/**
+ * Test that ArrayCoalescentSimulator builds valid trees with the expected coalescent times
+ */
+public class ArrayCoalescentSimulatorTest extends TestCase {
+
+    public void setUp() {
+        MathUtils.setSeed(1234);
+    }
+
+    public void testConstantPopulationRootHeight() {
+        ConstantPopulation constant = new ConstantPopulation(Units.Type.YEARS);
+        constant.setN0(2.0);
+
+        final int tipCount = 10;
+        final int replicates = 4000;
+
+        ArrayCoalescentSimulator simulator = new ArrayCoalescentSimulator();
+        double sum = 0.0;
+        for (int i = 0; i < replicates; i++) {
+            simulator.simulate(new double[tipCount], constant);
+            sum += simulator.getHeights()[simulator.getRoot()];
+        }
+
+        // E[T_MRCA] = 2 N0 (1 - 1 / n)
+        assertEquals(2.0 * 2.0 * (1.0 - 1.0 / tipCount), sum / replicates, 0.15);
+    }
+
+    public void testSerialTips() {
+        final int tipCount = 500;
+        double[] tipHeights = new double[tipCount];
+        Taxa taxa = new Taxa();
+        for (int i = 0; i < tipCount; i++) {
+            tipHeights[i] = MathUtils.nextDouble() * 5.0;
+            taxa.addTaxon(new Taxon("tip" + i));
+        }
+
+        PiecewiseConstantPopulation piecewise = new PiecewiseConstantPopulation(
+                new double[]{1.0, 2.0}, new double[]{3.0, 0.5, 10.0}, Units.Type.YEARS);
+
+        ArrayCoalescentSimulator simulator = new ArrayCoalescentSimulator();
+        simulator.simulate(tipHeights, piecewise);
+
+        BigFastTreeModel tree = new BigFastTreeModel("tree", taxa, simulator.getEdges(), simulator.getHeights(),
+                simulator.getRoot());
+
+        assertEquals(tipCount, tree.getExternalNodeCount());
+        assertEquals(tipCount - 1, tree.getInternalNodeCount());
+        assertNull(tree.getParent(tree.getRoot()));
+
+        for (int i = 0; i < tipCount; i++) {
+            NodeRef tip = tree.getExternalNode(i);
+            assertEquals("tip" + i, tree.getNodeTaxon(tip).getId());
+            assertEquals(tipHeights[i], tree.getNodeHeight(tip), 0.0);
+        }
+
+        int[] descendants = new int[tree.getNodeCount()];
+        for (int i = 0; i < tree.getInternalNodeCount(); i++) {
+            NodeRef node = tree.getInternalNode(i);
+            assertEquals(2, tree.getChildCount(node));
+            for (int j = 0; j < 2; j++) {
+                NodeRef child = tree.getChild(node, j);
+                assertEquals(node, tree.getParent(child));
+                assertTrue(tree.getNodeHeight(child) <= tree.getNodeHeight(node));
+                descendants[node.getNumber()] += (tree.isExternal(child) ? 1 : descendants[child.getNumber()]);
+            }
+        }
+        assertEquals(tipCount, descendants[tree.getRoot().getNumber()]);
+    }
+
+    public void testPiecewiseConstantInverseIntensity() {
+        PiecewiseConstantPopulation piecewise = new PiecewiseConstantPopulation(
+                new double[]{1.0, 2.0}, new double[]{3.0, 0.5, 10.0}, Units.Type.YEARS);
+        DemographicFunction.Utils.testConsistency(piecewise, 100, 10.0);
+
+        for (double t : new double[]{0.0, 0.5, 1.0, 2.5, 3.0, 7.0}) {
+            assertEquals(t, piecewise.getInverseIntensity(piecewise.getIntensity(t)), 1E-12);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package test.dr.evomodel.coalescent;
+
+import dr.evolution.io.NewickImporter;
+import dr.evolution.tree.NodeRef;
+import dr.evolution.tree.Tree;
+import dr.evomodel.coalescent.GMRFMultilocusSkyrideLikelihood;
+import dr.evomodel.tree.DefaultTreeModel;
+import dr.evomodel.tree.TreeModel;
+import dr.inference.model.Parameter;
+import dr.math.MathUtils;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test that the multilocus skygrid likelihood, which only recalculates the sufficient statistics of the loci
+ * whose trees have changed, gives the same values as a likelihood calculated from scratch
+ */
+public class GMRFMultilocusSkyrideLikelihoodTest extends TestCase {
+
+    private static final String[] TREES = {
+            "((((a:1.0,b:0.5):0.5,(c:2.0,d:1.0):0.25):1.0,(e:0.5,f:0.0):2.5):0.5,(((g:1.5,h:1.5):1.0,i:3.0):0.5,(j:0.25,k:1.25):2.0):1.0);",
+            "(((a:0.5,b:0.5):1.5,c:2.0):1.0,((d:1.0,e:1.5):0.5,f:2.0):1.0);",
+            "((a:2.5,b:3.0):1.0,(c:0.5,(d:0.25,e:0.25):0.75):3.0);"
+    };
+    private static final int GRID_POINTS = 6;
+    private static final double CUT_OFF = 5.0;
+
+    public void testIncrementalUpdates() throws Exception {
+        List<Tree> trees = new ArrayList<Tree>();
+        for (String newick : TREES) {
+            trees.add(new DefaultTreeModel(new NewickImporter(newick).importTree(null)));
+        }
+        Parameter popSizes = new Parameter.Default(GRID_POINTS + 1, 0.5);
+        Parameter precision = new Parameter.Default(1, 2.0);
+        Parameter ploidy = new Parameter.Default(new double[]{1.0, 0.5, 2.0});
+
+        GMRFMultilocusSkyrideLikelihood serial = createLikelihood(trees, popSizes, precision, ploidy);
+        GMRFMultilocusSkyrideLikelihood parallel = createLikelihood(trees, popSizes, precision, ploidy);
+        parallel.setThreadCount(2);
+
+        MathUtils.setSeed(42);
+        for (int step = 0; step < 500; step++) {
+            serial.storeModelState();
+            parallel.storeModelState();
+            for (Tree tree : trees) {
+                ((TreeModel) tree).storeModelState();
+            }
+
+            TreeModel tree = (TreeModel) trees.get(MathUtils.nextInt(trees.size()));
+            NodeRef node = tree.getInternalNode(MathUtils.nextInt(tree.getInternalNodeCount()));
+            double lower = Math.max(tree.getNodeHeight(tree.getChild(node, 0)), tree.getNodeHeight(tree.getChild(node, 1)));
+            double upper = tree.isRoot(node) ? lower + 3.0 : tree.getNodeHeight(tree.getParent(node));
+            tree.setNodeHeight(node, lower + MathUtils.nextDouble() * (upper - lower));
+            popSizes.setParameterValue(MathUtils.nextInt(popSizes.getDimension()), MathUtils.nextGaussian());
+
+            double expected = createLikelihood(trees, popSizes, precision, ploidy).getLogLikelihood();
+            assertEquals(expected, serial.getLogLikelihood(), 1E-10);
+            assertEquals(expected, parallel.getLogLikelihood(), 1E-10);
+
+            if (MathUtils.nextBoolean()) {
+                for (Tree t : trees) {
+                    ((TreeModel) t).restoreModelState();
+                }
+                serial.restoreModelState();
+                parallel.restoreModelState();
+            }
+        }
+    }
+
+    private GMRFMultilocusSkyrideLikelihood createLikelihood(List<Tree> trees, Parameter popSizes, Parameter precision,
+                                                             Parameter ploidy) {
+        return new GMRFMultilocusSkyrideLikelihood(trees, popSizes, null, precision, new Parameter.Default(1, 1.0),
+                null, null, false, CUT_OFF, GRID_POINTS, null, ploidy);
+    }
+}
@@ -0,0 +1,110 @@
+package test.dr.evomodel.coalescent;
+
+import dr.evolution.alignment.Patterns;
+import dr.evolution.coalescent.ArrayCoalescentSimulator;
+import dr.evolution.coalescent.ConstantPopulation;
+import dr.evolution.datatype.GeneralDataType;
+import dr.evolution.util.Taxa;
+import dr.evolution.util.Taxon;
+import dr.evolution.util.Units;
+import dr.evomodel.bigfasttree.BigFastTreeModel;
+import dr.evomodel.coalescent.basta.StructuredCoalescentLikelihood;
+import dr.evomodel.substmodel.FrequencyModel;
+import dr.evomodel.substmodel.GeneralSubstitutionModel;
+import dr.evomodel.tree.TreeModel;
+import dr.inference.model.Parameter;
+import dr.math.MathUtils;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Test that the BASTA likelihood does not depend on the number of threads the active lineages are spread over
+ */
+public class StructuredCoalescentLikelihoodTest extends TestCase {
+
+    private static final int TIP_COUNT = 64;
+    private static final int DEME_COUNT = 32;
+
+    private TreeModel tree;
+    private Patterns patterns;
+    private double[] rates;
+    private double[] popSizes;
+
+    public void setUp() {
+        MathUtils.setSeed(1234);
+
+        Taxa taxa = new Taxa();
+        double[] tipHeights = new double[TIP_COUNT];
+        for (int i = 0; i < TIP_COUNT; i++) {
+            taxa.addTaxon(new Taxon("tip" + i));
+            tipHeights[i] = MathUtils.nextDouble();
+        }
+
+        ConstantPopulation constant = new ConstantPopulation(Units.Type.YEARS);
+        constant.setN0(2.0);
+
+        ArrayCoalescentSimulator simulator = new ArrayCoalescentSimulator();
+        simulator.simulate(tipHeights, constant);
+        tree = new BigFastTreeModel("tree", taxa, simulator.getEdges(), simulator.getHeights(), simulator.getRoot());
+
+        String[] demes = new String[DEME_COUNT];
+        for (int i = 0; i < DEME_COUNT; i++) {
+            demes[i] = "deme" + i;
+        }
+        GeneralDataType dataType = new GeneralDataType(demes);
+
+        patterns = new Patterns(dataType, taxa);
+        int[] pattern = new int[TIP_COUNT];
+        for (int i = 0; i < TIP_COUNT; i++) {
+            pattern[i] = MathUtils.nextInt(DEME_COUNT);
+        }
+        patterns.addPattern(pattern);
+
+        rates = new double[DEME_COUNT * (DEME_COUNT - 1) / 2];
+        for (int i = 0; i < rates.length; i++) {
+            rates[i] = 0.1 + MathUtils.nextDouble();
+        }
+
+        popSizes = new double[DEME_COUNT];
+        for (int i = 0; i < DEME_COUNT; i++) {
+            popSizes[i] = 0.5 + MathUtils.nextDouble();
+        }
+    }
+
+    private StructuredCoalescentLikelihood createLikelihood(Parameter popSizeParameter, int threadCount) throws Exception {
+        GeneralDataType dataType = (GeneralDataType) patterns.getDataType();
+
+        double[] frequencies = new double[DEME_COUNT];
+        Arrays.fill(frequencies, 1.0 / DEME_COUNT);
+        FrequencyModel frequencyModel = new FrequencyModel(dataType, frequencies);
+
+        GeneralSubstitutionModel migrationModel = new GeneralSubstitutionModel("migration", dataType,
+                frequencyModel, new Parameter.Default("rates", rates.clone()), -1);
+
+        return new StructuredCoalescentLikelihood(tree, null, popSizeParameter, patterns, dataType, "states",
+                migrationModel, 2, null, null, false, threadCount);
+    }
+
+    public void testThreads() throws Exception {
+        Parameter serialPopSizes = new Parameter.Default("popSizes", popSizes.clone());
+        StructuredCoalescentLikelihood serial = createLikelihood(serialPopSizes, 1);
+        double expected = serial.getLogLikelihood();
+        assertFalse(Double.isNaN(expected) || Double.isInfinite(expected));
+
+        serialPopSizes.setParameterValue(0, 2.0 * popSizes[0]);
+        serial.makeDirty();
+        double changed = serial.getLogLikelihood();
+        assertTrue(changed != expected);
+
+        for (int threadCount : new int[]{2, 3, 4}) {
+            Parameter parallelPopSizes = new Parameter.Default("popSizes", popSizes.clone());
+            StructuredCoalescentLikelihood parallel = createLikelihood(parallelPopSizes, threadCount);
+            assertEquals(expected, parallel.getLogLikelihood(), 0.0);
+
+            parallelPopSizes.setParameterValue(0, 2.0 * popSizes[0]);
+            parallel.makeDirty();
+            assertEquals(changed, parallel.getLogLikelihood(), 0.0);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package test.dr.evomodel.coalescent;
+
+import dr.evolution.coalescent.IntervalList;
+import dr.evolution.coalescent.Intervals;
+import dr.evolution.io.NewickImporter;
+import dr.evolution.tree.NodeRef;
+import dr.evolution.util.Units;
+import dr.evomodel.coalescent.TreeIntervals;
+import dr.evomodel.tree.DefaultTreeModel;
+import dr.evomodel.tree.TreeModel;
+import dr.math.MathUtils;
+import junit.framework.TestCase;
+
+/**
+ * Test that the intervals kept up to date as the node heights change are the same as those calculated from scratch
+ */
+public class TreeIntervalsTest extends TestCase {
+
+    public void testHeightChanges() throws Exception {
+        NewickImporter importer = new NewickImporter("((((a:1.0,b:0.5):0.5,(c:2.0,d:1.0):0.25):1.0,(e:0.5,f:0.0):2.5):0.5," +
+                "(((g:1.5,h:1.5):1.0,i:3.0):0.5,(j:0.25,k:1.25):2.0):1.0);");
+        TreeModel tree = new DefaultTreeModel(importer.importTree(null));
+        TreeIntervals intervals = new TreeIntervals(tree, null, null);
+        assertSameIntervals(tree, intervals);
+
+        MathUtils.setSeed(123);
+        for (int step = 0; step < 2000; step++) {
+            tree.storeModelState();
+            intervals.storeModelState();
+
+            for (int k = 0; k < 1 + MathUtils.nextInt(3); k++) {
+                NodeRef node = tree.getNode(MathUtils.nextInt(tree.getNodeCount()));
+                double lower = 0.0;
+                for (int i = 0; i < tree.getChildCount(node); i++) {
+                    lower = Math.max(lower, tree.getNodeHeight(tree.getChild(node, i)));
+                }
+                double upper = tree.isRoot(node) ? lower + 2.0 : tree.getNodeHeight(tree.getParent(node));
+                // sometimes move the node to the same height as another event
+                double height = MathUtils.nextInt(10) == 0 ? upper : lower + MathUtils.nextDouble() * (upper - lower);
+                tree.setNodeHeight(node, height);
+            }
+
+            if (MathUtils.nextBoolean()) {
+                assertSameIntervals(tree, intervals);
+            }
+
+            if (MathUtils.nextBoolean()) {
+                tree.restoreModelState();
+                intervals.restoreModelState();
+            } else {
+                tree.acceptModelState();
+                intervals.acceptModelState();
+            }
+            assertSameIntervals(tree, intervals);
+            assertSameIntervals(tree, intervals.getIntervals());
+        }
+
+        intervals.getIntervals().setUnits(Units.Type.DAYS);
+        assertEquals(Units.Type.DAYS, intervals.getUnits());
+        assertEquals(Units.Type.DAYS, intervals.getIntervals().getUnits());
+    }
+
+    private void assertSameIntervals(TreeModel tree, IntervalList intervals) {
+        Intervals expected = new Intervals(tree.getNodeCount());
+        for (int i = 0; i < tree.getExternalNodeCount(); i++) {
+            expected.addSampleEvent(tree.getNodeHeight(tree.getExternalNode(i)));
+        }
+        for (int i = 0; i < tree.getInternalNodeCount(); i++) {
+            expected.addCoalescentEvent(tree.getNodeHeight(tree.getInternalNode(i)));
+        }
+
+        assertEquals(expected.getIntervalCount(), intervals.getIntervalCount());
+        assertEquals(expected.getSampleCount(), intervals.getSampleCount());
+        assertEquals(expected.getStartTime(), intervals.getStartTime());
+        assertEquals(expected.getTotalDuration(), intervals.getTotalDuration());
+        for (int i = 0; i < expected.getIntervalCount(); i++) {
+            assertEquals(expected.getInterval(i), intervals.getInterval(i), 1E-12);
+            assertEquals(expected.getIntervalTime(i), intervals.getIntervalTime(i));
+            assertEquals(expected.getLineageCount(i), intervals.getLineageCount(i));
+            assertEquals(expected.getCoalescentEvents(i), intervals.getCoalescentEvents(i));
+            assertEquals(expected.getIntervalType(i), intervals.getIntervalType(i));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package test.dr.evomodel.substmodel;
+
+import dr.evomodel.substmodel.DefaultEigenSystem;
+import dr.evomodel.substmodel.EigenDecomposition;
+import dr.evomodel.substmodel.EigenDecompositionCache;
+import junit.framework.TestCase;
+
+/**
+ * Test the LRU cache of eigen decompositions
+ */
+public class EigenDecompositionCacheTest extends TestCase {
+
+    private static double[][] makeQ(double kappa) {
+        double[] pi = new double[]{0.1, 0.2, 0.3, 0.4};
+        double[][] q = new double[4][4];
+        for (int i = 0; i < 4; i++) {
+            double sum = 0.0;
+            for (int j = 0; j < 4; j++) {
+                if (i != j) {
+                    q[i][j] = ((i + j) % 2 == 0 ? kappa : 1.0) * pi[j];
+                    sum += q[i][j];
+                }
+            }
+            q[i][i] = -sum;
+        }
+        return q;
+    }
+
+    public void testHitsAndMisses() {
+        EigenDecompositionCache cache = new EigenDecompositionCache(2);
+        DefaultEigenSystem eigenSystem = new DefaultEigenSystem(4);
+
+        double[][] q = makeQ(2.0);
+        EigenDecompositionCache.Key key = cache.createKey(eigenSystem, q, 0.5);
+        assertNull(cache.get(key));
+
+        EigenDecomposition eigen = eigenSystem.decomposeMatrix(q);
+        eigen.normalizeEigenValues(0.5);
+        cache.put(key, eigen);
+
+        EigenDecomposition cached = cache.get(cache.createKey(eigenSystem, makeQ(2.0), 0.5));
+        assertNotNull(cached);
+        assertNotSame(eigen, cached);
+        assertEquals(0.5, cached.getNormalization());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(eigen.getEigenValues()[i], cached.getEigenValues()[i]);
+        }
+
+        assertNull(cache.get(cache.createKey(eigenSystem, makeQ(2.0), 0.25)));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    public void testLeastRecentlyUsedEviction() {
+        EigenDecompositionCache cache = new EigenDecompositionCache(2);
+        DefaultEigenSystem eigenSystem = new DefaultEigenSystem(4);
+
+        EigenDecompositionCache.Key[] keys = new EigenDecompositionCache.Key[3];
+        for (int k = 0; k < 3; k++) {
+            double[][] q = makeQ(k + 1.0);
+            keys[k] = cache.createKey(eigenSystem, q, 1.0);
+            cache.put(keys[k], eigenSystem.decomposeMatrix(q));
+            if (k == 1) {
+                // touch the first entry so that the second is the eldest
+                assertNotNull(cache.get(keys[0]));
+            }
+        }
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(keys[0]));
+        assertNull(cache.get(keys[1]));
+        assertNotNull(cache.get(keys[2]));
+    }
+}
@@ -0,0 +1,156 @@
+package test.dr.evomodel.treedatalikelihood;
+
+import dr.evolution.alignment.PatternList;
+import dr.evolution.alignment.ReferencePatternStates;
+import dr.evolution.alignment.SitePatterns;
+import dr.evolution.datatype.Nucleotides;
+import dr.evomodel.branchmodel.BranchModel;
+import dr.evomodel.branchmodel.HomogeneousBranchModel;
+import dr.evomodel.branchratemodel.BranchRateModel;
+import dr.evomodel.branchratemodel.StrictClockBranchRates;
+import dr.evomodel.siteratemodel.GammaSiteRateModel;
+import dr.evomodel.siteratemodel.SiteRateModel;
+import dr.evomodel.substmodel.FrequencyModel;
+import dr.evomodel.substmodel.nucleotide.HKY;
+import dr.evomodel.treedatalikelihood.JavaMultiPartitionDataLikelihoodDelegate;
+import dr.evomodel.treedatalikelihood.TreeDataLikelihood;
+import dr.inference.model.Parameter;
+import dr.math.MathUtils;
+import dr.oldevomodel.sitemodel.GammaSiteModel;
+import dr.oldevomodel.treelikelihood.TreeLikelihood;
+import test.dr.inference.trace.TraceCorrelationAssert;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test that the Java multi-partition delegate matches separate Java tree likelihoods for each partition
+ */
+public class JavaMultiPartitionDataLikelihoodTest extends TraceCorrelationAssert {
+
+    private static final int THREADS = 3;
+
+    private static final double[] FREQUENCIES = {0.2, 0.3, 0.3, 0.2};
+
+    private final List<PatternList> patternLists = new ArrayList<PatternList>();
+    private final List<BranchModel> branchModels = new ArrayList<BranchModel>();
+    private final List<SiteRateModel> siteRateModels = new ArrayList<SiteRateModel>();
+    private final List<Parameter> kappas = new ArrayList<Parameter>();
+    private BranchRateModel branchRateModel;
+
+    public JavaMultiPartitionDataLikelihoodTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        MathUtils.setSeed(666);
+
+        createAlignment(DENGUE4_TAXON_SEQUENCE, Nucleotides.INSTANCE);
+        createRandomInitialTree(1000.0);
+
+        // one partition for each codon position, each with its own substitution and site rate model
+        for (int i = 0; i < 3; i++) {
+            patternLists.add(new SitePatterns(alignment, null, i, -1, 3));
+
+            Parameter kappa = new Parameter.Default("kappa" + i, 2.0 + i);
+            kappas.add(kappa);
+            FrequencyModel frequencies = new FrequencyModel(Nucleotides.INSTANCE,
+                    new Parameter.Default(FREQUENCIES));
+            branchModels.add(new HomogeneousBranchModel(new HKY(kappa, frequencies)));
+
+            siteRateModels.add(new GammaSiteRateModel("siteModel" + i, 0.5 + i, 4));
+        }
+
+        branchRateModel = new StrictClockBranchRates(new Parameter.Default("rate", 1.0E-3));
+    }
+
+    private double expectedLogLikelihood() {
+        // the sum of independent Java tree likelihoods for each partition
+        double logL = 0.0;
+        for (int i = 0; i < patternLists.size(); i++) {
+            dr.oldevomodel.substmodel.FrequencyModel frequencies = new dr.oldevomodel.substmodel.FrequencyModel(
+                    Nucleotides.INSTANCE, new Parameter.Default(FREQUENCIES));
+            GammaSiteModel siteModel = new GammaSiteModel(
+                    new dr.oldevomodel.substmodel.HKY(kappas.get(i), frequencies), 0.5 + i, 4);
+            logL += new TreeLikelihood(patternLists.get(i), treeModel, siteModel, branchRateModel, null,
+                    false, false, true, true, true).getLogLikelihood();
+        }
+        return logL;
+    }
+
+    private TreeDataLikelihood createLikelihood(int threadCount) throws Exception {
+        JavaMultiPartitionDataLikelihoodDelegate delegate = new JavaMultiPartitionDataLikelihoodDelegate(treeModel,
+                patternLists, branchModels, siteRateModels, false, threadCount);
+        return new TreeDataLikelihood(delegate, treeModel, branchRateModel);
+    }
+
+    public void testLikelihood() throws Exception {
+        double expected = expectedLogLikelihood();
+
+        assertEquals(expected, createLikelihood(1).getLogLikelihood(), 1E-8);
+        assertEquals(expected, createLikelihood(THREADS).getLogLikelihood(), 1E-8);
+    }
+
+    public void testPartitionModelChange() throws Exception {
+        TreeDataLikelihood likelihood = createLikelihood(THREADS);
+        JavaMultiPartitionDataLikelihoodDelegate delegate =
+                (JavaMultiPartitionDataLikelihoodDelegate) likelihood.getDataLikelihoodDelegate();
+        double initial = likelihood.getLogLikelihood();
+        double unchanged = delegate.getPartitionLogLikelihood(0);
+
+        likelihood.storeModelState();
+        kappas.get(1).setParameterValue(0, 10.0);
+        double changed = likelihood.getLogLikelihood();
+        assertEquals(expectedLogLikelihood(), changed, 1E-8);
+        assertEquals(unchanged, delegate.getPartitionLogLikelihood(0), 0.0);
+
+        likelihood.restoreModelState();
+        assertEquals(3.0, kappas.get(1).getParameterValue(0), 0.0);
+        assertEquals(initial, likelihood.getLogLikelihood(), 0.0);
+    }
+
+    public void testTreeChange() throws Exception {
+        TreeDataLikelihood likelihood = createLikelihood(THREADS);
+        double initial = likelihood.getLogLikelihood();
+
+        likelihood.storeModelState();
+        treeModel.setNodeHeight(treeModel.getInternalNode(3),
+                treeModel.getNodeHeight(treeModel.getInternalNode(3)) * 0.99);
+        assertEquals(expectedLogLikelihood(), likelihood.getLogLikelihood(), 1E-8);
+
+        likelihood.restoreModelState();
+        assertEquals(initial, likelihood.getLogLikelihood(), 0.0);
+        assertEquals(initial, createLikelihood(1).getLogLikelihood(), 1E-8);
+    }
+
+    public void testTipCompression() throws Exception {
+        ReferencePatternStates states = new ReferencePatternStates(patternLists.get(0));
+        PatternList patterns = patternLists.get(0);
+        for (int i = 0; i < patterns.getTaxonCount(); i++) {
+            for (int j = 0; j < patterns.getPatternCount(); j++) {
+                assertEquals(Math.min(patterns.getPatternState(i, j), 4), states.getPatternState(i, j));
+            }
+        }
+
+        System.setProperty("java.tip.compression", "true");
+        try {
+            TreeDataLikelihood likelihood = createLikelihood(THREADS);
+            double initial = likelihood.getLogLikelihood();
+            assertEquals(expectedLogLikelihood(), initial, 1E-8);
+
+            likelihood.storeModelState();
+            treeModel.setNodeHeight(treeModel.getInternalNode(3),
+                    treeModel.getNodeHeight(treeModel.getInternalNode(3)) * 0.99);
+            assertEquals(expectedLogLikelihood(), likelihood.getLogLikelihood(), 1E-8);
+            kappas.get(2).setParameterValue(0, 10.0);
+            assertEquals(expectedLogLikelihood(), likelihood.getLogLikelihood(), 1E-8);
+
+            likelihood.restoreModelState();
+            assertEquals(initial, likelihood.getLogLikelihood(), 0.0);
+        } finally {
+            System.clearProperty("java.tip.compression");
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package test.dr.evomodel.treedatalikelihood.continuous;
+
+import dr.evomodel.treedatalikelihood.continuous.IntegratedFactorAnalysisLikelihood;
+import dr.util.TaskPool;
+
+/**
+ * Test that the shared precision cache gives the same tip partials as the uncached serial computation
+ */
+public class IntegratedFactorPrecisionCacheTest extends ContinuousTraitTest {
+
+    private static final int THREADS = 3;
+
+    private IntegratedFactorAnalysisLikelihood cachedModel;
+
+    public IntegratedFactorPrecisionCacheTest(String name) {
+        super(name);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+
+        cachedModel = new IntegratedFactorAnalysisLikelihood("cachedFactors",
+                dataModelFactor.getParameter(),
+                dataModelFactor.getDataMissingIndicators(),
+                dataModelFactor.getLoadings(),
+                dataModelFactor.getPrecision(), 0.0,
+                new TaskPool(dataModelFactor.getNumberOfTaxa(), THREADS),
+                IntegratedFactorAnalysisLikelihood.CacheProvider.USE_CACHE);
+    }
+
+    private void compareTipPartials() {
+        for (int taxon = 0; taxon < dataModelFactor.getNumberOfTaxa(); ++taxon) {
+            double[] expected = dataModelFactor.getTipPartial(taxon, false);
+            double[] cached = cachedModel.getTipPartial(taxon, false);
+            for (int i = 0; i < expected.length; ++i) {
+                assertEquals(expected[i], cached[i], 0.0);
+            }
+        }
+    }
+
+    public void testCachedPrecisions() {
+        compareTipPartials();
+
+        // four taxa are fully observed and the unobserved chimp does not use the cache
+        assertEquals(0.6, cachedModel.getPrecisionCacheHitRate(), 1E-12);
+
+        dataModelFactor.getParameter().setParameterValue(0, 4.0);
+        compareTipPartials();
+
+        dataModelFactor.getLoadings().setParameterValue(1, 0, 0.25);
+        compareTipPartials();
+
+        dataModelFactor.getPrecision().setParameterValue(2, 2.0);
+        compareTipPartials();
+    }
+
+    public void testRestoredPrecisions() {
+        compareTipPartials();
+
+        dataModelFactor.storeModelState();
+        cachedModel.storeModelState();
+
+        dataModelFactor.getLoadings().setParameterValue(2, 1, -1.0);
+        compareTipPartials();
+
+        dataModelFactor.restoreModelState();
+        cachedModel.restoreModelState();
+        compareTipPartials();
+    }
+}
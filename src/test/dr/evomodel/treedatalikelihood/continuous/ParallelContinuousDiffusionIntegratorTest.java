@@ -0,0 +1,109 @@
+package test.dr.evomodel.treedatalikelihood.continuous;
+
+import dr.evolution.tree.TreeTrait;
+import dr.evomodel.branchratemodel.BranchRateModel;
+import dr.evomodel.branchratemodel.StrictClockBranchRates;
+import dr.evomodel.treedatalikelihood.TreeDataLikelihood;
+import dr.evomodel.treedatalikelihood.continuous.*;
+import dr.evomodel.treedatalikelihood.continuous.cdi.PrecisionType;
+import dr.evomodel.treelikelihood.utilities.TreeTraitLogger;
+import dr.inference.model.CompoundParameter;
+import dr.inference.model.Parameter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test that the integrators give the same likelihoods and conditional moments when they use several threads
+ */
+public class ParallelContinuousDiffusionIntegratorTest extends ContinuousTraitTest {
+
+    private static final int THREADS = 3;
+
+    public ParallelContinuousDiffusionIntegratorTest(String name) {
+        super(name);
+    }
+
+    private CompoundParameter twoTraitParameter() {
+        double[][] values = {
+                {-1.0, 2.0, 3.0, 0.5, 1.5, -2.0},
+                {10.0, 12.0, 14.0, 3.0, -1.0, 2.0},
+                {0.5, -2.0, 5.5, 2.5, 0.0, 1.0},
+                {2.0, 5.0, -8.0, -3.0, 4.0, 1.5},
+                {11.0, 1.0, -1.5, 0.0, 2.0, -4.0},
+                {1.0, 2.5, 4.0, 6.0, -2.5, 3.0}};
+        String[] taxa = {"human", "chimp", "bonobo", "gorilla", "orangutan", "siamang"};
+        Parameter[] dataTraits = new Parameter[taxa.length];
+        for (int i = 0; i < taxa.length; i++) {
+            dataTraits[i] = new Parameter.Default(taxa[i], values[i]);
+        }
+        return new CompoundParameter("trait", dataTraits);
+    }
+
+    private ContinuousTraitPartialsProvider twoTraitDataModel(PrecisionType precisionType, boolean missing) {
+        CompoundParameter parameter = twoTraitParameter();
+        boolean[] missingIndicators = new boolean[parameter.getDimension()];
+        if (missing) {
+            missingIndicators[3] = true;
+            missingIndicators[4] = true;
+            missingIndicators[13] = true;
+            missingIndicators[20] = true;
+        }
+        return new ContinuousTraitDataModel("dataModel", parameter, missingIndicators, true,
+                dimTrait, 2, precisionType);
+    }
+
+    private String[] evaluate(DiffusionProcessDelegate diffusionProcessDelegate,
+                              ContinuousTraitPartialsProvider data, boolean allowSingular,
+                              boolean conditionalMoments, int threadCount) {
+        ContinuousDataLikelihoodDelegate likelihoodDelegate = new ContinuousDataLikelihoodDelegate(treeModel,
+                diffusionProcessDelegate, data, rootPrior, rateTransformation, rateModel, allowSingular);
+        likelihoodDelegate.setThreadCount(threadCount);
+        TreeDataLikelihood dataLikelihood = new TreeDataLikelihood(likelihoodDelegate, treeModel, rateModel);
+
+        String logLikelihood = Double.toString(dataLikelihood.getLogLikelihood());
+        if (!conditionalMoments) {
+            return new String[]{logLikelihood};
+        }
+
+        likelihoodDelegate.addFullConditionalDensityTrait("trait");
+        TreeTraitLogger treeTraitLogger = new TreeTraitLogger(treeModel,
+                new TreeTrait[]{dataLikelihood.getTreeTrait("fcd.trait")},
+                TreeTraitLogger.NodeRestriction.EXTERNAL, false);
+        return new String[]{logLikelihood, treeTraitLogger.getReport()};
+    }
+
+    private void compare(DiffusionProcessDelegate diffusionProcessDelegate,
+                         ContinuousTraitPartialsProvider data, boolean allowSingular, boolean conditionalMoments) {
+        String[] expected = evaluate(diffusionProcessDelegate, data, allowSingular, conditionalMoments, 1);
+        String[] parallel = evaluate(diffusionProcessDelegate, data, allowSingular, conditionalMoments, THREADS);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], parallel[i]);
+        }
+    }
+
+    public void testScalarTraits() {
+        compare(new HomogeneousDiffusionModelDelegate(treeModel, diffusionModel),
+                twoTraitDataModel(PrecisionType.SCALAR, false), false, false);
+    }
+
+    public void testFullTraits() {
+        DiffusionProcessDelegate diffusionProcessDelegate = new HomogeneousDiffusionModelDelegate(treeModel, diffusionModel);
+        compare(diffusionProcessDelegate, twoTraitDataModel(PrecisionType.FULL, true), true, true);
+        compare(diffusionProcessDelegate, twoTraitDataModel(PrecisionType.FULL, true), false, false);
+    }
+
+    public void testDriftTraits() {
+        List<BranchRateModel> driftModels = new ArrayList<BranchRateModel>();
+        driftModels.add(new StrictClockBranchRates(new Parameter.Default("rate.1", new double[]{100.0})));
+        driftModels.add(new StrictClockBranchRates(new Parameter.Default("rate.2", new double[]{200.0})));
+        driftModels.add(new StrictClockBranchRates(new Parameter.Default("rate.3", new double[]{-200.0})));
+        compare(new DriftDiffusionModelDelegate(treeModel, diffusionModel, driftModels),
+                twoTraitDataModel(PrecisionType.FULL, true), false, true);
+    }
+
+    public void testSingleTraitByLevel() {
+        // with one trait the nodes at each level of the tree are updated in parallel
+        compare(new HomogeneousDiffusionModelDelegate(treeModel, diffusionModel), dataModel, true, true);
+    }
+}
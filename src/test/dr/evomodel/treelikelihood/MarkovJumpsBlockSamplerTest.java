@@ -0,0 +1,123 @@
+package test.dr.evomodel.treelikelihood;
+
+import dr.evolution.datatype.Nucleotides;
+import dr.evomodel.substmodel.FrequencyModel;
+import dr.evomodel.substmodel.UniformizedSubstitutionModel;
+import dr.evomodel.substmodel.nucleotide.HKY;
+import dr.evomodel.treelikelihood.MarkovJumpsBlockSampler;
+import dr.inference.markovjumps.CompactStateHistories;
+import dr.inference.markovjumps.MarkovJumpsType;
+import dr.inference.model.Parameter;
+import dr.math.MathUtils;
+import junit.framework.TestCase;
+
+/**
+ * Test that the sampled Markov jumps and histories do not depend on the number of threads for a given seed
+ */
+public class MarkovJumpsBlockSamplerTest extends TestCase {
+
+    // more than one block with a partial block at the end
+    private static final int SITE_COUNT = 300;
+    private static final int BRANCH_COUNT = 3;
+    private static final double[] CATEGORY_RATES = {0.5, 1.5};
+
+    private HKY hky;
+    private int stateCount;
+    private int[][] states;
+    private int[] rateCategory;
+    private double[][] probabilities;
+
+    public void setUp() {
+        MathUtils.setSeed(666);
+
+        double[] pi = {0.45, 0.05, 0.30, 0.20};
+        FrequencyModel f = new FrequencyModel(Nucleotides.INSTANCE, new Parameter.Default(pi));
+        hky = new HKY(new Parameter.Default(1, 2.0), f);
+        stateCount = hky.getDataType().getStateCount();
+
+        states = new int[BRANCH_COUNT + 1][SITE_COUNT];
+        for (int[] nodeStates : states) {
+            for (int j = 0; j < SITE_COUNT; j++) {
+                nodeStates[j] = MathUtils.nextInt(stateCount);
+            }
+        }
+        rateCategory = new int[SITE_COUNT];
+        for (int j = 0; j < SITE_COUNT; j++) {
+            rateCategory[j] = MathUtils.nextInt(CATEGORY_RATES.length);
+        }
+
+        probabilities = new double[BRANCH_COUNT][CATEGORY_RATES.length * stateCount * stateCount];
+        double[] tmp = new double[stateCount * stateCount];
+        for (int b = 0; b < BRANCH_COUNT; b++) {
+            for (int c = 0; c < CATEGORY_RATES.length; c++) {
+                hky.getTransitionProbabilities(getBranchLength(b) * CATEGORY_RATES[c], tmp);
+                System.arraycopy(tmp, 0, probabilities[b], c * stateCount * stateCount, tmp.length);
+            }
+        }
+    }
+
+    private double getBranchLength(int branch) {
+        return 0.5 + branch;
+    }
+
+    /**
+     * @return the counts of each branch followed by the histories of each branch and site
+     */
+    private Object[] sample(int threadCount) {
+        UniformizedSubstitutionModel markovJumps = new UniformizedSubstitutionModel(hky, MarkovJumpsType.COUNTS);
+        double[] registration = new double[stateCount * stateCount];
+        for (int i = 0; i < stateCount; i++) {
+            for (int j = 0; j < stateCount; j++) {
+                registration[i * stateCount + j] = i == j ? 0.0 : 1.0;
+            }
+        }
+        markovJumps.setRegistration(registration);
+
+        MarkovJumpsBlockSampler sampler = new MarkovJumpsBlockSampler(SITE_COUNT, stateCount, threadCount);
+        double[][] counts = new double[BRANCH_COUNT][SITE_COUNT];
+        String[][] histories = new String[BRANCH_COUNT][SITE_COUNT];
+
+        MathUtils.setSeed(1234);
+        for (int b = 0; b < BRANCH_COUNT; b++) {
+            CompactStateHistories[] blockHistories = sampler.createHistories();
+            sampler.sample(markovJumps, getBranchLength(b), 1.0, CATEGORY_RATES, rateCategory, states[b],
+                    states[b + 1], probabilities[b], false, b + 1.0, b, counts[b], blockHistories);
+
+            for (int j = 0; j < SITE_COUNT; j++) {
+                CompactStateHistories history = blockHistories[j / MarkovJumpsBlockSampler.BLOCK_SIZE];
+                int site = j % MarkovJumpsBlockSampler.BLOCK_SIZE;
+                assertEquals(counts[b][j], history.getChangeCount(site), 0.0);
+                histories[b][j] = history.toStringChanges(site, j + 1, Nucleotides.INSTANCE);
+            }
+        }
+        sampler.shutdown();
+
+        return new Object[]{counts, histories};
+    }
+
+    public void testThreads() {
+        Object[] expected = sample(1);
+        double[][] expectedCounts = (double[][]) expected[0];
+        String[][] expectedHistories = (String[][]) expected[1];
+
+        double total = 0.0;
+        for (double[] branchCounts : expectedCounts) {
+            for (double count : branchCounts) {
+                total += count;
+            }
+        }
+        assertTrue(total > 0.0);
+
+        for (int threadCount : new int[]{2, 3, 4}) {
+            Object[] parallel = sample(threadCount);
+            double[][] counts = (double[][]) parallel[0];
+            String[][] histories = (String[][]) parallel[1];
+            for (int b = 0; b < BRANCH_COUNT; b++) {
+                for (int j = 0; j < SITE_COUNT; j++) {
+                    assertEquals(expectedCounts[b][j], counts[b][j], 0.0);
+                    assertEquals(expectedHistories[b][j], histories[b][j]);
+                }
+            }
+        }
+    }
+}
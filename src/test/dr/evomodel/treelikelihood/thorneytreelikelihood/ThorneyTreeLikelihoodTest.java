@@ -69,6 +69,44 @@ public class ThorneyTreeLikelihoodTest extends TestCase {
         // NO error?
         assertTrue(true);
     }
+
+    public void testIncrementalUpdates() throws Exception {
+
+        NewickImporter importer = new NewickImporter("(((1:1.0,2:1.0,3:1.0,4:1.0):1.0,(5:2.0,6:2.0):0.5):1.0,(7:1.0,8:1.0,9:1.0,10:1.0):2.0);");
+        NewickImporter importer2 = new NewickImporter("(((((1:0.2,2:0.2):0.3,3:0.5):0.2,4:0.7):1.3,(5:1.5,6:1.5):0.5):1.0,(((7:0.4,8:0.4):0.3,9:0.7):0.4,10:1.1):1.9);");
+
+        Tree constraints = importer.importTree(null);
+        ConstrainedTreeModel treeModel = new ConstrainedTreeModel("bigTree", new BigFastTreeModel(importer2.importTree(null)), constraints);
+        BranchLengthProvider provider = new ConstrainedTreeBranchLengthProvider(treeModel, constraints);
+        ThorneyBranchLengthLikelihoodDelegate delegate = new StrictClockBranchLengthLikelihoodDelegate("strictClockDelegate", new Parameter.Default(1.0), 1.0);
+        ThorneyTreeLikelihood likelihood = new ThorneyTreeLikelihood("incrementalLikelihood", treeModel, provider, delegate);
+
+        dr.math.MathUtils.setSeed(42);
+        ConstrainedTreeOperator op = new ConstrainedTreeOperator(treeModel, 1.0, new ExchangeOperator(0, null, 1.0));
+
+        double logL = likelihood.getLogLikelihood();
+        for (int i = 0; i < 200; i++) {
+            treeModel.storeModelState();
+            likelihood.storeModelState();
+
+            op.doOperation();
+            double proposedLogL = likelihood.getLogLikelihood();
+
+            likelihood.makeDirty();
+            assertEquals(likelihood.getLogLikelihood(), proposedLogL, 1E-10);
+
+            if (dr.math.MathUtils.nextBoolean()) {
+                treeModel.restoreModelState();
+                likelihood.restoreModelState();
+                assertEquals(logL, likelihood.getLogLikelihood(), 1E-10);
+            } else {
+                treeModel.acceptModelState();
+                likelihood.acceptModelState();
+                logL = proposedLogL;
+            }
+        }
+    }
+
 /*
     public void testAfterPolytomyRootChange() throws TreeUtils.MissingTaxonException {
 
@@ -0,0 +1,81 @@
+package test.dr.geo;
+
+import dr.geo.BinnedKernelDensityEstimator2D;
+import dr.geo.KernelDensityEstimator2D;
+import dr.geo.contouring.ContourMode;
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Test that the binned density estimates are close to those of KernelDensityEstimator2D
+ */
+public class BinnedKernelDensityEstimator2DTest extends TestCase {
+
+    private static final int COUNT = 4000;
+
+    private double[] x;
+    private double[] y;
+
+    public void setUp() {
+        Random random = new Random(1234);
+        x = new double[COUNT];
+        y = new double[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            // two overlapping clusters with the second half of the points further out
+            double scale = i < COUNT / 2 ? 1.0 : 3.0;
+            x[i] = random.nextGaussian() * scale + (i % 2 == 0 ? 2.0 : -1.0);
+            y[i] = random.nextGaussian() * scale * 0.5;
+        }
+    }
+
+    public void testExact() {
+        BinnedKernelDensityEstimator2D binned = new BinnedKernelDensityEstimator2D(65, COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            binned.addPoint(x[i], y[i]);
+        }
+        assertTrue(binned.isExact());
+
+        double[][] expected = new KernelDensityEstimator2D(x, y, true).getKDE();
+        double[][] kde = ((KernelDensityEstimator2D) binned.getContourMaker(ContourMode.JAVA, true)).getKDE();
+        for (int i = 0; i < expected.length; i++) {
+            for (int j = 0; j < expected[i].length; j++) {
+                assertEquals(expected[i][j], kde[i][j], 0.0);
+            }
+        }
+    }
+
+    public void testBinned() {
+        // only the first 100 points fix the initial grid so it has to grow for the rest
+        BinnedKernelDensityEstimator2D binned = new BinnedKernelDensityEstimator2D(257, 100);
+        for (int i = 0; i < COUNT; i++) {
+            binned.addPoint(x[i], y[i]);
+        }
+        assertFalse(binned.isExact());
+        assertEquals(COUNT, binned.getCount());
+
+        KernelDensityEstimator2D exact = new KernelDensityEstimator2D(x, y, true);
+        KernelDensityEstimator2D kde = (KernelDensityEstimator2D) binned.getContourMaker(ContourMode.JAVA, true);
+
+        double[] gx = exact.getXGrid();
+        double[] gy = exact.getYGrid();
+        for (int i = 0; i < gx.length; i++) {
+            assertEquals(gx[i], kde.getXGrid()[i], 1E-10);
+            assertEquals(gy[i], kde.getYGrid()[i], 1E-10);
+        }
+
+        double max = 0.0;
+        for (double[] row : exact.getKDE()) {
+            for (double z : row) {
+                max = Math.max(max, z);
+            }
+        }
+        for (int i = 0; i < gx.length; i++) {
+            for (int j = 0; j < gy.length; j++) {
+                assertEquals(exact.getKDE()[i][j], kde.getKDE()[i][j], 0.02 * max);
+            }
+        }
+
+        assertEquals(exact.findLevelCorrespondingToMass(0.8), kde.findLevelCorrespondingToMass(0.8), 0.02 * max);
+    }
+}
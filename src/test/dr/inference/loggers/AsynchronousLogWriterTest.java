@@ -0,0 +1,235 @@
+package test.dr.inference.loggers;
+
+import dr.evolution.io.NewickImporter;
+import dr.evolution.tree.FlexibleTree;
+import dr.evolution.tree.NodeRef;
+import dr.evomodel.tree.DefaultTreeModel;
+import dr.evomodel.tree.TreeLogger;
+import dr.evomodel.tree.TreeModel;
+import dr.inference.loggers.AsynchronousLogWriter;
+import dr.inference.loggers.LogFormatter;
+import dr.inference.loggers.MCLogger;
+import dr.inference.loggers.TabDelimitedFormatter;
+import dr.inference.model.Parameter;
+import junit.framework.TestCase;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test that loggers writing through an asynchronous log writer produce the same output as writing directly
+ */
+public class AsynchronousLogWriterTest extends TestCase {
+
+    private static final String NEWICK = "((a:1.0,b:2.0):0.5,(c:1.5,(d:0.25,e:0.75):0.5):1.0);";
+
+    private static final int STATE_COUNT = 50;
+
+    /**
+     * A formatter that records the calls made to it and can be made to write slowly.
+     */
+    private static class RecordingFormatter implements LogFormatter {
+
+        RecordingFormatter(long delay) {
+            this.delay = delay;
+        }
+
+        public void startLogging(String title) {
+            record("start");
+        }
+
+        public void logHeading(String heading) {
+            record("heading");
+        }
+
+        public void logLine(String line) {
+            record("line");
+        }
+
+        public void logLabels(String[] labels) {
+            record("labels");
+        }
+
+        public void logValues(String[] values) {
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            record(values[0]);
+        }
+
+        public void stopLogging() {
+            record("stop");
+        }
+
+        private void record(String event) {
+            events.add(event);
+        }
+
+        private final long delay;
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    private String logParameter(AsynchronousLogWriter writer) {
+        StringWriter out = new StringWriter();
+        MCLogger logger = new MCLogger(new TabDelimitedFormatter(new PrintWriter(out)), 1, false);
+        logger.setAsynchronousWriter(writer);
+
+        Parameter parameter = new Parameter.Default("x", new double[]{0.0, 1.0, 2.0});
+        logger.add(parameter);
+
+        logger.startLogging();
+        for (int state = 0; state < STATE_COUNT; state++) {
+            for (int i = 0; i < parameter.getDimension(); i++) {
+                parameter.setParameterValue(i, state * (i + 1) / 7.0);
+            }
+            logger.log((long) state);
+        }
+        logger.stopLogging();
+
+        return out.toString();
+    }
+
+    private String logTree(AsynchronousLogWriter writer) throws Exception {
+        TreeModel tree = new DefaultTreeModel(new NewickImporter(NEWICK).importTree(null));
+
+        StringWriter out = new StringWriter();
+        TreeLogger logger = new TreeLogger(tree, new TabDelimitedFormatter(new PrintWriter(out)), 1, true, true, true);
+        logger.setAsynchronousWriter(writer);
+
+        logger.startLogging();
+        for (int state = 0; state < STATE_COUNT; state++) {
+            // the tree keeps changing after it has been logged
+            NodeRef root = tree.getRoot();
+            tree.setNodeHeight(root, tree.getNodeHeight(root) + 0.125);
+            logger.log((long) state);
+        }
+        logger.stopLogging();
+
+        return out.toString();
+    }
+
+    private String logFlexibleTree(AsynchronousLogWriter writer) throws Exception {
+        FlexibleTree tree = new FlexibleTree(new NewickImporter(NEWICK).importTree(null));
+
+        StringWriter out = new StringWriter();
+        TreeLogger logger = new TreeLogger(tree, new TabDelimitedFormatter(new PrintWriter(out)), 1, true, true, true);
+        logger.setAsynchronousWriter(writer);
+
+        logger.startLogging();
+        for (int state = 0; state < STATE_COUNT; state++) {
+            // lengths set directly that aren't exactly the differences of the heights calculated from them
+            for (int i = 0; i < tree.getNodeCount(); i++) {
+                NodeRef node = tree.getNode(i);
+                if (!tree.isRoot(node)) {
+                    tree.setBranchLength(node, 0.1 * ((state + i) % 7 + 1));
+                }
+            }
+            logger.log((long) state);
+        }
+        logger.stopLogging();
+
+        return out.toString();
+    }
+
+    public void testParameterOutput() {
+        String expected = logParameter(null);
+        assertEquals(expected, logParameter(new AsynchronousLogWriter(1)));
+        assertEquals(expected, logParameter(new AsynchronousLogWriter(16)));
+    }
+
+    public void testTreeOutput() throws Exception {
+        String expected = logTree(null);
+        assertTrue(expected.contains("tree STATE_" + (STATE_COUNT - 1)));
+        assertEquals(expected, logTree(new AsynchronousLogWriter(1)));
+        assertEquals(expected, logTree(new AsynchronousLogWriter(16)));
+    }
+
+    public void testFlexibleTreeOutput() throws Exception {
+        String expected = logFlexibleTree(null);
+        assertEquals(expected, logFlexibleTree(new AsynchronousLogWriter(1)));
+        assertEquals(expected, logFlexibleTree(new AsynchronousLogWriter(16)));
+    }
+
+    public void testFlush() {
+        AsynchronousLogWriter writer = new AsynchronousLogWriter(4);
+        final List<Integer> written = Collections.synchronizedList(new ArrayList<Integer>());
+
+        for (int i = 0; i < 20; i++) {
+            final int index = i;
+            writer.submit(new Runnable() {
+                public void run() {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                    written.add(index);
+                }
+            });
+        }
+        writer.flush();
+
+        assertEquals(20, written.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, (int) written.get(i));
+        }
+    }
+
+    public void testStopAfterWriting() {
+        RecordingFormatter formatter = new RecordingFormatter(2);
+        MCLogger logger = new MCLogger(formatter, 1, false);
+        logger.setAsynchronousWriter(new AsynchronousLogWriter(2));
+        logger.add(new Parameter.Default("x", 1.0));
+
+        logger.startLogging();
+        for (int state = 0; state < 10; state++) {
+            logger.log((long) state);
+        }
+        logger.stopLogging();
+
+        // everything queued has been written before the formatter is stopped
+        List<String> events = formatter.events;
+        assertEquals("start", events.get(0));
+        assertEquals("labels", events.get(1));
+        for (int state = 0; state < 10; state++) {
+            assertEquals(Integer.toString(state), events.get(state + 2));
+        }
+        assertEquals("stop", events.get(events.size() - 1));
+        assertEquals(13, events.size());
+    }
+
+    public void testError() {
+        AsynchronousLogWriter writer = new AsynchronousLogWriter(4);
+        final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+
+        writer.submit(new Runnable() {
+            public void run() {
+                throw new IllegalStateException("disk full");
+            }
+        });
+
+        try {
+            writer.flush();
+            fail("The error should have been rethrown");
+        } catch (RuntimeException re) {
+            assertTrue(re.getCause() instanceof IllegalStateException);
+            assertEquals("disk full", re.getCause().getMessage());
+        }
+
+        // the error is only reported once and the writer carries on
+        writer.submit(new Runnable() {
+            public void run() {
+                written.add("after");
+            }
+        });
+        writer.flush();
+        assertEquals(1, written.size());
+    }
+}
@@ -0,0 +1,152 @@
+package test.dr.inference.loggers;
+
+import dr.inference.distribution.DistributionLikelihood;
+import dr.inference.distribution.NormalDistributionModel;
+import dr.inference.loggers.Logger;
+import dr.inference.loggers.RuntimeMetricsLogger;
+import dr.inference.mcmc.MCMC;
+import dr.inference.model.CompoundLikelihood;
+import dr.inference.model.Likelihood;
+import dr.inference.model.Parameter;
+import dr.inference.operators.AdaptationMode;
+import dr.inference.operators.MCMCOperator;
+import dr.inference.operators.RandomWalkOperator;
+import dr.math.MathUtils;
+import dr.util.RuntimeMetrics;
+import dr.util.TaskPool;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test that the runtime metrics registry records likelihoods, operators, models and thread pools during a chain
+ */
+public class RuntimeMetricsTest extends TestCase {
+
+    private static final int CHAIN_LENGTH = 2000;
+
+    public void setUp() {
+        MathUtils.setSeed(666);
+        RuntimeMetrics.reset();
+    }
+
+    public void tearDown() {
+        RuntimeMetrics.setEnabled(false);
+        RuntimeMetrics.reset();
+    }
+
+    private static RuntimeMetrics.Metric findMetric(RuntimeMetrics.Category category, String name) {
+        for (RuntimeMetrics.Metric metric : RuntimeMetrics.getMetrics(category)) {
+            if (metric.getName().equals(name)) {
+                return metric;
+            }
+        }
+        fail("No " + category + " metric for " + name);
+        return null;
+    }
+
+    public void testHistogram() {
+        RuntimeMetrics.setEnabled(true);
+        Object owner = new Object();
+        for (int i = 0; i < 99; i++) {
+            RuntimeMetrics.record(RuntimeMetrics.Category.LIKELIHOOD, owner, 1000);
+        }
+        RuntimeMetrics.record(RuntimeMetrics.Category.LIKELIHOOD, owner, 1000000);
+
+        RuntimeMetrics.Metric metric = RuntimeMetrics.getMetric(RuntimeMetrics.Category.LIKELIHOOD, owner);
+        assertEquals(100, metric.getCount());
+        assertEquals(99 * 1000 + 1000000, metric.getTotalNanos());
+        assertEquals(99, metric.getHistogram()[10]);
+        assertEquals(1, metric.getHistogram()[20]);
+        assertEquals(1.024, metric.getQuantileMicros(0.5), 0.0);
+        assertEquals(1.024, metric.getQuantileMicros(0.99), 0.0);
+        assertEquals(1048.576, metric.getQuantileMicros(1.0), 0.0);
+        assertTrue(Double.isNaN(metric.getUtilisation()));
+    }
+
+    public void testDisabled() {
+        RuntimeMetrics.record(RuntimeMetrics.Category.LIKELIHOOD, this, 1000);
+        RuntimeMetrics.recordPool(this, 1000, 1000, 2);
+        new TaskPool(10, 2).fork((task, thread) -> { });
+        assertTrue(RuntimeMetrics.getMetrics(RuntimeMetrics.Category.LIKELIHOOD).isEmpty());
+        assertTrue(RuntimeMetrics.getMetrics(RuntimeMetrics.Category.THREAD_POOL).isEmpty());
+    }
+
+    public void testTaskPoolUtilisation() {
+        RuntimeMetrics.setEnabled(true);
+        TaskPool pool = new TaskPool(10, 2);
+        pool.fork((task, thread) -> { });
+        int sum = pool.mapReduce((start, end, thread) -> end - start, Integer::sum);
+        assertEquals(10, sum);
+
+        RuntimeMetrics.Metric metric = RuntimeMetrics.getMetric(RuntimeMetrics.Category.THREAD_POOL, pool);
+        assertEquals(2, metric.getCount());
+        assertTrue(metric.getUtilisation() >= 0.0 && metric.getUtilisation() <= 1.0);
+    }
+
+    public void testChainMetrics() throws Exception {
+        Parameter x = new Parameter.Default("x", 0.0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        Parameter y = new Parameter.Default("y", 0.0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+        List<Likelihood> likelihoods = new ArrayList<Likelihood>();
+        for (Parameter parameter : new Parameter[]{x, y}) {
+            NormalDistributionModel model = new NormalDistributionModel(new Parameter.Default(0.0),
+                    new Parameter.Default(1.0));
+            model.setId(parameter.getId() + ".model");
+            DistributionLikelihood prior = new DistributionLikelihood(model);
+            prior.addData(parameter);
+            prior.setId(parameter.getId() + ".prior");
+            likelihoods.add(prior);
+        }
+        CompoundLikelihood posterior = new CompoundLikelihood(2, likelihoods);
+        posterior.setId("posterior");
+
+        MCMCOperator[] operators = {
+                new RandomWalkOperator(x, 1.0, RandomWalkOperator.BoundaryCondition.reflecting, 1.0,
+                        AdaptationMode.ADAPTATION_OFF),
+                new RandomWalkOperator(y, 1.0, RandomWalkOperator.BoundaryCondition.reflecting, 1.0,
+                        AdaptationMode.ADAPTATION_OFF)
+        };
+
+        File file = File.createTempFile("metrics", ".json");
+        file.deleteOnExit();
+        RuntimeMetricsLogger logger = new RuntimeMetricsLogger(file, RuntimeMetricsLogger.Format.JSON, 500);
+        assertTrue(RuntimeMetrics.isEnabled());
+
+        MCMC mcmc = new MCMC("mcmc");
+        mcmc.setShowOperatorAnalysis(false);
+        mcmc.init(CHAIN_LENGTH, posterior, operators, new Logger[]{logger});
+        mcmc.run();
+
+        long proposals = 0;
+        long outcomes = 0;
+        for (MCMCOperator operator : operators) {
+            String name = operator.getOperatorName();
+            RuntimeMetrics.Metric propose = findMetric(RuntimeMetrics.Category.OPERATOR_PROPOSE, name);
+            assertEquals(operator.getCount(), propose.getCount());
+            assertEquals(operator.getCount(), findMetric(RuntimeMetrics.Category.OPERATOR_EVALUATE, name).getCount());
+            proposals += propose.getCount();
+            outcomes += operator.getAcceptCount() + operator.getRejectCount();
+        }
+        assertEquals(CHAIN_LENGTH, proposals);
+        assertEquals(CHAIN_LENGTH, outcomes);
+
+        for (String name : new String[]{"x", "y"}) {
+            assertTrue(findMetric(RuntimeMetrics.Category.LIKELIHOOD, name + ".prior").getCount() > 0);
+            assertTrue(findMetric(RuntimeMetrics.Category.MODEL_STORE, name + ".model").getCount() > 0);
+            assertTrue(findMetric(RuntimeMetrics.Category.MODEL_RESTORE, name + ".model").getCount() > 0);
+        }
+
+        RuntimeMetrics.Metric pool = findMetric(RuntimeMetrics.Category.THREAD_POOL, "posterior");
+        assertTrue(pool.getCount() > 0);
+        assertTrue(pool.getUtilisation() > 0.0);
+
+        String json = new String(Files.readAllBytes(file.toPath()));
+        assertTrue(json.startsWith("{\n  \"state\": -1,"));
+        assertTrue(json.contains("\"name\": \"posterior\""));
+        assertTrue(json.contains("\"name\": \"x.prior\""));
+    }
+}
@@ -0,0 +1,235 @@
+package test.dr.inference.operators;
+
+import dr.inference.model.Parameter;
+import dr.inference.operators.*;
+import dr.math.MathUtils;
+import dr.math.distributions.NormalDistribution;
+import junit.framework.TestCase;
+
+/**
+ * Test that the cost-aware schedule moves weight towards operators that move further per second
+ */
+public class CostAwareOperatorScheduleTest extends TestCase {
+
+    private static MCMCOperator createOperator(final String name, double weight) {
+        return new SimpleMCMCOperator(weight) {
+            public String getOperatorName() {
+                return name;
+            }
+
+            public double doOperation() {
+                return 0.0;
+            }
+        };
+    }
+
+    private static class JumpingOperator extends SimpleMCMCOperator implements JumpDistanceOperator {
+        JumpingOperator(double weight, double squaredJump) {
+            super(weight);
+            this.squaredJump = squaredJump;
+        }
+
+        public String getOperatorName() {
+            return "jumping";
+        }
+
+        public double doOperation() {
+            return 0.0;
+        }
+
+        public double getSquaredJumpDistance() {
+            return squaredJump;
+        }
+
+        private final double squaredJump;
+    }
+
+    public void setUp() {
+        MathUtils.setSeed(666);
+    }
+
+    private static double selectionFrequency(CostAwareOperatorSchedule schedule, int index, int draws) {
+        int count = 0;
+        for (int i = 0; i < draws; i++) {
+            if (schedule.getNextOperatorIndex() == index) {
+                count++;
+            }
+        }
+        return (double) count / draws;
+    }
+
+    public void testAdaptation() {
+        MCMCOperator cheap = createOperator("cheap", 1.0);
+        MCMCOperator expensive = createOperator("expensive", 1.0);
+        MCMCOperator average = createOperator("average", 2.0);
+
+        CostAwareOperatorSchedule schedule = new CostAwareOperatorSchedule(0, 0.0, 300, 30, 0.25, 2.0);
+        schedule.addOperator(cheap);
+        schedule.addOperator(expensive);
+        schedule.addOperator(average);
+
+        assertTrue(schedule.isCostAware());
+        assertEquals(0.5, selectionFrequency(schedule, 2, 20000), 0.02);
+
+        for (int i = 0; i < 100; i++) {
+            schedule.recordStep(0, 1000, true, 1.0);
+            schedule.recordStep(1, 1000000, true, 1.0);
+            schedule.recordStep(2, 10000, true, 1.0);
+            assertEquals(i < 99, schedule.isCostAware());
+        }
+
+        assertTrue(schedule.isFrozen());
+        assertEquals(2.0, schedule.getWeightFactor(cheap), 0.0);
+        assertEquals(0.25, schedule.getWeightFactor(expensive), 0.0);
+        assertTrue(schedule.getWeightFactor(average) > 0.25 && schedule.getWeightFactor(average) < 2.0);
+
+        // the XML weights are left alone
+        assertEquals(1.0, cheap.getWeight(), 0.0);
+
+        double total = 2.0 + 0.25 + 2.0 * schedule.getWeightFactor(average);
+        assertEquals(2.0 / total, selectionFrequency(schedule, 0, 20000), 0.02);
+        assertEquals(0.25 / total, selectionFrequency(schedule, 1, 20000), 0.02);
+
+        // frozen weights no longer change
+        schedule.recordStep(1, 1, true, 100.0);
+        assertEquals(0.25, schedule.getWeightFactor(expensive), 0.0);
+    }
+
+    public void testNonFiniteChanges() {
+        MCMCOperator first = createOperator("first", 1.0);
+        MCMCOperator second = createOperator("second", 1.0);
+
+        CostAwareOperatorSchedule schedule = new CostAwareOperatorSchedule(0, 0.0, 1000, 2, 0.5, 2.0);
+        schedule.addOperator(first);
+        schedule.addOperator(second);
+
+        schedule.recordStep(0, 1000, true, Double.POSITIVE_INFINITY);
+        schedule.recordStep(1, 1000, true, 1.0);
+
+        assertEquals(0.5, schedule.getWeightFactor(first), 0.0);
+        assertEquals(2.0, schedule.getWeightFactor(second), 0.0);
+        assertTrue(schedule.getReport().contains("second"));
+    }
+
+    public void testJumpDistance() {
+        MCMCOperator far = new JumpingOperator(1.0, 4.0);
+        MCMCOperator near = new JumpingOperator(1.0, 1.0);
+        MCMCOperator other = createOperator("other", 1.0);
+
+        CostAwareOperatorSchedule schedule = new CostAwareOperatorSchedule(0, 0.0, 1000, 1, 0.25, 4.0);
+        schedule.addOperator(far);
+        schedule.addOperator(near);
+        schedule.addOperator(other);
+
+        // the log posterior changes are ignored for operators that report their jump distance
+        schedule.recordStep(0, 1000, true, 0.0);
+        schedule.recordStep(1, 1000, true, 10.0);
+        schedule.recordStep(2, 1000, true, 1.0);
+        assertEquals(1.6, schedule.getWeightFactor(far), 1E-10);
+        assertEquals(0.4, schedule.getWeightFactor(near), 1E-10);
+        // the only operator measured by the log posterior is compared with itself
+        assertEquals(1.0, schedule.getWeightFactor(other), 1E-10);
+
+        // a rejected move doesn't jump
+        schedule.recordStep(0, 1000, false, 0.0);
+        assertEquals(4.0 / 3.0, schedule.getWeightFactor(far), 1E-10);
+        assertEquals(2.0 / 3.0, schedule.getWeightFactor(near), 1E-10);
+    }
+
+    public void testAdaptationState() {
+        MCMCOperator first = createOperator("first", 1.0);
+        MCMCOperator second = createOperator("second", 1.0);
+
+        CostAwareOperatorSchedule schedule = new CostAwareOperatorSchedule(0, 0.0, 4, 1, 0.5, 2.0);
+        schedule.addOperator(first);
+        schedule.addOperator(second);
+        for (int i = 0; i < 4; i++) {
+            schedule.recordStep(i % 2, 1000, true, i % 2 + 1.0);
+        }
+        assertTrue(schedule.isFrozen());
+
+        // as restored from a checkpoint
+        CostAwareOperatorSchedule resumed = new CostAwareOperatorSchedule(0, 0.0, 4, 1, 0.5, 2.0);
+        resumed.addOperator(first);
+        resumed.addOperator(second);
+        resumed.setAdaptationState(schedule.getAdaptationCount(), schedule.getWeightFactors());
+
+        assertTrue(resumed.isFrozen());
+        assertFalse(resumed.isCostAware());
+        assertEquals(schedule.getWeightFactor(first), resumed.getWeightFactor(first), 0.0);
+        assertEquals(schedule.getWeightFactor(second), resumed.getWeightFactor(second), 0.0);
+
+        // part way through the adaptation period it carries on adapting
+        resumed = new CostAwareOperatorSchedule(0, 0.0, 4, 1, 0.5, 2.0);
+        resumed.addOperator(first);
+        resumed.addOperator(second);
+        resumed.setAdaptationState(2, new double[]{0.5, 2.0});
+        assertFalse(resumed.isFrozen());
+        assertEquals(0.5, resumed.getWeightFactor(first), 0.0);
+        resumed.recordStep(0, 1000, true, 1.0);
+        resumed.recordStep(1, 1000, true, 1.0);
+        assertTrue(resumed.isFrozen());
+        assertEquals(1.0, resumed.getWeightFactor(first), 1E-10);
+    }
+
+    public void testStandardizedJump() {
+        StandardizedJump small = new StandardizedJump();
+        StandardizedJump large = new StandardizedJump();
+
+        double[] values = {1.0, 3.0, 2.0, 5.0, 4.0};
+        for (int i = 1; i < values.length; i++) {
+            small.reset();
+            large.reset();
+            small.add(0, values[i - 1] * 1.0E-4, values[i] * 1.0E-4);
+            large.add(0, values[i - 1] * 1.0E3, values[i] * 1.0E3);
+            assertEquals(small.getSquaredJump(), large.getSquaredJump(), 1E-10 * large.getSquaredJump());
+        }
+        // the last jump of 1 is from values 1, 3, 2 and 5 with a variance of 35/12
+        assertEquals(12.0 / 35.0, large.getSquaredJump(), 1E-10);
+    }
+
+    private static Parameter createParameter(String name, double value) {
+        Parameter parameter = new Parameter.Default(name, value);
+        parameter.addBounds(new Parameter.DefaultBounds(Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 1));
+        return parameter;
+    }
+
+    public void testParameterScales() {
+        // the same random walk relative to the spread of two parameters of very different scales
+        Parameter location = createParameter("location", 100.0);
+        Parameter rate = createParameter("rate", 1.0E-3);
+        NormalDistribution[] targets = {new NormalDistribution(100.0, 10.0), new NormalDistribution(1.0E-3, 1.0E-4)};
+        Parameter[] parameters = {location, rate};
+
+        RandomWalkOperator locationOperator = new RandomWalkOperator(location, 20.0,
+                RandomWalkOperator.BoundaryCondition.reflecting, 1.0, AdaptationMode.ADAPTATION_OFF);
+        RandomWalkOperator rateOperator = new RandomWalkOperator(rate, 2.0E-4,
+                RandomWalkOperator.BoundaryCondition.reflecting, 1.0, AdaptationMode.ADAPTATION_OFF);
+
+        RandomWalkOperator[] operators = {locationOperator, rateOperator};
+
+        CostAwareOperatorSchedule schedule = new CostAwareOperatorSchedule(0, 0.0, 20000, 100, 0.1, 10.0);
+        schedule.addOperator(locationOperator);
+        schedule.addOperator(rateOperator);
+
+        while (!schedule.isFrozen()) {
+            int index = schedule.getNextOperatorIndex();
+            Parameter parameter = parameters[index];
+            double oldValue = parameter.getParameterValue(0);
+
+            double logHastings = operators[index].doOperation();
+            double logRatio = targets[index].logPdf(parameter.getParameterValue(0)) -
+                    targets[index].logPdf(oldValue) + logHastings;
+
+            boolean accepted = Math.log(MathUtils.nextDouble()) < logRatio;
+            if (!accepted) {
+                parameter.setParameterValue(0, oldValue);
+            }
+            schedule.recordStep(index, 1000, accepted, 0.0);
+        }
+
+        // neither is pinned to a bound by the units of its parameter
+        assertEquals(1.0, schedule.getWeightFactor(locationOperator), 0.2);
+        assertEquals(1.0, schedule.getWeightFactor(rateOperator), 0.2);
+    }
+}
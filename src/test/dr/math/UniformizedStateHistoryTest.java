@@ -7,6 +7,7 @@ import dr.evolution.datatype.Nucleotides;
 import dr.inference.markovjumps.*;
 import dr.inference.model.Parameter;
 import dr.math.MathUtils;
+import dr.math.MersenneTwisterFast;
 import dr.math.matrixAlgebra.Vector;
 
 import java.util.Arrays;
@@ -255,6 +256,54 @@ public class UniformizedStateHistoryTest extends MathTestCase {
             throw new RuntimeException("Subordinated process exception");
         }
     }    
+
+    public void testCompactHistoriesWithGenerator() throws Exception {
+
+        double startingTime = 1.0;
+        double endingTime = 3.0;
+        int sites = 200;
+
+        double[] tmp = new double[stateCount * stateCount];
+        hky.getTransitionProbabilities(endingTime - startingTime, tmp);
+
+        double[] lambda = new double[stateCount * stateCount];
+        hky.getInfinitesimalMatrix(lambda);
+
+        // two generators with the same seed and separate subordinators give the same histories
+        MersenneTwisterFast random1 = new MersenneTwisterFast();
+        random1.setSeed(1234);
+        MersenneTwisterFast random2 = new MersenneTwisterFast();
+        random2.setSeed(1234);
+        SubordinatedProcess process2 = new SubordinatedProcess(lambda, stateCount);
+
+        CompactStateHistories histories = new CompactStateHistories(sites);
+        String[] expected = new String[sites];
+        for (int i = 0; i < sites; i++) {
+            int startingState = i % stateCount;
+            int endingState = (i / stateCount) % stateCount;
+            double transitionProbability = tmp[startingState * stateCount + endingState];
+
+            StateHistory history1 = UniformizedStateHistory.simulateConditionalOnEndingState(startingTime,
+                    startingState, endingTime, endingState, transitionProbability, stateCount, process, random1);
+            StateHistory history2 = UniformizedStateHistory.simulateConditionalOnEndingState(startingTime,
+                    startingState, endingTime, endingState, transitionProbability, stateCount, process2, random2);
+            assertEquals(history1.toStringChanges(i + 1, Nucleotides.INSTANCE),
+                    history2.toStringChanges(i + 1, Nucleotides.INSTANCE));
+
+            history1.rescaleTimesOfEvents(10.0, 5.0);
+            history1.addChangesTo(histories);
+            expected[i] = history1.toStringChanges(i + 1, Nucleotides.INSTANCE);
+        }
+
+        for (int i = 0; i < sites; i++) {
+            assertEquals(expected[i], histories.toStringChanges(i, i + 1, Nucleotides.INSTANCE));
+        }
+        assertEquals(expected[0].replace("{1,", "{"), histories.toStringChanges(0, -1, Nucleotides.INSTANCE));
+
+        histories.clear();
+        assertEquals(-1, histories.getChangeCount(0));
+        assertNull(histories.toStringChanges(0, 1, Nucleotides.INSTANCE));
+    }
 }
 
 /*
@@ -0,0 +1,73 @@
+package test.dr.math.matrixAlgebra;
+
+import dr.math.matrixAlgebra.SymmetricTridiagonalMatrix;
+import junit.framework.TestCase;
+import no.uib.cipr.matrix.DenseCholesky;
+import no.uib.cipr.matrix.DenseMatrix;
+import no.uib.cipr.matrix.DenseVector;
+import no.uib.cipr.matrix.UpperSPDDenseMatrix;
+
+import java.util.Random;
+
+/**
+ * Test that the tridiagonal Cholesky solve agrees with a dense solve in MTJ
+ */
+public class SymmetricTridiagonalMatrixTest extends TestCase {
+
+    private static final int DIMENSION = 20;
+
+    public void testSolve() {
+        Random random = new Random(1234);
+        SymmetricTridiagonalMatrix matrix = new SymmetricTridiagonalMatrix(DIMENSION);
+        double[] diagonal = matrix.getDiagonal();
+        double[] offDiagonal = matrix.getOffDiagonal();
+        for (int i = 0; i < DIMENSION; i++) {
+            diagonal[i] = 2.5 + random.nextDouble();
+            if (i < DIMENSION - 1) {
+                offDiagonal[i] = random.nextDouble() - 1.0;
+            }
+        }
+
+        DenseMatrix dense = new DenseMatrix(DIMENSION, DIMENSION);
+        for (int i = 0; i < DIMENSION; i++) {
+            dense.set(i, i, diagonal[i]);
+            if (i < DIMENSION - 1) {
+                dense.set(i, i + 1, offDiagonal[i]);
+                dense.set(i + 1, i, offDiagonal[i]);
+            }
+        }
+
+        double[] b = new double[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            b[i] = random.nextGaussian();
+        }
+
+        double[] product = new double[DIMENSION];
+        matrix.multiply(b, product);
+        DenseVector expectedProduct = new DenseVector(DIMENSION);
+        dense.mult(new DenseVector(b), expectedProduct);
+        for (int i = 0; i < DIMENSION; i++) {
+            assertEquals(expectedProduct.get(i), product[i], 1E-12);
+        }
+
+        assertTrue(matrix.factor());
+        double[] x = b.clone();
+        matrix.solve(x, x);
+        DenseVector expected = new DenseVector(DIMENSION);
+        dense.solve(new DenseVector(b), expected);
+        for (int i = 0; i < DIMENSION; i++) {
+            assertEquals(expected.get(i), x[i], 1E-10);
+        }
+
+        DenseCholesky cholesky = new DenseCholesky(DIMENSION, true).factor(new UpperSPDDenseMatrix(dense));
+        for (int i = 0; i < DIMENSION; i++) {
+            assertEquals(cholesky.getU().get(i, i), matrix.getFactorDiagonal()[i], 1E-12);
+        }
+    }
+
+    public void testNotPositiveDefinite() {
+        SymmetricTridiagonalMatrix matrix = new SymmetricTridiagonalMatrix(3);
+        matrix.set(new double[]{1.0, 1.0, 1.0}, new double[]{2.0, 0.0});
+        assertFalse(matrix.factor());
+    }
+}
@@ -0,0 +1,106 @@
+package test.dr.xml;
+
+import dr.inference.model.Parameter;
+import dr.inference.model.ParameterParser;
+import dr.inferencexml.model.CompoundParameterParser;
+import dr.xml.Reference;
+import dr.xml.XMLObject;
+import dr.xml.XMLParser;
+import junit.framework.TestCase;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Test that the streaming XML conversion gives the same objects as conversion from the DOM
+ */
+public class XMLParserTest extends TestCase {
+
+    private static final String XML =
+            "<beast>\n" +
+            "  <!-- a comment -->\n" +
+            "  <parameter id=\"a\" value=\"1 2\"/>\n" +
+            "  <repeat count=\"2\">\n" +
+            "    <repeat count=\"3\">\n" +
+            "      <parameter value=\"3\"/>\n" +
+            "    </repeat>\n" +
+            "    <compoundParameter>\n" +
+            "      <parameter idref=\"a\"/>\n" +
+            "      <parameter value=\"4\"/>\n" +
+            "    </compoundParameter>\n" +
+            "  </repeat>\n" +
+            "  <repeat count=\"0\">\n" +
+            "    <parameter id=\"never\" value=\"5\"/>\n" +
+            "  </repeat>\n" +
+            "  <concurrent>\n" +
+            "    <compoundParameter id=\"c\">\n" +
+            "      <parameter idref=\"a\"/>\n" +
+            "      <parameter id=\"b\" value=\"6 7\"/>\n" +
+            "    </compoundParameter>\n" +
+            "  </concurrent>\n" +
+            "  <parameter idref=\"c\"/>\n" +
+            "</beast>\n";
+
+    private static XMLParser createParser() {
+        XMLParser parser = new XMLParser(false, false, true, null);
+        parser.addXMLObjectParser(new ParameterParser());
+        parser.addXMLObjectParser(new CompoundParameterParser());
+        return parser;
+    }
+
+    private static String describe(XMLParser parser, boolean streaming) throws Exception {
+        String property = System.getProperty(XMLParser.STREAMING_PROPERTY);
+        System.setProperty(XMLParser.STREAMING_PROPERTY, Boolean.toString(streaming));
+        try {
+            Map<String, XMLObject> store = new TreeMap<String, XMLObject>(parser.parse(new StringReader(XML), false));
+
+            StringBuilder sb = new StringBuilder(store.keySet().toString());
+            describe(parser.getRoot(), sb);
+            return sb.toString();
+        } finally {
+            if (property == null) {
+                System.clearProperty(XMLParser.STREAMING_PROPERTY);
+            } else {
+                System.setProperty(XMLParser.STREAMING_PROPERTY, property);
+            }
+        }
+    }
+
+    private static void describe(Object object, StringBuilder sb) {
+        if (object instanceof Reference) {
+            sb.append("@");
+            object = ((Reference) object).getReferenceObject();
+        }
+        if (object instanceof XMLObject) {
+            XMLObject xo = (XMLObject) object;
+            sb.append(xo.getName());
+            Object nativeObject = xo.getNativeObject();
+            if (nativeObject instanceof Parameter) {
+                sb.append(Arrays.toString(((Parameter) nativeObject).getParameterValues()));
+            }
+            sb.append("{");
+            for (int i = 0; i < xo.getChildCount(); i++) {
+                describe(xo.getRawChild(i), sb);
+                sb.append(",");
+            }
+            sb.append("}");
+        } else {
+            sb.append(object);
+        }
+    }
+
+    public void testStreamingMatchesDOM() throws Exception {
+        String dom = describe(createParser(), false);
+        String streaming = describe(createParser(), true);
+
+        assertEquals(dom, streaming);
+
+        // a repeat count of zero converts nothing and nested repeats convert their content each time
+        assertFalse(dom.contains("never"));
+        assertTrue(dom.contains("repeat{repeat{parameter[3.0]{},parameter[3.0]{},parameter[3.0]{},}," +
+                "compoundParameter[1.0, 2.0, 4.0]{@parameter[1.0, 2.0]{},parameter[4.0]{},},"));
+        assertTrue(dom.startsWith("[a, b, c]"));
+    }
+}